@@ -0,0 +1,106 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching specifying client functionality
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.binary;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered reader for the primitives written by {@link BinaryEncoder}.
+ */
+public class BinaryDecoder implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+	
+	private InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	
+	public BinaryDecoder(InputStream in) {
+		this.in = in;
+	}
+	
+	/**
+	 * @return true if the end of the stream has been reached
+	 */
+	public boolean isEndOfStream() throws IOException {
+		return position == limit && !fill();
+	}
+	
+	public int readByte() throws IOException {
+		if (position == limit && !fill()) {
+			throw new EOFException("unexpected end of binary stream");
+		}
+		return buffer[position++] & 0xFF;
+	}
+	
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed variable length integer");
+	}
+	
+	public int readVarInt() throws IOException {
+		long value = readVarLong();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("integer value out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	public long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	public double readDouble() throws IOException {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits = (bits << 8) | readByte();
+		}
+		return Double.longBitsToDouble(bits);
+	}
+	
+	private boolean fill() throws IOException {
+		int read;
+		do {
+			read = in.read(buffer, 0, buffer.length);
+		} while (read == 0);
+		if (read < 0) {
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
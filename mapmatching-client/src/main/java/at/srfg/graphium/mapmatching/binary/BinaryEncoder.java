@@ -0,0 +1,93 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching specifying client functionality
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered writer for the primitives of the binary map matching format. Integers are written as variable length 
+ * integers (7 bits per byte, least significant group first); signed values are zigzag encoded before so small 
+ * negative deltas need few bytes too.
+ */
+public class BinaryEncoder implements Flushable, Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+	
+	private OutputStream out;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	
+	public BinaryEncoder(OutputStream out) {
+		this.out = out;
+	}
+	
+	public void writeByte(int value) throws IOException {
+		if (position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position++] = (byte) value;
+	}
+	
+	public void writeVarLong(long value) throws IOException {
+		if (buffer.length - position < 10) {
+			flushBuffer();
+		}
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	public void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+	
+	public void writeDouble(double value) throws IOException {
+		if (buffer.length - position < 8) {
+			flushBuffer();
+		}
+		long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buffer[position++] = (byte) (bits >>> shift);
+		}
+	}
+	
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+}
@@ -0,0 +1,405 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching specifying client functionality
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
+import at.srfg.graphium.mapmatching.dto.MatchedWaySegmentDTO;
+import at.srfg.graphium.mapmatching.dto.TrackDTO;
+import at.srfg.graphium.mapmatching.dto.TrackMetadataDTO;
+import at.srfg.graphium.mapmatching.dto.TrackPointDTO;
+
+/**
+ * Compact binary encoding of tracks and matched branches as alternative to JSON. Track points are written as deltas 
+ * to their predecessor: IDs, timestamps and coordinates (scaled to integers by the coordinate precision) become 
+ * small variable length integers. Segments of a matched branch are delta-encoded the same way; their geometries 
+ * are written as coordinate deltas instead of WKT.
+ * 
+ * Each message starts with a type byte, the format version and the coordinate precision; several messages can be
+ * written to one stream. Verbose segment attributes are not part of the format.
+ */
+public class MapMatchingBinaryFormat {
+
+	public static final String MEDIA_TYPE = "application/x-graphium-mapmatching";
+	
+	public static final int FORMAT_VERSION = 1;
+	public static final int DEFAULT_COORDINATE_PRECISION = 7;
+	
+	private static final int TYPE_TRACK = 'T';
+	private static final int TYPE_BRANCH = 'B';
+	
+	private static final int TRACK_FLAG_METADATA = 1;
+	
+	private static final int BRANCH_FLAG_FINISHED = 1;
+	
+	// counts are read from untrusted input: reject implausible ones and let lists grow while elements are decoded
+	private static final int MAX_COUNT = 1 << 24;
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	private static final int SEGMENT_FLAG_ENTERING_THROUGH_START_NODE = 1;
+	private static final int SEGMENT_FLAG_LEAVING_THROUGH_START_NODE = 1 << 1;
+	private static final int SEGMENT_FLAG_START_SEGMENT = 1 << 2;
+	private static final int SEGMENT_FLAG_FROM_PATH_SEARCH = 1 << 3;
+	private static final int SEGMENT_FLAG_UTURN_SEGMENT = 1 << 4;
+	private static final int SEGMENT_FLAG_GEOMETRY = 1 << 5;
+	
+	// altitudes are written in centimeters
+	private static final double Z_SCALE = 100;
+	
+	private int coordinatePrecision = DEFAULT_COORDINATE_PRECISION;
+	private GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+	
+	public void writeTrack(TrackDTO track, BinaryEncoder encoder) throws IOException {
+		double scale = writeHeader(TYPE_TRACK, encoder);
+		encoder.writeSignedVarLong(track.getId());
+		
+		TrackMetadataDTO metadata = track.getMetadata();
+		encoder.writeByte(metadata != null ? TRACK_FLAG_METADATA : 0);
+		if (metadata != null) {
+			encoder.writeSignedVarLong(metadata.getId());
+			encoder.writeSignedVarLong(metadata.getStartDate());
+			encoder.writeSignedVarLong(metadata.getEndDate() - metadata.getStartDate());
+			encoder.writeSignedVarLong(metadata.getDuration());
+			encoder.writeDouble(metadata.getLength());
+			encoder.writeVarLong(metadata.getNumberOfPoints());
+		}
+		
+		List<TrackPointDTO> trackPoints = track.getTrackPoints();
+		int size = trackPoints != null ? trackPoints.size() : 0;
+		encoder.writeVarLong(size);
+		long previousId = 0;
+		long previousTimestamp = 0;
+		long previousX = 0;
+		long previousY = 0;
+		long previousZ = 0;
+		for (int i = 0; i < size; i++) {
+			TrackPointDTO trackPoint = trackPoints.get(i);
+			long x = Math.round(trackPoint.getX() * scale);
+			long y = Math.round(trackPoint.getY() * scale);
+			long z = Math.round(trackPoint.getZ() * Z_SCALE);
+			encoder.writeSignedVarLong(trackPoint.getId() - previousId);
+			encoder.writeSignedVarLong(trackPoint.getTimestamp() - previousTimestamp);
+			encoder.writeSignedVarLong(x - previousX);
+			encoder.writeSignedVarLong(y - previousY);
+			encoder.writeSignedVarLong(z - previousZ);
+			previousId = trackPoint.getId();
+			previousTimestamp = trackPoint.getTimestamp();
+			previousX = x;
+			previousY = y;
+			previousZ = z;
+		}
+	}
+	
+	/**
+	 * @return next track of the stream or null if the end of the stream has been reached
+	 */
+	public TrackDTO readTrack(BinaryDecoder decoder) throws IOException {
+		if (decoder.isEndOfStream()) {
+			return null;
+		}
+		double scale = readHeader(TYPE_TRACK, decoder);
+		TrackDTO track = new TrackDTO();
+		track.setId(decoder.readSignedVarLong());
+		
+		if ((decoder.readByte() & TRACK_FLAG_METADATA) != 0) {
+			TrackMetadataDTO metadata = new TrackMetadataDTO();
+			metadata.setId(decoder.readSignedVarLong());
+			metadata.setStartDate(decoder.readSignedVarLong());
+			metadata.setEndDate(metadata.getStartDate() + decoder.readSignedVarLong());
+			metadata.setDuration(decoder.readSignedVarLong());
+			metadata.setLength(decoder.readDouble());
+			metadata.setNumberOfPoints(decoder.readVarInt());
+			track.setMetadata(metadata);
+		}
+		
+		int size = readCount(decoder, "track points");
+		List<TrackPointDTO> trackPoints = new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+		long id = 0;
+		long timestamp = 0;
+		long x = 0;
+		long y = 0;
+		long z = 0;
+		for (int i = 0; i < size; i++) {
+			id += decoder.readSignedVarLong();
+			timestamp += decoder.readSignedVarLong();
+			x += decoder.readSignedVarLong();
+			y += decoder.readSignedVarLong();
+			z += decoder.readSignedVarLong();
+			TrackPointDTO trackPoint = new TrackPointDTO();
+			trackPoint.setId(id);
+			trackPoint.setTrackId(track.getId());
+			trackPoint.setTimestamp(timestamp);
+			trackPoint.setX(x / scale);
+			trackPoint.setY(y / scale);
+			trackPoint.setZ(z / Z_SCALE);
+			trackPoints.add(trackPoint);
+		}
+		track.setTrackPoints(trackPoints);
+		
+		return track;
+	}
+	
+	/**
+	 * Writes the branch. Segment geometries given as WKT will be parsed and written as coordinates.
+	 */
+	public void writeBranch(MatchedBranchDTO branch, BinaryEncoder encoder) throws IOException, ParseException {
+		List<MatchedWaySegmentDTO> segments = branch.getSegments();
+		BranchWriter writer = startBranch(branch, segments != null ? segments.size() : 0, encoder);
+		if (segments != null) {
+			WKTReader reader = new WKTReader();
+			for (MatchedWaySegmentDTO segment : segments) {
+				CoordinateSequence geometry = null;
+				if (segment.getGeometry() != null) {
+					geometry = ((LineString) reader.read(segment.getGeometry())).getCoordinateSequence();
+				}
+				writer.writeSegment(segment, geometry);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the header of a branch; its segments have to be written afterwards via the returned writer. Segments of 
+	 * the given branch will be ignored.
+	 */
+	public BranchWriter startBranch(MatchedBranchDTO branch, int nrOfSegments, BinaryEncoder encoder) throws IOException {
+		double scale = writeHeader(TYPE_BRANCH, encoder);
+		encoder.writeByte(branch.isFinished() ? BRANCH_FLAG_FINISHED : 0);
+		encoder.writeVarLong(branch.getNrOfUTurns());
+		encoder.writeVarLong(branch.getNrOfShortestPathSearches());
+		encoder.writeDouble(branch.getLength());
+		encoder.writeDouble(branch.getMatchedFactor());
+		encoder.writeVarLong(branch.getMatchedPoints());
+		encoder.writeSignedVarLong(branch.getCertainPathEndSegmentId());
+		encoder.writeVarLong(nrOfSegments);
+		return new BranchWriter(encoder, scale);
+	}
+	
+	/**
+	 * Reads the next branch; segment geometries will be set as WKT.
+	 * 
+	 * @return next branch of the stream or null if the end of the stream has been reached
+	 */
+	public MatchedBranchDTO readBranch(BinaryDecoder decoder) throws IOException {
+		List<LineString> geometries = new ArrayList<>();
+		MatchedBranchDTO branch = readBranch(decoder, geometries);
+		if (branch != null) {
+			for (int i = 0; i < geometries.size(); i++) {
+				if (geometries.get(i) != null) {
+					branch.getSegments().get(i).setGeometry(geometries.get(i).toText());
+				}
+			}
+		}
+		return branch;
+	}
+	
+	/**
+	 * Reads the next branch without converting segment geometries to WKT; geometries will be created by the geometry
+	 * factory and added to the given list in the order of the branch's segments (null for segments without geometry).
+	 * 
+	 * @return next branch of the stream or null if the end of the stream has been reached
+	 */
+	public MatchedBranchDTO readBranch(BinaryDecoder decoder, List<LineString> geometries) throws IOException {
+		if (decoder.isEndOfStream()) {
+			return null;
+		}
+		double scale = readHeader(TYPE_BRANCH, decoder);
+		MatchedBranchDTO branch = new MatchedBranchDTO();
+		branch.setFinished((decoder.readByte() & BRANCH_FLAG_FINISHED) != 0);
+		branch.setNrOfUTurns(decoder.readVarInt());
+		branch.setNrOfShortestPathSearches(decoder.readVarInt());
+		branch.setLength(decoder.readDouble());
+		branch.setMatchedFactor(decoder.readDouble());
+		branch.setMatchedPoints(decoder.readVarInt());
+		branch.setCertainPathEndSegmentId(decoder.readSignedVarLong());
+		
+		int size = readCount(decoder, "segments");
+		List<MatchedWaySegmentDTO> segments = new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+		long segmentId = 0;
+		int endPointIndex = 0;
+		long x = 0;
+		long y = 0;
+		for (int i = 0; i < size; i++) {
+			MatchedWaySegmentDTO segment = new MatchedWaySegmentDTO();
+			segmentId += decoder.readSignedVarLong();
+			int startPointIndex = endPointIndex + (int) decoder.readSignedVarLong();
+			endPointIndex = startPointIndex + decoder.readVarInt();
+			segment.setSegmentId(segmentId);
+			segment.setStartPointIndex(startPointIndex);
+			segment.setEndPointIndex(endPointIndex);
+			
+			int flags = decoder.readByte();
+			segment.setEnteringThroughStartNode((flags & SEGMENT_FLAG_ENTERING_THROUGH_START_NODE) != 0);
+			segment.setLeavingThroughStartNode((flags & SEGMENT_FLAG_LEAVING_THROUGH_START_NODE) != 0);
+			segment.setStartSegment((flags & SEGMENT_FLAG_START_SEGMENT) != 0);
+			segment.setFromPathSearch((flags & SEGMENT_FLAG_FROM_PATH_SEARCH) != 0);
+			segment.setuTurnSegment((flags & SEGMENT_FLAG_UTURN_SEGMENT) != 0);
+			segment.setWeight(decoder.readDouble());
+			segment.setMatchedFactor(decoder.readDouble());
+			
+			LineString geometry = null;
+			if ((flags & SEGMENT_FLAG_GEOMETRY) != 0) {
+				int nrOfCoordinates = readCount(decoder, "coordinates");
+				List<Coordinate> coordinates = new ArrayList<>(Math.min(nrOfCoordinates, MAX_INITIAL_CAPACITY));
+				for (int j = 0; j < nrOfCoordinates; j++) {
+					x += decoder.readSignedVarLong();
+					y += decoder.readSignedVarLong();
+					coordinates.add(new Coordinate(x / scale, y / scale));
+				}
+				geometry = geometryFactory.createLineString(coordinates.toArray(new Coordinate[coordinates.size()]));
+			}
+			geometries.add(geometry);
+			segments.add(segment);
+		}
+		branch.setSegments(segments);
+		
+		return branch;
+	}
+	
+	private double writeHeader(int type, BinaryEncoder encoder) throws IOException {
+		encoder.writeByte(type);
+		encoder.writeByte(FORMAT_VERSION);
+		encoder.writeByte(coordinatePrecision);
+		return Math.pow(10, coordinatePrecision);
+	}
+
+	private double readHeader(int expectedType, BinaryDecoder decoder) throws IOException {
+		int type = decoder.readByte();
+		if (type != expectedType) {
+			throw new IOException("unexpected message type " + (char) type + ", expected " + (char) expectedType);
+		}
+		int version = decoder.readByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("unsupported format version " + version);
+		}
+		return Math.pow(10, decoder.readByte());
+	}
+
+	private int readCount(BinaryDecoder decoder, String name) throws IOException {
+		int count = decoder.readVarInt();
+		if (count < 0 || count > MAX_COUNT) {
+			throw new IOException("implausible number of " + name + ": " + count);
+		}
+		return count;
+	}
+	
+	/**
+	 * Writes the segments of a branch. Segment IDs, point indices and coordinates are written as deltas to the 
+	 * previous segment.
+	 */
+	public static class BranchWriter {
+		
+		private BinaryEncoder encoder;
+		private double scale;
+		private long previousSegmentId = 0;
+		private int previousEndPointIndex = 0;
+		private long previousX = 0;
+		private long previousY = 0;
+		
+		private BranchWriter(BinaryEncoder encoder, double scale) {
+			this.encoder = encoder;
+			this.scale = scale;
+		}
+		
+		/**
+		 * Writes the segment; the geometry will be taken from the coordinate sequence, the segment's WKT geometry 
+		 * and verbose attributes will be ignored.
+		 * 
+		 * @param geometry optional
+		 */
+		public void writeSegment(MatchedWaySegmentDTO segment, CoordinateSequence geometry) throws IOException {
+			encoder.writeSignedVarLong(segment.getSegmentId() - previousSegmentId);
+			encoder.writeSignedVarLong(segment.getStartPointIndex() - previousEndPointIndex);
+			encoder.writeVarLong(segment.getEndPointIndex() - segment.getStartPointIndex());
+			previousSegmentId = segment.getSegmentId();
+			previousEndPointIndex = segment.getEndPointIndex();
+			
+			int flags = 0;
+			if (segment.isEnteringThroughStartNode()) {
+				flags |= SEGMENT_FLAG_ENTERING_THROUGH_START_NODE;
+			}
+			if (segment.isLeavingThroughStartNode()) {
+				flags |= SEGMENT_FLAG_LEAVING_THROUGH_START_NODE;
+			}
+			if (segment.isStartSegment()) {
+				flags |= SEGMENT_FLAG_START_SEGMENT;
+			}
+			if (segment.isFromPathSearch()) {
+				flags |= SEGMENT_FLAG_FROM_PATH_SEARCH;
+			}
+			if (segment.isuTurnSegment()) {
+				flags |= SEGMENT_FLAG_UTURN_SEGMENT;
+			}
+			if (geometry != null) {
+				flags |= SEGMENT_FLAG_GEOMETRY;
+			}
+			encoder.writeByte(flags);
+			encoder.writeDouble(segment.getWeight());
+			encoder.writeDouble(segment.getMatchedFactor());
+			
+			if (geometry != null) {
+				encoder.writeVarLong(geometry.size());
+				for (int i = 0; i < geometry.size(); i++) {
+					long x = Math.round(geometry.getOrdinate(i, Coordinate.X) * scale);
+					long y = Math.round(geometry.getOrdinate(i, Coordinate.Y) * scale);
+					encoder.writeSignedVarLong(x - previousX);
+					encoder.writeSignedVarLong(y - previousY);
+					previousX = x;
+					previousY = y;
+				}
+			}
+		}
+		
+	}
+	
+	public GeometryFactory getGeometryFactory() {
+		return geometryFactory;
+	}
+
+	/**
+	 * @param geometryFactory factory for geometries of read segments; default uses SRID 4326
+	 */
+	public void setGeometryFactory(GeometryFactory geometryFactory) {
+		this.geometryFactory = geometryFactory;
+	}
+
+	public int getCoordinatePrecision() {
+		return coordinatePrecision;
+	}
+
+	/**
+	 * @param coordinatePrecision number of decimal places of written coordinates; default is 7 (about 1 cm for WGS84)
+	 */
+	public void setCoordinatePrecision(int coordinatePrecision) {
+		if (coordinatePrecision < 0 || coordinatePrecision > 15) {
+			throw new IllegalArgumentException("coordinate precision has to be between 0 and 15");
+		}
+		this.coordinatePrecision = coordinatePrecision;
+	}
+
+}
@@ -23,11 +23,13 @@ import java.io.OutputStream;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.config.RequestConfig.Builder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -40,6 +42,8 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vividsolutions.jts.io.ParseException;
 
+import at.srfg.graphium.mapmatching.binary.BinaryEncoder;
+import at.srfg.graphium.mapmatching.binary.MapMatchingBinaryFormat;
 import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
 import at.srfg.graphium.mapmatching.dto.TrackDTO;
 import at.srfg.graphium.mapmatching.inputformat.MatchedBranchInputFormat;
@@ -60,11 +64,14 @@ public class MapMatcherClient {
 	private String serverRoorUrl = null;
 	private ObjectMapper mapper = null;
 	private MatchedBranchInputFormat inputFormat = null;
+	private MapMatchingBinaryFormat binaryFormat = null;
 	private CloseableHttpClient httpClient;
 	private int connectionRequestTimeout = 5000;
 	private int connectTimeout = 5000;
 	private int socketTimeout = 5000;
 	private int maxConnections = 25;
+	// if true tracks will be sent and matched branches will be received in binary format instead of JSON
+	private boolean binaryFormatEnabled = false;
 	
 	public MapMatcherClient(String serverRoorUrl) {
 		if (serverRoorUrl == null) {
@@ -73,6 +80,7 @@ public class MapMatcherClient {
 		this.serverRoorUrl = serverRoorUrl + (serverRoorUrl.endsWith("/") ? "" : "/");
 		mapper = new ObjectMapper();
 		inputFormat = new MatchedBranchInputFormat();
+		binaryFormat = new MapMatchingBinaryFormat();
 	}
 	
 	@PostConstruct
@@ -167,7 +175,7 @@ public class MapMatcherClient {
     		paramsSet = true;
     	}
 
-    	return callMapMatcher(uri, track);
+    	return callMapMatcher(uri, track, verboseOutput);
 
 	}
 
@@ -228,11 +236,11 @@ public class MapMatcherClient {
     		uri += "&routingMode=" + trackType;
     	}
  	
-    	return callMapMatcher(uri, track);
+    	return callMapMatcher(uri, track, verboseOutput);
 
 	}
 
-	private MatchedBranchDTO callMapMatcher(String uri, TrackDTO track) 
+	private MatchedBranchDTO callMapMatcher(String uri, TrackDTO track, boolean verboseOutput) 
 			throws JsonGenerationException, JsonMappingException, IOException, ParseException {
 		long time = System.currentTimeMillis();
 		
@@ -240,18 +248,36 @@ public class MapMatcherClient {
        	
         HttpPost httppost = new HttpPost(uri);
 
-		OutputStream os = new ByteArrayOutputStream();
-		mapper.writeValue(os, track);
-
-		StringEntity input = new StringEntity(new String(os.toString()));
-		input.setContentType("application/json");
-        httppost.setEntity(input);
+        if (binaryFormatEnabled) {
+        	ByteArrayOutputStream os = new ByteArrayOutputStream();
+        	BinaryEncoder encoder = new BinaryEncoder(os);
+        	binaryFormat.writeTrack(track, encoder);
+        	encoder.flush();
+        	
+        	ByteArrayEntity input = new ByteArrayEntity(os.toByteArray());
+        	input.setContentType(MapMatchingBinaryFormat.MEDIA_TYPE);
+            httppost.setEntity(input);
+            // verbose attributes are only available in JSON
+            httppost.setHeader("Accept", verboseOutput ? "application/json" : MapMatchingBinaryFormat.MEDIA_TYPE);
+        } else {
+			OutputStream os = new ByteArrayOutputStream();
+			mapper.writeValue(os, track);
+	
+			StringEntity input = new StringEntity(new String(os.toString()));
+			input.setContentType("application/json");
+	        httppost.setEntity(input);
+        }
         
         CloseableHttpResponse response = this.httpClient.execute(httppost);
         try {
             HttpEntity resEntity = response.getEntity();
             if (response.getStatusLine().getStatusCode() == 200 && resEntity != null) {
-            	branchDTO = inputFormat.deserialize(resEntity.getContent());
+            	Header contentType = resEntity.getContentType();
+            	if (contentType != null && contentType.getValue().startsWith(MapMatchingBinaryFormat.MEDIA_TYPE)) {
+            		branchDTO = inputFormat.deserializeBinary(resEntity.getContent());
+            	} else {
+            		branchDTO = inputFormat.deserialize(resEntity.getContent());
+            	}
             }
             else {
             	log.error("error accessing remote mapmatcher, response code was " + response.getStatusLine().getStatusCode() +
@@ -304,4 +330,12 @@ public class MapMatcherClient {
 		this.maxConnections = maxConnections;
 	}
 
+	public boolean isBinaryFormatEnabled() {
+		return binaryFormatEnabled;
+	}
+
+	public void setBinaryFormatEnabled(boolean binaryFormatEnabled) {
+		this.binaryFormatEnabled = binaryFormatEnabled;
+	}
+
 }
@@ -0,0 +1,70 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching specifying client functionality
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Result of an online map matching iteration: segments which will not change anymore and the current (uncertain) best branch.
+ */
+@JsonInclude(value=Include.NON_EMPTY)
+public class OnlineMatchingResultDTO {
+
+	private String sessionId;
+	private List<MatchedWaySegmentDTO> finalizedSegments = new ArrayList<MatchedWaySegmentDTO>();
+	private MatchedBranchDTO currentBranch;
+	
+	public OnlineMatchingResultDTO() {}
+
+	public OnlineMatchingResultDTO(String sessionId, List<MatchedWaySegmentDTO> finalizedSegments,
+			MatchedBranchDTO currentBranch) {
+		super();
+		this.sessionId = sessionId;
+		this.finalizedSegments = finalizedSegments;
+		this.currentBranch = currentBranch;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public void setSessionId(String sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	public List<MatchedWaySegmentDTO> getFinalizedSegments() {
+		return finalizedSegments;
+	}
+
+	public void setFinalizedSegments(List<MatchedWaySegmentDTO> finalizedSegments) {
+		this.finalizedSegments = finalizedSegments;
+	}
+
+	public MatchedBranchDTO getCurrentBranch() {
+		return currentBranch;
+	}
+
+	public void setCurrentBranch(MatchedBranchDTO currentBranch) {
+		this.currentBranch = currentBranch;
+	}
+
+}
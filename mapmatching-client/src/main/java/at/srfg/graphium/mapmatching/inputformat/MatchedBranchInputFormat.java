@@ -36,6 +36,8 @@ import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 
+import at.srfg.graphium.mapmatching.binary.BinaryDecoder;
+import at.srfg.graphium.mapmatching.binary.MapMatchingBinaryFormat;
 import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
 import at.srfg.graphium.mapmatching.dto.MatchedWaySegmentDTO;
 
@@ -47,11 +49,21 @@ public class MatchedBranchInputFormat {
 
 	protected Logger log = LoggerFactory.getLogger(this.getClass());
 	protected JsonFactory f = new MappingJsonFactory();
+	protected MapMatchingBinaryFormat binaryFormat = new MapMatchingBinaryFormat();
 	
 	public MatchedBranchDTO deserialize(InputStream stream) throws IOException, ParseException {
 		return parse(stream);
     }
 	
+	/**
+	 * Reads a branch encoded in the binary map matching format (see {@link MapMatchingBinaryFormat}).
+	 * 
+	 * @return branch or null if stream is empty
+	 */
+	public MatchedBranchDTO deserializeBinary(InputStream stream) throws IOException {
+		return binaryFormat.readBranch(new BinaryDecoder(stream));
+	}
+	
 	protected MatchedBranchDTO parse(InputStream stream) throws IOException, ParseException
 	{	
 		JsonParser jp = f.createParser(stream);
@@ -0,0 +1,328 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching specifying client functionality
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.WKTReader;
+
+import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
+import at.srfg.graphium.mapmatching.dto.MatchedWaySegmentDTO;
+import at.srfg.graphium.mapmatching.dto.TrackDTO;
+import at.srfg.graphium.mapmatching.dto.TrackMetadataDTO;
+import at.srfg.graphium.mapmatching.dto.TrackPointDTO;
+
+public class TestMapMatchingBinaryFormat {
+
+	private static final double COORDINATE_DELTA = 0.5e-7;
+
+	private MapMatchingBinaryFormat format = new MapMatchingBinaryFormat();
+
+	@Test
+	public void testTrackRoundTrip() throws Exception {
+		List<TrackPointDTO> trackPoints = new ArrayList<>();
+		trackPoints.add(new TrackPointDTO(100, 1500000000000L, 7, 13.0412345, 47.8123456, 430.25, null, null, null, null));
+		trackPoints.add(new TrackPointDTO(101, 1500000001000L, 7, 13.0412999, 47.8123001, 431.5, null, null, null, null));
+		// negative deltas of IDs, timestamps, coordinates and altitudes
+		trackPoints.add(new TrackPointDTO(95, 1499999990000L, 7, -13.0400001, -47.8, -12.75, null, null, null, null));
+		trackPoints.add(new TrackPointDTO(96, 1499999991000L, 7, 0, 0, 0, null, null, null, null));
+		TrackDTO track = new TrackDTO(7, trackPoints, new TrackMetadataDTO(3, 1000, 1500000000000L, 1500000001000L, 12.5, 4));
+
+		TrackDTO readTrack = readTrack(writeTrack(track));
+
+		Assert.assertEquals(7, readTrack.getId());
+		TrackMetadataDTO metadata = readTrack.getMetadata();
+		Assert.assertNotNull(metadata);
+		Assert.assertEquals(3, metadata.getId());
+		Assert.assertEquals(1000, metadata.getDuration());
+		Assert.assertEquals(1500000000000L, metadata.getStartDate());
+		Assert.assertEquals(1500000001000L, metadata.getEndDate());
+		Assert.assertEquals(12.5, metadata.getLength(), 0);
+		Assert.assertEquals(4, metadata.getNumberOfPoints());
+		assertTrackPoints(trackPoints, readTrack.getTrackPoints());
+	}
+
+	@Test
+	public void testEmptyTrack() throws Exception {
+		TrackDTO readTrack = readTrack(writeTrack(new TrackDTO(-5, new ArrayList<>(), null)));
+		Assert.assertEquals(-5, readTrack.getId());
+		Assert.assertNull(readTrack.getMetadata());
+		Assert.assertTrue(readTrack.getTrackPoints().isEmpty());
+
+		// track points not set
+		readTrack = readTrack(writeTrack(new TrackDTO(6, null, null)));
+		Assert.assertTrue(readTrack.getTrackPoints().isEmpty());
+	}
+
+	@Test
+	public void testTrackExtremeValues() throws Exception {
+		List<TrackPointDTO> trackPoints = new ArrayList<>();
+		trackPoints.add(new TrackPointDTO(Long.MAX_VALUE, Long.MAX_VALUE, 1, 180, 90, 0, null, null, null, null));
+		trackPoints.add(new TrackPointDTO(Long.MIN_VALUE, Long.MIN_VALUE, 1, -180, -90, 0, null, null, null, null));
+		trackPoints.add(new TrackPointDTO(0, 0, 1, 0, 0, 0, null, null, null, null));
+		TrackDTO track = new TrackDTO(Long.MIN_VALUE, trackPoints,
+				new TrackMetadataDTO(Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MAX_VALUE, 0, Integer.MAX_VALUE));
+
+		TrackDTO readTrack = readTrack(writeTrack(track));
+
+		Assert.assertEquals(Long.MIN_VALUE, readTrack.getId());
+		Assert.assertEquals(Long.MAX_VALUE, readTrack.getMetadata().getId());
+		Assert.assertEquals(Long.MIN_VALUE, readTrack.getMetadata().getDuration());
+		Assert.assertEquals(Long.MAX_VALUE, readTrack.getMetadata().getEndDate());
+		Assert.assertEquals(Integer.MAX_VALUE, readTrack.getMetadata().getNumberOfPoints());
+		assertTrackPoints(trackPoints, readTrack.getTrackPoints());
+	}
+
+	@Test
+	public void testMaxVarLong() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BinaryEncoder encoder = new BinaryEncoder(os);
+		long[] values = {0, 1, 127, 128, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+		for (long value : values) {
+			encoder.writeVarLong(value);
+			encoder.writeSignedVarLong(value);
+			encoder.writeSignedVarLong(-value);
+		}
+		encoder.writeSignedVarLong(Long.MIN_VALUE);
+		encoder.flush();
+
+		BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(os.toByteArray()));
+		for (long value : values) {
+			Assert.assertEquals(value, decoder.readVarLong());
+			Assert.assertEquals(value, decoder.readSignedVarLong());
+			Assert.assertEquals(-value, decoder.readSignedVarLong());
+		}
+		Assert.assertEquals(Long.MIN_VALUE, decoder.readSignedVarLong());
+		Assert.assertTrue(decoder.isEndOfStream());
+	}
+
+	@Test
+	public void testVarIntOutOfRange() throws Exception {
+		for (long value : new long[] {Integer.MAX_VALUE + 1L, Long.MAX_VALUE, -1}) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			BinaryEncoder encoder = new BinaryEncoder(os);
+			encoder.writeVarLong(value);
+			encoder.flush();
+			try {
+				new BinaryDecoder(new ByteArrayInputStream(os.toByteArray())).readVarInt();
+				Assert.fail("value " + value + " has been read as int");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testBranchRoundTrip() throws Exception {
+		List<MatchedWaySegmentDTO> segments = new ArrayList<>();
+		segments.add(createSegment(1000, 0, 3, true, false, "LINESTRING (13.01 47.8, 13.0112345 47.8012345)"));
+		// negative deltas of segment IDs, point indices and coordinates
+		segments.add(createSegment(900, 2, 5, false, true, "LINESTRING (13.0112345 47.8012345, 12.5 -47.1, -13 -48)"));
+		segments.add(createSegment(Long.MAX_VALUE, 5, 5, false, false, null));
+		segments.add(createSegment(Long.MIN_VALUE, 4, 6, true, true, "LINESTRING (180 90, -180 -90)"));
+		MatchedBranchDTO branch = new MatchedBranchDTO(segments, true, 2, 5, 1234.5, 0.875, 6, 900);
+
+		MatchedBranchDTO readBranch = readBranch(writeBranch(branch));
+
+		Assert.assertTrue(readBranch.isFinished());
+		Assert.assertEquals(2, readBranch.getNrOfUTurns());
+		Assert.assertEquals(5, readBranch.getNrOfShortestPathSearches());
+		Assert.assertEquals(1234.5, readBranch.getLength(), 0);
+		Assert.assertEquals(0.875, readBranch.getMatchedFactor(), 0);
+		Assert.assertEquals(6, readBranch.getMatchedPoints());
+		Assert.assertEquals(900, readBranch.getCertainPathEndSegmentId());
+		Assert.assertEquals(segments.size(), readBranch.getSegments().size());
+		WKTReader reader = new WKTReader();
+		for (int i = 0; i < segments.size(); i++) {
+			MatchedWaySegmentDTO expected = segments.get(i);
+			MatchedWaySegmentDTO segment = readBranch.getSegments().get(i);
+			Assert.assertEquals(expected.getSegmentId(), segment.getSegmentId());
+			Assert.assertEquals(expected.getStartPointIndex(), segment.getStartPointIndex());
+			Assert.assertEquals(expected.getEndPointIndex(), segment.getEndPointIndex());
+			Assert.assertEquals(expected.isEnteringThroughStartNode(), segment.isEnteringThroughStartNode());
+			Assert.assertEquals(expected.isLeavingThroughStartNode(), segment.isLeavingThroughStartNode());
+			Assert.assertEquals(expected.isStartSegment(), segment.isStartSegment());
+			Assert.assertEquals(expected.isFromPathSearch(), segment.isFromPathSearch());
+			Assert.assertEquals(expected.isuTurnSegment(), segment.isuTurnSegment());
+			Assert.assertEquals(expected.getWeight(), segment.getWeight(), 0);
+			Assert.assertEquals(expected.getMatchedFactor(), segment.getMatchedFactor(), 0);
+			if (expected.getGeometry() == null) {
+				Assert.assertNull(segment.getGeometry());
+			} else {
+				Assert.assertTrue(reader.read(expected.getGeometry()).equalsExact(reader.read(segment.getGeometry()), COORDINATE_DELTA));
+			}
+		}
+	}
+
+	@Test
+	public void testBranchGeometries() throws Exception {
+		List<MatchedWaySegmentDTO> segments = Arrays.asList(
+				createSegment(1, 0, 1, false, false, "LINESTRING (13 47, 13.1 47.1)"),
+				createSegment(2, 1, 2, false, false, null));
+		MatchedBranchDTO branch = new MatchedBranchDTO(segments, false, 0, 1, 10, 1, 2, 1);
+
+		List<LineString> geometries = new ArrayList<>();
+		MatchedBranchDTO readBranch = format.readBranch(new BinaryDecoder(new ByteArrayInputStream(writeBranch(branch))), geometries);
+
+		Assert.assertEquals(2, geometries.size());
+		Assert.assertTrue(new WKTReader().read(segments.get(0).getGeometry()).equalsExact(geometries.get(0), COORDINATE_DELTA));
+		Assert.assertEquals(4326, geometries.get(0).getSRID());
+		Assert.assertNull(geometries.get(1));
+		Assert.assertNull(readBranch.getSegments().get(0).getGeometry());
+	}
+
+	@Test
+	public void testEmptyBranch() throws Exception {
+		MatchedBranchDTO readBranch = readBranch(writeBranch(new MatchedBranchDTO(null, false, 0, 0, 0, 0, 0, -1)));
+		Assert.assertFalse(readBranch.isFinished());
+		Assert.assertEquals(-1, readBranch.getCertainPathEndSegmentId());
+		Assert.assertTrue(readBranch.getSegments().isEmpty());
+	}
+
+	@Test
+	public void testSeveralMessagesPerStream() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BinaryEncoder encoder = new BinaryEncoder(os);
+		for (int i = 0; i < 3; i++) {
+			format.writeTrack(new TrackDTO(i, new ArrayList<>(), null), encoder);
+		}
+		encoder.flush();
+
+		BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(os.toByteArray()));
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(i, format.readTrack(decoder).getId());
+		}
+		Assert.assertNull(format.readTrack(decoder));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnexpectedMessageType() throws Exception {
+		readBranch(writeTrack(new TrackDTO(1, new ArrayList<>(), null)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedMessage() throws Exception {
+		byte[] bytes = writeBranch(new MatchedBranchDTO(Arrays.asList(
+				createSegment(1, 0, 1, false, false, "LINESTRING (13 47, 13.1 47.1)")), false, 0, 1, 10, 1, 2, 1));
+		readBranch(Arrays.copyOf(bytes, bytes.length - 1));
+	}
+
+	@Test
+	public void testImplausibleTrackPointCount() throws Exception {
+		// neither a huge nor a truncated count must make the decoder allocate memory for the announced track points
+		for (int count : new int[] {Integer.MAX_VALUE, (1 << 24) + 1, 1 << 24}) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			BinaryEncoder encoder = new BinaryEncoder(os);
+			encoder.writeByte('T');
+			encoder.writeByte(MapMatchingBinaryFormat.FORMAT_VERSION);
+			encoder.writeByte(MapMatchingBinaryFormat.DEFAULT_COORDINATE_PRECISION);
+			encoder.writeSignedVarLong(1);
+			encoder.writeByte(0);
+			encoder.writeVarLong(count);
+			encoder.flush();
+			try {
+				readTrack(os.toByteArray());
+				Assert.fail("track with " + count + " announced points has been read");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testImplausibleSegmentCount() throws Exception {
+		byte[] bytes = writeBranch(new MatchedBranchDTO(new ArrayList<>(), false, 0, 1, 10, 1, 2, 1));
+		// replace the segment count (last byte) by Integer.MAX_VALUE
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		os.write(bytes, 0, bytes.length - 1);
+		BinaryEncoder encoder = new BinaryEncoder(os);
+		encoder.writeVarLong(Integer.MAX_VALUE);
+		encoder.flush();
+		readBranch(os.toByteArray());
+	}
+
+	private MatchedWaySegmentDTO createSegment(long segmentId, int startPointIndex, int endPointIndex,
+			boolean enteringThroughStartNode, boolean leavingThroughStartNode, String geometry) {
+		MatchedWaySegmentDTO segment = new MatchedWaySegmentDTO();
+		segment.setSegmentId(segmentId);
+		segment.setStartPointIndex(startPointIndex);
+		segment.setEndPointIndex(endPointIndex);
+		segment.setEnteringThroughStartNode(enteringThroughStartNode);
+		segment.setLeavingThroughStartNode(leavingThroughStartNode);
+		segment.setStartSegment(segmentId % 2 == 0);
+		segment.setFromPathSearch(segmentId % 3 == 0);
+		segment.setuTurnSegment(geometry == null);
+		segment.setWeight(segmentId * 0.25);
+		segment.setMatchedFactor(0.5);
+		segment.setGeometry(geometry);
+		return segment;
+	}
+
+	private void assertTrackPoints(List<TrackPointDTO> expectedTrackPoints, List<TrackPointDTO> trackPoints) {
+		Assert.assertEquals(expectedTrackPoints.size(), trackPoints.size());
+		for (int i = 0; i < expectedTrackPoints.size(); i++) {
+			TrackPointDTO expected = expectedTrackPoints.get(i);
+			TrackPointDTO trackPoint = trackPoints.get(i);
+			Assert.assertEquals(expected.getId(), trackPoint.getId());
+			Assert.assertEquals(expected.getTimestamp(), trackPoint.getTimestamp());
+			Assert.assertEquals(expected.getX(), trackPoint.getX(), COORDINATE_DELTA);
+			Assert.assertEquals(expected.getY(), trackPoint.getY(), COORDINATE_DELTA);
+			Assert.assertEquals(expected.getZ(), trackPoint.getZ(), 0.005);
+		}
+	}
+
+	private byte[] writeTrack(TrackDTO track) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BinaryEncoder encoder = new BinaryEncoder(os);
+		format.writeTrack(track, encoder);
+		encoder.flush();
+		return os.toByteArray();
+	}
+
+	private TrackDTO readTrack(byte[] bytes) throws IOException {
+		BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes));
+		TrackDTO track = format.readTrack(decoder);
+		Assert.assertTrue(decoder.isEndOfStream());
+		return track;
+	}
+
+	private byte[] writeBranch(MatchedBranchDTO branch) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BinaryEncoder encoder = new BinaryEncoder(os);
+		format.writeBranch(branch, encoder);
+		encoder.flush();
+		return os.toByteArray();
+	}
+
+	private MatchedBranchDTO readBranch(byte[] bytes) throws IOException {
+		BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes));
+		MatchedBranchDTO branch = format.readBranch(decoder);
+		Assert.assertTrue(decoder.isEndOfStream());
+		return branch;
+	}
+
+}
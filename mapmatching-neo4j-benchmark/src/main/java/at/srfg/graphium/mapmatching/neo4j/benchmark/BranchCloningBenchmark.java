@@ -0,0 +1,170 @@
+/**
+ * Graphium Neo4j - JMH benchmarks of Graphium map matching via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.mapmatching.model.impl.MatchedBranchImpl;
+import at.srfg.graphium.mapmatching.model.impl.MatchedWaySegmentImpl;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+
+/**
+ * JMH benchmarks of the allocations caused by expanding a matched branch. Each invocation expands a branch of the
+ * given length by a number of candidate segments the way the path expansion does: the branch is cloned per candidate,
+ * its last segment is rematched, the candidate is appended and all segments are read.
+ *
+ * {@link #expandCopyOnWrite(AllocationCounters)} uses the copy-on-write cloning of {@link MatchedBranchImpl};
+ * {@link #expandDeepClone(AllocationCounters)} clones every segment of the branch as a deep copy would. The secondary
+ * result allocatedBytes reports the bytes allocated per iteration:
+ *
+ * <pre>
+ * mvn clean package
+ * java -jar mapmatching-neo4j-benchmark/target/benchmarks.jar BranchCloningBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BranchCloningBenchmark {
+
+	@Param({"100", "1000", "5000"})
+	private int segments;
+
+	@Param({"3"})
+	private int candidates;
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+	private IMatchedBranch branch;
+	private List<IMatchedWaySegment> candidateSegments;
+
+	/**
+	 * Secondary results per iteration; public fields are reported by JMH.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class AllocationCounters {
+
+		private static final com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		public long allocatedBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			allocatedBytes = 0;
+		}
+
+		long getAllocatedBytes() {
+			return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		branch = new MatchedBranchImpl(null);
+		for (int i = 0; i < segments; i++) {
+			branch.addMatchedWaySegment(createSegment(i));
+		}
+		candidateSegments = new ArrayList<>(candidates);
+		for (int i = 0; i < candidates; i++) {
+			candidateSegments.add(createSegment(segments + i));
+		}
+	}
+
+	@Benchmark
+	public int expandCopyOnWrite(AllocationCounters counters) throws CloneNotSupportedException {
+		long allocatedBefore = counters.getAllocatedBytes();
+		int matchedPoints = 0;
+		for (IMatchedWaySegment candidate : candidateSegments) {
+			matchedPoints += expand((IMatchedBranch) branch.clone(), candidate);
+		}
+		counters.allocatedBytes += counters.getAllocatedBytes() - allocatedBefore;
+		return matchedPoints;
+	}
+
+	@Benchmark
+	public int expandDeepClone(AllocationCounters counters) throws CloneNotSupportedException {
+		long allocatedBefore = counters.getAllocatedBytes();
+		int matchedPoints = 0;
+		for (IMatchedWaySegment candidate : candidateSegments) {
+			matchedPoints += expand(deepClone(branch), candidate);
+		}
+		counters.allocatedBytes += counters.getAllocatedBytes() - allocatedBefore;
+		return matchedPoints;
+	}
+
+	private int expand(IMatchedBranch clonedBranch, IMatchedWaySegment candidate) throws CloneNotSupportedException {
+		List<IMatchedWaySegment> clonedSegments = clonedBranch.getMatchedWaySegments();
+		// rematch the last segment
+		IMatchedWaySegment lastSegment = clonedSegments.get(clonedSegments.size() - 1);
+		lastSegment.setEndPointIndex(lastSegment.getEndPointIndex() - 1);
+		clonedBranch.addMatchedWaySegment((IMatchedWaySegment) candidate.clone());
+		return clonedBranch.getMatchedPoints();
+	}
+
+	private IMatchedBranch deepClone(IMatchedBranch branch) throws CloneNotSupportedException {
+		MatchedBranchImpl clonedBranch = new MatchedBranchImpl(null);
+		List<IMatchedWaySegment> clonedSegments = new ArrayList<>(branch.getMatchedWaySegmentsReadOnly().size());
+		for (IMatchedWaySegment segment : branch.getMatchedWaySegmentsReadOnly()) {
+			clonedSegments.add((IMatchedWaySegment) segment.clone());
+		}
+		clonedBranch.setSegments(clonedSegments);
+		return clonedBranch;
+	}
+
+	private IMatchedWaySegment createSegment(int index) {
+		IWaySegment segment = new WaySegment();
+		segment.setId(index);
+		segment.setGeometry(factory.createLineString(new Coordinate[] {
+				new Coordinate(index * 0.001, 0), new Coordinate((index + 1) * 0.001, 0)}));
+		segment.setLength(100);
+		IMatchedWaySegment matchedSegment = new MatchedWaySegmentImpl(segment, index == 0);
+		matchedSegment.setStartPointIndex(index * 2);
+		matchedSegment.setEndPointIndex(index * 2 + 2);
+		return matchedSegment;
+	}
+
+}
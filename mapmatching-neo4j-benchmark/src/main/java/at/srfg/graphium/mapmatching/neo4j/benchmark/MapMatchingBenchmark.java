@@ -0,0 +1,245 @@
+/**
+ * Graphium Neo4j - JMH benchmarks of Graphium map matching via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.core.persistence.IWayGraphVersionMetadataDao;
+import at.srfg.graphium.core.persistence.IWayGraphWriteDao;
+import at.srfg.graphium.io.adapter.IAdapter;
+import at.srfg.graphium.mapmatching.dto.TrackDTO;
+import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.neo4j.matcher.impl.Neo4jMapMatcher;
+import at.srfg.graphium.mapmatching.statistics.MapMatcherStatistics;
+import at.srfg.graphium.model.IWayGraphModelFactory;
+import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
+import at.srfg.graphium.routing.exception.RoutingParameterException;
+import at.srfg.graphium.routing.neo4j.benchmark.SyntheticGraphGenerator;
+
+/**
+ * JMH benchmarks of Neo4jMapMatcher matching the GPS tracks of the bundled JSON track archive. The road graph is
+ * generated along the benchmarked track by {@link TrackGraphGenerator} into a temporary embedded Neo4j database.
+ *
+ * Each invocation matches the whole track. Throughput and sampled latencies (including percentiles) are reported
+ * per track. The secondary results count matched tracks, track points and allocated bytes of each iteration as
+ * well as the nanoseconds spent in initial matching, path expansion, filtering and routing (routing is contained
+ * in path expansion and filtering). Scaling over threads can be measured by JMH's thread count:
+ *
+ * <pre>
+ * mvn clean package
+ * java -jar mapmatching-neo4j-benchmark/target/benchmarks.jar MapMatchingBenchmark -t 1
+ * java -jar mapmatching-neo4j-benchmark/target/benchmarks.jar MapMatchingBenchmark -t max -prof gc
+ * java -jar mapmatching-neo4j-benchmark/target/benchmarks.jar MapMatchingBenchmark -p trackId=15596028
+ * </pre>
+ *
+ * The track archive's path is resolved relative to the working directory, so benchmarks should be started in the
+ * project's root directory or the parameter tracksArchive has to be set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MapMatchingBenchmark {
+
+	private static Logger log = LoggerFactory.getLogger(MapMatchingBenchmark.class);
+
+	private static final String GRAPH_NAME = "tracks";
+	private static final String VERSION = "1";
+
+	@Param({"data/json_tracks_mapmatching.zip"})
+	private String tracksArchive;
+
+	@Param({"14079459", "19162072", "19457078", "22061090"})
+	private String trackId;
+
+	@Param({"car"})
+	private String routingMode;
+
+	@Param({"42"})
+	private long seed;
+
+	private Path tempDirectory;
+	private ClassPathXmlApplicationContext context;
+	private Neo4jMapMatcher mapMatcher;
+	private ITrack track;
+
+	/**
+	 * Secondary results per iteration; public fields are reported by JMH.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class MatchingCounters {
+
+		private static final com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		public long tracks;
+		public long trackPoints;
+		public long allocatedBytes;
+		public long initialMatchingNs;
+		public long pathExpansionNs;
+		public long filteringNs;
+		public long routingNs;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tracks = 0;
+			trackPoints = 0;
+			allocatedBytes = 0;
+			initialMatchingNs = 0;
+			pathExpansionNs = 0;
+			filteringNs = 0;
+			routingNs = 0;
+		}
+
+		long getAllocatedBytes() {
+			return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		void add(IMapMatcherTask task, long allocatedBefore) {
+			allocatedBytes += getAllocatedBytes() - allocatedBefore;
+			tracks++;
+			trackPoints += task.getTrack().getTrackPoints().size();
+			MapMatcherStatistics statistics = task.getStatistics();
+			initialMatchingNs += statistics.getDuration(MapMatcherStatistics.INITIAL_MATCHING_DURATION);
+			pathExpansionNs += statistics.getDuration(MapMatcherStatistics.PATH_EXPANSION_DURATION);
+			filteringNs += statistics.getDuration(MapMatcherStatistics.FILTERING_DURATION);
+			routingNs += statistics.getDuration(MapMatcherStatistics.ROUTING_DURATION);
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+		tempDirectory = Files.createTempDirectory("graphium-mapmatching-benchmark");
+		Path neo4jProperties = Files.write(tempDirectory.resolve("neo4j.properties"), Arrays.asList("maxNodeReferences=50"));
+		System.setProperty("graphium.neo4j.dbDirectory", tempDirectory.resolve("graph.db").toString());
+		System.setProperty("graphium.neo4j.propertiesFile", neo4jProperties.toString());
+
+		context = new ClassPathXmlApplicationContext(
+				"classpath:/application-context-graphium-routing-neo4j_benchmark.xml",
+				"classpath:/application-context-graphium-mapmatching.xml",
+				"classpath:/application-context-graphium-mapmatching-neo4j.xml",
+				"classpath:/application-context-graphium-core.xml",
+				"classpath:/application-context-graphium-model.xml");
+		mapMatcher = context.getBean("neo4jMapMatcher", Neo4jMapMatcher.class);
+
+		track = readTrack(context.getBean("trackDTO2TrackAdapter", IAdapter.class));
+
+		TrackGraphGenerator generator = new TrackGraphGenerator(new SyntheticGraphGenerator(
+				context.getBean("neo4jWayGraphWriteDao", IWayGraphWriteDao.class),
+				context.getBean("neo4jWayGraphVersionMetadataDao", IWayGraphVersionMetadataDao.class),
+				context.getBean("wayGraphModelFactory", IWayGraphModelFactory.class)));
+		generator.generate(GRAPH_NAME, VERSION, Collections.singletonList(track), seed);
+
+		waitForActiveGraphVersion();
+	}
+
+	private ITrack readTrack(IAdapter<ITrack, TrackDTO> adapter) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		try (ZipFile zipFile = new ZipFile(tracksArchive)) {
+			ZipEntry entry = zipFile.getEntry(trackId + ".json");
+			if (entry == null) {
+				throw new IllegalArgumentException("Track " + trackId + " not found in " + tracksArchive);
+			}
+			try (InputStream is = zipFile.getInputStream(entry)) {
+				ITrack track = adapter.adapt(mapper.readValue(is, TrackDTO.class));
+				log.info("Track " + trackId + " with " + track.getTrackPoints().size() + " track points read");
+				return track;
+			}
+		}
+	}
+
+	/**
+	 * Activates the graph version in the caches (as the metadata service would after an import) and waits until
+	 * its STR-Tree has been built in the background.
+	 */
+	private void waitForActiveGraphVersion() throws InterruptedException {
+		STRTreeCacheManager cacheManager = context.getBean("strtreeCacheManager", STRTreeCacheManager.class);
+		IWayGraphVersionMetadataDao metadataDao = context.getBean("neo4jWayGraphVersionMetadataDao", IWayGraphVersionMetadataDao.class);
+		cacheManager.update(null, metadataDao.getWayGraphVersionMetadata(GRAPH_NAME, VERSION));
+		long timeout = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10);
+		while (cacheManager.getIndex(GRAPH_NAME, VERSION) == null) {
+			if (System.currentTimeMillis() > timeout) {
+				throw new IllegalStateException("STR-Tree of graph version " + GRAPH_NAME + "_" + VERSION + " has not been built");
+			}
+			Thread.sleep(100);
+		}
+		log.info("Graph version " + GRAPH_NAME + "_" + VERSION + " is active");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if (context != null) {
+			// shuts down Neo4j and deletes the database directory
+			context.close();
+		}
+		Files.deleteIfExists(tempDirectory.resolve("neo4j.properties"));
+		Files.deleteIfExists(tempDirectory);
+		System.clearProperty("graphium.neo4j.dbDirectory");
+		System.clearProperty("graphium.neo4j.propertiesFile");
+	}
+
+	@Benchmark
+	public List<IMatchedBranch> matchTrack(MatchingCounters counters)
+			throws GraphNotExistsException, RoutingParameterException {
+		long allocatedBefore = counters.getAllocatedBytes();
+		// tracks are only read by map matching tasks and can be shared by all threads
+		IMapMatcherTask task = mapMatcher.getTask(GRAPH_NAME, VERSION, track, routingMode);
+		List<IMatchedBranch> branches = task.matchTrack();
+		counters.add(task, allocatedBefore);
+		return branches;
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Graphium Neo4j - JMH benchmarks of Graphium map matching via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import at.srfg.graphium.core.exception.GraphAlreadyExistException;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.model.ITrackPoint;
+import at.srfg.graphium.model.FuncRoadClass;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.routing.neo4j.benchmark.SyntheticGraphGenerator;
+
+/**
+ * Generates a synthetic road graph along GPS tracks, so the tracks can be map matched without a real road graph
+ * of their region.
+ *
+ * Each track's points are smoothed into a two-way main road which is split into segments of a few track points
+ * each. At the main road's nodes side roads branch off perpendicularly to both sides; they serve as decoys for
+ * the initial matching and the path expansion. Track points not lying on the main road (GPS errors, parts of
+ * tracks crossing each other) are matched as they would be on a real graph.
+ */
+public class TrackGraphGenerator {
+
+	private static final double METERS_PER_DEGREE = 111320;
+	// every n-th track point will be a vertex of the main road
+	private static final int POINTS_PER_VERTEX = 3;
+	private static final int VERTICES_PER_SEGMENT = 5;
+	private static final double SIDE_ROAD_LENGTH = 150;
+	private static final double SIDE_ROAD_SHARE = 0.5;
+
+	private SyntheticGraphGenerator generator;
+	private Random random;
+	private long nextSegmentId;
+	private long nextNodeId;
+
+	public TrackGraphGenerator(SyntheticGraphGenerator generator) {
+		this.generator = generator;
+	}
+
+	/**
+	 * Generates main and side roads of all tracks and saves them as active graph version.
+	 *
+	 * @return number of generated segments
+	 */
+	public int generate(String graphName, String version, List<ITrack> tracks, long seed) throws GraphAlreadyExistException {
+		generator.setSeed(seed);
+		random = new Random(seed);
+		nextSegmentId = 1;
+		nextNodeId = 1;
+
+		List<IWaySegment> segments = new ArrayList<>();
+		for (ITrack track : tracks) {
+			createRoads(track, segments);
+		}
+
+		generator.save(graphName, version, segments, "Synthetic graph along " + tracks.size() + " tracks");
+		return segments.size();
+	}
+
+	private void createRoads(ITrack track, List<IWaySegment> segments) {
+		List<Coordinate> vertices = getVertices(track);
+		if (vertices.size() < 2) {
+			return;
+		}
+
+		long startNodeId = nextNodeId++;
+		int start = 0;
+		while (start < vertices.size() - 1) {
+			int end = Math.min(start + VERTICES_PER_SEGMENT, vertices.size() - 1);
+			long endNodeId = nextNodeId++;
+			segments.add(generator.createSegment(nextSegmentId++, startNodeId, endNodeId,
+					vertices.subList(start, end + 1).toArray(new Coordinate[0]), FuncRoadClass.OTHER_MAJOR_ROAD,
+					(short) 100, false));
+
+			if (end < vertices.size() - 1) {
+				createSideRoads(endNodeId, vertices.get(end - 1), vertices.get(end), segments);
+			}
+			start = end;
+			startNodeId = endNodeId;
+		}
+	}
+
+	/**
+	 * @return every n-th track point's coordinate (including first and last one) skipping duplicates
+	 */
+	private List<Coordinate> getVertices(ITrack track) {
+		List<ITrackPoint> trackPoints = track.getTrackPoints();
+		List<Coordinate> vertices = new ArrayList<>(trackPoints.size() / POINTS_PER_VERTEX + 2);
+		for (int i = 0; i < trackPoints.size(); i++) {
+			if (i % POINTS_PER_VERTEX == 0 || i == trackPoints.size() - 1) {
+				Coordinate coordinate = trackPoints.get(i).getPoint().getCoordinate();
+				if (vertices.isEmpty() || !vertices.get(vertices.size() - 1).equals2D(coordinate)) {
+					vertices.add(new Coordinate(coordinate.x, coordinate.y));
+				}
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * Creates local roads starting at the node perpendicular to the main road.
+	 */
+	private void createSideRoads(long nodeId, Coordinate previous, Coordinate node, List<IWaySegment> segments) {
+		double cosY = Math.cos(Math.toRadians(node.y));
+		double dx = (node.x - previous.x) * cosY;
+		double dy = node.y - previous.y;
+		double norm = Math.sqrt(dx * dx + dy * dy);
+		if (norm == 0) {
+			return;
+		}
+		double offset = SIDE_ROAD_LENGTH / METERS_PER_DEGREE;
+		for (int side = -1; side <= 1; side += 2) {
+			if (random.nextDouble() < SIDE_ROAD_SHARE) {
+				Coordinate end = new Coordinate(
+						node.x - side * dy / norm * offset / cosY,
+						node.y + side * dx / norm * offset);
+				segments.add(generator.createSegment(nextSegmentId++, nodeId, nextNodeId++,
+						new Coordinate[] {new Coordinate(node.x, node.y), end}, FuncRoadClass.LOCAL_CONNECTING_ROAD,
+						(short) 50, false));
+			}
+		}
+	}
+
+}
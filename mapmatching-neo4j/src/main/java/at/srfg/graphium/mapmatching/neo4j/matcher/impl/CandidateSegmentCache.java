@@ -0,0 +1,274 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching using Neo4j
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.matcher.impl;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+
+import at.srfg.graphium.mapmatching.matcher.impl.SegmentDistance;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.neo4j.service.IGraphVersionCacheListener;
+import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
+
+/**
+ * Process-wide cache of candidate segments for the initial matching used by all map matching tasks. Track points are 
+ * quantized to a grid of cells whose edge length equals the search radius; per graph version, search radius and cell 
+ * all segments within the search radius plus half the cell's diagonal around the cell's center are cached as compact 
+ * arrays of segment IDs and distances to the cell's center, sorted by distance. Thus every point within the cell can 
+ * be served from one entry: a segment cannot be nearer to the point than its distance to the center minus the point's 
+ * distance to the center. Segments have to be loaded from the graph when candidates are read from cache. The cache is 
+ * bounded by the estimated size of its entries in bytes. Entries of a graph will be invalidated if the STRTreeCacheManager 
+ * activates a new version of the graph or removes a version.
+ */
+public class CandidateSegmentCache implements IGraphVersionCacheListener {
+
+	private static Logger log = LoggerFactory.getLogger(CandidateSegmentCache.class);
+
+	// estimated size of a cache entry without segments (key, value, arrays' headers and Guava's entry)
+	private static final int ENTRY_OVERHEAD_BYTES = 160;
+	private static final double METERS_PER_DEGREE = 111320;
+	// compensates different approximations of distances in the spatial index and the distance calculations
+	public static final double DISTANCE_TOLERANCE_METER = 1;
+	
+	private STRTreeCacheManager cacheManager;
+	private long maximumSizeInBytes = 32L * 1024 * 1024;
+	
+	private Cache<CellKey, CachedCandidates> candidates;
+	
+	@PostConstruct
+	public void setup() {
+		candidates = CacheBuilder.newBuilder()
+							 .maximumWeight(maximumSizeInBytes)
+							 .weigher((CellKey key, CachedCandidates cell) -> ENTRY_OVERHEAD_BYTES + cell.segmentIds.length * 12)
+							 .recordStats()
+							 .build();
+		if (cacheManager != null) {
+			cacheManager.addCacheListener(this);
+		}
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		if (cacheManager != null) {
+			cacheManager.removeCacheListener(this);
+		}
+		candidates.invalidateAll();
+	}
+	
+	/**
+	 * @return cached candidates of the cell containing the point or null
+	 */
+	public CachedCandidates get(String graphName, String version, int radiusInMeter, Point point) {
+		return candidates.getIfPresent(createKey(graphName, version, radiusInMeter, point));
+	}
+
+	/**
+	 * @param segments all segments within {@link #getSearchRadiusInMeter(int)} around the center of the point's cell
+	 * 		  and their distances to the cell's center
+	 */
+	public void put(String graphName, String version, int radiusInMeter, Point point, 
+			List<SegmentDistance<IWaySegment>> segments) {
+		segments.sort(null);
+		long[] segmentIds = new long[segments.size()];
+		float[] distances = new float[segments.size()];
+		for (int i = 0; i < segments.size(); i++) {
+			segmentIds[i] = segments.get(i).getSegment().getId();
+			distances[i] = (float) segments.get(i).getDistance();
+		}
+		candidates.put(createKey(graphName, version, radiusInMeter, point), new CachedCandidates(segmentIds, distances));
+	}
+	
+	/**
+	 * @return center of the cell containing the point
+	 */
+	public Point getCellCenter(int radiusInMeter, Point point) {
+		double latStep = getLatitudeStep(radiusInMeter);
+		long cellY = (long) Math.floor(point.getY() / latStep);
+		double centerY = (cellY + 0.5) * latStep;
+		double lonStep = getLongitudeStep(latStep, centerY);
+		double centerX = (Math.floor(point.getX() / lonStep) + 0.5) * lonStep;
+		Point center = point.getFactory().createPoint(new Coordinate(centerX, centerY));
+		center.setSRID(point.getSRID());
+		return center;
+	}
+	
+	/**
+	 * @return radius around the cell's center covering the search radius of every point within the cell
+	 */
+	public double getSearchRadiusInMeter(int radiusInMeter) {
+		return radiusInMeter * (1 + Math.sqrt(2) / 2) + DISTANCE_TOLERANCE_METER;
+	}
+	
+	private CellKey createKey(String graphName, String version, int radiusInMeter, Point point) {
+		double latStep = getLatitudeStep(radiusInMeter);
+		long cellY = (long) Math.floor(point.getY() / latStep);
+		double lonStep = getLongitudeStep(latStep, (cellY + 0.5) * latStep);
+		long cellX = (long) Math.floor(point.getX() / lonStep);
+		return new CellKey(graphName, version, radiusInMeter, cellX, cellY);
+	}
+	
+	private double getLatitudeStep(int radiusInMeter) {
+		return Math.max(radiusInMeter, 1) / METERS_PER_DEGREE;
+	}
+	
+	private double getLongitudeStep(double latStep, double latitude) {
+		// all cells of a row share the width at the row's center
+		return latStep / Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+	}
+	
+	@Override
+	public void graphVersionActivated(IWayGraphVersionMetadata metadata) {
+		// a version could have been re-imported; candidates of older versions will not be requested anymore
+		invalidate(metadata.getGraphName(), null);
+	}
+
+	@Override
+	public void graphVersionRemoved(String graphName, String version) {
+		invalidate(graphName, version);
+	}
+	
+	/**
+	 * Invalidates all candidates of the graph version or - if version is null - of all versions of the graph.
+	 */
+	public void invalidate(String graphName, String version) {
+		long sizeBefore = candidates.size();
+		candidates.asMap().keySet().removeIf(key -> key.graphName.equals(graphName) && (version == null || key.version.equals(version)));
+		log.info((sizeBefore - candidates.size()) + " cached candidate cells of graph " + graphName 
+				+ (version != null ? " in version " + version : "") + " invalidated; " + getStats());
+	}
+	
+	public long getHitCount() {
+		return candidates.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return candidates.stats().missCount();
+	}
+
+	public double getHitRate() {
+		return candidates.stats().hitRate();
+	}
+
+	public long getEvictionCount() {
+		return candidates.stats().evictionCount();
+	}
+
+	public long size() {
+		return candidates.size();
+	}
+	
+	private String getStats() {
+		CacheStats stats = candidates.stats();
+		return "candidate cache hits: " + stats.hitCount() + ", misses: " + stats.missCount() + ", evictions: " + stats.evictionCount();
+	}
+
+	public STRTreeCacheManager getCacheManager() {
+		return cacheManager;
+	}
+
+	public void setCacheManager(STRTreeCacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public long getMaximumSizeInBytes() {
+		return maximumSizeInBytes;
+	}
+
+	public void setMaximumSizeInBytes(long maximumSizeInBytes) {
+		this.maximumSizeInBytes = maximumSizeInBytes;
+	}
+
+	/**
+	 * Candidate segments of a cell as segment IDs and distances to the cell's center, sorted by distance.
+	 */
+	public static final class CachedCandidates {
+		
+		private final long[] segmentIds;
+		private final float[] distances;
+		
+		private CachedCandidates(long[] segmentIds, float[] distances) {
+			this.segmentIds = segmentIds;
+			this.distances = distances;
+		}
+
+		public int size() {
+			return segmentIds.length;
+		}
+		
+		public long getSegmentId(int index) {
+			return segmentIds[index];
+		}
+		
+		public float getDistance(int index) {
+			return distances[index];
+		}
+		
+	}
+	
+	private static final class CellKey {
+		
+		private final String graphName;
+		private final String version;
+		private final int radiusInMeter;
+		private final long cellX;
+		private final long cellY;
+		private final int hashCode;
+		
+		private CellKey(String graphName, String version, int radiusInMeter, long cellX, long cellY) {
+			this.graphName = graphName;
+			this.version = version;
+			this.radiusInMeter = radiusInMeter;
+			this.cellX = cellX;
+			this.cellY = cellY;
+			this.hashCode = Objects.hash(graphName, version, radiusInMeter, cellX, cellY);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CellKey)) {
+				return false;
+			}
+			CellKey other = (CellKey) obj;
+			return cellX == other.cellX && cellY == other.cellY && radiusInMeter == other.radiusInMeter 
+					&& graphName.equals(other.graphName) && version.equals(other.version);
+		}
+		
+	}
+	
+}
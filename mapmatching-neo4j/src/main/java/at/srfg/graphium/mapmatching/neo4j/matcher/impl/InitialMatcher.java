@@ -21,9 +21,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.graphdb.traversal.Traverser;
@@ -31,6 +33,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.vividsolutions.jts.geom.Point;
+
 import at.srfg.graphium.core.exception.GraphNotExistsException;
 import at.srfg.graphium.geomutils.GeometryUtils;
 import at.srfg.graphium.mapmatching.matcher.impl.SegmentDistance;
@@ -55,22 +59,31 @@ public class InitialMatcher {
 	
 	private static Logger log = LoggerFactory.getLogger(InitialMatcher.class);
 	
+	// number of cached candidates loaded at once if the number of segments is not limited
+	private static final int CANDIDATES_BATCH_SIZE = 16;
+	
 	private MapMatchingTask matchingTask;
 	private IMapMatchingProperties properties;
 
 	// TODO use generic map
 	private LRUMap<ITrackPoint, List<SegmentDistance<IWaySegment>>> startSegmentsCache;
+	private CandidateSegmentCache candidateCache;
 	
 	private TraversalDescription traversalDescription;
 
+	/**
+	 * @param candidateCache Shared candidate segment cache; optional, if null the nearest segments will be searched for 
+	 * 		  every track point
+	 */
 	public InitialMatcher(MapMatchingTask matchingTask,
-			IMapMatchingProperties properties, Neo4jUtil neo4jUtil) {
+			IMapMatchingProperties properties, Neo4jUtil neo4jUtil, CandidateSegmentCache candidateCache) {
 		this.matchingTask = matchingTask;
 		this.properties = properties;
 
 		traversalDescription = neo4jUtil.getTraverser();
 		
 		startSegmentsCache = new LRUMap<ITrackPoint, List<SegmentDistance<IWaySegment>>>(200, 50);
+		this.candidateCache = candidateCache;
 	}
 
 	/**
@@ -152,8 +165,8 @@ public class InitialMatcher {
 
 	/**
 	 * Finds potential start segments for the point with the given index. First segments within the
-	 * given radius of the point are searched using a Neo4J nearest neighbor search. Then the
-	 * distances from these segments to the point is calculated.
+	 * given radius of the point are searched using a Neo4J nearest neighbor search or read from the
+	 * candidate segment cache. Then the distances from these segments to the point is calculated.
 	 * 
 	 */
 	@Transactional(readOnly=true)
@@ -169,23 +182,19 @@ public class InitialMatcher {
 			return (List<SegmentDistance<IWaySegment>>) startSegmentsCache.get(startPoint);
 		}
 		
-		Iterable<IWaySegment> startSegments = new ArrayList<IWaySegment>();
-		try {
-			startSegments = matchingTask.getGraphDao().findNearestSegments(
-					matchingTask.getGraphName(), 
-					matchingTask.getGraphVersion(),
-					startPoint.getPoint(), 
-					(double) radiusInMeter/1000,
-					maxNrOfSegments);
-		} catch (GraphNotExistsException e) {
-			log.warn("could not find near segments for graph: " + e.getGraphName());
+		List<SegmentDistance<IWaySegment>> distances;
+		if (candidateCache == null) {
+			distances = findNearestSegments(startPoint, radiusInMeter, maxNrOfSegments);
+		} else {
+			CandidateSegmentCache.CachedCandidates cachedCandidates = candidateCache.get(
+					matchingTask.getGraphName(), matchingTask.getGraphVersion(), radiusInMeter, startPoint.getPoint());
+			if (cachedCandidates != null) {
+				distances = getDistances(cachedCandidates, startPoint, radiusInMeter, maxNrOfSegments);
+			} else {
+				distances = findCandidates(startPoint, radiusInMeter, maxNrOfSegments);
+			}
 		}
 		
-		List<SegmentDistance<IWaySegment>> distances = getDistances(startSegments, startPoint, radiusInMeter);
-
-		// sort segments by distance
-		Collections.sort(distances);
-		
 		// store start segments in cache
 		startSegmentsCache.put(startPoint, distances);
 		
@@ -212,7 +221,7 @@ public class InitialMatcher {
 		}
 		
 		if (startSegment != null) {
-			List<SegmentDistance<IWaySegment>> distances = getDistances(Collections.singletonList(startSegment), startPoint, radiusInMeter);
+			List<SegmentDistance<IWaySegment>> distances = getDistances(Collections.singletonList(startSegment), startPoint.getPoint(), radiusInMeter);
 	
 			if (!distances.isEmpty()) {
 				
@@ -232,19 +241,150 @@ public class InitialMatcher {
 		}
 	}
 
+	/**
+	 * Searches the nearest segments within the given radius of the point using a Neo4J nearest neighbor search, sorted by 
+	 * distance.
+	 */
+	private List<SegmentDistance<IWaySegment>> findNearestSegments(ITrackPoint startPoint, int radiusInMeter, int maxNrOfSegments) {
+		Iterable<IWaySegment> startSegments = new ArrayList<IWaySegment>();
+		try {
+			startSegments = matchingTask.getGraphDao().findNearestSegments(
+					matchingTask.getGraphName(), 
+					matchingTask.getGraphVersion(),
+					startPoint.getPoint(), 
+					(double) radiusInMeter/1000,
+					maxNrOfSegments);
+		} catch (GraphNotExistsException e) {
+			log.warn("could not find near segments for graph: " + e.getGraphName());
+		}
+		
+		List<SegmentDistance<IWaySegment>> distances = getDistances(startSegments, startPoint.getPoint(), radiusInMeter);
+
+		// sort segments by distance
+		Collections.sort(distances);
+		
+		return distances;
+	}
+
+	/**
+	 * Searches all segments around the center of the point's cell which could be within the given radius of any point of 
+	 * the cell and stores them in the candidate segment cache. Only the segments within the radius of the point will be 
+	 * returned, sorted by distance.
+	 */
+	private List<SegmentDistance<IWaySegment>> findCandidates(ITrackPoint startPoint, int radiusInMeter, int maxNrOfSegments) {
+		Point cellCenter = candidateCache.getCellCenter(radiusInMeter, startPoint.getPoint());
+		INeo4jWayGraphReadDao graphDao = matchingTask.getGraphDao();
+		List<Node> nodes = graphDao.findNearestNodesWithOrthodromicDistance(
+				matchingTask.getGraphName(), 
+				matchingTask.getGraphVersion(),
+				cellCenter, 
+				candidateCache.getSearchRadiusInMeter(radiusInMeter)/1000,
+				0);
+		
+		// segments are mapped lazily, only their geometries will be decoded for calculating the distances
+		List<IWaySegment> candidates = new ArrayList<IWaySegment>();
+		if (nodes != null) {
+			for (Node node : nodes) {
+				candidates.add(graphDao.mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), node));
+			}
+		}
+		
+		candidateCache.put(matchingTask.getGraphName(), matchingTask.getGraphVersion(), radiusInMeter, startPoint.getPoint(), 
+				getDistances(candidates, cellCenter, Double.MAX_VALUE));
+		
+		List<SegmentDistance<IWaySegment>> distances = getDistances(candidates, startPoint.getPoint(), radiusInMeter);
+
+		// sort segments by distance
+		Collections.sort(distances);
+		
+		return limit(distances, maxNrOfSegments);
+	}
+
+	/**
+	 * Calculates the distances from the cached candidates to the point.
+	 */
+	private List<SegmentDistance<IWaySegment>> getDistances(CandidateSegmentCache.CachedCandidates cachedCandidates,
+			ITrackPoint startPoint, int radiusInMeter, int maxNrOfSegments) {
+		Point cellCenter = candidateCache.getCellCenter(radiusInMeter, startPoint.getPoint());
+		double offset = GeometryUtils.distanceMeters(cellCenter, startPoint.getPoint()) + CandidateSegmentCache.DISTANCE_TOLERANCE_METER;
+		return getDistances(cachedCandidates, offset, radiusInMeter, maxNrOfSegments,
+				segmentIds -> getDistances(loadSegments(segmentIds), startPoint.getPoint(), radiusInMeter));
+	}
+
+	/**
+	 * Candidates are loaded in the order of their distances to the cell's center; a candidate cannot be nearer to the point 
+	 * than its distance to the center minus the point's distance to the center (offset). Therefore loading stops as soon as 
+	 * no further candidate can be within the radius or be nearer than the requested number of segments.
+	 * 
+	 * @param distanceCalculator loads the segments of the given IDs and returns those within the radius and their 
+	 * 		  distances to the point
+	 */
+	static List<SegmentDistance<IWaySegment>> getDistances(CandidateSegmentCache.CachedCandidates cachedCandidates,
+			double offset, int radiusInMeter, int maxNrOfSegments,
+			Function<List<Long>, List<SegmentDistance<IWaySegment>>> distanceCalculator) {
+		int end = 0;
+		while (end < cachedCandidates.size() && cachedCandidates.getDistance(end) <= radiusInMeter + offset) {
+			end++;
+		}
+		
+		int batchSize = maxNrOfSegments > 0 ? maxNrOfSegments : CANDIDATES_BATCH_SIZE;
+		List<SegmentDistance<IWaySegment>> distances = new ArrayList<SegmentDistance<IWaySegment>>();
+		int i = 0;
+		while (i < end) {
+			if (maxNrOfSegments > 0 && distances.size() >= maxNrOfSegments &&
+					distances.get(maxNrOfSegments - 1).getDistance() <= cachedCandidates.getDistance(i) - offset) {
+				// remaining candidates are further away than the nearest segments found so far
+				break;
+			}
+			
+			List<Long> segmentIds = new ArrayList<Long>(batchSize);
+			for (; i < end && segmentIds.size() < batchSize; i++) {
+				segmentIds.add(cachedCandidates.getSegmentId(i));
+			}
+			distances.addAll(distanceCalculator.apply(segmentIds));
+			
+			// sort segments by distance
+			Collections.sort(distances);
+		}
+		
+		return limit(distances, maxNrOfSegments);
+	}
+	
+	private List<IWaySegment> loadSegments(List<Long> segmentIds) {
+		INeo4jWayGraphReadDao graphDao = matchingTask.getGraphDao();
+		List<IWaySegment> segments = new ArrayList<IWaySegment>(segmentIds.size());
+		try {
+			for (Node node : graphDao.getSegmentNodesBySegmentIds(matchingTask.getGraphName(), matchingTask.getGraphVersion(), segmentIds)) {
+				if (node != null) {
+					segments.add(graphDao.mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), node));
+				}
+			}
+		} catch (NotFoundException e) {
+			log.warn("could not load cached candidate segments: " + e.getMessage());
+		}
+		return segments;
+	}
+	
+	private static List<SegmentDistance<IWaySegment>> limit(List<SegmentDistance<IWaySegment>> distances, int maxNrOfSegments) {
+		if (maxNrOfSegments > 0 && distances.size() > maxNrOfSegments) {
+			return new ArrayList<SegmentDistance<IWaySegment>>(distances.subList(0, maxNrOfSegments));
+		}
+		return distances;
+	}
+
 	/**
 	 * Calculates the distances from the given segments to the first point.
 	 */
 	private List<SegmentDistance<IWaySegment>> getDistances(
 			Iterable<IWaySegment> startSegments,
-			final ITrackPoint startPoint, double radiusInMeter) {
+			final Point startPoint, double radiusInMeter) {
 		List<SegmentDistance<IWaySegment>> distances = new ArrayList<SegmentDistance<IWaySegment>>();
 					
 		if (startSegments != null) {
 			for (IWaySegment seg : startSegments) {
 				matchingTask.checkCancelStatus();
 				
-				double distance = GeometryUtils.distanceMeters(seg.getGeometry(), startPoint.getPoint());
+				double distance = GeometryUtils.distanceMeters(seg.getGeometry(), startPoint);
 				
 				// check if segment is really within searching radius
 			    if (distance <= radiusInMeter) {
@@ -299,7 +439,7 @@ public class InitialMatcher {
 	
 				// try to match every connected segment (calculate matching factor)
 				IMatchedWaySegment matchedSegment = matchingTask.getSegmentMatcher().matchSegment(
-						matchingTask.getGraphDao().mapNode(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode), 
+						matchingTask.getGraphDao().mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode), 
 						track, startSegment.getEndPointIndex(), branch);
 
 				if (matchedSegment != null && clonedSegment.getMatchedPoints() > 0) {
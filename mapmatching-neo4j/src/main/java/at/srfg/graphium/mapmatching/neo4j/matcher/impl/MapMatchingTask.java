@@ -86,6 +86,7 @@ public class MapMatchingTask implements IMapMatcherTask {
 	private IWeightingStrategyFactory weightingStrategyFactory;
 	private IWeightingStrategy weightingStrategy;
 	private static Logger csvLogger = null;
+	private long matchingStartTime;
 
 	public MapMatchingTask(Neo4jMapMatcher mapMatcher, MapMatchingProperties properties, IWayGraphVersionMetadata graphMetadata, Neo4jUtil neo4jUtil, 
 			ITrack origTrack, String csvLoggerName, MapMatcherGlobalStatistics globalStatistics) throws RoutingParameterException {
@@ -105,10 +106,11 @@ public class MapMatchingTask implements IMapMatcherTask {
 		this.neo4jUtil = neo4jUtil;
 		
 		this.trackSanitizer = new TrackSanitizer();
-		this.initialMatcher = new InitialMatcher(this, this.properties, neo4jUtil);
+		this.initialMatcher = new InitialMatcher(this, this.properties, neo4jUtil, mapMatcher.getCandidateCache());
 		this.segmentMatcher = new SegmentMatcher(this.properties);
 		this.pathExpanderMatcher = new PathExpanderMatcher(this, this.properties, neo4jUtil);
-		this.routingMatcher = new RoutingMatcher(this, mapMatcher.getRoutingService(), this.properties, this.trackSanitizer, cancellationObject);
+		this.routingMatcher = new RoutingMatcher(this, mapMatcher.getRoutingService(), this.properties, this.trackSanitizer, cancellationObject,
+				mapMatcher.getRouteCache());
 		this.alternativePathMatcher = new AlternativePathMatcher(this);
 		this.matchesFilter = new MatchesFilter(this, alternativePathMatcher, this.properties);
 		this.weightingStrategyFactory = weightingStrategyFactory;
@@ -149,6 +151,9 @@ public class MapMatchingTask implements IMapMatcherTask {
 		if (track.getTrackPoints().size() < properties.getMinNrOfPoints()
 				|| track.getMetadata().getLength() < properties.getMinLength()) {
 			log.error("matching failed, track " + track.getId() + " is too short");
+			if (isGlobalStatisticsEnabled()) {
+				globalStatistics.incrementNonSuccess(track.getTrackPoints().size());
+			}
 			return Collections.emptyList();
 		}
 
@@ -161,7 +166,11 @@ public class MapMatchingTask implements IMapMatcherTask {
 		statistics.setValue(MapMatcherStatistics.AVG_SAMPLING_RATE, TrackUtils.getMeanSamplingRate(track));
 		
 		List<IMatchedBranch> result = null;
+		matchingStartTime = System.nanoTime();
 		result = doMatchTrack(graphMetadata.getGraphName(), this.track, startSegmentId, branches);
+		if (isGlobalStatisticsEnabled()) {
+			statistics.addDuration(MapMatcherStatistics.MATCHING_DURATION, System.nanoTime() - matchingStartTime);
+		}
 		
 		Date endTimestamp = new Date();
 		statistics.setValue(MapMatcherStatistics.END_TIMESTAMP, endTimestamp);
@@ -174,7 +183,14 @@ public class MapMatchingTask implements IMapMatcherTask {
 			statistics.setValue(MapMatcherStatistics.MATCHED_FACTORS, matchedFactors);
 		}
 		
-//		globalStatistics.incrementSuccess(this.track.getMetadata().getNumberOfPoints(), track.getLineString().getLength());
+		if (isGlobalStatisticsEnabled()) {
+			if (result != null && !result.isEmpty()) {
+				globalStatistics.incrementSuccess(track.getTrackPoints().size(), track.getMetadata().getLength());
+			} else {
+				globalStatistics.incrementNonSuccess(track.getTrackPoints().size());
+			}
+			globalStatistics.record(statistics);
+		}
 		
 		// log statistics	
 		log.info("Thread " + Thread.currentThread().getName() + " \n" + statistics.toString());
@@ -194,11 +210,6 @@ public class MapMatchingTask implements IMapMatcherTask {
 				return Collections.emptyList();
 			}
 			
-			////
-			long totalTimeFindingPaths = 0;
-			long totalTimeFilteringPaths = 0;
-			////
-
 			int pointIndex = 0;
 			List<IMatchedBranch> detectedPaths = new ArrayList<IMatchedBranch>();
 			List<IMatchedWaySegment> certainPath = new ArrayList<>();
@@ -210,7 +221,11 @@ public class MapMatchingTask implements IMapMatcherTask {
 				
 				if (startSegmentId != null && pointIndex == 0) {
 					// find path(s) starting with segment matched in previous iteration
+					long startTime = System.nanoTime();
 					paths = initialMatcher.getStartPathForStartSegment(0, track, startSegmentId);
+					if (isGlobalStatisticsEnabled()) {
+						statistics.addDuration(MapMatcherStatistics.INITIAL_MATCHING_DURATION, System.nanoTime() - startTime);
+					}
 					if (paths == null || paths.isEmpty()) {
 						log.warn("No paths for given start segment " + startSegmentId + " found for track " + origTrack.getId());
 						startSegmentId = null;
@@ -228,13 +243,17 @@ public class MapMatchingTask implements IMapMatcherTask {
 					properties.setMinSegmentsPerSection(1);
 
 				} else {
+					long startTime = System.nanoTime();
 					paths = initialMatcher.getStartPaths(pointIndex, track, properties.getNrOfPointsForInitialMatch());
+					if (isGlobalStatisticsEnabled()) {
+						statistics.addDuration(MapMatcherStatistics.INITIAL_MATCHING_DURATION, System.nanoTime() - startTime);
+					}
 					
 					if (log.isDebugEnabled()) {
 						if (paths != null) {
 							int i = 1;
 							for (IMatchedBranch path : paths) {
-								for (IMatchedWaySegment seg : path.getMatchedWaySegments()) {
+								for (IMatchedWaySegment seg : path.getMatchedWaySegmentsReadOnly()) {
 									log.debug("Path " + i++ + " Segment: " + seg.getId() + " (StartPointIndex=" + seg.getStartPointIndex() + ", " +
 											" (EndPointIndex=" + seg.getEndPointIndex() + ")");
 								}
@@ -253,17 +272,17 @@ public class MapMatchingTask implements IMapMatcherTask {
 				while (paths != null && !paths.isEmpty()) {
 					checkCancelStatus();
 					
-					////
-//					long timeFindingPaths = System.nanoTime();
-					////
-					
+					int pathsCount = paths.size();
+					long startTime = System.nanoTime();
 					paths = pathExpanderMatcher.findPaths(
 							paths, 
 							track);
-					
-					////
-//					totalTimeFindingPaths += System.nanoTime() - timeFindingPaths;
-					////
+					if (isGlobalStatisticsEnabled()) {
+						statistics.addDuration(MapMatcherStatistics.PATH_EXPANSION_DURATION, System.nanoTime() - startTime);
+						if (paths != null && paths.size() > pathsCount) {
+							statistics.incrementValue(MapMatcherStatistics.BRANCHES_CREATED, paths.size() - pathsCount);
+						}
+					}
 	
 					checkCancelStatus();
 
@@ -272,24 +291,22 @@ public class MapMatchingTask implements IMapMatcherTask {
 						debugPrintPaths(paths, possiblePathsForStartSegments);
 					}
 					
-					////
-//					long timeFilteringPaths = 0;
-//					if (log.isDebugEnabled()) {
-//						timeFilteringPaths = System.nanoTime();
-//					}
-					
+					// finished paths will be moved to possiblePathsForStartSegments and are not pruned
+					int unfilteredPathsCount = (paths != null ? paths.size() : 0) + possiblePathsForStartSegments.size();
+					startTime = System.nanoTime();
 					paths = matchesFilter.filterMatches(
 							paths, 
 							track, 
 							possiblePathsForStartSegments,
 							certainPath.size() > 0,
 							properties);
-					
-					////
-//					if (log.isDebugEnabled()) {
-//						totalTimeFilteringPaths += System.nanoTime() - timeFilteringPaths;
-//					}
-					////
+					if (isGlobalStatisticsEnabled()) {
+						statistics.addDuration(MapMatcherStatistics.FILTERING_DURATION, System.nanoTime() - startTime);
+						int filteredPathsCount = (paths != null ? paths.size() : 0) + possiblePathsForStartSegments.size();
+						if (unfilteredPathsCount > filteredPathsCount) {
+							statistics.incrementValue(MapMatcherStatistics.BRANCHES_PRUNED, unfilteredPathsCount - filteredPathsCount);
+						}
+					}
 
 					if (log.isDebugEnabled()) {
 						log.debug("Paths after filtering");
@@ -330,13 +347,10 @@ public class MapMatchingTask implements IMapMatcherTask {
 		
 			tx.success();
 			
-			////
 			if (log.isDebugEnabled()) {
-				log.debug("Finding paths took " + (totalTimeFindingPaths/1000000) + "ms");
-				log.debug("Filtering paths took " + (totalTimeFilteringPaths/1000000) + "ms");
-//				matchesFilter.logTimes();
+				log.debug("Finding paths took " + (statistics.getDuration(MapMatcherStatistics.PATH_EXPANSION_DURATION)/1000000) + "ms");
+				log.debug("Filtering paths took " + (statistics.getDuration(MapMatcherStatistics.FILTERING_DURATION)/1000000) + "ms");
 			}
-			////
 			
 			return getResult(detectedPaths, startSegmentId);
 		
@@ -484,8 +498,8 @@ public class MapMatchingTask implements IMapMatcherTask {
 			log.debug("active paths with indexes: >>>>>>>>>>>>>>>>>>>>");
 			int i=1;
 			for (IMatchedBranch path : paths) {
-				List<String> segmentIds = new ArrayList<>(path.getMatchedWaySegments().size());
-				for (IMatchedWaySegment segment : path.getMatchedWaySegments()) {
+				List<String> segmentIds = new ArrayList<>(path.getMatchedWaySegmentsReadOnly().size());
+				for (IMatchedWaySegment segment : path.getMatchedWaySegmentsReadOnly()) {
 					segmentIds.add(segment.getId() + " (" + segment.getStartPointIndex() + "-" + segment.getEndPointIndex() + ")");
 				}
 				log.debug("Segments = " + StringUtils.join(segmentIds, ", "));
@@ -498,8 +512,8 @@ public class MapMatchingTask implements IMapMatcherTask {
 	private void printPaths(List<IMatchedBranch> paths) {
 		int i=1;
 		for (IMatchedBranch path : paths) {
-			List<Long> segmentIds = new ArrayList<>(path.getMatchedWaySegments().size());
-			for (IMatchedWaySegment segment : path.getMatchedWaySegments()) {
+			List<Long> segmentIds = new ArrayList<>(path.getMatchedWaySegmentsReadOnly().size());
+			for (IMatchedWaySegment segment : path.getMatchedWaySegmentsReadOnly()) {
 				segmentIds.add(segment.getId());
 			}
 			log.debug("Path " + i + ": MatchedFactor = " + path.getMatchedFactor() +
@@ -510,14 +524,14 @@ public class MapMatchingTask implements IMapMatcherTask {
 			log.debug("Path " + i + ": - Segments = " + StringUtils.join(segmentIds, ", "));
 			
 			///////////////////////////////////////////////////
-			for (IMatchedWaySegment seg : path.getMatchedWaySegments()) {
+			for (IMatchedWaySegment seg : path.getMatchedWaySegmentsReadOnly()) {
 				if (seg.getStartPointIndex() > seg.getEndPointIndex()) {
 					log.debug("////////// Index error at segment " + seg.getId() + ": " + seg.getStartPointIndex() + " > " + seg.getEndPointIndex());
 				}
 			}	
 
-			List<String> segmentInfoList = new ArrayList<>(path.getMatchedWaySegments().size());
-			for (IMatchedWaySegment segment : path.getMatchedWaySegments()) {
+			List<String> segmentInfoList = new ArrayList<>(path.getMatchedWaySegmentsReadOnly().size());
+			for (IMatchedWaySegment segment : path.getMatchedWaySegmentsReadOnly()) {
 				segmentInfoList.add(segment.getId() + "(" + segment.getStartPointIndex() + "-" + segment.getEndPointIndex() + ")");
 			}
 			log.debug("Path " + i + ": - " + StringUtils.join(segmentInfoList, ", "));
@@ -529,10 +543,19 @@ public class MapMatchingTask implements IMapMatcherTask {
 	}
 
 	private void handleCancellationException() {
-//		globalStatistics.incrementNonSuccess(this.track.getMetadata().getNumberOfPoints());
+		if (isGlobalStatisticsEnabled()) {
+			statistics.addDuration(MapMatcherStatistics.MATCHING_DURATION, System.nanoTime() - matchingStartTime);
+			globalStatistics.incrementNonSuccess(track.getTrackPoints().size());
+			globalStatistics.incrementCancellations();
+			globalStatistics.record(statistics);
+		}
 		logCsv();
 	}
 
+	boolean isGlobalStatisticsEnabled() {
+		return globalStatistics != null && globalStatistics.isEnabled();
+	}
+
 	/**
 	 * @param paths
 	 * @return
@@ -584,7 +607,7 @@ public class MapMatchingTask implements IMapMatcherTask {
 
 	private int getPreviousEndPointIndex(List<IMatchedBranch> branches) {
 		IMatchedBranch bestBranch = branches.get(0);
-		int previousStartPoint = bestBranch.getMatchedWaySegments().get(bestBranch.getMatchedWaySegments().size() - 1)
+		int previousStartPoint = bestBranch.getMatchedWaySegmentsReadOnly().get(bestBranch.getMatchedWaySegmentsReadOnly().size() - 1)
 									.getEndPointIndex();
 		
 		return previousStartPoint;
@@ -623,16 +646,16 @@ public class MapMatchingTask implements IMapMatcherTask {
 				IMatchedBranch bestBranch = nonEmptyPaths.get(0);
 				
 				if (optionalStartSegmentId != null &&
-					nonEmptyPaths.get(0).getMatchedWaySegments().get(0).getSegment().getId() != optionalStartSegmentId) {
+					nonEmptyPaths.get(0).getMatchedWaySegmentsReadOnly().get(0).getSegment().getId() != optionalStartSegmentId) {
 
 					
-					log.warn("path's start segment ID " + nonEmptyPaths.get(0).getMatchedWaySegments().get(0).getSegment().getId() + 
+					log.warn("path's start segment ID " + nonEmptyPaths.get(0).getMatchedWaySegmentsReadOnly().get(0).getSegment().getId() + 
 							 " is not equal to requested start segment ID" + optionalStartSegmentId);
 					
 					
 //					bestBranch = null;
 					for (IMatchedBranch branch : nonEmptyPaths) {
-						if (branch.getMatchedWaySegments().get(0).getSegment().getId() == optionalStartSegmentId) {
+						if (branch.getMatchedWaySegmentsReadOnly().get(0).getSegment().getId() == optionalStartSegmentId) {
 							bestBranch = branch;
 						}
 					}
@@ -714,10 +737,10 @@ public class MapMatchingTask implements IMapMatcherTask {
 	 * matching points.
 	 */
 	protected void removeShortSections(IMatchedBranch branch) {
-		if (branch.getMatchedWaySegments().size() <= 0) return;
+		if (branch.getMatchedWaySegmentsReadOnly().size() <= 0) return;
 		
 		List<Integer> segmentsToRemove = new ArrayList<Integer>();
-		List<IMatchedWaySegment> segments = branch.getMatchedWaySegments();
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
 		
 		int matchingSegmentsOfCurrentSection = 1;
 		List<Integer> segmentsOfCurrentSection = new LinkedList<Integer>();
@@ -757,8 +780,9 @@ public class MapMatchingTask implements IMapMatcherTask {
 		int i = 0;
 		List<Integer> segmentsToRemove = new ArrayList<Integer>();
 		IMatchedWaySegment seg;
-		while (i < branch.getMatchedWaySegments().size() && doFiltering) {
-			seg = branch.getMatchedWaySegments().get(i);
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+		while (i < segments.size() && doFiltering) {
+			seg = segments.get(i);
 			if (seg.getStartPointIndex() == seg.getEndPointIndex()) {
 				segmentsToRemove.add(i);
 			} else {
@@ -772,11 +796,12 @@ public class MapMatchingTask implements IMapMatcherTask {
 
 	protected void removeEmptySegmentsAtEnd(IMatchedBranch branch) {
 		boolean doFiltering = true;
-		int i = branch.getMatchedWaySegments().size() - 1;
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+		int i = segments.size() - 1;
 		List<Integer> segmentsToRemove = new ArrayList<Integer>();
 		IMatchedWaySegment seg;
 		while (i >= 0 && doFiltering) {
-			seg = branch.getMatchedWaySegments().get(i);
+			seg = segments.get(i);
 			if (seg.getStartPointIndex() == seg.getEndPointIndex()) {
 				segmentsToRemove.add(i);
 			} else {
@@ -133,20 +133,23 @@ public class MatchesFilter {
 		
 		newBranches.add(pathToExpand);
 		
-		if (pathToExpand.getMatchedWaySegments().size() < 2) {
+		List<IMatchedWaySegment> segmentsToExpand = pathToExpand.getMatchedWaySegmentsReadOnly();
+		if (segmentsToExpand.size() < 2) {
 			return;
 		}
 		
 		// try to expand only paths without skipped parts
-		for (IMatchedWaySegment segment : pathToExpand.getMatchedWaySegments()) {
+		for (IMatchedWaySegment segment : segmentsToExpand) {
 			if (segment.isAfterSkippedPart()) {
 				return;
 			}
 		}
 		
-		IMatchedWaySegment lastSegment = pathToExpand.getMatchedWaySegments().get(pathToExpand.getMatchedWaySegments().size()-1);
-		IMatchedWaySegment nextToLastSegment = pathToExpand.getMatchedWaySegments().get(pathToExpand.getMatchedWaySegments().size()-2);
-		Iterator<IMatchedWaySegment> itBestPath = bestPath.getMatchedWaySegments().iterator();
+		// last segment could be rematched
+		IMatchedWaySegment lastSegment = pathToExpand.getMatchedWaySegments().get(segmentsToExpand.size()-1);
+		IMatchedWaySegment nextToLastSegment = segmentsToExpand.get(segmentsToExpand.size()-2);
+		// segments of the best path will be cloned before merging them
+		Iterator<IMatchedWaySegment> itBestPath = bestPath.getMatchedWaySegmentsReadOnly().iterator();
 
 		boolean search = true;
 		IMatchedWaySegment matchingSegmentOfBestPath1 = null;
@@ -616,9 +619,10 @@ public class MatchesFilter {
 	 * @return
 	 */
 	private int findIndexOfSegment(IMatchedBranch path, IMatchedWaySegment matchedWaySegment) {
-		for (int i=path.getMatchedWaySegments().size()-1; i>=0; i--) {
-			if (path.getMatchedWaySegments().get(i).getId() == matchedWaySegment.getId() &&
-					path.getMatchedWaySegments().get(i).getDirection().equals(matchedWaySegment.getDirection())) {
+		List<IMatchedWaySegment> segments = path.getMatchedWaySegmentsReadOnly();
+		for (int i=segments.size()-1; i>=0; i--) {
+			if (segments.get(i).getId() == matchedWaySegment.getId() &&
+					segments.get(i).getDirection().equals(matchedWaySegment.getDirection())) {
 				return i;
 			}
 		}
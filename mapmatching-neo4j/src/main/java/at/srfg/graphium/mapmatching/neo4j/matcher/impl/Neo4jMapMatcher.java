@@ -48,6 +48,11 @@ public class Neo4jMapMatcher implements IMapMatcher {
 	private IGraphVersionMetadataService metadataService;
 	
 	private IRoutingService<IWaySegment, Node, IRoutingOptions> routingService;
+	
+	// routes shared by all tasks; optional
+	private RouteCache routeCache;
+	// candidate segments of the initial matching shared by all tasks; optional
+	private CandidateSegmentCache candidateCache;
 
 	private MapMatcherGlobalStatistics globalStatistics;
 	
@@ -90,6 +95,28 @@ public class Neo4jMapMatcher implements IMapMatcher {
 		return createTask(graphMetadata, origTrack, routingMode);
 	}
 	
+	@Override
+	public IMapMatcherTask getTask(IWayGraphVersionMetadata graphMetadata, ITrack origTrack, String routingMode) throws RoutingParameterException {
+		return createTask(graphMetadata, origTrack, routingMode);
+	}
+	
+	@Override
+	public IWayGraphVersionMetadata getGraphVersionMetadata(String graphName, String graphVersion) throws GraphNotExistsException {
+		if (graphName == null) {
+			graphName = defaultGraphName;
+		}
+		IWayGraphVersionMetadata graphMetadata;
+		if (graphVersion == null) {
+			graphMetadata = metadataService.getCurrentWayGraphVersionMetadata(graphName);
+		} else {
+			graphMetadata = metadataService.getWayGraphVersionMetadata(graphName, graphVersion);
+		}
+		if (graphMetadata == null) {
+			throw new GraphNotExistsException("Graph " + graphName + " not found", graphName);
+		}
+		return graphMetadata;
+	}
+	
 	protected IMapMatcherTask createTask(IWayGraphVersionMetadata graphMetadata, ITrack origTrack, String routingMode) throws RoutingParameterException {
 		MapMatchingProperties taskProperties = properties.clone();
 		if (routingMode != null) {
@@ -143,6 +170,22 @@ public class Neo4jMapMatcher implements IMapMatcher {
 		this.routingService = routingService;
 	}
 
+	public RouteCache getRouteCache() {
+		return routeCache;
+	}
+
+	public void setRouteCache(RouteCache routeCache) {
+		this.routeCache = routeCache;
+	}
+
+	public CandidateSegmentCache getCandidateCache() {
+		return candidateCache;
+	}
+
+	public void setCandidateCache(CandidateSegmentCache candidateCache) {
+		this.candidateCache = candidateCache;
+	}
+
 	@Override
 	public int getMaxMatchingRadiusMeter() {
 		return properties.getMaxMatchingRadiusMeter();
@@ -126,9 +126,11 @@ public class PathExpanderMatcher {
 	}
 
 	private void sanitizeMatchedSegments(IMatchedBranch clonedBranch, ITrack track) {
-		for (IMatchedWaySegment segment : clonedBranch.getMatchedWaySegments()) {
-			if (!segment.isValid()) {
-				segment.calculateDistances(track);
+		List<IMatchedWaySegment> segments = clonedBranch.getMatchedWaySegmentsReadOnly();
+		for (int i = 0; i < segments.size(); i++) {
+			if (!segments.get(i).isValid()) {
+				// only segments to be modified are cloned
+				clonedBranch.getMatchedWaySegments().get(i).calculateDistances(track);
 			}
 		}
 	}
@@ -212,7 +214,7 @@ public class PathExpanderMatcher {
 					continue;
 				}
 
-				IWaySegment connectedSegment = matchingTask.getGraphDao().mapNode(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
+				IWaySegment connectedSegment = matchingTask.getGraphDao().mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
 				IMatchedWaySegment matchedSegment = null;
 
 				int endPointIndexDiff = 0;
@@ -277,7 +279,7 @@ public class PathExpanderMatcher {
 								while (connectedPaths.hasNext()) {
 									connectedPath = connectedPaths.next();
 									connectedSegmentNode = connectedPath.endNode();
-									connectedSegment = matchingTask.getGraphDao().mapNode(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
+									connectedSegment = matchingTask.getGraphDao().mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
 									matchedSegment = matchingTask.getSegmentMatcher().matchSegment(
 											connectedSegment, track, previousSegment.getEndPointIndex(), clonedBranch);
 								}
@@ -416,7 +418,7 @@ public class PathExpanderMatcher {
 				Path connectedPath = connectedPaths.next();
 				Node connectedSegmentNode = connectedPath.endNode();
 
-				IWaySegment connectedSegment = matchingTask.getGraphDao().mapNode(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
+				IWaySegment connectedSegment = matchingTask.getGraphDao().mapNodeLazily(matchingTask.getGraphName(), matchingTask.getGraphVersion(), connectedSegmentNode);
 				
 				if (!isVisited(clonedBranch, connectedSegment) && 
 					isCloser(track.getTrackPoints().get(segment.getEndPointIndex()), segment, connectedSegment)) {
@@ -482,7 +484,7 @@ public class PathExpanderMatcher {
 
 	private boolean isVisited(IMatchedBranch clonedBranch, IWaySegment connectedSegment) {
 		boolean visited = false;
-		Iterator<IMatchedWaySegment> it = clonedBranch.getMatchedWaySegments().iterator();
+		Iterator<IMatchedWaySegment> it = clonedBranch.getMatchedWaySegmentsReadOnly().iterator();
 		while (it.hasNext() && !visited) {
 			if (it.next().getId() == connectedSegment.getId()) {
 				visited = true;
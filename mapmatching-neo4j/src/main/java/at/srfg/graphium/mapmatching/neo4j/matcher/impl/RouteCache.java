@@ -0,0 +1,240 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching using Neo4j
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.matcher.impl;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import at.srfg.graphium.mapmatching.model.Direction;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.service.IGraphVersionCacheListener;
+import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
+
+/**
+ * Process-wide cache of routes between two segments used by all map matching tasks. Routes are cached per graph version 
+ * and routing scope (routing mode and criteria) as compact arrays of segment IDs and directions; segments have to be 
+ * loaded from the graph when a route is read from cache. The cache is bounded by the estimated size of its entries in 
+ * bytes. Entries of a graph will be invalidated if the STRTreeCacheManager activates a new version of the graph or removes 
+ * a version. Entries expire after a configurable time, so routes avoiding temporary restrictions are not used longer
+ * than the restriction; routes depending on current durations must not be cached at all.
+ */
+public class RouteCache implements IGraphVersionCacheListener {
+
+	private static Logger log = LoggerFactory.getLogger(RouteCache.class);
+
+	// estimated size of a cache entry without segments (key, value, arrays' headers and Guava's entry)
+	private static final int ENTRY_OVERHEAD_BYTES = 160;
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private STRTreeCacheManager cacheManager;
+	private long maximumSizeInBytes = 64L * 1024 * 1024;
+	// entries expire after this time; 0 if they should not expire
+	private long expirationTimeInSeconds = 300;
+	
+	private Cache<RouteKey, CachedRoute> routes;
+	
+	@PostConstruct
+	public void setup() {
+		CacheBuilder<RouteKey, CachedRoute> builder = CacheBuilder.newBuilder()
+				.maximumWeight(maximumSizeInBytes)
+				.weigher((RouteKey key, CachedRoute route) -> ENTRY_OVERHEAD_BYTES + route.segmentIds.length * 9)
+				.recordStats();
+		if (expirationTimeInSeconds > 0) {
+			builder.expireAfterWrite(expirationTimeInSeconds, TimeUnit.SECONDS);
+		}
+		routes = builder.build();
+		if (cacheManager != null) {
+			cacheManager.addCacheListener(this);
+		}
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		if (cacheManager != null) {
+			cacheManager.removeCacheListener(this);
+		}
+		routes.invalidateAll();
+	}
+	
+	/**
+	 * @param routingScope defines the routing parameters the route depends on (e.g. routing mode and criteria)
+	 * @return cached route or null
+	 */
+	public CachedRoute get(String graphName, String version, String routingScope, long fromSegmentId, long toSegmentId) {
+		return routes.getIfPresent(new RouteKey(graphName, version, routingScope, fromSegmentId, toSegmentId));
+	}
+
+	public void put(String graphName, String version, String routingScope, long fromSegmentId, long toSegmentId, 
+			List<IMatchedWaySegment> segments) {
+		long[] segmentIds = new long[segments.size()];
+		byte[] directions = new byte[segments.size()];
+		for (int i = 0; i < segments.size(); i++) {
+			segmentIds[i] = segments.get(i).getId();
+			directions[i] = (byte) segments.get(i).getDirection().ordinal();
+		}
+		routes.put(new RouteKey(graphName, version, routingScope, fromSegmentId, toSegmentId), new CachedRoute(segmentIds, directions));
+	}
+	
+	@Override
+	public void graphVersionActivated(IWayGraphVersionMetadata metadata) {
+		// a version could have been re-imported; routes of older versions will not be requested anymore
+		invalidate(metadata.getGraphName(), null);
+	}
+
+	@Override
+	public void graphVersionRemoved(String graphName, String version) {
+		invalidate(graphName, version);
+	}
+	
+	/**
+	 * Invalidates all routes of the graph version or - if version is null - of all versions of the graph.
+	 */
+	public void invalidate(String graphName, String version) {
+		long sizeBefore = routes.size();
+		routes.asMap().keySet().removeIf(key -> key.graphName.equals(graphName) && (version == null || version.equals(key.version)));
+		log.info((sizeBefore - routes.size()) + " cached routes of graph " + graphName + (version != null ? " in version " + version : "") 
+				+ " invalidated; " + getStats());
+	}
+	
+	public long getHitCount() {
+		return routes.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return routes.stats().missCount();
+	}
+
+	public double getHitRate() {
+		return routes.stats().hitRate();
+	}
+
+	public long getEvictionCount() {
+		return routes.stats().evictionCount();
+	}
+
+	public long size() {
+		return routes.size();
+	}
+	
+	private String getStats() {
+		CacheStats stats = routes.stats();
+		return "route cache hits: " + stats.hitCount() + ", misses: " + stats.missCount() + ", evictions: " + stats.evictionCount();
+	}
+
+	public STRTreeCacheManager getCacheManager() {
+		return cacheManager;
+	}
+
+	public void setCacheManager(STRTreeCacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public long getMaximumSizeInBytes() {
+		return maximumSizeInBytes;
+	}
+
+	public void setMaximumSizeInBytes(long maximumSizeInBytes) {
+		this.maximumSizeInBytes = maximumSizeInBytes;
+	}
+
+	public long getExpirationTimeInSeconds() {
+		return expirationTimeInSeconds;
+	}
+
+	public void setExpirationTimeInSeconds(long expirationTimeInSeconds) {
+		this.expirationTimeInSeconds = expirationTimeInSeconds;
+	}
+
+	/**
+	 * Route as segment IDs and directions (ordinals of {@link Direction}) of the matched segments.
+	 */
+	public static final class CachedRoute {
+		
+		private final long[] segmentIds;
+		private final byte[] directions;
+		
+		private CachedRoute(long[] segmentIds, byte[] directions) {
+			this.segmentIds = segmentIds;
+			this.directions = directions;
+		}
+
+		public int size() {
+			return segmentIds.length;
+		}
+		
+		public long getSegmentId(int index) {
+			return segmentIds[index];
+		}
+		
+		public Direction getDirection(int index) {
+			return DIRECTIONS[directions[index]];
+		}
+		
+	}
+	
+	private static final class RouteKey {
+		
+		private final String graphName;
+		private final String version;
+		private final String routingScope;
+		private final long fromSegmentId;
+		private final long toSegmentId;
+		private final int hashCode;
+		
+		private RouteKey(String graphName, String version, String routingScope, long fromSegmentId, long toSegmentId) {
+			this.graphName = graphName;
+			this.version = version;
+			this.routingScope = routingScope;
+			this.fromSegmentId = fromSegmentId;
+			this.toSegmentId = toSegmentId;
+			this.hashCode = Objects.hash(graphName, version, routingScope, fromSegmentId, toSegmentId);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey other = (RouteKey) obj;
+			return fromSegmentId == other.fromSegmentId && toSegmentId == other.toSegmentId && Objects.equals(graphName, other.graphName)
+					&& Objects.equals(version, other.version) && Objects.equals(routingScope, other.routingScope);
+		}
+		
+	}
+	
+}
@@ -24,8 +24,6 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.neo4j.graphalgo.GraphAlgoFactory;
 import org.neo4j.graphalgo.PathFinder;
 import org.neo4j.graphdb.Node;
@@ -35,8 +33,6 @@ import org.neo4j.graphdb.PathExpanders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.vividsolutions.jts.geom.Point;
 
 import at.srfg.graphium.geomutils.GeometryUtils;
@@ -76,14 +72,23 @@ public class RoutingMatcher {
 	private IRoutingOptions routingOptions;
 	private TrackSanitizer trackSanitizer;
 	
-	private Cache<Pair<Long, Long>, List<IMatchedWaySegment>> cachedRoutes = null;
-	private int cacheSize = 100;
+	// size of the route cache if no shared cache has been configured
+	private static final long LOCAL_CACHE_SIZE_IN_BYTES = 64 * 1024;
+	
+	// null if routes must not be cached
+	private RouteCache routeCache;
+	// routing parameters cached routes depend on
+	private String routingScope;
 	
 	private int maxNrOfTargetSegments = 5;
 	private int skippedPointsThresholdToCreateNewPath = 3;
 	
+	/**
+	 * @param routeCache Shared route cache; optional, if null routes will be cached per task. Routes depending on
+	 * 					 current durations will not be cached.
+	 */
 	public RoutingMatcher(MapMatchingTask mapMatchingTask, IRoutingService<IWaySegment, Node, IRoutingOptions> routingClient, 
-			IMapMatchingProperties properties, TrackSanitizer trackSanitizer, MutableBoolean cancellationObject) 
+			IMapMatchingProperties properties, TrackSanitizer trackSanitizer, MutableBoolean cancellationObject, RouteCache routeCache) 
 					throws RoutingParameterException {
 		this.matchingTask = mapMatchingTask;
 		this.routingClient = routingClient;
@@ -114,9 +119,17 @@ public class RoutingMatcher {
 		routingOptions.setMode(routingMode);
 		routingOptions.setCancellationObject(cancellationObject);
 		
-		cachedRoutes = CacheBuilder.newBuilder()
-								   .maximumSize(cacheSize)
-								   .build();
+		routingScope = routingMode + "_" + routingCriteria + "_" + routingAlgorithm;
+		if (RoutingCriteria.CURRENT_DURATION.equals(routingCriteria)) {
+			// current durations change over time
+			this.routeCache = null;
+		} else if (routeCache != null) {
+			this.routeCache = routeCache;
+		} else {
+			this.routeCache = new RouteCache();
+			this.routeCache.setMaximumSizeInBytes(LOCAL_CACHE_SIZE_IN_BYTES);
+			this.routeCache.setup();
+		}
 		
 		if (log.isDebugEnabled()) {
 			log.debug("created " + this.getClass().getSimpleName() + " with following routing options: " + routingOptions.toString());
@@ -142,6 +155,22 @@ public class RoutingMatcher {
 			List<AlternativePath> pathsToReturn, List<IMatchedBranch> newBranches, 
 			List<AlternativePath> skippedPaths,
 			List<AlternativePath> fallbackRoutes, ITrack track) {
+		long startTime = System.nanoTime();
+		try {
+			return findRoutesToNextPoint(branch, lastSegment, pointIndex, pathsToReturn, newBranches, skippedPaths,
+					fallbackRoutes, track);
+		} finally {
+			if (matchingTask.isGlobalStatisticsEnabled()) {
+				matchingTask.statistics.addDuration(MapMatcherStatistics.ROUTING_DURATION, System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	private int findRoutesToNextPoint(
+			IMatchedBranch branch, IMatchedWaySegment lastSegment, int pointIndex,
+			List<AlternativePath> pathsToReturn, List<IMatchedBranch> newBranches, 
+			List<AlternativePath> skippedPaths,
+			List<AlternativePath> fallbackRoutes, ITrack track) {
 		List<AlternativePath> potentialShortestPaths = new ArrayList<AlternativePath>();
 		
 		/*  the search radius is the same as the matching radius, otherwise the
@@ -601,15 +630,25 @@ public class RoutingMatcher {
 		
 		List<IMatchedWaySegment> segments = null;
 		
-		Pair<Long, Long> cacheKey = new ImmutablePair<Long, Long>(fromSegment.getId(), toSegment.getId());
-		if (cachedRoutes != null) {
-			segments = cachedRoutes.getIfPresent(cacheKey);
+		boolean recordStatistics = matchingTask.isGlobalStatisticsEnabled();
+		if (recordStatistics) {
+			matchingTask.statistics.incrementValue(MapMatcherStatistics.ROUTES_REQUESTED);
+		}
+		RouteCache.CachedRoute cachedRoute = null;
+		if (routeCache != null) {
+			cachedRoute = routeCache.get(graphName, version, routingScope, fromSegment.getId(), toSegment.getId());
+		}
+		if (cachedRoute != null) {
+			segments = loadSegments(cachedRoute, graphDao, graphName, version);
 			
 			if (segments != null) {
+				if (recordStatistics) {
+					matchingTask.statistics.incrementValue(MapMatcherStatistics.ROUTE_CACHE_HITS);
+				}
 				if (log.isDebugEnabled()) {
 					log.debug("found route from segment " + fromSegment.getId() + " to segment " + toSegment.getId() + " in cache");
 				}
-				return cloneSegments(segments);
+				return segments;
 			}
 		}
 		
@@ -709,23 +748,32 @@ public class RoutingMatcher {
 			log.debug("routing took " + (endTime - startTime) + "ns");
 		}
 		
-		if (cacheKey != null && segments != null) {
-			cachedRoutes.put(cacheKey, segments);
+		if (segments != null && routeCache != null) {
+			routeCache.put(graphName, version, routingScope, fromSegment.getId(), toSegment.getId(), segments);
 		}
 		
 		return segments;
 	}
 
-	private List<IMatchedWaySegment> cloneSegments(List<IMatchedWaySegment> segments) {
-		List<IMatchedWaySegment> clonedSegments = new ArrayList<>(segments.size());
-		for (IMatchedWaySegment segment : segments) {
-			try {
-				clonedSegments.add((IMatchedWaySegment) segment.clone());
-			} catch (CloneNotSupportedException e) {
-				log.error("Could not clone segment " + segment.getId());
+	/**
+	 * Creates matched segments of a cached route; returns null if a segment does not exist in the graph version.
+	 */
+	private List<IMatchedWaySegment> loadSegments(RouteCache.CachedRoute cachedRoute, INeo4jWayGraphReadDao graphDao, 
+			String graphName, String version) {
+		List<Long> segmentIds = new ArrayList<>(cachedRoute.size());
+		for (int i = 0; i < cachedRoute.size(); i++) {
+			segmentIds.add(cachedRoute.getSegmentId(i));
+		}
+		List<Node> nodes = graphDao.getSegmentNodesBySegmentIds(graphName, version, segmentIds);
+		
+		List<IMatchedWaySegment> segments = new ArrayList<>(cachedRoute.size());
+		for (int i = 0; i < cachedRoute.size(); i++) {
+			if (nodes.get(i) == null) {
+				return null;
 			}
+			addSegment(segments, graphDao.mapNodeLazily(graphName, version, nodes.get(i)), cachedRoute.getDirection(i));
 		}
-		return clonedSegments;
+		return segments;
 	}
 	/**
 	 * Returns {@code true} if a path with at most {@code maxSegmentsForShortestPath} segments
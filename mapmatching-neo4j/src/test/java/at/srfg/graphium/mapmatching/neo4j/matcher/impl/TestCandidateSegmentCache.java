@@ -0,0 +1,135 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching using Neo4j
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.matcher.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.geomutils.GeometryUtils;
+import at.srfg.graphium.mapmatching.matcher.impl.SegmentDistance;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+
+public class TestCandidateSegmentCache {
+
+	private static final String GRAPH = "graph";
+	private static final int RADIUS = 50;
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+	private CandidateSegmentCache cache;
+
+	@Before
+	public void setup() {
+		cache = new CandidateSegmentCache();
+		cache.setup();
+	}
+
+	@After
+	public void shutdown() {
+		cache.shutdown();
+	}
+
+	@Test
+	public void testCellQuantization() {
+		Random random = new Random(3);
+		for (double latitude : new double[] {0, 47.8, 70}) {
+			for (int i = 0; i < 1000; i++) {
+				Point point = createPoint(13 + random.nextDouble() * 0.1, latitude + random.nextDouble() * 0.1);
+				Point center = cache.getCellCenter(RADIUS, point);
+
+				// every point of a cell is served by the entry of its center
+				Assert.assertTrue(center.equalsExact(cache.getCellCenter(RADIUS, center)));
+				Assert.assertEquals(point.getSRID(), center.getSRID());
+
+				// search radius around the center covers the radius around every point of the cell
+				double distanceToCenter = GeometryUtils.distanceMeters(center, point);
+				Assert.assertTrue("point is " + distanceToCenter + "m away from the cell's center",
+						distanceToCenter + RADIUS <= cache.getSearchRadiusInMeter(RADIUS));
+			}
+		}
+	}
+
+	@Test
+	public void testPointsOfCellShareEntry() {
+		Point point = createPoint(13.0412, 47.8123);
+		Point center = cache.getCellCenter(RADIUS, point);
+		cache.put(GRAPH, "1", RADIUS, point, createCandidates(3, 1, 2));
+
+		CandidateSegmentCache.CachedCandidates candidates = cache.get(GRAPH, "1", RADIUS, center);
+		Assert.assertNotNull(candidates);
+		Assert.assertEquals(3, candidates.size());
+		// sorted by distance to the cell's center
+		for (int i = 0; i < candidates.size(); i++) {
+			Assert.assertEquals(i + 1, candidates.getSegmentId(i));
+			Assert.assertEquals((i + 1) * 10, candidates.getDistance(i), 0);
+		}
+
+		// neighbouring cells and other radii have their own entries
+		double step = RADIUS / 111320.0;
+		Assert.assertNull(cache.get(GRAPH, "1", RADIUS, createPoint(center.getX(), center.getY() + step)));
+		Assert.assertNull(cache.get(GRAPH, "1", RADIUS, createPoint(center.getX() + 2 * step, center.getY())));
+		Assert.assertNull(cache.get(GRAPH, "1", 2 * RADIUS, point));
+		Assert.assertNull(cache.get(GRAPH, "2", RADIUS, point));
+	}
+
+	@Test
+	public void testInvalidate() {
+		Point point = createPoint(13.0412, 47.8123);
+		cache.put(GRAPH, "1", RADIUS, point, createCandidates(1));
+		cache.put(GRAPH, "2", RADIUS, point, createCandidates(1));
+		cache.put("other", "1", RADIUS, point, createCandidates(1));
+
+		cache.invalidate(GRAPH, "1");
+		Assert.assertNull(cache.get(GRAPH, "1", RADIUS, point));
+		Assert.assertNotNull(cache.get(GRAPH, "2", RADIUS, point));
+
+		// all versions of a graph
+		cache.invalidate(GRAPH, null);
+		Assert.assertNull(cache.get(GRAPH, "2", RADIUS, point));
+		Assert.assertNotNull(cache.get("other", "1", RADIUS, point));
+	}
+
+	/**
+	 * Creates candidates with the given segment IDs; distances to the cell's center are ten times the IDs.
+	 */
+	private List<SegmentDistance<IWaySegment>> createCandidates(long... segmentIds) {
+		List<SegmentDistance<IWaySegment>> candidates = new ArrayList<>();
+		for (long segmentId : segmentIds) {
+			IWaySegment segment = new WaySegment();
+			segment.setId(segmentId);
+			candidates.add(new SegmentDistance<IWaySegment>(segment, segmentId * 10));
+		}
+		return candidates;
+	}
+
+	private Point createPoint(double x, double y) {
+		return factory.createPoint(new Coordinate(x, y));
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching using Neo4j
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.matcher.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.mapmatching.matcher.impl.SegmentDistance;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+
+/**
+ * Tests the selection of the nearest segments from cached candidates of the initial matching.
+ */
+public class TestInitialMatcher {
+
+	private static final int RADIUS = 50;
+
+	private Point point = new GeometryFactory(new PrecisionModel(), 4326).createPoint(new Coordinate(13.0412, 47.8123));
+	private CandidateSegmentCache cache;
+	private List<Long> loadedSegmentIds;
+
+	@Before
+	public void setup() {
+		cache = new CandidateSegmentCache();
+		cache.setup();
+		loadedSegmentIds = new ArrayList<>();
+	}
+
+	@After
+	public void shutdown() {
+		cache.shutdown();
+	}
+
+	@Test
+	public void testEarlyTermination() {
+		// candidates' distances to the cell's center are 0, 10, 20, ...
+		double[] centerDistances = new double[20];
+		for (int i = 0; i < centerDistances.length; i++) {
+			centerDistances[i] = i * 10;
+		}
+		CandidateSegmentCache.CachedCandidates candidates = createCandidates(centerDistances);
+
+		// point is 5m away from the center; after the first two candidates no other one can be nearer than 10m
+		List<SegmentDistance<IWaySegment>> distances = InitialMatcher.getDistances(candidates, 5, 1000, 2,
+				segmentIds -> calculateDistances(segmentIds, centerDistances, 1000));
+		Assert.assertEquals(2, distances.size());
+		Assert.assertEquals(0, distances.get(0).getSegment().getId());
+		Assert.assertEquals(1, distances.get(1).getSegment().getId());
+		Assert.assertEquals(2, loadedSegmentIds.size());
+	}
+
+	@Test
+	public void testCandidatesBeyondRadiusAreNotLoaded() {
+		double[] centerDistances = new double[100];
+		for (int i = 0; i < centerDistances.length; i++) {
+			centerDistances[i] = i;
+		}
+		CandidateSegmentCache.CachedCandidates candidates = createCandidates(centerDistances);
+
+		// number of segments is not limited, only candidates within radius plus offset can be within the radius
+		List<SegmentDistance<IWaySegment>> distances = InitialMatcher.getDistances(candidates, 5, RADIUS, 0,
+				segmentIds -> calculateDistances(segmentIds, centerDistances, RADIUS));
+		Assert.assertEquals(RADIUS + 1, distances.size());
+		Assert.assertEquals(RADIUS + 5 + 1, loadedSegmentIds.size());
+		for (long segmentId : loadedSegmentIds) {
+			Assert.assertTrue(centerDistances[(int) segmentId] <= RADIUS + 5);
+		}
+	}
+
+	/**
+	 * Distances to the point differ from the distances to the center by at most the offset; the selected segments have
+	 * to be the nearest ones nevertheless.
+	 */
+	@Test
+	public void testNearestSegmentsAreSelected() {
+		Random random = new Random(5);
+		for (int run = 0; run < 200; run++) {
+			double offset = 1 + random.nextInt(30);
+			double[] centerDistances = new double[1 + random.nextInt(60)];
+			for (int i = 0; i < centerDistances.length; i++) {
+				centerDistances[i] = random.nextInt(2 * RADIUS);
+			}
+			CandidateSegmentCache.CachedCandidates candidates = createCandidates(centerDistances);
+			// distances to the point derived from the segment IDs, so they are independent of the loading order
+			double[] pointDistances = new double[centerDistances.length];
+			for (int i = 0; i < centerDistances.length; i++) {
+				pointDistances[i] = Math.max(0, centerDistances[i] + offset * new Random(i).nextDouble() * 2 - offset);
+			}
+			int maxNrOfSegments = random.nextInt(5);
+
+			List<SegmentDistance<IWaySegment>> expected = calculateDistances(allSegmentIds(centerDistances.length), pointDistances, RADIUS);
+			Collections.sort(expected);
+			if (maxNrOfSegments > 0 && expected.size() > maxNrOfSegments) {
+				expected = expected.subList(0, maxNrOfSegments);
+			}
+
+			List<SegmentDistance<IWaySegment>> distances = InitialMatcher.getDistances(candidates, offset, RADIUS, maxNrOfSegments,
+					segmentIds -> calculateDistances(segmentIds, pointDistances, RADIUS));
+			Assert.assertEquals(expected.size(), distances.size());
+			for (int i = 0; i < expected.size(); i++) {
+				Assert.assertEquals(expected.get(i).getDistance(), distances.get(i).getDistance(), 0);
+			}
+		}
+	}
+
+	private CandidateSegmentCache.CachedCandidates createCandidates(double[] centerDistances) {
+		List<SegmentDistance<IWaySegment>> segments = new ArrayList<>();
+		for (int i = 0; i < centerDistances.length; i++) {
+			segments.add(new SegmentDistance<IWaySegment>(createSegment(i), centerDistances[i]));
+		}
+		cache.invalidate("graph", null);
+		cache.put("graph", "1", RADIUS, point, segments);
+		return cache.get("graph", "1", RADIUS, point);
+	}
+
+	/**
+	 * Returns the segments within the radius like the initial matcher; distances are looked up by segment ID.
+	 */
+	private List<SegmentDistance<IWaySegment>> calculateDistances(List<Long> segmentIds, double[] distances, int radiusInMeter) {
+		List<SegmentDistance<IWaySegment>> segments = new ArrayList<>();
+		for (long segmentId : segmentIds) {
+			loadedSegmentIds.add(segmentId);
+			if (distances[(int) segmentId] <= radiusInMeter) {
+				segments.add(new SegmentDistance<IWaySegment>(createSegment(segmentId), distances[(int) segmentId]));
+			}
+		}
+		return segments;
+	}
+
+	private List<Long> allSegmentIds(int count) {
+		List<Long> segmentIds = new ArrayList<>();
+		for (long i = 0; i < count; i++) {
+			segmentIds.add(i);
+		}
+		return segmentIds;
+	}
+
+	private IWaySegment createSegment(long segmentId) {
+		IWaySegment segment = new WaySegment();
+		segment.setId(segmentId);
+		return segment;
+	}
+
+}
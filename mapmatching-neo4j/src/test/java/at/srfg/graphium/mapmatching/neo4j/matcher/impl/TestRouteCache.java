@@ -0,0 +1,145 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Map Matching using Neo4j
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.neo4j.matcher.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.srfg.graphium.mapmatching.model.Direction;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.mapmatching.model.impl.MatchedWaySegmentImpl;
+import at.srfg.graphium.model.impl.WaySegment;
+
+public class TestRouteCache {
+
+	private static final String GRAPH = "graph";
+	private static final String SCOPE = "CAR_LENGTH_DIJKSTRA";
+
+	private RouteCache cache;
+
+	@Before
+	public void setup() {
+		cache = new RouteCache();
+		cache.setup();
+	}
+
+	@After
+	public void shutdown() {
+		cache.shutdown();
+	}
+
+	@Test
+	public void testPutAndGet() {
+		cache.put(GRAPH, "1", SCOPE, 1, 3, createRoute(1, 2, 3));
+
+		RouteCache.CachedRoute route = cache.get(GRAPH, "1", SCOPE, 1, 3);
+		Assert.assertNotNull(route);
+		Assert.assertEquals(3, route.size());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(i + 1, route.getSegmentId(i));
+			Assert.assertEquals(Direction.values()[i % Direction.values().length], route.getDirection(i));
+		}
+		Assert.assertEquals(1, cache.getHitCount());
+
+		// routes are cached per direction, graph version and routing scope
+		Assert.assertNull(cache.get(GRAPH, "1", SCOPE, 3, 1));
+		Assert.assertNull(cache.get(GRAPH, "2", SCOPE, 1, 3));
+		Assert.assertNull(cache.get(GRAPH, "1", "PEDESTRIAN_LENGTH_DIJKSTRA", 1, 3));
+		Assert.assertEquals(3, cache.getMissCount());
+	}
+
+	@Test
+	public void testUnknownVersion() {
+		// routing on the current graph version does not define a version
+		cache.put(GRAPH, null, SCOPE, 1, 2, createRoute(1, 2));
+		cache.put(GRAPH, "1", SCOPE, 1, 2, createRoute(1, 2));
+
+		Assert.assertNotNull(cache.get(GRAPH, null, SCOPE, 1, 2));
+		Assert.assertNotNull(cache.get(GRAPH, "1", SCOPE, 1, 2));
+		Assert.assertEquals(2, cache.size());
+
+		cache.invalidate(GRAPH, "1");
+		Assert.assertNotNull(cache.get(GRAPH, null, SCOPE, 1, 2));
+		Assert.assertNull(cache.get(GRAPH, "1", SCOPE, 1, 2));
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put(GRAPH, "1", SCOPE, 1, 2, createRoute(1, 2));
+		cache.put(GRAPH, "2", SCOPE, 1, 2, createRoute(1, 2));
+		cache.put("other", "1", SCOPE, 1, 2, createRoute(1, 2));
+
+		cache.invalidate(GRAPH, "1");
+		Assert.assertNull(cache.get(GRAPH, "1", SCOPE, 1, 2));
+		Assert.assertNotNull(cache.get(GRAPH, "2", SCOPE, 1, 2));
+
+		// all versions of a graph
+		cache.invalidate(GRAPH, null);
+		Assert.assertNull(cache.get(GRAPH, "2", SCOPE, 1, 2));
+		Assert.assertNotNull(cache.get("other", "1", SCOPE, 1, 2));
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		RouteCache expiringCache = new RouteCache();
+		expiringCache.setExpirationTimeInSeconds(1);
+		expiringCache.setup();
+		try {
+			expiringCache.put(GRAPH, "1", SCOPE, 1, 2, createRoute(1, 2));
+			Assert.assertNotNull(expiringCache.get(GRAPH, "1", SCOPE, 1, 2));
+
+			Thread.sleep(1100);
+			Assert.assertNull(expiringCache.get(GRAPH, "1", SCOPE, 1, 2));
+		} finally {
+			expiringCache.shutdown();
+		}
+	}
+
+	@Test
+	public void testMaximumSize() {
+		RouteCache smallCache = new RouteCache();
+		smallCache.setMaximumSizeInBytes(4 * 1024);
+		smallCache.setup();
+		try {
+			for (int i = 0; i < 100; i++) {
+				smallCache.put(GRAPH, "1", SCOPE, i, i + 1, createRoute(i, i + 1));
+			}
+			Assert.assertTrue(smallCache.size() < 100);
+			Assert.assertTrue(smallCache.getEvictionCount() > 0);
+		} finally {
+			smallCache.shutdown();
+		}
+	}
+
+	private List<IMatchedWaySegment> createRoute(long... segmentIds) {
+		List<IMatchedWaySegment> segments = new ArrayList<>();
+		for (int i = 0; i < segmentIds.length; i++) {
+			IMatchedWaySegment segment = new MatchedWaySegmentImpl(new WaySegment());
+			segment.setId(segmentIds[i]);
+			segment.setDirection(Direction.values()[i % Direction.values().length]);
+			segments.add(segment);
+		}
+		return segments;
+	}
+
+}
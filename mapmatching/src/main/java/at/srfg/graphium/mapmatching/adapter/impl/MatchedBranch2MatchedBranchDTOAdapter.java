@@ -51,9 +51,9 @@ public class MatchedBranch2MatchedBranchDTOAdapter implements IAdapter<MatchedBr
 			branch.setCertainPathEndSegmentId(branchToAdapt.getCertainPathEndSegment().getId());
 		}
 		
-		if (branchToAdapt.getMatchedWaySegments() != null && !branchToAdapt.getMatchedWaySegments().isEmpty()) {
+		if (branchToAdapt.getMatchedWaySegmentsReadOnly() != null && !branchToAdapt.getMatchedWaySegmentsReadOnly().isEmpty()) {
 			List<MatchedWaySegmentDTO> segments = new ArrayList<>();
-			for (IMatchedWaySegment seg : branchToAdapt.getMatchedWaySegments()) {
+			for (IMatchedWaySegment seg : branchToAdapt.getMatchedWaySegmentsReadOnly()) {
 				segments.add(segmentAdapter.adapt(seg));
 			}
 			branch.setSegments(segments);
@@ -17,32 +17,54 @@
  */
 package at.srfg.graphium.mapmatching.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import at.srfg.graphium.core.exception.GraphNotExistsException;
 import at.srfg.graphium.core.persistence.IWayGraphVersionMetadataDao;
 import at.srfg.graphium.io.adapter.IAdapter;
+import at.srfg.graphium.mapmatching.binary.BinaryDecoder;
+import at.srfg.graphium.mapmatching.binary.BinaryEncoder;
+import at.srfg.graphium.mapmatching.binary.MapMatchingBinaryFormat;
 import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
+import at.srfg.graphium.mapmatching.dto.MatchedWaySegmentDTO;
+import at.srfg.graphium.mapmatching.dto.OnlineMatchingResultDTO;
 import at.srfg.graphium.mapmatching.dto.TrackDTO;
+import at.srfg.graphium.mapmatching.matcher.IBatchMatchingCallback;
 import at.srfg.graphium.mapmatching.matcher.IMapMatchingService;
 import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
 import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.online.IOnlineMapMatchingService;
+import at.srfg.graphium.mapmatching.online.OnlineMatchingResult;
 import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.model.State;
 import at.srfg.graphium.routing.exception.RoutingParameterException;
@@ -57,10 +79,17 @@ public class MapMatchingController {
 	private static Logger log = LoggerFactory.getLogger(MapMatchingController.class);
 
 	private IMapMatchingService mapMatchingService;
+	private IOnlineMapMatchingService onlineMapMatchingService;
 	private IAdapter<ITrack, TrackDTO> trackAdapter;
 	private IAdapter<MatchedBranchDTO, IMatchedBranch> branchAdapter;
 	private IAdapter<MatchedBranchDTO, IMatchedBranch> verboseBranchAdapter;
+	private IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> segmentAdapter;
+	private IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> verboseSegmentAdapter;
 	private IWayGraphVersionMetadataDao metadataDao;
+	// configured like the mapper of Spring's JSON message converter (e.g. unknown properties are ignored), so streamed
+	// requests and responses are read and written the same way as @RequestBody / @ResponseBody DTOs
+	private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+	private MapMatchingBinaryFormat binaryFormat = new MapMatchingBinaryFormat();
 	
 	@RequestMapping(value="/matching/graphs/{graph}/matchtrack", method=RequestMethod.POST)
     public @ResponseBody MatchedBranchDTO matchTrack(
@@ -72,7 +101,29 @@ public class MapMatchingController {
     		@RequestBody TrackDTO trackDto) throws GraphNotExistsException, RoutingParameterException, CancellationException {
 
 		ITrack track = trackAdapter.adapt(trackDto);
-		
+		return match(graphName, resolveGraphVersion(graphName, track), track, startSegmentId, timeout, outputVerbose, routingMode);
+	}
+
+	/**
+	 * Matches a track sent in binary format (see {@link MapMatchingBinaryFormat}). The matched branch will be returned in binary 
+	 * format if accepted by the client and no verbose output is requested, otherwise as JSON.
+	 */
+	@RequestMapping(value="/matching/graphs/{graph}/matchtrack", method=RequestMethod.POST, consumes=MapMatchingBinaryFormat.MEDIA_TYPE)
+    public void matchBinaryTrack(
+    		@PathVariable(value = "graph") String graphName,
+    		@RequestParam(name = "startSegmentId", required = false) Long startSegmentId,
+    		@RequestParam(name = "timeoutMs", required = false, defaultValue = "10000") int timeout, // timeout in milliseconds
+    		@RequestParam(name = "outputVerbose", required = false, defaultValue = "false") boolean outputVerbose, // if true return additionally waysegments 
+    		@RequestParam(name = "routingMode", required = false, defaultValue = "car") String routingMode, // optional routingMode
+    		@RequestHeader(name = "Accept", required = false) String accept,
+    		HttpServletRequest request,
+    		HttpServletResponse response) throws GraphNotExistsException, RoutingParameterException, CancellationException, IOException {
+
+		ITrack track = readBinaryTrack(request);
+		matchBinary(graphName, resolveGraphVersion(graphName, track), track, startSegmentId, timeout, outputVerbose, routingMode, accept, response);
+	}
+
+	private String resolveGraphVersion(String graphName, ITrack track) throws GraphNotExistsException {
 		String graphVersion = null;
 		List<IWayGraphVersionMetadata> metadataList = metadataDao.getWayGraphVersionMetadataList(graphName, State.ACTIVE, 
 														track.getMetadata().getStartDate(), track.getMetadata().getStartDate(), null);
@@ -86,8 +137,7 @@ public class MapMatchingController {
 			}
 			graphVersion = metadataList.get(0).getVersion();
 		}
-		
-		return match(graphName, graphVersion, track, startSegmentId, timeout, outputVerbose, routingMode);
+		return graphVersion;
 	}
 
 	@RequestMapping(value="/matching/graphs/{graph}/versions/current/matchtrack", method=RequestMethod.POST)
@@ -104,6 +154,140 @@ public class MapMatchingController {
 		
 	}
 
+	@RequestMapping(value="/matching/graphs/{graph}/versions/current/matchtrack", method=RequestMethod.POST, consumes=MapMatchingBinaryFormat.MEDIA_TYPE)
+    public void matchBinaryTrackOnCurrentVersion(
+    		@PathVariable(value = "graph") String graphName,
+    		@RequestParam(name = "startSegmentId", required = false) Long startSegmentId,
+    		@RequestParam(name = "timeoutMs", required = false, defaultValue = "10000") int timeout, // timeout in milliseconds
+    		@RequestParam(name = "outputVerbose", required = false, defaultValue = "false") boolean outputVerbose, // if true return additionally waysegments 
+    		@RequestParam(name = "routingMode", required = false, defaultValue = "car") String routingMode, // optional routingMode
+    		@RequestHeader(name = "Accept", required = false) String accept,
+    		HttpServletRequest request,
+    		HttpServletResponse response) throws GraphNotExistsException, RoutingParameterException, CancellationException, IOException {
+
+		ITrack track = readBinaryTrack(request);
+		matchBinary(graphName, null, track, startSegmentId, timeout, outputVerbose, routingMode, accept, response);
+	}
+
+	/**
+	 * Matches a JSON array of tracks in parallel. Tracks are read from the request while matching is in progress; results are streamed 
+	 * as JSON array in the order the tracks are finished. Each entry contains the track's ID and either the best matching branch or an 
+	 * error message. The graph version will be resolved once for all tracks and before any output is written, so unknown graph versions
+	 * and malformed requests result in an error response. If the request fails while results are streamed, the JSON array will not be 
+	 * closed.
+	 */
+	@RequestMapping(value="/matching/graphs/{graph}/matchtracks", method=RequestMethod.POST)
+    public void matchTracks(
+    		@PathVariable(value = "graph") String graphName,
+    		@RequestParam(name = "graphVersion", required = false) String graphVersion, // optional; current version if not set
+    		@RequestParam(name = "timeoutMs", required = false, defaultValue = "10000") int timeout, // timeout per track in milliseconds
+    		@RequestParam(name = "outputVerbose", required = false, defaultValue = "false") boolean outputVerbose, // if true return additionally waysegments 
+    		@RequestParam(name = "routingMode", required = false, defaultValue = "car") String routingMode, // optional routingMode
+    		HttpServletRequest request,
+    		HttpServletResponse response) throws GraphNotExistsException, IOException {
+
+		IWayGraphVersionMetadata graphMetadata = mapMatchingService.getGraphVersionMetadata(graphName, graphVersion);
+		MappingIterator<TrackDTO> trackDtos = objectMapper.readerFor(TrackDTO.class).readValues(request.getInputStream());
+		// validates the start of the request's JSON array
+		trackDtos.hasNextValue();
+		Iterator<ITrack> tracks = new Iterator<ITrack>() {
+			@Override
+			public boolean hasNext() {
+				return trackDtos.hasNext();
+			}
+
+			@Override
+			public ITrack next() {
+				return trackAdapter.adapt(trackDtos.next());
+			}
+		};
+
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			// a failed response must not look like a complete one
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+			generator.writeStartArray();
+			mapMatchingService.matchTracks(graphMetadata, tracks, timeout, true, routingMode, new IBatchMatchingCallback() {
+				@Override
+				public void matched(ITrack track, List<IMatchedBranch> branches) {
+					try {
+						generator.writeStartObject();
+						generator.writeNumberField("trackId", track.getId());
+						if (!branches.isEmpty()) {
+							generator.writeFieldName("branch");
+							generator.writeObject(outputVerbose ? verboseBranchAdapter.adapt(branches.get(0)) : branchAdapter.adapt(branches.get(0)));
+						}
+						generator.writeEndObject();
+						generator.flush();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				@Override
+				public void failed(ITrack track, Exception e) {
+					try {
+						generator.writeStartObject();
+						generator.writeNumberField("trackId", track.getId());
+						generator.writeStringField("error", e instanceof CancellationException ? "timeout exceeded" : e.getMessage());
+						generator.writeEndObject();
+						generator.flush();
+					} catch (IOException ioe) {
+						throw new UncheckedIOException(ioe);
+					}
+				}
+			});
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Online map matching: appends the track points to the session (e.g. of a vehicle) and matches them incrementally. The session 
+	 * will be created on the first call and matches on the graph version being current at that time. Returns the segments finalized 
+	 * by the new track points and the current best branch.
+	 */
+	@RequestMapping(value="/matching/graphs/{graph}/online/{sessionId}", method=RequestMethod.POST)
+    public @ResponseBody OnlineMatchingResultDTO matchTrackPointsOnline(
+    		@PathVariable(value = "graph") String graphName,
+    		@PathVariable(value = "sessionId") String sessionId,
+    		@RequestParam(name = "timeoutMs", required = false, defaultValue = "10000") int timeout, // timeout in milliseconds
+    		@RequestParam(name = "outputVerbose", required = false, defaultValue = "false") boolean outputVerbose, // if true return additionally waysegments 
+    		@RequestParam(name = "routingMode", required = false, defaultValue = "car") String routingMode, // optional routingMode
+    		@RequestBody TrackDTO trackDto) throws GraphNotExistsException, RoutingParameterException, CancellationException {
+
+		ITrack track = trackAdapter.adapt(trackDto);
+		OnlineMatchingResult result = onlineMapMatchingService.matchTrackPoints(sessionId, graphName, null, track.getTrackPoints(), 
+				timeout, routingMode);
+		return adaptOnlineResult(result, outputVerbose);
+	}
+
+	/**
+	 * Closes the online map matching session and returns the segments not finalized yet.
+	 */
+	@RequestMapping(value="/matching/graphs/{graph}/online/{sessionId}", method=RequestMethod.DELETE)
+    public @ResponseBody OnlineMatchingResultDTO closeOnlineSession(
+    		@PathVariable(value = "graph") String graphName,
+    		@PathVariable(value = "sessionId") String sessionId,
+    		@RequestParam(name = "outputVerbose", required = false, defaultValue = "false") boolean outputVerbose) {
+
+		return adaptOnlineResult(onlineMapMatchingService.closeSession(sessionId), outputVerbose);
+	}
+
+	private OnlineMatchingResultDTO adaptOnlineResult(OnlineMatchingResult result, boolean outputVerbose) {
+		if (result == null) {
+			return null;
+		}
+		List<MatchedWaySegmentDTO> finalizedSegments = new ArrayList<>(result.getFinalizedSegments().size());
+		for (IMatchedWaySegment segment : result.getFinalizedSegments()) {
+			finalizedSegments.add(outputVerbose ? verboseSegmentAdapter.adapt(segment) : segmentAdapter.adapt(segment));
+		}
+		MatchedBranchDTO currentBranch = null;
+		if (result.getCurrentBranch() != null) {
+			currentBranch = outputVerbose ? verboseBranchAdapter.adapt(result.getCurrentBranch()) : branchAdapter.adapt(result.getCurrentBranch());
+		}
+		return new OnlineMatchingResultDTO(result.getSessionId(), finalizedSegments, currentBranch);
+	}
+
 	@Deprecated
 	@RequestMapping(value="/graphs/{graph}/matchtrack", method=RequestMethod.POST)
     public @ResponseBody MatchedBranchDTO matchTrackOld(
@@ -148,6 +332,79 @@ public class MapMatchingController {
 		}
 	}
 	
+	/**
+	 * Reads the request's binary track; malformed or truncated requests will be answered with 400 like unreadable JSON bodies.
+	 */
+	private ITrack readBinaryTrack(HttpServletRequest request) {
+		TrackDTO trackDto;
+		try {
+			trackDto = binaryFormat.readTrack(new BinaryDecoder(request.getInputStream()));
+		} catch (IOException e) {
+			throw new HttpMessageNotReadableException("could not read binary track: " + e.getMessage(), e);
+		}
+		if (trackDto == null) {
+			throw new HttpMessageNotReadableException("request does not contain a track");
+		}
+		return trackAdapter.adapt(trackDto);
+	}
+
+	private void matchBinary(String graphName, String graphVersion, ITrack track, Long startSegmentId, int timeout, boolean outputVerbose, 
+			String routingMode, String accept, HttpServletResponse response) 
+		throws GraphNotExistsException, RoutingParameterException, IOException {
+		
+		if (outputVerbose || accept == null || !accept.contains(MapMatchingBinaryFormat.MEDIA_TYPE)) {
+			MatchedBranchDTO branch = match(graphName, graphVersion, track, startSegmentId, timeout, outputVerbose, routingMode);
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			if (branch != null) {
+				objectMapper.writeValue(response.getOutputStream(), branch);
+			}
+			return;
+		}
+		
+		List<IMatchedBranch> branches = mapMatchingService.matchTrack(graphName, graphVersion, track, startSegmentId, null, timeout, true, routingMode);
+		response.setContentType(MapMatchingBinaryFormat.MEDIA_TYPE);
+		BinaryEncoder encoder = new BinaryEncoder(response.getOutputStream());
+		if (branches != null && !branches.isEmpty()) {
+			// return only first/best branch
+			writeBinaryBranch(branches.get(0), encoder);
+		}
+		encoder.flush();
+	}
+
+	/**
+	 * Writes the branch's attributes like {@link #branchAdapter} would do, but takes the segments' geometries directly from
+	 * the segments instead of converting them to WKT.
+	 */
+	private void writeBinaryBranch(IMatchedBranch branch, BinaryEncoder encoder) throws IOException {
+		MatchedBranchDTO branchDto = new MatchedBranchDTO();
+		branchDto.setFinished(branch.isFinished());
+		branchDto.setLength(branch.getLength());
+		branchDto.setMatchedFactor(branch.getMatchedFactor());
+		branchDto.setMatchedPoints(branch.getMatchedPoints());
+		branchDto.setNrOfShortestPathSearches(branch.getNrOfShortestPathSearches());
+		branchDto.setNrOfUTurns(branch.getNrOfUTurns());
+		if (branch.getCertainPathEndSegment() != null) {
+			branchDto.setCertainPathEndSegmentId(branch.getCertainPathEndSegment().getId());
+		}
+		
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+		MapMatchingBinaryFormat.BranchWriter writer = binaryFormat.startBranch(branchDto, segments.size(), encoder);
+		MatchedWaySegmentDTO segmentDto = new MatchedWaySegmentDTO();
+		for (IMatchedWaySegment segment : segments) {
+			segmentDto.setSegmentId(segment.getSegment().getId());
+			segmentDto.setStartPointIndex(segment.getStartPointIndex());
+			segmentDto.setEndPointIndex(segment.getEndPointIndex());
+			segmentDto.setEnteringThroughStartNode(segment.getDirection().isEnteringThroughStartNode());
+			segmentDto.setLeavingThroughStartNode(segment.getDirection().isLeavingThroughStartNode());
+			segmentDto.setStartSegment(segment.isStartSegment());
+			segmentDto.setFromPathSearch(segment.isFromPathSearch());
+			segmentDto.setuTurnSegment(segment.isUTurnSegment());
+			segmentDto.setWeight(segment.getWeight());
+			segmentDto.setMatchedFactor(segment.getMatchedFactor());
+			writer.writeSegment(segmentDto, segment.getGeometry() != null ? segment.getGeometry().getCoordinateSequence() : null);
+		}
+	}
+	
 	// TODO: Is exception handling correct?
 	
 	@ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR, reason = "timeout exceeded")
@@ -200,6 +457,30 @@ public class MapMatchingController {
 		this.verboseBranchAdapter = verboseBranchAdapter;
 	}
 
+	public IOnlineMapMatchingService getOnlineMapMatchingService() {
+		return onlineMapMatchingService;
+	}
+
+	public void setOnlineMapMatchingService(IOnlineMapMatchingService onlineMapMatchingService) {
+		this.onlineMapMatchingService = onlineMapMatchingService;
+	}
+
+	public IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> getSegmentAdapter() {
+		return segmentAdapter;
+	}
+
+	public void setSegmentAdapter(IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> segmentAdapter) {
+		this.segmentAdapter = segmentAdapter;
+	}
+
+	public IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> getVerboseSegmentAdapter() {
+		return verboseSegmentAdapter;
+	}
+
+	public void setVerboseSegmentAdapter(IAdapter<MatchedWaySegmentDTO, IMatchedWaySegment> verboseSegmentAdapter) {
+		this.verboseSegmentAdapter = verboseSegmentAdapter;
+	}
+
 	public IWayGraphVersionMetadataDao getMetadataDao() {
 		return metadataDao;
 	}
@@ -207,5 +488,13 @@ public class MapMatchingController {
 	public void setMetadataDao(IWayGraphVersionMetadataDao metadataDao) {
 		this.metadataDao = metadataDao;
 	}
+
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
 	
 }
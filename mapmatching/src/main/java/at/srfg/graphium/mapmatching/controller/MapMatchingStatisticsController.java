@@ -0,0 +1,108 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import at.srfg.graphium.mapmatching.statistics.DurationHistogram;
+import at.srfg.graphium.mapmatching.statistics.MapMatcherGlobalStatistics;
+import at.srfg.graphium.mapmatching.timer.MapMatcherTimerService;
+
+/**
+ * Provides the global map matching statistics: counters of matched tracks, routes, branches, cancellations and
+ * timeouts as well as duration percentiles (in milliseconds) per matching stage.
+ */
+@Controller
+public class MapMatchingStatisticsController {
+
+	private static final double NS_PER_MS = 1000000d;
+
+	private MapMatcherGlobalStatistics globalStatistics;
+	private MapMatcherTimerService mapMatcherTimerService;
+
+	@RequestMapping(value="/matching/statistics", method=RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("enabled", globalStatistics.isEnabled());
+		statistics.put("successfullyMatchedTracks", globalStatistics.getSuccessfullyMatchedTracks());
+		statistics.put("notSuccessfullyMatchedTracks", globalStatistics.getNotSuccessfullyMatchedTracks());
+		statistics.put("successfullyMatchedTrackPoints", globalStatistics.getSuccessfullyMatchedTrackPoints());
+		statistics.put("notSuccessfullyMatchedTrackPoints", globalStatistics.getNotSuccessfullyMatchedTrackPoints());
+		statistics.put("aggregatedLengthOfMatchedTracks", globalStatistics.getAggregatedLengthOfMatchedTracks());
+		statistics.put("routesRequested", globalStatistics.getRoutesRequested());
+		statistics.put("routeCacheHits", globalStatistics.getRouteCacheHits());
+		statistics.put("branchesCreated", globalStatistics.getBranchesCreated());
+		statistics.put("branchesPruned", globalStatistics.getBranchesPruned());
+		statistics.put("cancellations", globalStatistics.getCancellations());
+		if (mapMatcherTimerService != null) {
+			statistics.put("activeTasks", mapMatcherTimerService.getActiveTasksCount());
+			statistics.put("completedTasks", mapMatcherTimerService.getCompletedTasksCount());
+			statistics.put("timedOutTasks", mapMatcherTimerService.getTimedOutTasksCount());
+		}
+
+		Map<String, Object> timers = new LinkedHashMap<>();
+		for (Map.Entry<String, DurationHistogram> entry : globalStatistics.getTimers().entrySet()) {
+			timers.put(entry.getKey(), toMap(entry.getValue()));
+		}
+		statistics.put("timers", timers);
+		return statistics;
+	}
+
+	@RequestMapping(value="/matching/statistics", method=RequestMethod.DELETE)
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public void resetStatistics() {
+		globalStatistics.init();
+	}
+
+	private Map<String, Object> toMap(DurationHistogram timer) {
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put("count", timer.getCount());
+		values.put("totalMs", timer.getTotalNs() / NS_PER_MS);
+		values.put("meanMs", timer.getMeanNs() / NS_PER_MS);
+		values.put("p50Ms", timer.getPercentileNs(0.5) / NS_PER_MS);
+		values.put("p95Ms", timer.getPercentileNs(0.95) / NS_PER_MS);
+		values.put("p99Ms", timer.getPercentileNs(0.99) / NS_PER_MS);
+		values.put("maxMs", timer.getMaxNs() / NS_PER_MS);
+		return values;
+	}
+
+	public MapMatcherGlobalStatistics getGlobalStatistics() {
+		return globalStatistics;
+	}
+
+	public void setGlobalStatistics(MapMatcherGlobalStatistics globalStatistics) {
+		this.globalStatistics = globalStatistics;
+	}
+
+	public MapMatcherTimerService getMapMatcherTimerService() {
+		return mapMatcherTimerService;
+	}
+
+	public void setMapMatcherTimerService(MapMatcherTimerService mapMatcherTimerService) {
+		this.mapMatcherTimerService = mapMatcherTimerService;
+	}
+
+}
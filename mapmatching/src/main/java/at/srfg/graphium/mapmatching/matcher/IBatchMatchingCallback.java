@@ -0,0 +1,41 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.matcher;
+
+import java.util.List;
+
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+
+/**
+ * Receives the results of a batch map matching as soon as the single tracks are finished. All methods will be
+ * called from the thread which submitted the batch, so implementations need not be thread-safe.
+ */
+public interface IBatchMatchingCallback {
+
+	/**
+	 * @param branches best matching branch(es) of the track; empty if the track could not be matched
+	 */
+	void matched(ITrack track, List<IMatchedBranch> branches);
+
+	/**
+	 * @param e cause of the failure; a CancellationException if the matching timed out
+	 */
+	void failed(ITrack track, Exception e);
+
+}
@@ -19,6 +19,7 @@ package at.srfg.graphium.mapmatching.matcher;
 
 import at.srfg.graphium.core.exception.GraphNotExistsException;
 import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.routing.exception.RoutingParameterException;
 
 public interface IMapMatcher {
@@ -29,6 +30,17 @@ public interface IMapMatcher {
 	
 	public IMapMatcherTask getTask(String graphName, String graphVersion, ITrack origTrack, String routingMode) throws GraphNotExistsException, RoutingParameterException;
 	
+	/**
+	 * Creates a task for an already resolved graph version; used to resolve the graph version only once for many tracks
+	 */
+	public IMapMatcherTask getTask(IWayGraphVersionMetadata graphMetadata, ITrack origTrack, String routingMode) throws RoutingParameterException;
+	
+	/**
+	 * @param graphName Graph's name; if null the default graph will be used
+	 * @param graphVersion Graph's version; if null the current version will be used
+	 */
+	public IWayGraphVersionMetadata getGraphVersionMetadata(String graphName, String graphVersion) throws GraphNotExistsException;
+	
 	public String getDefaultGraphName();
 	public void setDefaultGraphName(String defaultGraphName);
 	
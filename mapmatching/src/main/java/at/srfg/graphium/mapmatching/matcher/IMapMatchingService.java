@@ -23,11 +23,13 @@
  */
 package at.srfg.graphium.mapmatching.matcher;
 
+import java.util.Iterator;
 import java.util.List;
 
 import at.srfg.graphium.core.exception.GraphNotExistsException;
 import at.srfg.graphium.mapmatching.model.IMatchedBranch;
 import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.routing.exception.RoutingParameterException;
 
 /**
@@ -53,5 +55,37 @@ public interface IMapMatchingService {
 	 */
 	List<IMatchedBranch> matchTrack(String graphName, String graphVersion, ITrack track, Long startSegmentId, List<IMatchedBranch> previousBranches, 
 			int timeoutInSecs, boolean onlyBestResult, String routingMode) throws GraphNotExistsException, RoutingParameterException;
+
+	/**
+	 * Map Matching of many tracks in parallel. The graph version will be resolved once for the whole batch. Tracks are read from the iterator
+	 * only if a worker is available (back-pressure); results will be passed to the callback in the order the tracks are finished.
+	 * @param graphName Graph's name; if not set map matching will be executed on the default graph (see Neo4jMapMatcher)
+	 * @param graphVersion Graph's version; if not set map matching will be executed on the current version
+	 * @param tracks Tracks the map matching has to be executed for
+	 * @param timeoutInMs Timeout of each map matching task in milliseconds; the timeout starts when the task is executed
+	 * @param onlyBestResult If set to true only the best matching branch of each track will be returned
+	 * @param routingMode optional; possible values are "car" / "bike" / "pedestrian"
+	 * @param callback Receives matched branches or failures per track
+	 * @return number of tracks processed
+	 * @throws GraphNotExistsException
+	 */
+	int matchTracks(String graphName, String graphVersion, Iterator<ITrack> tracks, int timeoutInMs, boolean onlyBestResult, 
+			String routingMode, IBatchMatchingCallback callback) throws GraphNotExistsException;
+
+	/**
+	 * Map Matching of many tracks in parallel on an already resolved graph version.
+	 * @param graphMetadata Graph version the map matching has to be executed on (see {@link #getGraphVersionMetadata(String, String)})
+	 * @see #matchTracks(String, String, Iterator, int, boolean, String, IBatchMatchingCallback)
+	 */
+	int matchTracks(IWayGraphVersionMetadata graphMetadata, Iterator<ITrack> tracks, int timeoutInMs, boolean onlyBestResult, 
+			String routingMode, IBatchMatchingCallback callback);
+
+	/**
+	 * Resolves the graph version map matching would be executed on.
+	 * @param graphName Graph's name; if not set the default graph will be used
+	 * @param graphVersion Graph's version; if not set the current version will be used
+	 * @throws GraphNotExistsException if no such graph version exists
+	 */
+	IWayGraphVersionMetadata getGraphVersionMetadata(String graphName, String graphVersion) throws GraphNotExistsException;
 	
 }
@@ -24,16 +24,34 @@
 package at.srfg.graphium.mapmatching.matcher.impl;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.mapmatching.matcher.IBatchMatchingCallback;
 import at.srfg.graphium.mapmatching.matcher.IMapMatchingService;
 import at.srfg.graphium.mapmatching.model.IMatchedBranch;
 import at.srfg.graphium.mapmatching.model.ITrack;
 import at.srfg.graphium.mapmatching.timer.MapMatcherTimerService;
 import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTask;
 import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTaskFactory;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.routing.exception.RoutingParameterException;
 
 /**
@@ -41,8 +59,15 @@ import at.srfg.graphium.routing.exception.RoutingParameterException;
  */
 public class MapMatchingServiceImpl implements IMapMatchingService {
 	
+	private static Logger log = LoggerFactory.getLogger(MapMatchingServiceImpl.class);
+
 	private MapMatcherTimerService mapMatcherTimerService;
 	private TimedMapMatcherTaskFactory mapMatcherTaskFactory;
+	// worker threads for batch map matching; shared by all batches
+	private int batchThreads = Runtime.getRuntime().availableProcessors();
+	// maximum number of tracks per batch submitted but not yet returned
+	private int maxPendingTracksPerBatch = 0;
+	private volatile ExecutorService batchExecutor;
 
 	@Override
 	public List<IMatchedBranch> matchTrack(String graphName, String graphVersion, ITrack track, Long startSegmentId, List<IMatchedBranch> previousBranches, 
@@ -64,6 +89,129 @@ public class MapMatchingServiceImpl implements IMapMatchingService {
 		}	
 	}
 
+	@Override
+	public int matchTracks(String graphName, String graphVersion, Iterator<ITrack> tracks, int timeoutInMs, boolean onlyBestResult,
+			String routingMode, IBatchMatchingCallback callback) throws GraphNotExistsException {
+		IWayGraphVersionMetadata graphMetadata = getGraphVersionMetadata(graphName, graphVersion);
+		return matchTracks(graphMetadata, tracks, timeoutInMs, onlyBestResult, routingMode, callback);
+	}
+
+	@Override
+	public int matchTracks(IWayGraphVersionMetadata graphMetadata, Iterator<ITrack> tracks, int timeoutInMs, boolean onlyBestResult,
+			String routingMode, IBatchMatchingCallback callback) {
+		long startTime = System.currentTimeMillis();
+		int maxPendingTracks = maxPendingTracksPerBatch > 0 ? maxPendingTracksPerBatch : batchThreads * 2;
+		CompletionService<BatchMatchingResult> completionService = new ExecutorCompletionService<>(getBatchExecutor());
+		Set<Future<BatchMatchingResult>> pendingTracks = new HashSet<>();
+		int count = 0;
+		try {
+			while (tracks.hasNext()) {
+				// back-pressure: read the next track only if one of the pending tracks is finished
+				if (pendingTracks.size() >= maxPendingTracks) {
+					publish(completionService.take(), pendingTracks, callback);
+				}
+				ITrack track = tracks.next();
+				pendingTracks.add(completionService.submit(
+						() -> matchTrack(graphMetadata, track, timeoutInMs, onlyBestResult, routingMode)));
+				count++;
+			}
+			while (!pendingTracks.isEmpty()) {
+				publish(completionService.take(), pendingTracks, callback);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("batch map matching interrupted");
+		} finally {
+			// in case of a failure (e.g. the client closed the connection) do not match remaining tracks
+			for (Future<BatchMatchingResult> future : pendingTracks) {
+				future.cancel(true);
+			}
+		}
+		
+		log.info("batch of " + count + " tracks matched on graph " + graphMetadata.getGraphName() + " in version " 
+				+ graphMetadata.getVersion() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+		return count;
+	}
+
+	@Override
+	public IWayGraphVersionMetadata getGraphVersionMetadata(String graphName, String graphVersion) throws GraphNotExistsException {
+		return mapMatcherTaskFactory.getMapMatcher().getGraphVersionMetadata(graphName, graphVersion);
+	}
+
+	private BatchMatchingResult matchTrack(IWayGraphVersionMetadata graphMetadata, ITrack track, int timeoutInMs,
+			boolean onlyBestResult, String routingMode) {
+		try {
+			// timeout starts with the creation of the task
+			TimedMapMatcherTask task = mapMatcherTaskFactory.getTask(graphMetadata, track, null, null, timeoutInMs, 
+					mapMatcherTimerService, routingMode);
+			List<IMatchedBranch> branches = task.matchTrack();
+			if (branches == null) {
+				branches = Collections.emptyList();
+			} else if (onlyBestResult && branches.size() > 1) {
+				branches = Collections.singletonList(branches.get(0));
+			}
+			return new BatchMatchingResult(track, branches, null);
+		} catch (Exception e) {
+			return new BatchMatchingResult(track, null, e);
+		}
+	}
+
+	private void publish(Future<BatchMatchingResult> future, Set<Future<BatchMatchingResult>> pendingTracks, 
+			IBatchMatchingCallback callback) throws InterruptedException {
+		pendingTracks.remove(future);
+		BatchMatchingResult result;
+		try {
+			result = future.get();
+		} catch (ExecutionException e) {
+			// matchTrack() catches all exceptions
+			throw new IllegalStateException(e.getCause());
+		}
+		if (result.exception != null) {
+			log.warn("map matching of track " + result.track.getId() + " failed: " + result.exception.getMessage());
+			callback.failed(result.track, result.exception);
+		} else {
+			callback.matched(result.track, result.branches);
+		}
+	}
+
+	private ExecutorService getBatchExecutor() {
+		if (batchExecutor == null) {
+			synchronized (this) {
+				if (batchExecutor == null) {
+					batchExecutor = Executors.newFixedThreadPool(batchThreads, new ThreadFactory() {
+						private final AtomicInteger threadNumber = new AtomicInteger(1);
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "batch-mapmatcher-" + threadNumber.getAndIncrement());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+				}
+			}
+		}
+		return batchExecutor;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (batchExecutor != null) {
+			batchExecutor.shutdownNow();
+		}
+	}
+
+	private static class BatchMatchingResult {
+		private ITrack track;
+		private List<IMatchedBranch> branches;
+		private Exception exception;
+
+		private BatchMatchingResult(ITrack track, List<IMatchedBranch> branches, Exception exception) {
+			this.track = track;
+			this.branches = branches;
+			this.exception = exception;
+		}
+	}
+
 	public MapMatcherTimerService getMapMatcherTimerService() {
 		return mapMatcherTimerService;
 	}
@@ -79,5 +227,29 @@ public class MapMatchingServiceImpl implements IMapMatchingService {
 	public void setMapMatcherTaskFactory(TimedMapMatcherTaskFactory mapMatcherTaskFactory) {
 		this.mapMatcherTaskFactory = mapMatcherTaskFactory;
 	}
+
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	/**
+	 * number of worker threads for batch map matching; has to be set before the first batch is submitted
+	 */
+	public void setBatchThreads(int batchThreads) {
+		if (batchThreads > 0) {
+			this.batchThreads = batchThreads;
+		}
+	}
+
+	public int getMaxPendingTracksPerBatch() {
+		return maxPendingTracksPerBatch;
+	}
+
+	/**
+	 * maximum number of tracks per batch waiting for or in map matching; if <= 0 twice the number of worker threads
+	 */
+	public void setMaxPendingTracksPerBatch(int maxPendingTracksPerBatch) {
+		this.maxPendingTracksPerBatch = maxPendingTracksPerBatch;
+	}
 	
 }
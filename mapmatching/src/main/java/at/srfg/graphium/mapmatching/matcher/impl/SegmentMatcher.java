@@ -594,7 +594,7 @@ public class SegmentMatcher {
 	 * Returns {@code true} if there are empty segments at the end of the branch.
 	 */
 	public boolean emptySegmentsAtEndOfBranch(IMatchedBranch branch) {
-		List<IMatchedWaySegment> segments = branch.getMatchedWaySegments(); 
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly(); 
 		
 		if (segments.size() < 1) {
 			return false;
@@ -629,8 +629,9 @@ public class SegmentMatcher {
 		if (newSegment.getStartPointIndex() == newSegment.getEndPointIndex()) {
 			// no points are assigned to the new segment, check if it is already in the path
 			
-			for (int i = branch.getMatchedWaySegments().size() - 1; i >= 0; i--) {
-				IMatchedWaySegment segmentInPath = branch.getMatchedWaySegments().get(i);
+			List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+			for (int i = segments.size() - 1; i >= 0; i--) {
+				IMatchedWaySegment segmentInPath = segments.get(i);
 				
 				if (segmentInPath.getId() == newSegment.getId()) {
 					if (segmentInPath.getEndPointIndex() == newSegment.getEndPointIndex()) {
@@ -665,8 +666,9 @@ public class SegmentMatcher {
 			// the new segment is an one-way segment, if the next segments are also one-way segments,
 			// it is likely that we are in a roundabout
 			
-			for (int i = branch.getMatchedWaySegments().size() - 1; i >= 0; i--) {
-				IMatchedWaySegment currentSegment = branch.getMatchedWaySegments().get(i);
+			List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+			for (int i = segments.size() - 1; i >= 0; i--) {
+				IMatchedWaySegment currentSegment = segments.get(i);
 				
 				if (currentSegment.isOneway().equals(OneWay.NO_ONEWAY)) {
 					// the current is not an one-way segment anymore, stop
@@ -22,6 +22,12 @@ import java.util.List;
 public interface IMatchedBranch extends Comparable<IMatchedBranch> {
 
 	List<IMatchedWaySegment> getMatchedWaySegments();
+	
+	/**
+	 * Unmodifiable list of the matched segments. Segments might be shared with cloned branches and must not be modified;
+	 * use {@link #getMatchedWaySegments()} to modify segments.
+	 */
+	List<IMatchedWaySegment> getMatchedWaySegmentsReadOnly();
 	void addMatchedWaySegment(IMatchedWaySegment segment);
 	void removeLastMatchedWaySegment();
 	void removeMatchedWaySegments(List<Integer> segmentIndicesToRemove);
@@ -0,0 +1,224 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.model.impl;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+
+/**
+ * Segment list of a matched branch which shares its segments with the lists of cloned branches. Cloning a branch
+ * copies neither the segment array nor the segments; the array will be copied on the first structural modification,
+ * a segment will be cloned when it is accessed via {@link #get(int)} for the first time after the branch has been cloned.
+ * Segments added to the list are owned by the list and will not be cloned.
+ *
+ * Read-only access without cloning is possible via {@link #peek(int)} and {@link #readOnlyView()}.
+ */
+class CopyOnWriteSegmentList extends AbstractList<IMatchedWaySegment> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 4386204880157418311L;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private IMatchedWaySegment[] elements;
+	// flags segments which are referenced by this list only and can be modified without cloning
+	private boolean[] owned;
+	private int size = 0;
+	private boolean elementsShared = false;
+	
+	private transient List<IMatchedWaySegment> readOnlyView;
+
+	CopyOnWriteSegmentList() {
+		this.elements = new IMatchedWaySegment[DEFAULT_CAPACITY];
+		this.owned = new boolean[DEFAULT_CAPACITY];
+	}
+	
+	CopyOnWriteSegmentList(List<IMatchedWaySegment> segments) {
+		this.elements = segments.toArray(new IMatchedWaySegment[Math.max(segments.size(), DEFAULT_CAPACITY)]);
+		this.owned = new boolean[elements.length];
+		this.size = segments.size();
+		Arrays.fill(owned, 0, size, true);
+	}
+
+	private CopyOnWriteSegmentList(IMatchedWaySegment[] elements, int size) {
+		this.elements = elements;
+		this.owned = new boolean[elements.length];
+		this.size = size;
+		this.elementsShared = true;
+	}
+	
+	/**
+	 * Creates a list sharing all segments with this list. Afterwards neither list owns its segments anymore.
+	 */
+	CopyOnWriteSegmentList share() {
+		elementsShared = true;
+		Arrays.fill(owned, 0, size, false);
+		return new CopyOnWriteSegmentList(elements, size);
+	}
+
+	@Override
+	public IMatchedWaySegment get(int index) {
+		rangeCheck(index);
+		if (!owned[index]) {
+			ensureElementsNotShared();
+			try {
+				elements[index] = (IMatchedWaySegment) elements[index].clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("could not clone segment", e);
+			}
+			owned[index] = true;
+		}
+		return elements[index];
+	}
+
+	/**
+	 * Returns the segment without cloning it; the segment might be shared with other branches and must not be modified.
+	 */
+	IMatchedWaySegment peek(int index) {
+		rangeCheck(index);
+		return elements[index];
+	}
+
+	/**
+	 * @return unmodifiable list of the segments, which might be shared with other branches and must not be modified
+	 */
+	List<IMatchedWaySegment> readOnlyView() {
+		if (readOnlyView == null) {
+			readOnlyView = new ReadOnlyView();
+		}
+		return readOnlyView;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public IMatchedWaySegment set(int index, IMatchedWaySegment segment) {
+		rangeCheck(index);
+		ensureElementsNotShared();
+		IMatchedWaySegment previousSegment = elements[index];
+		elements[index] = segment;
+		owned[index] = true;
+		return previousSegment;
+	}
+
+	@Override
+	public void add(int index, IMatchedWaySegment segment) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		ensureElementsNotShared();
+		ensureCapacity(size + 1);
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		System.arraycopy(owned, index, owned, index + 1, size - index);
+		elements[index] = segment;
+		owned[index] = true;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public IMatchedWaySegment remove(int index) {
+		// removed segment will be returned to the caller, so it has to be owned
+		IMatchedWaySegment removedSegment = get(index);
+		ensureElementsNotShared();
+		int numMoved = size - index - 1;
+		System.arraycopy(elements, index + 1, elements, index, numMoved);
+		System.arraycopy(owned, index + 1, owned, index, numMoved);
+		elements[--size] = null;
+		owned[size] = false;
+		modCount++;
+		return removedSegment;
+	}
+
+	@Override
+	public void clear() {
+		if (elementsShared) {
+			elements = new IMatchedWaySegment[DEFAULT_CAPACITY];
+			owned = new boolean[DEFAULT_CAPACITY];
+			elementsShared = false;
+		} else {
+			Arrays.fill(elements, 0, size, null);
+			Arrays.fill(owned, 0, size, false);
+		}
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		for (int i = 0; i < size; i++) {
+			if (o == null ? elements[i] == null : o.equals(elements[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (o == null ? elements[i] == null : o.equals(elements[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void ensureElementsNotShared() {
+		if (elementsShared) {
+			elements = Arrays.copyOf(elements, elements.length);
+			elementsShared = false;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > elements.length) {
+			int newCapacity = Math.max(capacity, elements.length + (elements.length >> 1));
+			elements = Arrays.copyOf(elements, newCapacity);
+			owned = Arrays.copyOf(owned, newCapacity);
+		}
+	}
+
+	private void rangeCheck(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private class ReadOnlyView extends AbstractList<IMatchedWaySegment> implements RandomAccess {
+
+		@Override
+		public IMatchedWaySegment get(int index) {
+			return peek(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+	}
+
+}
@@ -18,7 +18,6 @@
 package at.srfg.graphium.mapmatching.model.impl;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -28,11 +27,17 @@ import at.srfg.graphium.mapmatching.model.IMatchedBranch;
 import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
 import at.srfg.graphium.mapmatching.model.IWeightingStrategy;
 
+/**
+ * Matched branch whose segments are held in a copy-on-write list: a cloned branch shares the segments of its
+ * source branch and clones a segment only if it gets accessed via {@link #getMatchedWaySegments()}.
+ *
+ * @author mwimmer
+ */
 public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializable {
 
 	private static final long serialVersionUID = -5050363598919572570L;
 
-	private List<IMatchedWaySegment> segments = new ArrayList<IMatchedWaySegment>();
+	private CopyOnWriteSegmentList segments = new CopyOnWriteSegmentList();
 	private int step = 0;
 	private boolean finished = false;
 	private int nrOfUTurns = 0;
@@ -68,8 +73,7 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 	}
 
 	private void removeMatchedWaySegment(int i) {
-		IMatchedWaySegment segmentToRemove = segments.get(i);
-		segments.remove(i);
+		IMatchedWaySegment segmentToRemove = segments.remove(i);
 //		step--;
 		length -= segmentToRemove.getGeometry().getLength();
 		matchedFactorValid = false;
@@ -112,7 +116,7 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 	public int getMatchedPoints() {
 		if (!matchedPointsValid) {
 			matchedPoints = 0;
-			for (IMatchedWaySegment seg : segments) {
+			for (IMatchedWaySegment seg : segments.readOnlyView()) {
 				matchedPoints += seg.getMatchedPoints();
 			}
 			matchedPointsValid = true;
@@ -128,11 +132,16 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 		return segments;
 	}
 
+	@Override
+	public List<IMatchedWaySegment> getMatchedWaySegmentsReadOnly() {
+		return segments.readOnlyView();
+	}
+
 	public void setSegments(List<IMatchedWaySegment> segments) {
 		matchedFactorValid = false;
 		matchedPointsValid = false;
 		nrOfTotalTrackPointsValid = false;
-		this.segments = segments;
+		this.segments = new CopyOnWriteSegmentList(segments);
 		
 		for (IMatchedWaySegment seg : segments) {
 			length += seg.getGeometry().getLength();
@@ -162,11 +171,16 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 	@Override
 	public Object clone() throws CloneNotSupportedException {
 		MatchedBranchImpl cloneObj = (MatchedBranchImpl)super.clone();
-		List<IMatchedWaySegment> clonedSegs = new ArrayList<IMatchedWaySegment>(segments.size());
-		for (IMatchedWaySegment seg : segments) {
-			clonedSegs.add((IMatchedWaySegment) seg.clone());
+		// segments will be cloned lazily on first access
+		cloneObj.segments = segments.share();
+		cloneObj.matchedFactorValid = false;
+		cloneObj.matchedPointsValid = false;
+		cloneObj.nrOfTotalTrackPointsValid = false;
+		// same as adding the segments via setSegments()
+		for (IMatchedWaySegment seg : cloneObj.segments.readOnlyView()) {
+			cloneObj.length += seg.getGeometry().getLength();
 		}
-		cloneObj.setSegments(clonedSegs);
+		cloneObj.updateEndPointIndexLastStep();
 		return cloneObj;
 	}
 
@@ -217,7 +231,7 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 	@Override
 	public int getNrOfEmptySegments() {
 		int emptySegs = 0;
-		for (IMatchedWaySegment seg : segments) {
+		for (IMatchedWaySegment seg : segments.readOnlyView()) {
 			if (seg.getStartPointIndex() == seg.getEndPointIndex()) {
 				emptySegs++;
 			}
@@ -250,7 +264,7 @@ public class MatchedBranchImpl implements IMatchedBranch, Cloneable, Serializabl
 	public int getNrOfTotalTrackPoints() {
 		if (!nrOfTotalTrackPointsValid) {
 			if (segments != null && !segments.isEmpty()) {
-				nrOfTotalTrackPoints = segments.get(segments.size()-1).getEndPointIndex();
+				nrOfTotalTrackPoints = segments.peek(segments.size()-1).getEndPointIndex();
 			} else {
 				nrOfTotalTrackPoints = 0;
 			}
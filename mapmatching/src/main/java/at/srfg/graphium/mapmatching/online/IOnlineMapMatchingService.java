@@ -0,0 +1,57 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.online;
+
+import java.util.List;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.mapmatching.model.ITrackPoint;
+import at.srfg.graphium.routing.exception.RoutingParameterException;
+
+/**
+ * Online map matching of live tracks. Track points of a vehicle will be sent in chunks; a session per vehicle / track
+ * holds the already received track points and the possible branches of the last iteration, so each chunk will be matched
+ * incrementally starting at the end of the previous iteration. Segments will be returned as soon as they are certain, i.e.
+ * all possible branches share them.
+ */
+public interface IOnlineMapMatchingService {
+
+	/**
+	 * Appends track points to a session and matches them. If the session does not exist it will be created.
+	 * @param sessionId ID of the session (e.g. vehicle ID)
+	 * @param graphName Graph's name; will only be used on creation of the session
+	 * @param graphVersion Graph's version; will only be used on creation of the session; if not set the current version will be used
+	 * @param trackPoints New track points; track points not newer than the last track point of the session will be ignored
+	 * @param timeoutInMs Timeout of map matching of the new track points in milliseconds
+	 * @param routingMode optional; possible values are "car" / "bike" / "pedestrian"; will only be used on creation of the session
+	 * @return segments finalized by the new track points and the current best branch
+	 * @throws GraphNotExistsException
+	 */
+	OnlineMatchingResult matchTrackPoints(String sessionId, String graphName, String graphVersion, List<ITrackPoint> trackPoints, 
+			int timeoutInMs, String routingMode) throws GraphNotExistsException, RoutingParameterException;
+
+	/**
+	 * Closes the session; all segments of the best branch not finalized yet will be returned as finalized segments.
+	 * @param sessionId ID of the session
+	 * @return remaining segments of the session or null if the session does not exist (anymore)
+	 */
+	OnlineMatchingResult closeSession(String sessionId);
+	
+	int getNrOfSessions();
+	
+}
@@ -0,0 +1,57 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.online;
+
+import java.util.List;
+
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+
+/**
+ * Result of an online map matching iteration. Finalized segments will not change anymore and will not be part of any
+ * following result. The current branch holds the segments which are not certain yet (starting with the last certain segment).
+ */
+public class OnlineMatchingResult {
+
+	private String sessionId;
+	private List<IMatchedWaySegment> finalizedSegments;
+	private IMatchedBranch currentBranch;
+	
+	public OnlineMatchingResult(String sessionId, List<IMatchedWaySegment> finalizedSegments, IMatchedBranch currentBranch) {
+		super();
+		this.sessionId = sessionId;
+		this.finalizedSegments = finalizedSegments;
+		this.currentBranch = currentBranch;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public List<IMatchedWaySegment> getFinalizedSegments() {
+		return finalizedSegments;
+	}
+
+	/**
+	 * @return best branch of the session; null if no branch could be matched yet or the session has been closed
+	 */
+	public IMatchedBranch getCurrentBranch() {
+		return currentBranch;
+	}
+	
+}
@@ -0,0 +1,447 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.online.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment.IDistancesCache;
+import at.srfg.graphium.mapmatching.model.ITrackPoint;
+import at.srfg.graphium.mapmatching.online.IOnlineMapMatchingService;
+import at.srfg.graphium.mapmatching.online.OnlineMatchingResult;
+import at.srfg.graphium.mapmatching.timer.MapMatcherTimerService;
+import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTask;
+import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTaskFactory;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.routing.exception.RoutingParameterException;
+
+/**
+ * Holds online map matching sessions in memory. Each iteration matches the session's track in iterative mode starting with 
+ * the branches of the previous iteration, so only the new track points have to be matched. The leading certain segments 
+ * of the best branch (see {@link IMatchedBranch#getCertainPathEndSegment()}) except the last one will be returned as finalized 
+ * and removed from all branches; branches not sharing them will be dropped. The last certain segment stays in the branches 
+ * because following track points could still be assigned to it.
+ * 
+ * Track points preceding the frontier are removed from the session's track except the last {@code retainedTrackPoints},
+ * so the track does not grow with the session's lifetime. If no segment becomes certain for more than
+ * {@code maxTrackPoints} track points, all segments of the best branch except the last one will be finalized. Track point
+ * indices of returned segments refer to all track points received by the session.
+ * 
+ * Sessions not accessed within the session timeout will be evicted; if the maximum number of sessions is reached the least 
+ * recently used session will be evicted.
+ */
+public class OnlineMapMatchingServiceImpl implements IOnlineMapMatchingService {
+
+	private static Logger log = LoggerFactory.getLogger(OnlineMapMatchingServiceImpl.class);
+
+	private MapMatcherTimerService mapMatcherTimerService;
+	private TimedMapMatcherTaskFactory mapMatcherTaskFactory;
+	private int sessionTimeoutInMs = 600000;
+	private int maxSessions = 10000;
+	private int evictionIntervalInMs = 60000;
+	private int retainedTrackPoints = 20;
+	private int maxTrackPoints = 2000;
+
+	private Map<String, OnlineMatchingSession> sessions;
+	private ScheduledThreadPoolExecutor scheduler;
+
+	@PostConstruct
+	public void setup() {
+		sessions = new ConcurrentHashMap<>();
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "mapmatcher-online-sessions");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::evictIdleSessions, evictionIntervalInMs, evictionIntervalInMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+		sessions.clear();
+	}
+
+	@Override
+	public OnlineMatchingResult matchTrackPoints(String sessionId, String graphName, String graphVersion, List<ITrackPoint> trackPoints,
+			int timeoutInMs, String routingMode) throws GraphNotExistsException, RoutingParameterException {
+		while (true) {
+			OnlineMatchingSession session = getSession(sessionId, graphName, graphVersion, routingMode);
+			synchronized (session) {
+				// session could have been evicted or closed in the meantime
+				if (!session.isClosed()) {
+					session.touch();
+					return match(session, trackPoints, timeoutInMs);
+				}
+			}
+		}
+	}
+
+	@Override
+	public OnlineMatchingResult closeSession(String sessionId) {
+		OnlineMatchingSession session = sessions.remove(sessionId);
+		if (session == null) {
+			return null;
+		}
+		synchronized (session) {
+			session.close();
+			List<IMatchedWaySegment> remainingSegments;
+			if (session.getBranches() != null && !session.getBranches().isEmpty()) {
+				remainingSegments = new ArrayList<>(session.getBranches().get(0).getMatchedWaySegmentsReadOnly());
+				remainingSegments = toSessionIndices(session, remainingSegments);
+			} else {
+				remainingSegments = Collections.emptyList();
+			}
+			return new OnlineMatchingResult(sessionId, remainingSegments, null);
+		}
+	}
+
+	@Override
+	public int getNrOfSessions() {
+		return sessions.size();
+	}
+
+	private OnlineMatchingResult match(OnlineMatchingSession session, List<ITrackPoint> trackPoints, int timeoutInMs) 
+			throws RoutingParameterException {
+		int appendedPoints = session.appendTrackPoints(trackPoints);
+		if (appendedPoints == 0 && session.getBranches() != null) {
+			return new OnlineMatchingResult(session.getSessionId(), Collections.emptyList(), getBestBranch(session));
+		}
+
+		// the task modifies the previous branches; keep the session's branches in case the matching fails or times out
+		TimedMapMatcherTask task = mapMatcherTaskFactory.getTask(session.getGraphMetadata(), session.getTrack(), null, 
+				cloneBranches(session.getBranches()), timeoutInMs, mapMatcherTimerService, session.getRoutingMode());
+		List<IMatchedBranch> branches = task.matchTrack();
+		
+		if (branches == null || branches.isEmpty()) {
+			if (session.getBranches() == null && session.getTrack().getTrackPoints().size() > maxTrackPoints) {
+				// no start segment found yet, only the last track points are needed for the initial matching
+				session.removeLeadingTrackPoints(session.getTrack().getTrackPoints().size() - retainedTrackPoints);
+			}
+			return new OnlineMatchingResult(session.getSessionId(), Collections.emptyList(), getBestBranch(session));
+		}
+		
+		branches = new ArrayList<>(branches);
+		boolean finalizeAll = session.getTrack().getTrackPoints().size() > maxTrackPoints;
+		List<IMatchedWaySegment> finalizedSegments = removeFinalizedSegments(branches, finalizeAll);
+		if (finalizeAll && !finalizedSegments.isEmpty()) {
+			log.warn("Session " + session.getSessionId() + " exceeded " + maxTrackPoints + " track points without certain path, " 
+					+ "best branch has been finalized");
+		}
+		finalizedSegments = toSessionIndices(session, finalizedSegments);
+		session.setBranches(branches);
+		removeMatchedTrackPoints(session);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Session " + session.getSessionId() + ": " + appendedPoints + " track points matched, " + finalizedSegments.size() 
+					+ " segments finalized, " + session.getTrack().getTrackPoints().size() + " track points retained");
+		}
+		return new OnlineMatchingResult(session.getSessionId(), finalizedSegments, getBestBranch(session));
+	}
+
+	/**
+	 * Removes the leading certain segments except the last one from the best branch and from all branches sharing them. 
+	 * Other branches will be removed.
+	 * @param finalizeAll if true all segments of the best branch are handled as certain 
+	 * @return finalized segments
+	 */
+	private List<IMatchedWaySegment> removeFinalizedSegments(List<IMatchedBranch> branches, boolean finalizeAll) {
+		IMatchedBranch bestBranch = branches.get(0);
+		List<IMatchedWaySegment> segments = bestBranch.getMatchedWaySegmentsReadOnly();
+		int nrOfCertainSegments = 0;
+		while (nrOfCertainSegments < segments.size() && (finalizeAll || segments.get(nrOfCertainSegments).isCertain())) {
+			nrOfCertainSegments++;
+		}
+		
+		// the last certain segment could be extended by following track points
+		int nrOfFinalizedSegments = nrOfCertainSegments - 1;
+		if (nrOfFinalizedSegments <= 0) {
+			return Collections.emptyList();
+		}
+		
+		List<IMatchedWaySegment> finalizedSegments = new ArrayList<>(segments.subList(0, nrOfFinalizedSegments));
+		Iterator<IMatchedBranch> it = branches.iterator();
+		while (it.hasNext()) {
+			IMatchedBranch branch = it.next();
+			if (branch == bestBranch || startsWith(branch, finalizedSegments)) {
+				List<Integer> segmentIndicesToRemove = new ArrayList<>(nrOfFinalizedSegments);
+				for (int i = 0; i < nrOfFinalizedSegments; i++) {
+					segmentIndicesToRemove.add(i);
+				}
+				branch.removeMatchedWaySegments(segmentIndicesToRemove);
+			} else {
+				it.remove();
+			}
+		}
+		return finalizedSegments;
+	}
+
+	private boolean startsWith(IMatchedBranch branch, List<IMatchedWaySegment> finalizedSegments) {
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+		// at least the last certain segment has to remain
+		if (segments.size() <= finalizedSegments.size()) {
+			return false;
+		}
+		for (int i = 0; i < finalizedSegments.size(); i++) {
+			if (segments.get(i).getId() != finalizedSegments.get(i).getId() ||
+				segments.get(i).getDirection() != finalizedSegments.get(i).getDirection()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the track points preceding the session's branches except the last {@code retainedTrackPoints} and shifts
+	 * the track point indices of the branches' segments.
+	 */
+	private void removeMatchedTrackPoints(OnlineMatchingSession session) {
+		int firstIndex = session.getTrack().getTrackPoints().size();
+		for (IMatchedBranch branch : session.getBranches()) {
+			List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+			if (!segments.isEmpty()) {
+				firstIndex = Math.min(firstIndex, segments.get(0).getStartPointIndex());
+			}
+		}
+		int count = firstIndex - retainedTrackPoints;
+		if (count <= 0) {
+			return;
+		}
+		
+		for (IMatchedBranch branch : session.getBranches()) {
+			List<IMatchedWaySegment> segments = branch.getMatchedWaySegments();
+			for (int i = 0; i < segments.size(); i++) {
+				IMatchedWaySegment segment = segments.get(i);
+				segment.setStartPointIndex(segment.getStartPointIndex() - count);
+				segment.setEndPointIndex(segment.getEndPointIndex() - count);
+				// distances are cached per track point index range
+				resetDistancesCache(segment.getMatchedPointDistancesCache());
+				resetDistancesCache(segment.getStraightLineDistancesCache());
+				resetDistancesCache(segment.getRouteDistancesCache());
+			}
+			branch.recalculate();
+		}
+		session.removeLeadingTrackPoints(count);
+	}
+
+	private void resetDistancesCache(IDistancesCache cache) {
+		cache.getSegmentPointsCache().put(null, null);
+		cache.getRoutingSegmentsCache().put(null, null);
+	}
+
+	/**
+	 * @return clones of the segments with track point indices referring to all track points received by the session
+	 */
+	private List<IMatchedWaySegment> toSessionIndices(OnlineMatchingSession session, List<IMatchedWaySegment> segments) {
+		int offset = session.getNrOfRemovedTrackPoints();
+		if (offset == 0) {
+			return segments;
+		}
+		List<IMatchedWaySegment> shiftedSegments = new ArrayList<>(segments.size());
+		for (IMatchedWaySegment segment : segments) {
+			IMatchedWaySegment shiftedSegment = cloneSegment(segment);
+			shiftedSegment.setStartPointIndex(segment.getStartPointIndex() + offset);
+			shiftedSegment.setEndPointIndex(segment.getEndPointIndex() + offset);
+			shiftedSegments.add(shiftedSegment);
+		}
+		return shiftedSegments;
+	}
+
+	private List<IMatchedBranch> cloneBranches(List<IMatchedBranch> branches) {
+		if (branches == null) {
+			return null;
+		}
+		List<IMatchedBranch> clonedBranches = new ArrayList<>(branches.size());
+		for (IMatchedBranch branch : branches) {
+			clonedBranches.add(cloneBranch(branch));
+		}
+		return clonedBranches;
+	}
+
+	private IMatchedBranch getBestBranch(OnlineMatchingSession session) {
+		List<IMatchedBranch> branches = session.getBranches();
+		if (branches == null || branches.isEmpty()) {
+			return null;
+		}
+		// the session's branches will be modified by the following iteration
+		IMatchedBranch bestBranch = cloneBranch(branches.get(0));
+		int offset = session.getNrOfRemovedTrackPoints();
+		if (offset > 0) {
+			List<IMatchedWaySegment> segments = bestBranch.getMatchedWaySegments();
+			for (int i = 0; i < segments.size(); i++) {
+				IMatchedWaySegment segment = segments.get(i);
+				segment.setStartPointIndex(segment.getStartPointIndex() + offset);
+				segment.setEndPointIndex(segment.getEndPointIndex() + offset);
+			}
+			bestBranch.recalculate();
+		}
+		return bestBranch;
+	}
+
+	private IMatchedBranch cloneBranch(IMatchedBranch branch) {
+		try {
+			return (IMatchedBranch) branch.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException("could not clone branch", e);
+		}
+	}
+
+	private IMatchedWaySegment cloneSegment(IMatchedWaySegment segment) {
+		try {
+			return (IMatchedWaySegment) segment.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException("could not clone segment", e);
+		}
+	}
+
+	private OnlineMatchingSession getSession(String sessionId, String graphName, String graphVersion, String routingMode) 
+			throws GraphNotExistsException {
+		OnlineMatchingSession session = sessions.get(sessionId);
+		if (session != null) {
+			if (graphName == null || graphName.equals(session.getGraphMetadata().getGraphName())) {
+				return session;
+			}
+			log.info("Session " + sessionId + " has been created for graph " + session.getGraphMetadata().getGraphName() 
+					+ " and will be replaced by a new session for graph " + graphName);
+			closeSession(sessionId);
+		}
+
+		IWayGraphVersionMetadata graphMetadata = mapMatcherTaskFactory.getMapMatcher().getGraphVersionMetadata(graphName, graphVersion);
+		if (sessions.size() >= maxSessions) {
+			evictLeastRecentlyUsedSession();
+		}
+		session = new OnlineMatchingSession(sessionId, graphMetadata, routingMode);
+		OnlineMatchingSession existingSession = sessions.putIfAbsent(sessionId, session);
+		return existingSession != null ? existingSession : session;
+	}
+
+	private void evictLeastRecentlyUsedSession() {
+		OnlineMatchingSession leastRecentlyUsed = null;
+		for (OnlineMatchingSession session : sessions.values()) {
+			if (leastRecentlyUsed == null || session.getLastAccess() < leastRecentlyUsed.getLastAccess()) {
+				leastRecentlyUsed = session;
+			}
+		}
+		if (leastRecentlyUsed != null) {
+			log.warn("Maximum number of online map matching sessions reached, session " + leastRecentlyUsed.getSessionId() 
+					+ " will be evicted");
+			evict(leastRecentlyUsed);
+		}
+	}
+
+	private void evictIdleSessions() {
+		long expireTime = System.currentTimeMillis() - sessionTimeoutInMs;
+		int count = 0;
+		for (OnlineMatchingSession session : sessions.values()) {
+			if (session.getLastAccess() < expireTime) {
+				evict(session);
+				count++;
+			}
+		}
+		if (count > 0) {
+			log.info(count + " idle online map matching sessions evicted");
+		}
+	}
+
+	private void evict(OnlineMatchingSession session) {
+		if (sessions.remove(session.getSessionId(), session)) {
+			// a running iteration finishes; following calls create a new session
+			session.close();
+		}
+	}
+
+	public MapMatcherTimerService getMapMatcherTimerService() {
+		return mapMatcherTimerService;
+	}
+
+	public void setMapMatcherTimerService(MapMatcherTimerService mapMatcherTimerService) {
+		this.mapMatcherTimerService = mapMatcherTimerService;
+	}
+
+	public TimedMapMatcherTaskFactory getMapMatcherTaskFactory() {
+		return mapMatcherTaskFactory;
+	}
+
+	public void setMapMatcherTaskFactory(TimedMapMatcherTaskFactory mapMatcherTaskFactory) {
+		this.mapMatcherTaskFactory = mapMatcherTaskFactory;
+	}
+
+	public int getSessionTimeoutInMs() {
+		return sessionTimeoutInMs;
+	}
+
+	public void setSessionTimeoutInMs(int sessionTimeoutInMs) {
+		this.sessionTimeoutInMs = sessionTimeoutInMs;
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+
+	public int getRetainedTrackPoints() {
+		return retainedTrackPoints;
+	}
+
+	/**
+	 * @param retainedTrackPoints number of track points preceding the session's branches which will be kept in the 
+	 * 			session's track; has to be at least the minimum number of track points of the map matcher
+	 */
+	public void setRetainedTrackPoints(int retainedTrackPoints) {
+		this.retainedTrackPoints = retainedTrackPoints;
+	}
+
+	public int getMaxTrackPoints() {
+		return maxTrackPoints;
+	}
+
+	/**
+	 * @param maxTrackPoints maximum number of track points of a session's track; if exceeded, all segments of the best 
+	 * 			branch except the last one will be finalized
+	 */
+	public void setMaxTrackPoints(int maxTrackPoints) {
+		this.maxTrackPoints = maxTrackPoints;
+	}
+
+	public int getEvictionIntervalInMs() {
+		return evictionIntervalInMs;
+	}
+
+	public void setEvictionIntervalInMs(int evictionIntervalInMs) {
+		this.evictionIntervalInMs = evictionIntervalInMs;
+	}
+
+}
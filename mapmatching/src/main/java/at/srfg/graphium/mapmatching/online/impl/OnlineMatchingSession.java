@@ -0,0 +1,143 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.online.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.model.ITrackPoint;
+import at.srfg.graphium.mapmatching.model.impl.TrackImpl;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+
+/**
+ * State of an online map matching session: the graph version pinned on creation, the track and the possible
+ * branches of the last iteration (frontier). Segments already returned as finalized have been removed from the frontier,
+ * so the frontier's branches start with the last certain segment. Track points preceding the frontier can be removed;
+ * track point indices of the session are relative to the first track point not removed yet. Access has to be synchronized 
+ * on the session.
+ */
+class OnlineMatchingSession {
+
+	private final String sessionId;
+	private final IWayGraphVersionMetadata graphMetadata;
+	private final String routingMode;
+	private final ITrack track;
+	private List<IMatchedBranch> branches;
+	private int nrOfRemovedTrackPoints = 0;
+	private volatile long lastAccess;
+	private volatile boolean closed = false;
+	
+	OnlineMatchingSession(String sessionId, IWayGraphVersionMetadata graphMetadata, String routingMode) {
+		this.sessionId = sessionId;
+		this.graphMetadata = graphMetadata;
+		this.routingMode = routingMode;
+		this.track = new TrackImpl();
+		this.track.setTrackPoints(new ArrayList<>());
+		touch();
+	}
+
+	/**
+	 * Appends track points ordered by timestamp; track points not newer than the last track point will be ignored.
+	 * @return number of appended track points
+	 */
+	int appendTrackPoints(List<ITrackPoint> trackPoints) {
+		List<ITrackPoint> points = track.getTrackPoints();
+		if (points.isEmpty() && !trackPoints.isEmpty()) {
+			track.setId(trackPoints.get(0).getTrackId());
+		}
+		int count = 0;
+		for (ITrackPoint trackPoint : trackPoints) {
+			Date lastTimestamp = points.isEmpty() ? null : points.get(points.size() - 1).getTimestamp();
+			if (lastTimestamp == null || trackPoint.getTimestamp() == null || trackPoint.getTimestamp().after(lastTimestamp)) {
+				trackPoint.setTrackId(track.getId());
+				trackPoint.setNumber(points.size());
+				points.add(trackPoint);
+				count++;
+			}
+		}
+		if (count > 0) {
+			track.calculateTrackPointValues();
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the first track points; indices of the frontier's segments have to be shifted by the caller.
+	 */
+	void removeLeadingTrackPoints(int count) {
+		track.getTrackPoints().subList(0, count).clear();
+		// renumbers the remaining track points
+		track.calculateTrackPointValues();
+		nrOfRemovedTrackPoints += count;
+	}
+
+	/**
+	 * @return number of track points removed from the start of the track; to be added to track point indices of the
+	 *         session to get the index of the track point within all track points received by the session
+	 */
+	int getNrOfRemovedTrackPoints() {
+		return nrOfRemovedTrackPoints;
+	}
+
+	void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+	String getSessionId() {
+		return sessionId;
+	}
+
+	IWayGraphVersionMetadata getGraphMetadata() {
+		return graphMetadata;
+	}
+
+	String getRoutingMode() {
+		return routingMode;
+	}
+
+	ITrack getTrack() {
+		return track;
+	}
+
+	/**
+	 * @return branches of the last iteration or null if no branch could be matched yet
+	 */
+	List<IMatchedBranch> getBranches() {
+		return branches;
+	}
+
+	void setBranches(List<IMatchedBranch> branches) {
+		this.branches = branches;
+	}
+
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	void close() {
+		closed = true;
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.statistics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of durations. Durations are counted in buckets whose upper bounds double starting at
+ * one microsecond, so percentiles are approximated by the upper bound of the bucket containing them (at most
+ * twice the exact value). Recording neither locks nor allocates.
+ */
+public class DurationHistogram {
+
+	private static final long FIRST_BUCKET_UPPER_BOUND_NS = 1000;
+	// last bucket's upper bound is about 18 minutes
+	private static final int BUCKETS_COUNT = 31;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNs = new LongAdder();
+	private final LongAccumulator maxNs = new LongAccumulator(Math::max, 0);
+	private final LongAdder[] buckets = new LongAdder[BUCKETS_COUNT];
+
+	public DurationHistogram() {
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long durationInNs) {
+		if (durationInNs < 0) {
+			return;
+		}
+		count.increment();
+		totalNs.add(durationInNs);
+		maxNs.accumulate(durationInNs);
+		buckets[getBucket(durationInNs)].increment();
+	}
+
+	private int getBucket(long durationInNs) {
+		if (durationInNs <= FIRST_BUCKET_UPPER_BOUND_NS) {
+			return 0;
+		}
+		// bucket i holds durations up to FIRST_BUCKET_UPPER_BOUND_NS * 2^i
+		int bucket = 64 - Long.numberOfLeadingZeros((durationInNs - 1) / FIRST_BUCKET_UPPER_BOUND_NS);
+		return Math.min(bucket, BUCKETS_COUNT - 1);
+	}
+
+	private long getUpperBound(int bucket) {
+		return FIRST_BUCKET_UPPER_BOUND_NS << bucket;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNs() {
+		return totalNs.sum();
+	}
+
+	public long getMaxNs() {
+		return maxNs.get();
+	}
+
+	public double getMeanNs() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0 : (double) totalNs.sum() / currentCount;
+	}
+
+	/**
+	 * @param percentile percentile between 0 and 1 (e.g. 0.99)
+	 * @return upper bound of the bucket containing the percentile (but at most the maximum duration) or 0 if no
+	 *         durations have been recorded
+	 */
+	public long getPercentileNs(double percentile) {
+		long[] counts = new long[BUCKETS_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile * total));
+		long cumulated = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			cumulated += counts[i];
+			if (cumulated >= rank) {
+				return Math.min(getUpperBound(i), getMaxNs());
+			}
+		}
+		return getMaxNs();
+	}
+
+	public void reset() {
+		count.reset();
+		totalNs.reset();
+		maxNs.reset();
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+	}
+
+}
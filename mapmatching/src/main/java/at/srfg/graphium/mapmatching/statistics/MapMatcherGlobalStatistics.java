@@ -23,53 +23,189 @@
  */
 package at.srfg.graphium.mapmatching.statistics;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
+ * Thread-safe statistics of all map matching tasks. Besides matched tracks and track points, routes requested
+ * (and found in the route cache), branches created and pruned, cancellations and a {@link DurationHistogram} per
+ * matching stage will be recorded. Stage durations and counters are collected by each task into its
+ * {@link MapMatcherStatistics} and added by {@link #record(MapMatcherStatistics)} once the task has finished.
+ *
+ * If disabled all methods return immediately.
+ *
  * @author mwimmer
  */
 public class MapMatcherGlobalStatistics {
 	
+	public static final String MATCHING = "matching";
+	public static final String INITIAL_MATCHING = "initialMatching";
+	public static final String PATH_EXPANSION = "pathExpansion";
+	public static final String FILTERING = "filtering";
+	public static final String ROUTING = "routing";
+
 	private static final String DELIMITER =";";
 	
-	private int successfullyMatchedTracks = 0;
-	private int notSuccessfullyMatchedTracks = 0;
-	private double aggregatedLengthOfMatchedTracks = 0;
-	private int successfullyMatchedTrackPoints = 0;
-	private int notSuccessfullyMatchedTrackPoints = 0;
+	private volatile boolean enabled = true;
+
+	private final LongAdder successfullyMatchedTracks = new LongAdder();
+	private final LongAdder notSuccessfullyMatchedTracks = new LongAdder();
+	private final DoubleAdder aggregatedLengthOfMatchedTracks = new DoubleAdder();
+	private final LongAdder successfullyMatchedTrackPoints = new LongAdder();
+	private final LongAdder notSuccessfullyMatchedTrackPoints = new LongAdder();
+	private final LongAdder cancellations = new LongAdder();
+	private final LongAdder routesRequested = new LongAdder();
+	private final LongAdder routeCacheHits = new LongAdder();
+	private final LongAdder branchesCreated = new LongAdder();
+	private final LongAdder branchesPruned = new LongAdder();
+	private final Map<String, DurationHistogram> timers;
+
+	public MapMatcherGlobalStatistics() {
+		Map<String, DurationHistogram> stageTimers = new LinkedHashMap<>();
+		stageTimers.put(MATCHING, new DurationHistogram());
+		stageTimers.put(INITIAL_MATCHING, new DurationHistogram());
+		stageTimers.put(PATH_EXPANSION, new DurationHistogram());
+		stageTimers.put(FILTERING, new DurationHistogram());
+		stageTimers.put(ROUTING, new DurationHistogram());
+		timers = Collections.unmodifiableMap(stageTimers);
+	}
 
 	public void init() {
-		successfullyMatchedTracks = 0;
-		notSuccessfullyMatchedTracks = 0;
-		aggregatedLengthOfMatchedTracks = 0;
-		successfullyMatchedTrackPoints = 0;
-		notSuccessfullyMatchedTrackPoints = 0;
+		successfullyMatchedTracks.reset();
+		notSuccessfullyMatchedTracks.reset();
+		aggregatedLengthOfMatchedTracks.reset();
+		successfullyMatchedTrackPoints.reset();
+		notSuccessfullyMatchedTrackPoints.reset();
+		cancellations.reset();
+		routesRequested.reset();
+		routeCacheHits.reset();
+		branchesCreated.reset();
+		branchesPruned.reset();
+		for (DurationHistogram timer : timers.values()) {
+			timer.reset();
+		}
 	}
 	
 	public void incrementSuccess(int trackPoints, double length) {
-		successfullyMatchedTrackPoints++;
-		aggregatedLengthOfMatchedTracks += length;
-		successfullyMatchedTrackPoints += trackPoints;
+		if (!enabled) {
+			return;
+		}
+		successfullyMatchedTracks.increment();
+		aggregatedLengthOfMatchedTracks.add(length);
+		successfullyMatchedTrackPoints.add(trackPoints);
 	}
 	
 	public void incrementNonSuccess(int trackPoints) {
-		notSuccessfullyMatchedTrackPoints++;
-		notSuccessfullyMatchedTrackPoints += trackPoints;
+		if (!enabled) {
+			return;
+		}
+		notSuccessfullyMatchedTracks.increment();
+		notSuccessfullyMatchedTrackPoints.add(trackPoints);
+	}
+
+	public void incrementCancellations() {
+		if (!enabled) {
+			return;
+		}
+		cancellations.increment();
+	}
+
+	/**
+	 * Adds stage durations and counters of a finished (or cancelled) map matching task.
+	 */
+	public void record(MapMatcherStatistics statistics) {
+		if (!enabled) {
+			return;
+		}
+		timers.get(MATCHING).record(statistics.getDuration(MapMatcherStatistics.MATCHING_DURATION));
+		timers.get(INITIAL_MATCHING).record(statistics.getDuration(MapMatcherStatistics.INITIAL_MATCHING_DURATION));
+		timers.get(PATH_EXPANSION).record(statistics.getDuration(MapMatcherStatistics.PATH_EXPANSION_DURATION));
+		timers.get(FILTERING).record(statistics.getDuration(MapMatcherStatistics.FILTERING_DURATION));
+		timers.get(ROUTING).record(statistics.getDuration(MapMatcherStatistics.ROUTING_DURATION));
+		routesRequested.add(statistics.getCount(MapMatcherStatistics.ROUTES_REQUESTED));
+		routeCacheHits.add(statistics.getCount(MapMatcherStatistics.ROUTE_CACHE_HITS));
+		branchesCreated.add(statistics.getCount(MapMatcherStatistics.BRANCHES_CREATED));
+		branchesPruned.add(statistics.getCount(MapMatcherStatistics.BRANCHES_PRUNED));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public long getSuccessfullyMatchedTracks() {
+		return successfullyMatchedTracks.sum();
+	}
+
+	public long getNotSuccessfullyMatchedTracks() {
+		return notSuccessfullyMatchedTracks.sum();
+	}
+
+	public double getAggregatedLengthOfMatchedTracks() {
+		return aggregatedLengthOfMatchedTracks.sum();
+	}
+
+	public long getSuccessfullyMatchedTrackPoints() {
+		return successfullyMatchedTrackPoints.sum();
+	}
+
+	public long getNotSuccessfullyMatchedTrackPoints() {
+		return notSuccessfullyMatchedTrackPoints.sum();
+	}
+
+	public long getCancellations() {
+		return cancellations.sum();
+	}
+
+	public long getRoutesRequested() {
+		return routesRequested.sum();
+	}
+
+	public long getRouteCacheHits() {
+		return routeCacheHits.sum();
+	}
+
+	public long getBranchesCreated() {
+		return branchesCreated.sum();
+	}
+
+	public long getBranchesPruned() {
+		return branchesPruned.sum();
+	}
+
+	/**
+	 * @return duration histogram per stage (see constants)
+	 */
+	public Map<String, DurationHistogram> getTimers() {
+		return timers;
 	}
 
 	@Override
 	public String toString() {
-		return "MapMatcherGlobalStatistics [successfullyMatchedTracks=" + successfullyMatchedTracks
-				+ ", notSuccessfullyMatchedTracks=" + notSuccessfullyMatchedTracks
-				+ ", aggregatedLengthOfMatchedTracks=" + aggregatedLengthOfMatchedTracks
-				+ ", successfullyMatchedTrackPoints=" + successfullyMatchedTrackPoints
-				+ ", notSuccessfullyMatchedTrackPoints=" + notSuccessfullyMatchedTrackPoints + "]";
+		return "MapMatcherGlobalStatistics [successfullyMatchedTracks=" + getSuccessfullyMatchedTracks()
+				+ ", notSuccessfullyMatchedTracks=" + getNotSuccessfullyMatchedTracks()
+				+ ", aggregatedLengthOfMatchedTracks=" + getAggregatedLengthOfMatchedTracks()
+				+ ", successfullyMatchedTrackPoints=" + getSuccessfullyMatchedTrackPoints()
+				+ ", notSuccessfullyMatchedTrackPoints=" + getNotSuccessfullyMatchedTrackPoints()
+				+ ", cancellations=" + getCancellations()
+				+ ", routesRequested=" + getRoutesRequested()
+				+ ", routeCacheHits=" + getRouteCacheHits()
+				+ ", branchesCreated=" + getBranchesCreated()
+				+ ", branchesPruned=" + getBranchesPruned() + "]";
 	}
 	
 	public String toCsv() {
-		return successfullyMatchedTracks + DELIMITER +
-			   successfullyMatchedTrackPoints + DELIMITER +
-			   aggregatedLengthOfMatchedTracks + DELIMITER +
-			   notSuccessfullyMatchedTracks + DELIMITER +
-			   notSuccessfullyMatchedTrackPoints;
+		return getSuccessfullyMatchedTracks() + DELIMITER +
+			   getSuccessfullyMatchedTrackPoints() + DELIMITER +
+			   getAggregatedLengthOfMatchedTracks() + DELIMITER +
+			   getNotSuccessfullyMatchedTracks() + DELIMITER +
+			   getNotSuccessfullyMatchedTrackPoints();
 	}
 	
-}
\ No newline at end of file
+}
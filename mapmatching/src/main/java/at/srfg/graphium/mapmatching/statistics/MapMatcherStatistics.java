@@ -36,6 +36,17 @@ public class MapMatcherStatistics {
 	public static final String AVG_SAMPLING_RATE = "avgSamplingRate";
 	public static final String TRACK_LENGTH = "trackLength";
 	public static final String SHORTEST_PATH_SEARCH_TOTAL_DURATION = "shortestPathSearchTotalDuration";
+	// durations of the matching stages in nanoseconds; routing is triggered by path expansion and filtering,
+	// so its duration is contained in theirs
+	public static final String MATCHING_DURATION = "matchingDuration";
+	public static final String INITIAL_MATCHING_DURATION = "initialMatchingDuration";
+	public static final String PATH_EXPANSION_DURATION = "pathExpansionDuration";
+	public static final String FILTERING_DURATION = "filteringDuration";
+	public static final String ROUTING_DURATION = "routingDuration";
+	public static final String ROUTES_REQUESTED = "routesRequested";
+	public static final String ROUTE_CACHE_HITS = "routeCacheHits";
+	public static final String BRANCHES_CREATED = "branchesCreated";
+	public static final String BRANCHES_PRUNED = "branchesPruned";
 	
 	private static final String DELIMITER = ";";
 	
@@ -61,6 +72,34 @@ public class MapMatcherStatistics {
 		}
 	}
 	
+	/**
+	 * Adds a duration in nanoseconds to the duration stored for the key.
+	 */
+	public void addDuration(String key, long durationInNs) {
+		Object value = statisticsMap.get(key);
+		if (value instanceof Long) {
+			statisticsMap.put(key, (Long) value + durationInNs);
+		} else {
+			statisticsMap.put(key, durationInNs);
+		}
+	}
+	
+	/**
+	 * @return duration in nanoseconds stored for the key or 0
+	 */
+	public long getDuration(String key) {
+		Object value = statisticsMap.get(key);
+		return value instanceof Long ? (Long) value : 0;
+	}
+	
+	/**
+	 * @return value incremented for the key or 0
+	 */
+	public int getCount(String key) {
+		Object value = statisticsMap.get(key);
+		return value instanceof Integer ? (Integer) value : 0;
+	}
+	
 	public Object getValue(String key) {
 		if (statisticsMap.containsKey(key)) {
 			return statisticsMap.get(key);
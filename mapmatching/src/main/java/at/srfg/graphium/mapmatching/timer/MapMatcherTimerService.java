@@ -17,11 +17,12 @@
  */
 package at.srfg.graphium.mapmatching.timer;
 
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Map;
-import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -32,6 +33,10 @@ import org.slf4j.LoggerFactory;
 import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
 
 /**
+ * Cancels map matching tasks whose timeout has expired. For each task a {@link TimeoutGuard} is scheduled on a
+ * single timer thread at the task's expire time; if the task finishes in time its guard will be removed from
+ * the scheduler. Counts completed and timed out tasks.
+ * 
  * @author mwimmer
  *
  */
@@ -39,52 +44,120 @@ public class MapMatcherTimerService {
 	
 	private static Logger log = LoggerFactory.getLogger(MapMatcherTimerService.class);
 	
-	private Map<IMapMatcherTask, Date> mapMatcherTasks;
-	private Timer timer;
-	private TimeoutGuard timeoutGuard;
-	private int delay = 1000;
+	private Map<IMapMatcherTask, TimeoutGuard> mapMatcherTasks;
+	private ScheduledThreadPoolExecutor scheduler;
 	private int expireTime = 3000;
 	
+	private AtomicLong completedTasks = new AtomicLong();
+	private AtomicLong timedOutTasks = new AtomicLong();
+	
 	@PostConstruct
 	public void setup() {
-		timeoutGuard = new TimeoutGuard(this);
-		mapMatcherTasks = new ConcurrentHashMap<IMapMatcherTask, Date>();
-		timer = new Timer();
-		timer.schedule(timeoutGuard, 0, delay);
+		mapMatcherTasks = new ConcurrentHashMap<IMapMatcherTask, TimeoutGuard>();
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "mapmatcher-timeout-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// guards of finished tasks must not stay in the scheduler's queue until their expire time
+		scheduler.setRemoveOnCancelPolicy(true);
 	}
 	
 	@PreDestroy
 	public void shutdown() {
-		timeoutGuard.cancelAllTasks();
+		log.info("Cancelling all map matching tasks...");
+		for (IMapMatcherTask task : mapMatcherTasks.keySet()) {
+			expireMapMatcherTask(task);
+		}
+		scheduler.shutdownNow();
 	}
 
-	public Map<IMapMatcherTask, Date> getMapMatcherTasks() {
-		return mapMatcherTasks;
-	}
-	
+	/**
+	 * Registers a map matching task; the task will be cancelled if it has not been removed within the timeout.
+	 */
 	public void addMapMatcherTask(IMapMatcherTask task, int timeoutInMs) {
 		if (timeoutInMs <= 0) {
 			timeoutInMs = expireTime;
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.add(Calendar.MILLISECOND, timeoutInMs);
-		Date expireTimestamp = cal.getTime();
-		mapMatcherTasks.put(task, expireTimestamp);
+		// register the guard before scheduling it, otherwise a short timeout could expire before the task is known
+		TimeoutGuard guard = new TimeoutGuard(this, task);
+		mapMatcherTasks.put(task, guard);
+		guard.setFuture(scheduler.schedule(guard, timeoutInMs, TimeUnit.MILLISECONDS));
 		
 		if (log.isDebugEnabled()) {
-			log.debug("added map matching task for trackId " + task.getTrack().getId() + " with expireTimestamp " + expireTimestamp);
+			log.debug("added map matching task for trackId " + task.getTrack().getId() + " with timeout of " + timeoutInMs + " ms");
 		}
 	}
+	
+	/**
+	 * Removes a finished map matching task.
+	 */
+	public void removeMapMatcherTask(IMapMatcherTask task) {
+		TimeoutGuard guard = mapMatcherTasks.remove(task);
+		if (guard != null) {
+			// task has not been expired
+			guard.cancel();
+			completedTasks.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Cancels the map matching task if it has not been removed before.
+	 */
+	void expireMapMatcherTask(IMapMatcherTask task) {
+		TimeoutGuard guard = mapMatcherTasks.remove(task);
+		if (guard == null) {
+			// task already finished
+			return;
+		}
+		guard.cancel();
+		timedOutTasks.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Cancelling map matching task for trackId " + task.getTrack().getId());
+			log.debug(mapMatcherTasks.size() + " map matching tasks active");
+		}
+		try {
+			task.cancel();
+		} catch (InterruptedException e) {
+			// cancel() signals the cancellation by throwing an InterruptedException
+		}
+	}
+
+	/**
+	 * @return number of registered map matching tasks neither finished nor timed out
+	 */
+	public int getActiveTasksCount() {
+		return mapMatcherTasks.size();
+	}
+
+	/**
+	 * @return number of map matching tasks finished within their timeout
+	 */
+	public long getCompletedTasksCount() {
+		return completedTasks.get();
+	}
+
+	/**
+	 * @return number of map matching tasks cancelled because of an expired timeout
+	 */
+	public long getTimedOutTasksCount() {
+		return timedOutTasks.get();
+	}
 
+	/**
+	 * @deprecated timeouts are scheduled per task; there is no periodic check anymore
+	 */
+	@Deprecated
 	public int getDelay() {
-		return delay;
+		return 0;
 	}
 
 	/**
-	 * delay for timeout check of map matching tasks in milliseconds
+	 * @deprecated timeouts are scheduled per task; there is no periodic check anymore
 	 */
+	@Deprecated
 	public void setDelay(int delay) {
-		this.delay = delay;
 	}
 
 	public int getExpireTime() {
@@ -98,4 +171,4 @@ public class MapMatcherTimerService {
 		this.expireTime = expireTime;
 	}
 	
-}
\ No newline at end of file
+}
@@ -64,7 +64,7 @@ public class TimedMapMatcherTask implements Callable<List<IMatchedBranch>> {
 	}
 
 	private void evict() {
-		service.getMapMatcherTasks().remove(mapMatcherTask);
+		service.removeMapMatcherTask(mapMatcherTask);
 	}
 
 	@Override
@@ -24,6 +24,7 @@ import at.srfg.graphium.mapmatching.matcher.IMapMatcher;
 import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
 import at.srfg.graphium.mapmatching.model.IMatchedBranch;
 import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.routing.exception.RoutingParameterException;
 
 /**
@@ -65,6 +66,18 @@ public class TimedMapMatcherTaskFactory {
 		return new TimedMapMatcherTask(mapMatcherTask, startSegmentId, previousBranches, timeoutInMs, service);
 	}
 
+	/**
+	 * Creates a map matching task on an already resolved graph version encapsulated within a TimedMapMatcherTask and creates an entry 
+	 * in the MapMatcherTimerService's map.
+	 * @param graphMetadata Graph version the map matching has to be executed on
+	 * @see #getTask(String, String, ITrack, Long, List, int, MapMatcherTimerService, String)
+	 */
+	public TimedMapMatcherTask getTask(IWayGraphVersionMetadata graphMetadata, ITrack track, Long startSegmentId, List<IMatchedBranch> previousBranches, 
+			int timeoutInMs, MapMatcherTimerService service, String routingMode) throws RoutingParameterException {
+		IMapMatcherTask mapMatcherTask = mapMatcher.getTask(graphMetadata, track, routingMode);
+		return new TimedMapMatcherTask(mapMatcherTask, startSegmentId, previousBranches, timeoutInMs, service);
+	}
+
 	public IMapMatcher getMapMatcher() {
 		return mapMatcher;
 	}
@@ -17,55 +17,50 @@
  */
 package at.srfg.graphium.mapmatching.timer;
 
-import java.util.TimerTask;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ScheduledFuture;
 
 import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
 
 /**
+ * Cancels one map matching task when its timeout has expired.
+ * 
  * @author mwimmer
  *
  */
-public class TimeoutGuard extends TimerTask {
+public class TimeoutGuard implements Runnable {
 
-	private static Logger log = LoggerFactory.getLogger(TimeoutGuard.class);
-	
 	private MapMatcherTimerService service;
+	private IMapMatcherTask task;
+	// set after the guard has been registered and scheduled
+	private ScheduledFuture<?> future;
+	private boolean cancelled = false;
 	
-	public TimeoutGuard(MapMatcherTimerService service) {
+	public TimeoutGuard(MapMatcherTimerService service, IMapMatcherTask task) {
 		this.service = service;
+		this.task = task;
 	}
 	
 	@Override
 	public void run() {
-		long now = System.currentTimeMillis();
-		for (IMapMatcherTask task : service.getMapMatcherTasks().keySet()) {
-			if (service.getMapMatcherTasks().get(task).getTime() < now) {
-				if (log.isDebugEnabled()) {
-					log.debug("Cancelling map matching task for trackId " + task.getTrack().getId() 
-							+ " (expired at " + service.getMapMatcherTasks().get(task) + ")");
-					log.info((service.getMapMatcherTasks().keySet().size() - 1) + " map matching tasks active");
-				}
-				try {
-					task.cancel();
-				} catch (InterruptedException e) {
-					
-				}
-			}
+		service.expireMapMatcherTask(task);
+	}
+
+	synchronized void setFuture(ScheduledFuture<?> future) {
+		this.future = future;
+		if (cancelled) {
+			future.cancel(false);
 		}
 	}
-	
-	public void cancelAllTasks() {
-		log.info("Cancelling all map matching tasks...");
-		for (IMapMatcherTask task : service.getMapMatcherTasks().keySet()) {
-			try {
-				task.cancel();
-			} catch (InterruptedException e) {
-				
-			}
+
+	/**
+	 * Removes the guard from the scheduler; a guard cancelled before it has been scheduled will be removed as soon as
+	 * it gets scheduled.
+	 */
+	synchronized void cancel() {
+		cancelled = true;
+		if (future != null) {
+			future.cancel(false);
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -44,7 +44,7 @@ public class SimpleWeightingStrategy implements IWeightingStrategy {
 	@Override
 	public double calculateMatchedFactor(IMatchedBranch branch) {
 		double totalMatchedFactor = 0;
-		for (IMatchedWaySegment seg : branch.getMatchedWaySegments()) {
+		for (IMatchedWaySegment seg : branch.getMatchedWaySegmentsReadOnly()) {
 			if (seg.isStartSegment()) {
 				totalMatchedFactor += seg.getMatchedFactor() * 0.5;
 			} else {
@@ -80,11 +80,11 @@ public class SimpleWeightingStrategy implements IWeightingStrategy {
 		@Override
 		public int compare(IMatchedBranch path1, IMatchedBranch path2) {		
 			int matchedPointsPath1 = (path1.getNrOfTotalTrackPoints() - (
-							(path1.getMatchedWaySegments().get(path1.getMatchedWaySegments().size()-1).getEndPointIndex() -
-							 path1.getMatchedWaySegments().get(0).getStartPointIndex()) - path1.getMatchedPoints()));
+							(path1.getMatchedWaySegmentsReadOnly().get(path1.getMatchedWaySegmentsReadOnly().size()-1).getEndPointIndex() -
+							 path1.getMatchedWaySegmentsReadOnly().get(0).getStartPointIndex()) - path1.getMatchedPoints()));
 			int matchedPointsPath2 = (path2.getNrOfTotalTrackPoints() - (
-							(path2.getMatchedWaySegments().get(path2.getMatchedWaySegments().size()-1).getEndPointIndex() -
-							 path2.getMatchedWaySegments().get(0).getStartPointIndex()) - path2.getMatchedPoints()));
+							(path2.getMatchedWaySegmentsReadOnly().get(path2.getMatchedWaySegmentsReadOnly().size()-1).getEndPointIndex() -
+							 path2.getMatchedWaySegmentsReadOnly().get(0).getStartPointIndex()) - path2.getMatchedPoints()));
 			if (matchedPointsPath1 > matchedPointsPath2) {
 				return -1;
 			} else if (matchedPointsPath1 < matchedPointsPath2) {
@@ -0,0 +1,215 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.controller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.io.adapter.IAdapter;
+import at.srfg.graphium.mapmatching.dto.MatchedBranchDTO;
+import at.srfg.graphium.mapmatching.dto.TrackDTO;
+import at.srfg.graphium.mapmatching.matcher.IBatchMatchingCallback;
+import at.srfg.graphium.mapmatching.matcher.IMapMatchingService;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.model.impl.MatchedBranchImpl;
+import at.srfg.graphium.mapmatching.model.impl.TrackImpl;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+
+public class TestMapMatchingController {
+
+	private static final String GRAPH_NAME = "graph";
+	private static final String VERSION = "1";
+	private static final long FAILING_TRACK_ID = 2;
+
+	private MapMatchingController controller;
+	private IWayGraphVersionMetadata metadata;
+	// number of tracks matched before the batch fails; -1 if the batch does not fail
+	private int failAfterTracks = -1;
+
+	@Before
+	public void setup() {
+		metadata = new WayGraphVersionMetadata();
+		metadata.setGraphName(GRAPH_NAME);
+		metadata.setVersion(VERSION);
+
+		controller = new MapMatchingController();
+		controller.setMapMatchingService(new DummyMapMatchingService());
+		controller.setTrackAdapter(new IAdapter<ITrack, TrackDTO>() {
+			@Override
+			public ITrack adapt(TrackDTO trackDto) {
+				ITrack track = new TrackImpl();
+				track.setId(trackDto.getId());
+				return track;
+			}
+		});
+		IAdapter<MatchedBranchDTO, IMatchedBranch> branchAdapter = new IAdapter<MatchedBranchDTO, IMatchedBranch>() {
+			@Override
+			public MatchedBranchDTO adapt(IMatchedBranch branch) {
+				MatchedBranchDTO branchDto = new MatchedBranchDTO();
+				branchDto.setFinished(true);
+				return branchDto;
+			}
+		};
+		controller.setBranchAdapter(branchAdapter);
+		controller.setVerboseBranchAdapter(branchAdapter);
+	}
+
+	@Test
+	public void testMatchTracks() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.matchTracks(GRAPH_NAME, VERSION, 1000, false, "car",
+				createRequest("[{\"id\":1},{\"id\":2},{\"id\":3}]"), response);
+
+		JsonNode results = new ObjectMapper().readTree(response.getContentAsString());
+		Assert.assertTrue(results.isArray());
+		Assert.assertEquals(3, results.size());
+		for (JsonNode result : results) {
+			if (result.get("trackId").asLong() == FAILING_TRACK_ID) {
+				Assert.assertTrue(result.has("error"));
+				Assert.assertFalse(result.has("branch"));
+			} else {
+				Assert.assertTrue(result.get("branch").get("finished").asBoolean());
+			}
+		}
+	}
+
+	@Test
+	public void testUnknownProperty() throws Exception {
+		// tracks accepted by /matchtrack must not be rejected by the batch endpoint
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.matchTracks(GRAPH_NAME, VERSION, 1000, false, "car",
+				createRequest("[{\"id\":1,\"unknownProperty\":\"ignored\"}]"), response);
+
+		JsonNode results = new ObjectMapper().readTree(response.getContentAsString());
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(1, results.get(0).get("trackId").asLong());
+		Assert.assertTrue(results.get(0).get("branch").get("finished").asBoolean());
+	}
+
+	@Test
+	public void testUnknownGraphVersion() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			controller.matchTracks(GRAPH_NAME, "unknown", 1000, false, "car", createRequest("[{\"id\":1}]"), response);
+			Assert.fail("unknown graph version must be rejected");
+		} catch (GraphNotExistsException e) {
+			// expected
+		}
+		// no output => error response can be sent
+		Assert.assertFalse(response.isCommitted());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void testMalformedRequest() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			controller.matchTracks(GRAPH_NAME, VERSION, 1000, false, "car", createRequest("no tracks"), response);
+			Assert.fail("malformed request must be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertFalse(response.isCommitted());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void testFailureWhileStreaming() throws Exception {
+		failAfterTracks = 1;
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			controller.matchTracks(GRAPH_NAME, VERSION, 1000, false, "car",
+					createRequest("[{\"id\":1},{\"id\":3}]"), response);
+			Assert.fail("failure must be propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// the JSON array must not be closed, otherwise the client could not detect the failure
+		String content = response.getContentAsString().trim();
+		Assert.assertTrue(content.startsWith("[{\"trackId\":1"));
+		Assert.assertFalse(content.endsWith("]"));
+	}
+
+	private MockHttpServletRequest createRequest(String content) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContent(content.getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private class DummyMapMatchingService implements IMapMatchingService {
+
+		@Override
+		public List<IMatchedBranch> matchTrack(String graphName, String graphVersion, ITrack track, Long startSegmentId,
+				List<IMatchedBranch> previousBranches, int timeoutInSecs, boolean onlyBestResult, String routingMode) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int matchTracks(String graphName, String graphVersion, Iterator<ITrack> tracks, int timeoutInMs,
+				boolean onlyBestResult, String routingMode, IBatchMatchingCallback callback) throws GraphNotExistsException {
+			return matchTracks(getGraphVersionMetadata(graphName, graphVersion), tracks, timeoutInMs, onlyBestResult,
+					routingMode, callback);
+		}
+
+		@Override
+		public int matchTracks(IWayGraphVersionMetadata graphMetadata, Iterator<ITrack> tracks, int timeoutInMs,
+				boolean onlyBestResult, String routingMode, IBatchMatchingCallback callback) {
+			Assert.assertSame(metadata, graphMetadata);
+			int count = 0;
+			while (tracks.hasNext()) {
+				if (count == failAfterTracks) {
+					throw new IllegalStateException("batch failed");
+				}
+				ITrack track = tracks.next();
+				if (track.getId() == FAILING_TRACK_ID) {
+					callback.failed(track, new IllegalStateException("track could not be matched"));
+				} else {
+					callback.matched(track, Collections.singletonList(new MatchedBranchImpl(null)));
+				}
+				count++;
+			}
+			return count;
+		}
+
+		@Override
+		public IWayGraphVersionMetadata getGraphVersionMetadata(String graphName, String graphVersion)
+				throws GraphNotExistsException {
+			if (!GRAPH_NAME.equals(graphName) || (graphVersion != null && !VERSION.equals(graphVersion))) {
+				throw new GraphNotExistsException("graph version does not exist", graphName);
+			}
+			return metadata;
+		}
+
+	}
+
+}
@@ -0,0 +1,251 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.matcher.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.mapmatching.matcher.IBatchMatchingCallback;
+import at.srfg.graphium.mapmatching.matcher.IMapMatcher;
+import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.model.impl.MatchedBranchImpl;
+import at.srfg.graphium.mapmatching.model.impl.TrackImpl;
+import at.srfg.graphium.mapmatching.statistics.MapMatcherStatistics;
+import at.srfg.graphium.mapmatching.timer.MapMatcherTimerService;
+import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTaskFactory;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+
+public class TestMapMatchingServiceImpl {
+
+	private static final String GRAPH_NAME = "graph";
+	private static final String VERSION = "1";
+
+	private MapMatchingServiceImpl service;
+	private MapMatcherTimerService timerService;
+	private IWayGraphVersionMetadata metadata;
+	// blocks map matching tasks until counted down
+	private CountDownLatch matchingAllowed = new CountDownLatch(0);
+	private Set<Long> failingTrackIds = new HashSet<>();
+
+	@Before
+	public void setup() {
+		metadata = new WayGraphVersionMetadata();
+		metadata.setGraphName(GRAPH_NAME);
+		metadata.setVersion(VERSION);
+
+		timerService = new MapMatcherTimerService();
+		timerService.setup();
+
+		TimedMapMatcherTaskFactory taskFactory = new TimedMapMatcherTaskFactory();
+		taskFactory.setMapMatcher(createMapMatcher());
+
+		service = new MapMatchingServiceImpl();
+		service.setMapMatcherTimerService(timerService);
+		service.setMapMatcherTaskFactory(taskFactory);
+		service.setBatchThreads(2);
+	}
+
+	@After
+	public void shutdown() {
+		service.shutdown();
+		timerService.shutdown();
+	}
+
+	@Test
+	public void testMatchTracks() throws GraphNotExistsException {
+		failingTrackIds.add(3L);
+		failingTrackIds.add(7L);
+		ResultCollector collector = new ResultCollector();
+
+		int count = service.matchTracks(GRAPH_NAME, VERSION, new TrackIterator(10), 5000, true, "car", collector);
+
+		Assert.assertEquals(10, count);
+		Assert.assertEquals(8, collector.matchedTrackIds.size());
+		Assert.assertEquals(failingTrackIds, collector.failedTrackIds);
+		Set<Long> allTrackIds = new HashSet<>(collector.matchedTrackIds);
+		allTrackIds.addAll(collector.failedTrackIds);
+		Assert.assertEquals(10, allTrackIds.size());
+		Assert.assertEquals(0, timerService.getActiveTasksCount());
+	}
+
+	@Test
+	public void testBackPressure() throws InterruptedException {
+		service.setMaxPendingTracksPerBatch(3);
+		matchingAllowed = new CountDownLatch(1);
+		TrackIterator tracks = new TrackIterator(20);
+		ResultCollector collector = new ResultCollector();
+
+		Thread batchThread = new Thread(() -> service.matchTracks(metadata, tracks, 5000, true, "car", collector));
+		batchThread.start();
+
+		// all pending tracks are blocked => no further tracks must be read
+		Thread.sleep(200);
+		Assert.assertEquals(3, tracks.readTracks.get());
+		Assert.assertTrue(collector.matchedTrackIds.isEmpty());
+
+		matchingAllowed.countDown();
+		batchThread.join(TimeUnit.SECONDS.toMillis(10));
+		Assert.assertFalse(batchThread.isAlive());
+		Assert.assertEquals(20, tracks.readTracks.get());
+		Assert.assertEquals(20, collector.matchedTrackIds.size());
+	}
+
+	@Test
+	public void testUnknownGraphVersion() {
+		TrackIterator tracks = new TrackIterator(5);
+		try {
+			service.matchTracks(GRAPH_NAME, "unknown", tracks, 5000, true, "car", new ResultCollector());
+			Assert.fail("unknown graph version must be rejected");
+		} catch (GraphNotExistsException e) {
+			// expected
+		}
+		// rejected before any track has been read
+		Assert.assertEquals(0, tracks.readTracks.get());
+	}
+
+	private IMapMatcher createMapMatcher() {
+		return (IMapMatcher) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMapMatcher.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("getGraphVersionMetadata")) {
+						if (!GRAPH_NAME.equals(args[0]) || (args[1] != null && !VERSION.equals(args[1]))) {
+							throw new GraphNotExistsException("graph version does not exist", (String) args[0]);
+						}
+						return metadata;
+					} else if (method.getName().equals("getTask") && args[0] == metadata) {
+						return new DummyTask((ITrack) args[1]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private class DummyTask implements IMapMatcherTask {
+
+		private ITrack track;
+
+		private DummyTask(ITrack track) {
+			this.track = track;
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack() {
+			try {
+				matchingAllowed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (failingTrackIds.contains(track.getId())) {
+				throw new IllegalStateException("track " + track.getId() + " failed");
+			}
+			return Collections.singletonList(new MatchedBranchImpl(null));
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(Long startSegmentId) {
+			return matchTrack();
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(List<IMatchedBranch> branches) {
+			return matchTrack();
+		}
+
+		@Override
+		public void cancel() throws InterruptedException {
+		}
+
+		@Override
+		public ITrack getTrack() {
+			return track;
+		}
+
+		@Override
+		public MapMatcherStatistics getStatistics() {
+			return null;
+		}
+
+		@Override
+		public String getGraphName() {
+			return GRAPH_NAME;
+		}
+
+		@Override
+		public String getGraphVersion() {
+			return VERSION;
+		}
+
+	}
+
+	private static class TrackIterator implements Iterator<ITrack> {
+
+		private final int nrOfTracks;
+		private final AtomicInteger readTracks = new AtomicInteger();
+
+		private TrackIterator(int nrOfTracks) {
+			this.nrOfTracks = nrOfTracks;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return readTracks.get() < nrOfTracks;
+		}
+
+		@Override
+		public ITrack next() {
+			ITrack track = new TrackImpl();
+			track.setId(readTracks.getAndIncrement());
+			return track;
+		}
+
+	}
+
+	private static class ResultCollector implements IBatchMatchingCallback {
+
+		private final List<Long> matchedTrackIds = Collections.synchronizedList(new ArrayList<>());
+		private final Set<Long> failedTrackIds = Collections.synchronizedSet(new HashSet<>());
+
+		@Override
+		public void matched(ITrack track, List<IMatchedBranch> branches) {
+			Assert.assertEquals(1, branches.size());
+			matchedTrackIds.add(track.getId());
+		}
+
+		@Override
+		public void failed(ITrack track, Exception e) {
+			failedTrackIds.add(track.getId());
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.model.impl;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+
+public class TestMatchedBranchImpl {
+
+	private static final int SEGMENTS = 100;
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+	private MatchedBranchImpl branch;
+
+	@Before
+	public void setup() {
+		branch = new MatchedBranchImpl(null);
+		for (int i = 0; i < SEGMENTS; i++) {
+			branch.addMatchedWaySegment(createSegment(i));
+		}
+	}
+
+	@Test
+	public void testCloneSharesSegments() throws CloneNotSupportedException {
+		IMatchedBranch clonedBranch = (IMatchedBranch) branch.clone();
+
+		List<IMatchedWaySegment> segments = branch.getMatchedWaySegmentsReadOnly();
+		List<IMatchedWaySegment> clonedSegments = clonedBranch.getMatchedWaySegmentsReadOnly();
+		Assert.assertEquals(SEGMENTS, clonedSegments.size());
+		for (int i = 0; i < SEGMENTS; i++) {
+			Assert.assertSame(segments.get(i), clonedSegments.get(i));
+		}
+		Assert.assertEquals(branch.getNrOfTotalTrackPoints(), clonedBranch.getNrOfTotalTrackPoints());
+		Assert.assertEquals(branch.getMatchedPoints(), clonedBranch.getMatchedPoints());
+
+		try {
+			clonedSegments.add(createSegment(SEGMENTS));
+			Assert.fail("read-only segments must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testModifiedSegmentsAreIsolated() throws CloneNotSupportedException {
+		IMatchedWaySegment lastSegment = branch.getMatchedWaySegmentsReadOnly().get(SEGMENTS - 1);
+		IMatchedBranch clonedBranch = (IMatchedBranch) branch.clone();
+
+		// accessing a segment for modification clones it
+		IMatchedWaySegment clonedLastSegment = clonedBranch.getMatchedWaySegments().get(SEGMENTS - 1);
+		Assert.assertNotSame(lastSegment, clonedLastSegment);
+		Assert.assertSame(clonedLastSegment, clonedBranch.getMatchedWaySegments().get(SEGMENTS - 1));
+		clonedLastSegment.setEndPointIndex(SEGMENTS * 2 + 5);
+		Assert.assertEquals(SEGMENTS * 2, lastSegment.getEndPointIndex());
+
+		// untouched segments are still shared
+		Assert.assertSame(branch.getMatchedWaySegmentsReadOnly().get(SEGMENTS - 2),
+				clonedBranch.getMatchedWaySegmentsReadOnly().get(SEGMENTS - 2));
+
+		// the source branch does not own its segments anymore either
+		IMatchedWaySegment firstSegment = branch.getMatchedWaySegmentsReadOnly().get(0);
+		branch.getMatchedWaySegments().get(0).setStartSegment(false);
+		Assert.assertTrue(firstSegment.isStartSegment());
+		Assert.assertTrue(clonedBranch.getMatchedWaySegmentsReadOnly().get(0).isStartSegment());
+	}
+
+	@Test
+	public void testStructuralModificationsAreIsolated() throws CloneNotSupportedException {
+		IMatchedBranch clonedBranch = (IMatchedBranch) branch.clone();
+		IMatchedBranch secondClonedBranch = (IMatchedBranch) branch.clone();
+
+		IMatchedWaySegment newSegment = createSegment(SEGMENTS);
+		clonedBranch.addMatchedWaySegment(newSegment);
+		clonedBranch.getMatchedWaySegments().remove(0);
+		secondClonedBranch.removeLastMatchedWaySegment();
+
+		Assert.assertEquals(SEGMENTS, branch.getMatchedWaySegmentsReadOnly().size());
+		Assert.assertEquals(SEGMENTS, clonedBranch.getMatchedWaySegmentsReadOnly().size());
+		Assert.assertEquals(SEGMENTS - 1, secondClonedBranch.getMatchedWaySegmentsReadOnly().size());
+		Assert.assertSame(newSegment, clonedBranch.getMatchedWaySegments().get(SEGMENTS - 1));
+		Assert.assertEquals(1, clonedBranch.getMatchedWaySegmentsReadOnly().get(0).getId());
+		Assert.assertEquals(0, branch.getMatchedWaySegmentsReadOnly().get(0).getId());
+		Assert.assertEquals(SEGMENTS * 2, branch.getNrOfTotalTrackPoints());
+		Assert.assertEquals((SEGMENTS - 1) * 2, secondClonedBranch.getNrOfTotalTrackPoints());
+	}
+
+	private IMatchedWaySegment createSegment(int index) {
+		IWaySegment segment = new WaySegment();
+		segment.setId(index);
+		segment.setGeometry(factory.createLineString(new Coordinate[] {
+				new Coordinate(index, 0), new Coordinate(index + 1, 0)}));
+		segment.setLength(100);
+		IMatchedWaySegment matchedSegment = new MatchedWaySegmentImpl(segment, index == 0);
+		matchedSegment.setStartPointIndex(index * 2);
+		matchedSegment.setEndPointIndex(index * 2 + 2);
+		return matchedSegment;
+	}
+
+}
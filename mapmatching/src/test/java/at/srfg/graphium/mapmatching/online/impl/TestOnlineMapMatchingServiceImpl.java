@@ -0,0 +1,371 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.online.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.core.exception.GraphNotExistsException;
+import at.srfg.graphium.mapmatching.matcher.IMapMatcher;
+import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.IMatchedWaySegment;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.model.ITrackPoint;
+import at.srfg.graphium.mapmatching.model.impl.MatchedBranchImpl;
+import at.srfg.graphium.mapmatching.model.impl.MatchedWaySegmentImpl;
+import at.srfg.graphium.mapmatching.model.impl.TrackPointImpl;
+import at.srfg.graphium.mapmatching.online.OnlineMatchingResult;
+import at.srfg.graphium.mapmatching.statistics.MapMatcherStatistics;
+import at.srfg.graphium.mapmatching.timer.MapMatcherTimerService;
+import at.srfg.graphium.mapmatching.timer.TimedMapMatcherTaskFactory;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+
+/**
+ * Tests online map matching sessions with a map matcher which matches track points along a straight line; each segment
+ * covers {@link #POINTS_PER_SEGMENT} track points, all segments except the last two are certain by default.
+ */
+public class TestOnlineMapMatchingServiceImpl {
+
+	private static final String GRAPH_NAME = "graph";
+	private static final String VERSION = "1";
+	private static final String SESSION_ID = "vehicle";
+	private static final int POINTS_PER_SEGMENT = 4;
+	private static final double POINT_DISTANCE = 0.0001;
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+	private OnlineMapMatchingServiceImpl service;
+	private MapMatcherTimerService timerService;
+	private IWayGraphVersionMetadata metadata;
+	// number of segments at the end of each branch which are not certain
+	private int uncertainSegments = 2;
+	private List<MatchingCall> matchingCalls = new ArrayList<>();
+
+	@Before
+	public void setup() {
+		metadata = new WayGraphVersionMetadata();
+		metadata.setGraphName(GRAPH_NAME);
+		metadata.setVersion(VERSION);
+
+		timerService = new MapMatcherTimerService();
+		timerService.setup();
+
+		TimedMapMatcherTaskFactory taskFactory = new TimedMapMatcherTaskFactory();
+		taskFactory.setMapMatcher(createMapMatcher());
+
+		service = new OnlineMapMatchingServiceImpl();
+		service.setMapMatcherTimerService(timerService);
+		service.setMapMatcherTaskFactory(taskFactory);
+		service.setRetainedTrackPoints(5);
+	}
+
+	@After
+	public void shutdown() {
+		service.shutdown();
+		timerService.shutdown();
+	}
+
+	@Test
+	public void testIncrementalMatching() throws Exception {
+		service.setup();
+		List<IMatchedWaySegment> finalizedSegments = new ArrayList<>();
+
+		OnlineMatchingResult result = service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		Assert.assertEquals(SESSION_ID, result.getSessionId());
+		Assert.assertEquals(1, service.getNrOfSessions());
+		Assert.assertFalse(matchingCalls.get(0).iterative);
+		Assert.assertEquals(0, matchingCalls.get(0).firstMatchedIndex);
+		finalizedSegments.addAll(result.getFinalizedSegments());
+
+		for (int i = 10; i < 100; i += 10) {
+			result = service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(i, i + 10), 1000, "car");
+			finalizedSegments.addAll(result.getFinalizedSegments());
+			assertSegments(result.getCurrentBranch().getMatchedWaySegmentsReadOnly(), finalizedSegments.size(), i + 10);
+		}
+
+		// each iteration continues the branch of the previous one and only matches the new track points
+		Assert.assertEquals(10, matchingCalls.size());
+		for (int i = 1; i < matchingCalls.size(); i++) {
+			MatchingCall call = matchingCalls.get(i);
+			Assert.assertTrue(call.iterative);
+			Assert.assertEquals(i * 10, call.firstMatchedAbsoluteIndex);
+		}
+
+		// track points preceding the branches have been removed
+		MatchingCall lastCall = matchingCalls.get(matchingCalls.size() - 1);
+		Assert.assertTrue("track points have not been removed: " + lastCall.nrOfTrackPoints, lastCall.nrOfTrackPoints < 40);
+
+		// finalized segments are returned once in order and with indices of all received track points
+		assertSegments(finalizedSegments, 0, 100);
+		List<IMatchedWaySegment> remainingSegments = service.closeSession(SESSION_ID).getFinalizedSegments();
+		assertSegments(remainingSegments, finalizedSegments.size(), 100);
+		Assert.assertEquals(100 / POINTS_PER_SEGMENT, finalizedSegments.size() + remainingSegments.size());
+		Assert.assertEquals(0, service.getNrOfSessions());
+	}
+
+	@Test
+	public void testOutdatedTrackPointsAreIgnored() throws Exception {
+		service.setup();
+		service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+
+		OnlineMatchingResult result = service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(5, 10), 1000, "car");
+
+		Assert.assertEquals(1, matchingCalls.size());
+		Assert.assertTrue(result.getFinalizedSegments().isEmpty());
+		assertSegments(result.getCurrentBranch().getMatchedWaySegmentsReadOnly(), 0, 10);
+	}
+
+	@Test
+	public void testMaxTrackPoints() throws Exception {
+		service.setMaxTrackPoints(30);
+		service.setup();
+		uncertainSegments = Integer.MAX_VALUE;
+		List<IMatchedWaySegment> finalizedSegments = new ArrayList<>();
+
+		for (int i = 0; i < 100; i += 10) {
+			OnlineMatchingResult result = service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(i, i + 10), 1000, "car");
+			finalizedSegments.addAll(result.getFinalizedSegments());
+		}
+
+		// no segment becomes certain, but the session's track must not exceed the maximum number of track points
+		Assert.assertFalse(finalizedSegments.isEmpty());
+		assertSegments(finalizedSegments, 0, 100);
+		for (MatchingCall call : matchingCalls) {
+			Assert.assertTrue(call.nrOfTrackPoints <= 30 + 10);
+		}
+	}
+
+	@Test
+	public void testCloseSession() throws Exception {
+		service.setup();
+		Assert.assertNull(service.closeSession(SESSION_ID));
+
+		service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		OnlineMatchingResult result = service.closeSession(SESSION_ID);
+		Assert.assertNull(result.getCurrentBranch());
+		assertSegments(result.getFinalizedSegments(), 0, 10);
+		Assert.assertNull(service.closeSession(SESSION_ID));
+
+		// a new session starts with an empty track
+		service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(10, 20), 1000, "car");
+		Assert.assertFalse(matchingCalls.get(1).iterative);
+		Assert.assertEquals(10, matchingCalls.get(1).nrOfTrackPoints);
+	}
+
+	@Test
+	public void testExpiredSessionsAreEvicted() throws Exception {
+		service.setSessionTimeoutInMs(100);
+		service.setEvictionIntervalInMs(20);
+		service.setup();
+
+		service.matchTrackPoints(SESSION_ID, GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		service.matchTrackPoints("other", GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		Assert.assertEquals(2, service.getNrOfSessions());
+
+		// keep one session alive
+		for (int i = 0; i < 10; i++) {
+			Thread.sleep(30);
+			service.matchTrackPoints("other", GRAPH_NAME, null, new ArrayList<>(), 1000, "car");
+		}
+		Assert.assertEquals(1, service.getNrOfSessions());
+		Assert.assertNull(service.closeSession(SESSION_ID));
+		Assert.assertNotNull(service.closeSession("other"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedSessionIsEvicted() throws Exception {
+		service.setMaxSessions(2);
+		service.setup();
+
+		service.matchTrackPoints("first", GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		Thread.sleep(5);
+		service.matchTrackPoints("second", GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+		Thread.sleep(5);
+		service.matchTrackPoints("first", GRAPH_NAME, null, createTrackPoints(10, 20), 1000, "car");
+		Thread.sleep(5);
+		service.matchTrackPoints("third", GRAPH_NAME, null, createTrackPoints(0, 10), 1000, "car");
+
+		Assert.assertEquals(2, service.getNrOfSessions());
+		Assert.assertNull(service.closeSession("second"));
+		Assert.assertNotNull(service.closeSession("first"));
+		Assert.assertNotNull(service.closeSession("third"));
+	}
+
+	@Test(expected = GraphNotExistsException.class)
+	public void testUnknownGraph() throws Exception {
+		service.setup();
+		service.matchTrackPoints(SESSION_ID, "unknown", null, createTrackPoints(0, 10), 1000, "car");
+	}
+
+	/**
+	 * Asserts that the segments follow each other starting with the given segment and cover the track points of the
+	 * segments along the line.
+	 */
+	private void assertSegments(List<IMatchedWaySegment> segments, int firstSegment, int nrOfTrackPoints) {
+		for (int i = 0; i < segments.size(); i++) {
+			IMatchedWaySegment segment = segments.get(i);
+			Assert.assertEquals(firstSegment + i, segment.getId());
+			Assert.assertEquals(segment.getId() * POINTS_PER_SEGMENT, segment.getStartPointIndex());
+			Assert.assertEquals(Math.min((segment.getId() + 1) * POINTS_PER_SEGMENT, nrOfTrackPoints), segment.getEndPointIndex());
+		}
+	}
+
+	private List<ITrackPoint> createTrackPoints(int from, int to) {
+		List<ITrackPoint> trackPoints = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			ITrackPoint trackPoint = new TrackPointImpl();
+			trackPoint.setId(i);
+			trackPoint.setTimestamp(new Date(1000000L + i * 1000L));
+			trackPoint.setPoint(factory.createPoint(new Coordinate(13 + i * POINT_DISTANCE, 47)));
+			trackPoints.add(trackPoint);
+		}
+		return trackPoints;
+	}
+
+	private int getAbsoluteIndex(ITrackPoint trackPoint) {
+		return (int) Math.round((trackPoint.getPoint().getX() - 13) / POINT_DISTANCE);
+	}
+
+	private IMapMatcher createMapMatcher() {
+		return (IMapMatcher) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMapMatcher.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("getGraphVersionMetadata")) {
+						if (!GRAPH_NAME.equals(args[0])) {
+							throw new GraphNotExistsException("graph does not exist", (String) args[0]);
+						}
+						return metadata;
+					} else if (method.getName().equals("getTask") && args[0] == metadata) {
+						return new LineMatcherTask((ITrack) args[1]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private static class MatchingCall {
+		private boolean iterative;
+		private int nrOfTrackPoints;
+		private int firstMatchedIndex;
+		private int firstMatchedAbsoluteIndex;
+	}
+
+	private class LineMatcherTask implements IMapMatcherTask {
+
+		private ITrack track;
+
+		private LineMatcherTask(ITrack track) {
+			this.track = track;
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack() {
+			return match(new MatchedBranchImpl(null), false);
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(Long startSegmentId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(List<IMatchedBranch> branches) {
+			return match(branches.get(0), true);
+		}
+
+		private List<IMatchedBranch> match(IMatchedBranch branch, boolean iterative) {
+			List<ITrackPoint> trackPoints = track.getTrackPoints();
+			MatchingCall call = new MatchingCall();
+			call.iterative = iterative;
+			call.nrOfTrackPoints = trackPoints.size();
+			call.firstMatchedIndex = branch.getNrOfTotalTrackPoints();
+			call.firstMatchedAbsoluteIndex = getAbsoluteIndex(trackPoints.get(call.firstMatchedIndex));
+			matchingCalls.add(call);
+
+			List<IMatchedWaySegment> segments = branch.getMatchedWaySegments();
+			for (int i = call.firstMatchedIndex; i < trackPoints.size(); i++) {
+				long segmentId = getAbsoluteIndex(trackPoints.get(i)) / POINTS_PER_SEGMENT;
+				if (!segments.isEmpty() && segments.get(segments.size() - 1).getId() == segmentId) {
+					IMatchedWaySegment lastSegment = segments.get(segments.size() - 1);
+					Assert.assertEquals(i, lastSegment.getEndPointIndex());
+					lastSegment.setEndPointIndex(i + 1);
+				} else {
+					branch.addMatchedWaySegment(createSegment(segmentId, i));
+				}
+			}
+			for (int i = 0; i < segments.size(); i++) {
+				segments.get(i).setCertain(i < segments.size() - uncertainSegments);
+			}
+			branch.recalculate();
+
+			List<IMatchedBranch> branches = new ArrayList<>();
+			branches.add(branch);
+			return branches;
+		}
+
+		private IMatchedWaySegment createSegment(long segmentId, int startPointIndex) {
+			IWaySegment segment = new WaySegment();
+			segment.setId(segmentId);
+			segment.setGeometry(factory.createLineString(new Coordinate[] {
+					new Coordinate(13 + segmentId * POINTS_PER_SEGMENT * POINT_DISTANCE, 47),
+					new Coordinate(13 + (segmentId + 1) * POINTS_PER_SEGMENT * POINT_DISTANCE, 47)}));
+			IMatchedWaySegment matchedSegment = new MatchedWaySegmentImpl(segment, segmentId == 0);
+			matchedSegment.setStartPointIndex(startPointIndex);
+			matchedSegment.setEndPointIndex(startPointIndex + 1);
+			return matchedSegment;
+		}
+
+		@Override
+		public void cancel() throws InterruptedException {
+		}
+
+		@Override
+		public ITrack getTrack() {
+			return track;
+		}
+
+		@Override
+		public MapMatcherStatistics getStatistics() {
+			return null;
+		}
+
+		@Override
+		public String getGraphName() {
+			return GRAPH_NAME;
+		}
+
+		@Override
+		public String getGraphVersion() {
+			return VERSION;
+		}
+
+	}
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMapMatcherGlobalStatistics {
+
+	@Test
+	public void testRecord() {
+		MapMatcherGlobalStatistics globalStatistics = new MapMatcherGlobalStatistics();
+		MapMatcherStatistics statistics = new MapMatcherStatistics();
+		statistics.addDuration(MapMatcherStatistics.MATCHING_DURATION, 5000000);
+		statistics.addDuration(MapMatcherStatistics.ROUTING_DURATION, 1000000);
+		statistics.addDuration(MapMatcherStatistics.ROUTING_DURATION, 2000000);
+		statistics.incrementValue(MapMatcherStatistics.ROUTES_REQUESTED, 3);
+		statistics.incrementValue(MapMatcherStatistics.ROUTE_CACHE_HITS);
+		statistics.incrementValue(MapMatcherStatistics.BRANCHES_PRUNED, 7);
+
+		globalStatistics.incrementSuccess(100, 1500.5);
+		globalStatistics.incrementNonSuccess(20);
+		globalStatistics.record(statistics);
+
+		Assert.assertEquals(1, globalStatistics.getSuccessfullyMatchedTracks());
+		Assert.assertEquals(100, globalStatistics.getSuccessfullyMatchedTrackPoints());
+		Assert.assertEquals(1, globalStatistics.getNotSuccessfullyMatchedTracks());
+		Assert.assertEquals(20, globalStatistics.getNotSuccessfullyMatchedTrackPoints());
+		Assert.assertEquals(1500.5, globalStatistics.getAggregatedLengthOfMatchedTracks(), 0.0001);
+		Assert.assertEquals(3, globalStatistics.getRoutesRequested());
+		Assert.assertEquals(1, globalStatistics.getRouteCacheHits());
+		Assert.assertEquals(0, globalStatistics.getBranchesCreated());
+		Assert.assertEquals(7, globalStatistics.getBranchesPruned());
+		Assert.assertEquals(3000000, globalStatistics.getTimers().get(MapMatcherGlobalStatistics.ROUTING).getTotalNs());
+		Assert.assertEquals(5000000, globalStatistics.getTimers().get(MapMatcherGlobalStatistics.MATCHING).getMaxNs());
+
+		globalStatistics.init();
+		Assert.assertEquals(0, globalStatistics.getSuccessfullyMatchedTracks());
+		Assert.assertEquals(0, globalStatistics.getTimers().get(MapMatcherGlobalStatistics.MATCHING).getCount());
+	}
+
+	@Test
+	public void testDisabled() {
+		MapMatcherGlobalStatistics globalStatistics = new MapMatcherGlobalStatistics();
+		globalStatistics.setEnabled(false);
+		globalStatistics.incrementSuccess(100, 1500.5);
+		globalStatistics.incrementCancellations();
+		globalStatistics.record(new MapMatcherStatistics());
+
+		Assert.assertEquals(0, globalStatistics.getSuccessfullyMatchedTracks());
+		Assert.assertEquals(0, globalStatistics.getCancellations());
+		Assert.assertEquals(0, globalStatistics.getTimers().get(MapMatcherGlobalStatistics.MATCHING).getCount());
+	}
+
+	@Test
+	public void testPercentiles() {
+		DurationHistogram histogram = new DurationHistogram();
+		Assert.assertEquals(0, histogram.getPercentileNs(0.5));
+
+		// 1 ms to 100 ms
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000L);
+		}
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(50.5 * 1000000, histogram.getMeanNs(), 0.0001);
+		Assert.assertEquals(100000000, histogram.getMaxNs());
+
+		// percentiles are approximated by the upper bound of their bucket
+		long p50 = histogram.getPercentileNs(0.5);
+		Assert.assertTrue(p50 >= 50000000 && p50 <= 100000000);
+		long p99 = histogram.getPercentileNs(0.99);
+		Assert.assertTrue(p99 >= 99000000 && p99 <= 100000000);
+		Assert.assertEquals(1024000, histogram.getPercentileNs(0.01));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final DurationHistogram histogram = new DurationHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					histogram.record(1000);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(40000, histogram.getCount());
+		Assert.assertEquals(40000000, histogram.getTotalNs());
+		Assert.assertEquals(1000, histogram.getPercentileNs(1));
+	}
+
+}
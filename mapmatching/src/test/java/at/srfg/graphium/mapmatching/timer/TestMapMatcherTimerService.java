@@ -0,0 +1,145 @@
+/**
+ * Graphium Neo4j - Map Matching module of Graphium
+ * Copyright © 2017 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.mapmatching.timer;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.srfg.graphium.mapmatching.matcher.IMapMatcherTask;
+import at.srfg.graphium.mapmatching.model.IMatchedBranch;
+import at.srfg.graphium.mapmatching.model.ITrack;
+import at.srfg.graphium.mapmatching.statistics.MapMatcherStatistics;
+
+public class TestMapMatcherTimerService {
+
+	private MapMatcherTimerService service;
+
+	@Before
+	public void setup() {
+		service = new MapMatcherTimerService();
+		service.setup();
+	}
+
+	@After
+	public void shutdown() {
+		service.shutdown();
+	}
+
+	@Test
+	public void testTimeout() throws InterruptedException {
+		DummyTask task = new DummyTask();
+		long startTime = System.nanoTime();
+		service.addMapMatcherTask(task, 50);
+
+		Assert.assertTrue(task.cancelled.await(5, TimeUnit.SECONDS));
+		long elapsedMs = (System.nanoTime() - startTime) / 1000000;
+		// cancelled after the timeout and not only with the next periodic check
+		Assert.assertTrue(elapsedMs >= 50);
+		Assert.assertTrue(elapsedMs < 500);
+		Assert.assertEquals(1, service.getTimedOutTasksCount());
+		Assert.assertEquals(0, service.getCompletedTasksCount());
+		Assert.assertEquals(0, service.getActiveTasksCount());
+
+		// removing a timed out task does not count as completed
+		service.removeMapMatcherTask(task);
+		Assert.assertEquals(0, service.getCompletedTasksCount());
+	}
+
+	@Test
+	public void testCompleted() throws InterruptedException {
+		DummyTask task = new DummyTask();
+		service.addMapMatcherTask(task, 100);
+		Assert.assertEquals(1, service.getActiveTasksCount());
+		service.removeMapMatcherTask(task);
+
+		Assert.assertFalse(task.cancelled.await(300, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, service.getCompletedTasksCount());
+		Assert.assertEquals(0, service.getTimedOutTasksCount());
+		Assert.assertEquals(0, service.getActiveTasksCount());
+	}
+
+	@Test
+	public void testShortTimeouts() throws InterruptedException {
+		int nrOfTasks = 1000;
+		DummyTask[] tasks = new DummyTask[nrOfTasks];
+		for (int i = 0; i < nrOfTasks; i++) {
+			tasks[i] = new DummyTask();
+			// guards could expire while registering the task
+			service.addMapMatcherTask(tasks[i], 1);
+		}
+		for (DummyTask task : tasks) {
+			Assert.assertTrue(task.cancelled.await(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(nrOfTasks, service.getTimedOutTasksCount());
+		Assert.assertEquals(0, service.getActiveTasksCount());
+	}
+
+	private static class DummyTask implements IMapMatcherTask {
+
+		private CountDownLatch cancelled = new CountDownLatch(1);
+
+		@Override
+		public List<IMatchedBranch> matchTrack() {
+			return null;
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(Long startSegmentId) {
+			return null;
+		}
+
+		@Override
+		public List<IMatchedBranch> matchTrack(List<IMatchedBranch> branches) {
+			return null;
+		}
+
+		@Override
+		public void cancel() throws InterruptedException {
+			cancelled.countDown();
+			throw new InterruptedException();
+		}
+
+		@Override
+		public ITrack getTrack() {
+			return null;
+		}
+
+		@Override
+		public MapMatcherStatistics getStatistics() {
+			return null;
+		}
+
+		@Override
+		public String getGraphName() {
+			return null;
+		}
+
+		@Override
+		public String getGraphVersion() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.model;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.ParseException;
+
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.OneWay;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.neo4j.persistence.nodemapper.utils.Neo4jTagMappingUtils;
+
+/**
+ * Way segment mapped from a segment node whose expensive attributes (geometry, tags and access types) will be decoded
+ * on their first access. The geometry will be taken from the segments cache if available, otherwise it will be parsed
+ * from the node's WKB property. Only the raw values needed for decoding are kept (the WKB only if the segment is not
+ * cached), so the segment can be accessed after the transaction has been closed. Clones share the raw values and decode
+ * on their own.
+ */
+public class LazyWaySegment extends WaySegment {
+
+	private static Logger log = LoggerFactory.getLogger(LazyWaySegment.class);
+
+	// raw values of the node's properties; released as soon as they have been decoded
+	private byte[] wkb;
+	private Map<String, Object> tagProperties;
+	private byte[] accessTow;
+	private byte[] accessBkw;
+	private GraphSegmentsCacheEntry segmentsCache;
+	private int cacheIndex;
+	private boolean geometryDecoded;
+	private boolean tagsDecoded;
+	private boolean accessDecoded;
+
+	/**
+	 * @param wkb node's geometry property; only needed if the segment is not cached
+	 * @param tagProperties node's tag properties (including their prefix); optional
+	 * @param accessTow node's access property in direction of the geometry; optional
+	 * @param accessBkw node's access property against the direction of the geometry; optional
+	 * @param segmentsCache segments cache containing the segment's geometry at cacheIndex; optional
+	 */
+	public LazyWaySegment(byte[] wkb, Map<String, Object> tagProperties, byte[] accessTow, byte[] accessBkw,
+			GraphSegmentsCacheEntry segmentsCache, int cacheIndex) {
+		this.wkb = wkb;
+		this.tagProperties = tagProperties;
+		this.accessTow = accessTow;
+		this.accessBkw = accessBkw;
+		this.segmentsCache = segmentsCache;
+		this.cacheIndex = cacheIndex;
+	}
+
+	@Override
+	public LineString getGeometry() {
+		if (!geometryDecoded) {
+			decodeGeometry();
+		}
+		return super.getGeometry();
+	}
+
+	@Override
+	public void setGeometry(LineString geometry) {
+		geometryDecoded = true;
+		segmentsCache = null;
+		wkb = null;
+		super.setGeometry(geometry);
+	}
+
+	@Override
+	public Map<String, String> getTags() {
+		if (!tagsDecoded) {
+			decodeTags();
+		}
+		return super.getTags();
+	}
+
+	@Override
+	public void setTags(Map<String, String> tags) {
+		tagsDecoded = true;
+		tagProperties = null;
+		super.setTags(tags);
+	}
+
+	@Override
+	public Set<Access> getAccessTow() {
+		if (!accessDecoded) {
+			decodeAccess();
+		}
+		return super.getAccessTow();
+	}
+
+	@Override
+	public void setAccessTow(Set<Access> accessTow) {
+		if (!accessDecoded) {
+			decodeAccess();
+		}
+		super.setAccessTow(accessTow);
+	}
+
+	@Override
+	public Set<Access> getAccessBkw() {
+		if (!accessDecoded) {
+			decodeAccess();
+		}
+		return super.getAccessBkw();
+	}
+
+	@Override
+	public void setAccessBkw(Set<Access> accessBkw) {
+		if (!accessDecoded) {
+			decodeAccess();
+		}
+		super.setAccessBkw(accessBkw);
+	}
+
+	@Override
+	public OneWay isOneway() {
+		// derived from the access types
+		if (!accessDecoded) {
+			decodeAccess();
+		}
+		return super.isOneway();
+	}
+
+	@Override
+	public String toString() {
+		getGeometry();
+		getTags();
+		getAccessTow();
+		return super.toString();
+	}
+
+	private void decodeGeometry() {
+		LineString geometry = null;
+		if (segmentsCache != null) {
+			geometry = segmentsCache.getGeometry(cacheIndex);
+		}
+		if (geometry == null && wkb != null) {
+			try {
+				geometry = Neo4jWaySegmentHelperImpl.encodeLineString(wkb);
+			} catch (ParseException e) {
+				log.error("Could not parse geometry", e);
+			}
+		}
+		geometryDecoded = true;
+		segmentsCache = null;
+		wkb = null;
+		if (geometry != null) {
+			super.setGeometry(geometry);
+		}
+	}
+
+	private void decodeTags() {
+		tagsDecoded = true;
+		if (tagProperties != null) {
+			super.setTags(Neo4jTagMappingUtils.mapTagProperties(tagProperties));
+			tagProperties = null;
+		}
+	}
+
+	private void decodeAccess() {
+		accessDecoded = true;
+		if (accessTow != null) {
+			super.setAccessTow(Neo4jWaySegmentHelperImpl.parseAccessTypes(accessTow));
+			accessTow = null;
+		}
+		if (accessBkw != null) {
+			super.setAccessBkw(Neo4jWaySegmentHelperImpl.parseAccessTypes(accessBkw));
+			accessBkw = null;
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.model;
+
+import java.util.Map;
+
+import at.srfg.graphium.model.IWaySegment;
+
+/**
+ * Way segment whose node properties have been mapped (incl. encoded geometry) before it will be saved.
+ */
+public class PreparedWaySegment {
+
+	private final IWaySegment segment;
+	private final Map<String, Object> nodeProperties;
+
+	public PreparedWaySegment(IWaySegment segment, Map<String, Object> nodeProperties) {
+		this.segment = segment;
+		this.nodeProperties = nodeProperties;
+	}
+
+	public IWaySegment getSegment() {
+		return segment;
+	}
+
+	public Map<String, Object> getNodeProperties() {
+		return nodeProperties;
+	}
+
+}
@@ -69,6 +69,12 @@ public class WayGraphConstants {
 	
 	public static final String CONNECTION_ACCESS = "access";
 	public static final String CONNECTION_NODE_ID = "node_id";
+	// precomputed on import to avoid parsing access arrays while routing
+	public static final String CONNECTION_ACCESS_BITMASK = "access_bitmask";
+	// precomputed on import: flags of connected segments whose start node is the connection's node
+	public static final String CONNECTION_DIRECTION = "direction";
+	public static final byte CONNECTION_DIRECTION_FROM_STARTNODE = 1;
+	public static final byte CONNECTION_DIRECTION_TO_STARTNODE = 2;
 	
 	public static final String METADATA_GRAPHNAME = "meta_graphname";
 	public static final String METADATA_GRAPHVERSIONNAME = "meta_graphversionname";
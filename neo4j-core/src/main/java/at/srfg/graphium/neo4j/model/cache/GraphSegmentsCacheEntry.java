@@ -17,58 +17,315 @@
  */
 package at.srfg.graphium.neo4j.model.cache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
 
 import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 
 /**
+ * Columnar segment cache of one graph version. Segment attributes are held in parallel primitive arrays,
+ * geometries are packed into one coordinate array (x0, y0, x1, y1, ...). Segments can be looked up by
+ * their segment ID or by the ID of their Neo4j node; both lookups resolve to the same row index, so each
+ * segment is stored only once.
+ *
+ * Entries are added while building the cache; after {@link #trimToSize()} has been called the cache
+ * is read-only and can be accessed concurrently.
+ *
  * @author mwimmer
  *
  */
 public class GraphSegmentsCacheEntry {
 
+	public static final int NOT_CACHED = -1;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int AVG_COORDINATES_PER_SEGMENT = 4;
+
 	private IWayGraphVersionMetadata metadata;
-	private Map<Long, SegmentCacheEntry> segmentsCache;
-	
-	public GraphSegmentsCacheEntry(IWayGraphVersionMetadata metadata, Map<Long, SegmentCacheEntry> segmentsCache) {
-		super();
-		this.metadata = metadata;
-		this.segmentsCache = segmentsCache;
-	}
-	
+
+	private Long2IntOpenHashMap segmentIdIndex;
+	private Long2IntOpenHashMap nodeIdIndex;
+
+	private int size = 0;
+	private long[] segmentIds;
+	private long[] nodeIds;
+	private float[] lengths;
+	private short[] maxSpeedsTow;
+	private short[] maxSpeedsBkw;
+	private short[] frcs;
+	// offset of each segment's first coordinate in coordinates array; offset of segment i+1 marks the end of segment i
+	private int[] coordinateOffsets;
+	private double[] coordinates;
+
+	private GeometryFactory geometryFactory = null;
+	private int srid = 0;
+
 	public GraphSegmentsCacheEntry(IWayGraphVersionMetadata metadata) {
+		this(metadata, DEFAULT_CAPACITY);
+	}
+
+	public GraphSegmentsCacheEntry(IWayGraphVersionMetadata metadata, int expectedSize) {
 		super();
 		this.metadata = metadata;
-		this.segmentsCache = new HashMap<>();
+		int capacity = Math.max(expectedSize, 1);
+		this.segmentIdIndex = new Long2IntOpenHashMap(capacity);
+		this.segmentIdIndex.defaultReturnValue(NOT_CACHED);
+		this.nodeIdIndex = new Long2IntOpenHashMap(capacity);
+		this.nodeIdIndex.defaultReturnValue(NOT_CACHED);
+		this.segmentIds = new long[capacity];
+		this.nodeIds = new long[capacity];
+		this.lengths = new float[capacity];
+		this.maxSpeedsTow = new short[capacity];
+		this.maxSpeedsBkw = new short[capacity];
+		this.frcs = new short[capacity];
+		this.coordinateOffsets = new int[capacity + 1];
+		this.coordinates = new double[capacity * AVG_COORDINATES_PER_SEGMENT * 2];
 	}
-	
+
 	public IWayGraphVersionMetadata getMetadata() {
 		return metadata;
 	}
-	
+
 	public void setMetadata(IWayGraphVersionMetadata metadata) {
 		this.metadata = metadata;
 	}
-	
-	public SegmentCacheEntry getSegmentsCacheEntry(long id) {
-		SegmentCacheEntry entry = null;
-		if (segmentsCache != null) {
-			entry = segmentsCache.get(id);
+
+	/**
+	 * Adds a segment to the cache.
+	 *
+	 * @return row index of the segment
+	 */
+	public synchronized int addSegmentsCacheEntry(long segmentId, long nodeId, LineString geometry, float length,
+			short maxSpeedTow, short maxSpeedBkw, short frc) {
+		if (geometryFactory == null) {
+			geometryFactory = geometry.getFactory();
+			srid = geometry.getSRID();
 		}
-		return entry;
+
+		ensureCapacity(size + 1);
+		CoordinateSequence coordSeq = geometry.getCoordinateSequence();
+		int coordOffset = coordinateOffsets[size];
+		ensureCoordinatesCapacity(coordOffset + coordSeq.size() * 2);
+		for (int i = 0; i < coordSeq.size(); i++) {
+			coordinates[coordOffset++] = coordSeq.getX(i);
+			coordinates[coordOffset++] = coordSeq.getY(i);
+		}
+
+		return addRow(segmentId, nodeId, coordOffset, length, maxSpeedTow, maxSpeedBkw, frc);
 	}
-	
-	public Map<Long, SegmentCacheEntry> getSegmentsCache() {
-		return segmentsCache;
+
+	/**
+	 * Adds a segment to the cache whose geometry is given as packed coordinates (x0, y0, x1, y1, ...).
+	 * The geometry factory has to be set before.
+	 *
+	 * @return row index of the segment
+	 */
+	public int addSegmentsCacheEntry(long segmentId, long nodeId, double[] packedCoordinates, int coordinatesCount,
+			float length, short maxSpeedTow, short maxSpeedBkw, short frc) {
+		return addSegmentsCacheEntry(segmentId, nodeId, packedCoordinates, 0, coordinatesCount, length, maxSpeedTow, maxSpeedBkw, frc);
+	}
+
+	/**
+	 * Adds a segment to the cache whose geometry is given as packed coordinates starting at the given offset
+	 * of the array. The geometry factory has to be set before.
+	 *
+	 * @return row index of the segment
+	 */
+	public synchronized int addSegmentsCacheEntry(long segmentId, long nodeId, double[] packedCoordinates, int packedOffset,
+			int coordinatesCount, float length, short maxSpeedTow, short maxSpeedBkw, short frc) {
+		ensureCapacity(size + 1);
+		int coordOffset = coordinateOffsets[size];
+		ensureCoordinatesCapacity(coordOffset + coordinatesCount * 2);
+		System.arraycopy(packedCoordinates, packedOffset, coordinates, coordOffset, coordinatesCount * 2);
+		coordOffset += coordinatesCount * 2;
+
+		return addRow(segmentId, nodeId, coordOffset, length, maxSpeedTow, maxSpeedBkw, frc);
+	}
+
+	private int addRow(long segmentId, long nodeId, int coordinatesEndOffset, float length,
+			short maxSpeedTow, short maxSpeedBkw, short frc) {
+		int index = size++;
+		segmentIds[index] = segmentId;
+		nodeIds[index] = nodeId;
+		lengths[index] = length;
+		maxSpeedsTow[index] = maxSpeedTow;
+		maxSpeedsBkw[index] = maxSpeedBkw;
+		frcs[index] = frc;
+		coordinateOffsets[size] = coordinatesEndOffset;
+
+		segmentIdIndex.put(segmentId, index);
+		nodeIdIndex.put(nodeId, index);
+		return index;
+	}
+
+	/**
+	 * Releases unused capacity of the column arrays. Should be called once all segments have been added.
+	 */
+	public synchronized void trimToSize() {
+		segmentIds = Arrays.copyOf(segmentIds, size);
+		nodeIds = Arrays.copyOf(nodeIds, size);
+		lengths = Arrays.copyOf(lengths, size);
+		maxSpeedsTow = Arrays.copyOf(maxSpeedsTow, size);
+		maxSpeedsBkw = Arrays.copyOf(maxSpeedsBkw, size);
+		frcs = Arrays.copyOf(frcs, size);
+		coordinateOffsets = Arrays.copyOf(coordinateOffsets, size + 1);
+		coordinates = Arrays.copyOf(coordinates, coordinateOffsets[size]);
+		segmentIdIndex.trim();
+		nodeIdIndex.trim();
+	}
+
+	/**
+	 * @return row index of the segment or {@link #NOT_CACHED}
+	 */
+	public int getIndexPerSegmentId(long segmentId) {
+		return segmentIdIndex.get(segmentId);
+	}
+
+	/**
+	 * @return row index of the segment represented by the Neo4j node or {@link #NOT_CACHED}
+	 */
+	public int getIndexPerNodeId(long nodeId) {
+		return nodeIdIndex.get(nodeId);
+	}
+
+	/**
+	 * @return ID of the Neo4j node representing the segment or {@link #NOT_CACHED}
+	 */
+	public long getNodeIdPerSegmentId(long segmentId) {
+		int index = segmentIdIndex.get(segmentId);
+		return index == NOT_CACHED ? NOT_CACHED : nodeIds[index];
 	}
-	
-	public void addSegmentsCacheEntry(Long id, SegmentCacheEntry entry) {
-		segmentsCache.put(id, entry);
+
+	/**
+	 * Resolves the Neo4j node IDs of many segments.
+	 *
+	 * @return node IDs in the order of the segment IDs; {@link #NOT_CACHED} for segments not cached
+	 */
+	public long[] getNodeIdsPerSegmentIds(List<Long> segmentIds) {
+		long[] resolvedNodeIds = new long[segmentIds.size()];
+		int i = 0;
+		for (Long segmentId : segmentIds) {
+			resolvedNodeIds[i++] = getNodeIdPerSegmentId(segmentId);
+		}
+		return resolvedNodeIds;
 	}
-	
-	public void setSegmentsCache(Map<Long, SegmentCacheEntry> segmentsCache) {
-		this.segmentsCache = segmentsCache;
+
+	public int size() {
+		return size;
+	}
+
+	public GeometryFactory getGeometryFactory() {
+		return geometryFactory;
 	}
-	
+
+	public int getSrid() {
+		return srid;
+	}
+
+	public synchronized void setGeometryFactory(GeometryFactory geometryFactory, int srid) {
+		this.geometryFactory = geometryFactory;
+		this.srid = srid;
+	}
+
+	public long getSegmentId(int index) {
+		return segmentIds[index];
+	}
+
+	public long getNodeId(int index) {
+		return nodeIds[index];
+	}
+
+	public float getLength(int index) {
+		return lengths[index];
+	}
+
+	public short getMaxSpeedTow(int index) {
+		return maxSpeedsTow[index];
+	}
+
+	public short getMaxSpeedBkw(int index) {
+		return maxSpeedsBkw[index];
+	}
+
+	public short getFrc(int index) {
+		return frcs[index];
+	}
+
+	public int getDuration(int index, boolean directionTow) {
+		if (directionTow) {
+			return calcDuration(lengths[index], maxSpeedsTow[index]);
+		} else {
+			return calcDuration(lengths[index], maxSpeedsBkw[index]);
+		}
+	}
+
+	public int getCoordinatesCount(int index) {
+		return (coordinateOffsets[index + 1] - coordinateOffsets[index]) / 2;
+	}
+
+	public double getX(int index, int coordinateIndex) {
+		return coordinates[coordinateOffsets[index] + coordinateIndex * 2];
+	}
+
+	public double getY(int index, int coordinateIndex) {
+		return coordinates[coordinateOffsets[index] + coordinateIndex * 2 + 1];
+	}
+
+	/**
+	 * Creates a new geometry object from the packed coordinates of the segment.
+	 */
+	public LineString getGeometry(int index) {
+		int count = getCoordinatesCount(index);
+		Coordinate[] coords = new Coordinate[count];
+		for (int i = 0; i < count; i++) {
+			coords[i] = new Coordinate(getX(index, i), getY(index, i));
+		}
+		LineString geometry = geometryFactory.createLineString(coords);
+		geometry.setSRID(srid);
+		return geometry;
+	}
+
+	/**
+	 * Creates a legacy cache entry for the segment.
+	 */
+	public SegmentCacheEntry getSegmentsCacheEntry(int index, boolean perNodeId) {
+		return new SegmentCacheEntry(
+				perNodeId ? nodeIds[index] : segmentIds[index],
+				getGeometry(index),
+				lengths[index],
+				maxSpeedsTow[index],
+				maxSpeedsBkw[index],
+				frcs[index]);
+	}
+
+	public static int calcDuration(float length, short speed) {
+		return (int) Math.round(length / (speed / 3.6));
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > segmentIds.length) {
+			int newCapacity = Math.max(capacity, segmentIds.length + (segmentIds.length >> 1));
+			segmentIds = Arrays.copyOf(segmentIds, newCapacity);
+			nodeIds = Arrays.copyOf(nodeIds, newCapacity);
+			lengths = Arrays.copyOf(lengths, newCapacity);
+			maxSpeedsTow = Arrays.copyOf(maxSpeedsTow, newCapacity);
+			maxSpeedsBkw = Arrays.copyOf(maxSpeedsBkw, newCapacity);
+			frcs = Arrays.copyOf(frcs, newCapacity);
+			coordinateOffsets = Arrays.copyOf(coordinateOffsets, newCapacity + 1);
+		}
+	}
+
+	private void ensureCoordinatesCapacity(int capacity) {
+		if (capacity > coordinates.length) {
+			int newCapacity = Math.max(capacity, coordinates.length + (coordinates.length >> 1));
+			coordinates = Arrays.copyOf(coordinates, newCapacity);
+		}
+	}
+
 }
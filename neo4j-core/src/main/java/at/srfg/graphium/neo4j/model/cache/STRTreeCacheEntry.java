@@ -17,35 +17,50 @@
  */
 package at.srfg.graphium.neo4j.model.cache;
 
-import com.vividsolutions.jts.index.strtree.STRtree;
-
 import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.persistence.index.ISpatialIndex;
 
 /**
+ * Spatial index of a graph version together with the segments cache it has been built from. Requests which already hold an entry
+ * keep using it after the graph version has been replaced or removed.
+ * 
  * @author mwimmer
  *
  */
 public class STRTreeCacheEntry {
 	private IWayGraphVersionMetadata metadata;
-	private STRtree tree;
+	private ISpatialIndex tree;
+	// segments cache lives as long as the spatial index
+	private GraphSegmentsCacheEntry segmentsCache;
 	
-	public STRTreeCacheEntry(IWayGraphVersionMetadata metadata, STRtree tree) {
+	public STRTreeCacheEntry(IWayGraphVersionMetadata metadata, ISpatialIndex tree) {
 		super();
 		this.metadata = metadata;
 		this.tree = tree;
 	}
 	
+	public STRTreeCacheEntry(IWayGraphVersionMetadata metadata, ISpatialIndex tree, GraphSegmentsCacheEntry segmentsCache) {
+		this(metadata, tree);
+		this.segmentsCache = segmentsCache;
+	}
+	
 	public IWayGraphVersionMetadata getMetadata() {
 		return metadata;
 	}
 	public void setMetadata(IWayGraphVersionMetadata metadata) {
 		this.metadata = metadata;
 	}
-	public STRtree getTree() {
+	public ISpatialIndex getTree() {
 		return tree;
 	}
-	public void setTree(STRtree tree) {
+	public void setTree(ISpatialIndex tree) {
 		this.tree = tree;
 	}
+	public GraphSegmentsCacheEntry getSegmentsCache() {
+		return segmentsCache;
+	}
+	public void setSegmentsCache(GraphSegmentsCacheEntry segmentsCache) {
+		this.segmentsCache = segmentsCache;
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence;
+
+import java.util.List;
+
+import at.srfg.graphium.neo4j.model.PreparedWaySegment;
+
+/**
+ * Bulk import of new graph versions. While a bulk import is running segment nodes will not be added to the segment ID 
+ * index one by one; connected segments will be resolved via an in-memory map of segment IDs to node IDs instead. The 
+ * segment ID index will be built in large chunks when the bulk import has finished.
+ * 
+ * Segments may also be saved with node properties prepared in advance, so mapping segments does not delay writing.
+ */
+public interface INeo4jWayGraphBulkWriteDao {
+
+	/**
+	 * starts a bulk import; all segments of the graph version saved until {@link #finishBulkImport(String, String)} 
+	 * will be bulk loaded
+	 * @param graphName
+	 * @param version
+	 */
+	public void startBulkImport(String graphName, String version);
+	
+	/**
+	 * creates the segment ID index of all bulk loaded segments; has to be called before the graph version will be read
+	 * @param graphName
+	 * @param version
+	 */
+	public void finishBulkImport(String graphName, String version);
+	
+	/**
+	 * discards the state of a failed bulk import
+	 * @param graphName
+	 * @param version
+	 */
+	public void abortBulkImport(String graphName, String version);
+	
+	public boolean isBulkImportRunning(String graphName, String version);
+	
+	/**
+	 * saves segments whose node properties have already been prepared (e.g. by parallel import workers)
+	 * @param segments
+	 * @param graphName
+	 * @param version
+	 */
+	public void savePreparedSegments(List<PreparedWaySegment> segments, String graphName, String version);
+	
+}
@@ -41,6 +41,15 @@ public interface INeo4jWayGraphReadDao extends IWayGraphReadDao<IWaySegment> {
 	 */
 	Node getSegmentNodeBySegmentId(String graphName, String version, long segmentId);
 
+	/**
+	 * Resolves the nodes of many segments at once.
+	 * @param graphName
+	 * @param version
+	 * @param segmentIds
+	 * @return nodes in the order of the segment IDs; null for segments not found
+	 */
+	List<Node> getSegmentNodesBySegmentIds(String graphName, String version, List<Long> segmentIds);
+
 	List<Node> findNearestNodes(String graphName, String version, Point referencePoint, double distance, int limit);
 
 	/**
@@ -61,6 +70,16 @@ public interface INeo4jWayGraphReadDao extends IWayGraphReadDao<IWaySegment> {
 	 * @return
 	 */
 	IWaySegment mapNode(String graphName, String version, Node node);
+
+	/**
+	 * Maps the node to a segment whose geometry, tags and access types will be decoded on their first access. The geometry
+	 * will be taken from the segments cache of the graph version if available.
+	 * @param graphName
+	 * @param version
+	 * @param node
+	 * @return
+	 */
+	IWaySegment mapNodeLazily(String graphName, String version, Node node);
 	
 	/**
 	 * @return <code>IGraphDatabaseProvider</code>
@@ -23,6 +23,8 @@
  */
 package at.srfg.graphium.neo4j.persistence;
 
+import java.util.Map;
+
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 
@@ -49,4 +51,19 @@ public interface INeo4jWaySegmentHelper<T extends IWaySegment> {
 	 */
 	void updateNodeProperties(GraphDatabaseService graphDb, IWaySegment segment, Node node);
 
+	/**
+	 * Maps a segment to the properties of its node without accessing the database. Is thread-safe, so properties may be 
+	 * prepared in parallel to the database writes.
+	 * @param segment Way segment object
+	 * @return node properties (incl. encoded geometry)
+	 */
+	Map<String, Object> prepareNodeProperties(T segment);
+
+	/**
+	 * @param graphDb GraphDatabaseService
+	 * @param nodeProperties properties prepared by {@link #prepareNodeProperties(IWaySegment)}
+	 * @return newly created Node
+	 */
+	Node createPreparedNode(GraphDatabaseService graphDb, Map<String, Object> nodeProperties, String graphVersionName);
+
 }
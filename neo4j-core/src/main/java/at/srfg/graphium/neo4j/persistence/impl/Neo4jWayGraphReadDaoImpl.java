@@ -26,6 +26,7 @@ import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
 import org.slf4j.Logger;
@@ -41,9 +42,12 @@ import at.srfg.graphium.io.outputformat.ISegmentOutputFormat;
 import at.srfg.graphium.model.IWaySegment;
 import at.srfg.graphium.model.IWaySegmentConnection;
 import at.srfg.graphium.model.view.IWayGraphView;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
 import at.srfg.graphium.neo4j.persistence.INeo4jWayGraphReadDao;
 import at.srfg.graphium.neo4j.persistence.nodemapper.INeo4jXInfoConnectionMapper;
 import at.srfg.graphium.neo4j.persistence.nodemapper.INeo4jXInfoNodeMapper;
+import at.srfg.graphium.neo4j.persistence.nodemapper.impl.Neo4jWaySegmentMapper;
 import at.srfg.graphium.neo4j.service.impl.STRTreeService;
 
 /**
@@ -70,8 +74,7 @@ public class Neo4jWayGraphReadDaoImpl extends AbstractNeo4jDaoImpl implements IN
 		}
 		
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
-			String graphVersionName = createGraphVersionName(graphName, version);
-			Node node = getSegmentNode(graphVersionName, segmentId);
+			Node node = resolveSegmentNode(graphName, version, segmentId);
 
 			tx.success();
 			
@@ -83,27 +86,99 @@ public class Neo4jWayGraphReadDaoImpl extends AbstractNeo4jDaoImpl implements IN
 			return node;
 		}
 	}
+
+	@Override
+	public List<Node> getSegmentNodesBySegmentIds(String graphName, String version, List<Long> segmentIds) {
+		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
+			List<Node> nodes = resolveSegmentNodes(graphName, version, segmentIds);
+			
+			tx.success();
+			return nodes;
+		}
+	}
+
+	/**
+	 * Resolves the segment's node ID from the segments cache of the spatial index; only if the segment is not cached
+	 * the segment ID index will be queried.
+	 */
+	private Node resolveSegmentNode(String graphName, String version, long segmentId) {
+		if (treeIndexService != null) {
+			long nodeId = treeIndexService.getNodeIdPerSegmentId(graphName, version, segmentId);
+			if (nodeId != GraphSegmentsCacheEntry.NOT_CACHED) {
+				Node node = getNodeById(nodeId, segmentId);
+				if (node != null) {
+					return node;
+				}
+			}
+		}
+		return getSegmentNode(createGraphVersionName(graphName, version), segmentId);
+	}
+
+	private List<Node> resolveSegmentNodes(String graphName, String version, List<Long> segmentIds) {
+		long[] nodeIds = null;
+		if (treeIndexService != null) {
+			nodeIds = treeIndexService.getNodeIdsPerSegmentIds(graphName, version, segmentIds);
+		}
+		String graphVersionName = createGraphVersionName(graphName, version);
+		List<Node> nodes = new ArrayList<>(segmentIds.size());
+		int i = 0;
+		for (Long segmentId : segmentIds) {
+			Node node = null;
+			if (nodeIds != null && nodeIds[i] != GraphSegmentsCacheEntry.NOT_CACHED) {
+				node = getNodeById(nodeIds[i], segmentId);
+			}
+			if (node == null) {
+				node = getSegmentNode(graphVersionName, segmentId);
+			}
+			nodes.add(node);
+			i++;
+		}
+		return nodes;
+	}
+
+	/**
+	 * Resolves a cached node ID; Neo4j reuses IDs of deleted nodes, so the node is only returned if it still
+	 * represents the requested segment.
+	 */
+	private Node getNodeById(long nodeId, long segmentId) {
+		try {
+			Node node = graphDatabaseProvider.getGraphDatabase().getNodeById(nodeId);
+			Object nodeSegmentId = node.getProperty(WayGraphConstants.SEGMENT_ID, null);
+			if (nodeSegmentId instanceof Number && ((Number) nodeSegmentId).longValue() == segmentId) {
+				return node;
+			}
+			log.warn("Cached node " + nodeId + " does not represent segment " + segmentId + " anymore");
+			return null;
+		} catch (NotFoundException e) {
+			// node IDs of the segments cache are only valid as long as the nodes have not been deleted
+			log.warn("Cached node " + nodeId + " not found");
+			return null;
+		}
+	}
 	
 	@Override
 	public IWaySegment getSegmentById(String graphName, String version, long segmentId, 
 			boolean includeConnections) {
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
 			// wird derzeit nicht verwendet
-			String graphVersionName = createGraphVersionName(graphName, version);
-			Node node = getSegmentNode(graphVersionName, segmentId);
-			IWaySegment segment = null;
-			if (node != null) {
-				segment = segmentMapper.map(node);
-				if (includeConnections) {
-					segment.setCons(neo4jWaySegmentConnectionsNodeMapper.map(node));
-				}
-			}
+			IWaySegment segment = mapSegment(resolveSegmentNode(graphName, version, segmentId), includeConnections);
 			
 			tx.success();
 			return segment;
 		}
 	}
 
+	private IWaySegment mapSegment(Node node, boolean includeConnections) {
+		IWaySegment segment = null;
+		if (node != null) {
+			segment = segmentMapper.map(node);
+			if (includeConnections) {
+				segment.setCons(neo4jWaySegmentConnectionsNodeMapper.map(node));
+			}
+		}
+		return segment;
+	}
+
 	@Override
 	public List<IWaySegment> getSegmentsById(String graphName, String version, List<Long> segmentIds,
 			boolean includeConnections) {
@@ -112,8 +187,8 @@ public class Neo4jWayGraphReadDaoImpl extends AbstractNeo4jDaoImpl implements IN
 			List<IWaySegment> segments = null;
 			if (segmentIds != null) {
 				segments = new ArrayList<>(segmentIds.size());
-				for (Long id : segmentIds) {
-					segments.add(getSegmentById(graphName, version, id, includeConnections));
+				for (Node node : resolveSegmentNodes(graphName, version, segmentIds)) {
+					segments.add(mapSegment(node, includeConnections));
 				}
 			}
 			
@@ -147,8 +222,7 @@ public class Neo4jWayGraphReadDaoImpl extends AbstractNeo4jDaoImpl implements IN
 	private Set<IWaySegment> getIncomingConnectedSegments(String graphName, String version, Long segmentId) {
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
 			Set<IWaySegment> segments = new HashSet<>();
-			String graphVersionName = createGraphVersionName(graphName, version);
-			Node node = getSegmentNode(graphVersionName, segmentId);
+			Node node = resolveSegmentNode(graphName, version, segmentId);
 			if (node != null) {
 				List<IWaySegmentConnection> incomingConnections = neo4jWaySegmentConnectionsNodeMapper.mapWithXInfoTypes(node, true, false);
 				for (IWaySegmentConnection conn : incomingConnections) {
@@ -353,6 +427,18 @@ public class Neo4jWayGraphReadDaoImpl extends AbstractNeo4jDaoImpl implements IN
 		return segmentMapper.map(node);
 	}
 
+	@Override
+	public IWaySegment mapNodeLazily(String graphName, String version, Node node) {
+		if (!(segmentMapper instanceof Neo4jWaySegmentMapper)) {
+			return segmentMapper.map(node);
+		}
+		GraphSegmentsCacheEntry segmentsCache = null;
+		if (treeIndexService != null) {
+			segmentsCache = treeIndexService.getCacheManager().getSegmentsCache(graphName, version);
+		}
+		return ((Neo4jWaySegmentMapper) segmentMapper).mapLazily(node, segmentsCache);
+	}
+
 
 	public INeo4jXInfoNodeMapper<IWaySegment> getSegmentMapper() {
 		return segmentMapper;
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -44,6 +45,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DuplicateKeyException;
 
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
 import at.srfg.graphium.core.exception.GraphAlreadyExistException;
 import at.srfg.graphium.core.exception.GraphNotExistsException;
 import at.srfg.graphium.core.exception.GraphStorageException;
@@ -55,8 +60,10 @@ import at.srfg.graphium.model.ISegmentXInfo;
 import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.model.IWaySegment;
 import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.neo4j.model.PreparedWaySegment;
 import at.srfg.graphium.neo4j.model.WayGraphConstants;
 import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.persistence.INeo4jWayGraphBulkWriteDao;
 import at.srfg.graphium.neo4j.persistence.INeo4jWayGraphIndexDao;
 import at.srfg.graphium.neo4j.persistence.INeo4jWaySegmentHelper;
 import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
@@ -69,7 +76,7 @@ import at.srfg.graphium.neo4j.persistence.propertyhandler.impl.SegmentXInfoPrope
  * @author User
  */
 public class Neo4jWayGraphWriteDaoImpl
-	extends AbstractNeo4jDaoImpl implements IWayGraphWriteDao<IWaySegment> {
+	extends AbstractNeo4jDaoImpl implements IWayGraphWriteDao<IWaySegment>, INeo4jWayGraphBulkWriteDao {
 
 	private static Logger log = LoggerFactory.getLogger(Neo4jWayGraphWriteDaoImpl.class);
 	
@@ -78,6 +85,9 @@ public class Neo4jWayGraphWriteDaoImpl
 	private SegmentXInfoPropertyHandlerRegistry segmentPropertyHandlerRegistry;
 	private ConnectionXInfoPropertyHandlerRegistry connectionPropertyHandlerRegistry;
 	private int batchSizeForNodeDeletion = 1000;
+	private int batchSizeForIndexCreation = 50000;
+	// segment ID => node ID per graph version being bulk imported
+	private Map<String, Long2LongMap> bulkImports = new ConcurrentHashMap<>();
 	
 	@Override
 	public void createGraph(String graphName, String version, boolean overrideGraphIfExsists) throws GraphAlreadyExistException {
@@ -151,19 +161,50 @@ public class Neo4jWayGraphWriteDaoImpl
 	
 	@Override
 	public void saveSegments(List<IWaySegment> segments, String graphName, String version, List<String> excludedXInfosList) {
+		saveSegments(segments, null, graphName, version, excludedXInfosList);
+	}
+
+	@Override
+	public void savePreparedSegments(List<PreparedWaySegment> segments, String graphName, String version) {
+		List<IWaySegment> waySegments = new ArrayList<>(segments.size());
+		List<Map<String, Object>> nodeProperties = new ArrayList<>(segments.size());
+		for (PreparedWaySegment segment : segments) {
+			waySegments.add(segment.getSegment());
+			nodeProperties.add(segment.getNodeProperties());
+		}
+		saveSegments(waySegments, nodeProperties, graphName, version, null);
+	}
+	
+	/**
+	 * @param nodeProperties prepared node properties per segment or null if segments have to be mapped
+	 */
+	private void saveSegments(List<IWaySegment> segments, List<Map<String, Object>> nodeProperties, String graphName, 
+			String version, List<String> excludedXInfosList) {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version); 
+		Long2LongMap bulkImportNodeIds = bulkImports.get(graphVersionName);
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
 			if (segments != null && !segments.isEmpty()) {
 				
-				Index<Node> indexSegmentId = getSegmentIdIndex(graphVersionName);
+				Index<Node> indexSegmentId = bulkImportNodeIds == null ? getSegmentIdIndex(graphVersionName) : null;
 //				
-				for (IWaySegment segment : segments) {
+				for (int i = 0; i < segments.size(); i++) {
+					IWaySegment segment = segments.get(i);
 					// create node
-					Node segmentNode = segmentHelper.createNode(getGraphDatabase(), segment, graphVersionName);
+					Node segmentNode;
+					if (nodeProperties != null) {
+						segmentNode = segmentHelper.createPreparedNode(getGraphDatabase(), nodeProperties.get(i), graphVersionName);
+					} else {
+						segmentNode = segmentHelper.createNode(getGraphDatabase(), segment, graphVersionName);
+					}
 	
-					// create index on segmentId
-					// use of segmenId index is much faster than Neo4j's segmentId lookup
-					indexSegmentId.add(segmentNode, WayGraphConstants.SEGMENT_ID, segment.getId());
+					if (bulkImportNodeIds != null) {
+						// segmentId index will be created after bulk import
+						bulkImportNodeIds.put(segment.getId(), segmentNode.getId());
+					} else {
+						// create index on segmentId
+						// use of segmenId index is much faster than Neo4j's segmentId lookup
+						indexSegmentId.add(segmentNode, WayGraphConstants.SEGMENT_ID, segment.getId());
+					}
 					
 					// if XInfo exists for segment
 					saveSegmentXInfo(getGraphDatabase(), segment, segmentNode, excludedXInfosList);
@@ -291,6 +332,7 @@ public class Neo4jWayGraphWriteDaoImpl
 	@Override
 	public long saveConnections(List<IWaySegmentConnection> connections, String graphName, String version) {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version); 
+		Long2LongMap bulkImportNodeIds = bulkImports.get(graphVersionName);
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
 			int saveCount = 0;
 			if (connections != null && !connections.isEmpty()) {
@@ -298,18 +340,27 @@ public class Neo4jWayGraphWriteDaoImpl
 				for (IWaySegmentConnection connection : connections) {
 					if (connection.getAccess() != null && !connection.getAccess().isEmpty()) {
 						// read nodes from index
-						Node fromSegmentNode = getSegmentNode(graphVersionName, connection.getFromSegmentId());
-						Node toSegmentNode = getSegmentNode(graphVersionName, connection.getToSegmentId());
+						Node fromSegmentNode = getSegmentNode(graphVersionName, bulkImportNodeIds, connection.getFromSegmentId());
+						Node toSegmentNode = getSegmentNode(graphVersionName, bulkImportNodeIds, connection.getToSegmentId());
 						// select relation type
 						RelationshipType relType;
+						byte direction = 0;
 						if ((Long) fromSegmentNode.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) == connection.getNodeId()) {
 							relType = WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE;
+							direction |= WayGraphConstants.CONNECTION_DIRECTION_FROM_STARTNODE;
 						} else {
 							relType = WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE;
 						}
+						if ((Long) toSegmentNode.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) == connection.getNodeId()) {
+							direction |= WayGraphConstants.CONNECTION_DIRECTION_TO_STARTNODE;
+						}
 						Relationship rel = fromSegmentNode.createRelationshipTo(toSegmentNode, relType);
-						rel.setProperty(WayGraphConstants.CONNECTION_ACCESS, Neo4jWaySegmentHelperImpl.createAccessArray(connection.getAccess()));
+						byte[] access = Neo4jWaySegmentHelperImpl.createAccessArray(connection.getAccess());
+						rel.setProperty(WayGraphConstants.CONNECTION_ACCESS, access);
 						rel.setProperty(WayGraphConstants.CONNECTION_NODE_ID, connection.getNodeId());
+						// precomputed for routing
+						rel.setProperty(WayGraphConstants.CONNECTION_ACCESS_BITMASK, Neo4jWaySegmentHelperImpl.parseAccessBitmask(access));
+						rel.setProperty(WayGraphConstants.CONNECTION_DIRECTION, direction);
 						
 						// if XInfo exists for connection
 						saveConnectionXInfo(connection, rel, null);
@@ -322,6 +373,74 @@ public class Neo4jWayGraphWriteDaoImpl
 		}
 	}
 
+	@Override
+	public void startBulkImport(String graphName, String version) {
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+		Long2LongMap nodeIds = new Long2LongOpenHashMap();
+		nodeIds.defaultReturnValue(-1);
+		bulkImports.put(graphVersionName, Long2LongMaps.synchronize(nodeIds));
+		log.info("Bulk import of graph version " + graphVersionName + " started");
+	}
+
+	@Override
+	public void finishBulkImport(String graphName, String version) {
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+		Long2LongMap nodeIds = bulkImports.remove(graphVersionName);
+		if (nodeIds == null) {
+			log.warn("No bulk import of graph version " + graphVersionName + " running");
+			return;
+		}
+		
+		log.info("Creating segmentId index for " + nodeIds.size() + " segments ...");
+		long startTime = System.currentTimeMillis();
+		int count = 0;
+		Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx();
+		try {
+			Index<Node> indexSegmentId = getSegmentIdIndex(graphVersionName);
+			synchronized (nodeIds) {
+				for (Long2LongMap.Entry entry : nodeIds.long2LongEntrySet()) {
+					indexSegmentId.add(getGraphDatabase().getNodeById(entry.getLongValue()), 
+							WayGraphConstants.SEGMENT_ID, entry.getLongKey());
+					if (++count % batchSizeForIndexCreation == 0) {
+						tx.success();
+						tx.close();
+						log.debug(count + " segments indexed");
+						tx = graphDatabaseProvider.getGraphDatabase().beginTx();
+						indexSegmentId = getSegmentIdIndex(graphVersionName);
+					}
+				}
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		log.info("segmentId index created in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	@Override
+	public void abortBulkImport(String graphName, String version) {
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+		if (bulkImports.remove(graphVersionName) != null) {
+			log.info("Bulk import of graph version " + graphVersionName + " aborted");
+		}
+	}
+
+	@Override
+	public boolean isBulkImportRunning(String graphName, String version) {
+		return bulkImports.containsKey(GraphVersionHelper.createGraphVersionName(graphName, version));
+	}
+
+	/**
+	 * @param bulkImportNodeIds node IDs of bulk imported segments or null if graph version is not bulk imported
+	 */
+	private Node getSegmentNode(String graphVersionName, Long2LongMap bulkImportNodeIds, long segmentId) {
+		if (bulkImportNodeIds != null) {
+			long nodeId = bulkImportNodeIds.get(segmentId);
+			return nodeId != -1 ? getGraphDatabase().getNodeById(nodeId) : null;
+		}
+		return getSegmentNode(graphVersionName, segmentId);
+	}
+
 	@Override
 	public void createIndexes(String graphName, String version) {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version); 
@@ -382,11 +501,12 @@ public class Neo4jWayGraphWriteDaoImpl
 	@Override
 	public void saveConnectionXInfos(List<? extends IBaseSegment> segments, String graphName, String version, List<String> excludedXInfos) throws GraphStorageException {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+		Long2LongMap bulkImportNodeIds = bulkImports.get(graphVersionName);
 		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
 			if (segments != null && !segments.isEmpty()) {
 				for (IBaseSegment segment : segments) {
 					if (segment.getCons() != null) {
-						Node node = this.getSegmentNode(graphVersionName,segment.getId());
+						Node node = this.getSegmentNode(graphVersionName, bulkImportNodeIds, segment.getId());
 						Map<IWaySegmentConnection,Relationship> connMapping = this.mapRelationShips(node,segment.getCons());
 						connMapping.forEach((iWaySegmentConnection, relationship) -> {
                             if (relationship != null) {
@@ -492,6 +612,14 @@ public class Neo4jWayGraphWriteDaoImpl
 		this.batchSizeForNodeDeletion = batchSizeForNodeDeletion;
 	}
 
+	public int getBatchSizeForIndexCreation() {
+		return batchSizeForIndexCreation;
+	}
+
+	public void setBatchSizeForIndexCreation(int batchSizeForIndexCreation) {
+		this.batchSizeForIndexCreation = batchSizeForIndexCreation;
+	}
+
 	public INeo4jWayGraphIndexDao getIndexDao() {
 		return indexDao;
 	}
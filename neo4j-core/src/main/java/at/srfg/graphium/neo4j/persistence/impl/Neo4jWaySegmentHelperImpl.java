@@ -23,12 +23,15 @@
  */
 package at.srfg.graphium.neo4j.persistence.impl;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
@@ -46,8 +49,12 @@ import at.srfg.graphium.neo4j.persistence.nodemapper.utils.Neo4jTagMappingUtils;
  * @author mwimmer
  */
 public class Neo4jWaySegmentHelperImpl implements INeo4jWaySegmentHelper<IWaySegment> {
+
+	// WKBReader is not thread-safe; one reader per thread avoids creating a reader per decoded geometry
+	private static final ThreadLocal<WKBReader> WKB_READER = ThreadLocal.withInitial(WKBReader::new);
 	
-	private WKBWriter wkbWriter = new WKBWriter();
+	// properties may be prepared by several threads in parallel
+	private static final ThreadLocal<WKBWriter> WKB_WRITER = ThreadLocal.withInitial(WKBWriter::new);
 	
 	@Override
 	public Node createNode(GraphDatabaseService graphDb, IWaySegment segment, String graphVersionName) {
@@ -57,71 +64,91 @@ public class Neo4jWaySegmentHelperImpl implements INeo4jWaySegmentHelper<IWaySeg
 	}
 
 	@Override
-	public synchronized void updateNodeProperties(GraphDatabaseService graphDb, IWaySegment segment,
+	public Node createPreparedNode(GraphDatabaseService graphDb, Map<String, Object> nodeProperties, String graphVersionName) {
+		Node node = graphDb.createNode(Label.label(createSegmentNodeLabel(graphVersionName)));
+		setNodeProperties(node, nodeProperties);
+		return node;
+	}
+
+	@Override
+	public void updateNodeProperties(GraphDatabaseService graphDb, IWaySegment segment,
 			Node node) {
+		setNodeProperties(node, prepareNodeProperties(segment));
+	}
+
+	@Override
+	public Map<String, Object> prepareNodeProperties(IWaySegment segment) {
+		Map<String, Object> properties = new HashMap<>(64);
 		
 		// AccessTypes dürfen nicht als HashSet gespeichert werden => short[]
 		if (segment.getAccessBkw() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_ACCESS_BKW, createAccessArray(segment.getAccessBkw()));
+			properties.put(WayGraphConstants.SEGMENT_ACCESS_BKW, createAccessArray(segment.getAccessBkw()));
 		}
 		if (segment.getAccessTow() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_ACCESS_TOW, createAccessArray(segment.getAccessTow()));
+			properties.put(WayGraphConstants.SEGMENT_ACCESS_TOW, createAccessArray(segment.getAccessTow()));
 		}
 		if (segment.isBridge()) {
-			node.setProperty(WayGraphConstants.SEGMENT_BRIDGE, segment.isBridge());
+			properties.put(WayGraphConstants.SEGMENT_BRIDGE, segment.isBridge());
 		}
-		node.setProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW, segment.getDuration(true));
-		node.setProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW, segment.getDuration(false));
-		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_ID, segment.getEndNodeId());
-		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_INDEX, segment.getEndNodeIndex());
+		properties.put(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW, segment.getDuration(true));
+		properties.put(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW, segment.getDuration(false));
+		properties.put(WayGraphConstants.SEGMENT_ENDNODE_ID, segment.getEndNodeId());
+		properties.put(WayGraphConstants.SEGMENT_ENDNODE_INDEX, segment.getEndNodeIndex());
 		if (segment.getFrc() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_FRC, segment.getFrc().getValue());
+			properties.put(WayGraphConstants.SEGMENT_FRC, segment.getFrc().getValue());
 		}
 		if (segment.getFormOfWay() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_FOW, segment.getFormOfWay().getValue());
-		}
-		node.setProperty(WayGraphConstants.SEGMENT_ID, segment.getId());
-		node.setProperty(WayGraphConstants.SEGMENT_LANES_BKW, segment.getLanesBkw());
-		node.setProperty(WayGraphConstants.SEGMENT_LANES_TOW, segment.getLanesTow());
-		node.setProperty(WayGraphConstants.SEGMENT_LENGTH, segment.getLength());
-		node.setProperty(WayGraphConstants.SEGMENT_MAXSPEED_BKW, segment.getMaxSpeedBkw());
-		node.setProperty(WayGraphConstants.SEGMENT_MAXSPEED_TOW, segment.getMaxSpeedTow());
-		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_TOW, segment.getMinDuration(true));
-		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_BKW, segment.getMinDuration(false));
+			properties.put(WayGraphConstants.SEGMENT_FOW, segment.getFormOfWay().getValue());
+		}
+		properties.put(WayGraphConstants.SEGMENT_ID, segment.getId());
+		properties.put(WayGraphConstants.SEGMENT_LANES_BKW, segment.getLanesBkw());
+		properties.put(WayGraphConstants.SEGMENT_LANES_TOW, segment.getLanesTow());
+		properties.put(WayGraphConstants.SEGMENT_LENGTH, segment.getLength());
+		properties.put(WayGraphConstants.SEGMENT_MAXSPEED_BKW, segment.getMaxSpeedBkw());
+		properties.put(WayGraphConstants.SEGMENT_MAXSPEED_TOW, segment.getMaxSpeedTow());
+		properties.put(WayGraphConstants.SEGMENT_MIN_DURATION_TOW, segment.getMinDuration(true));
+		properties.put(WayGraphConstants.SEGMENT_MIN_DURATION_BKW, segment.getMinDuration(false));
 		if (segment.getName() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_NAME, segment.getName());
+			properties.put(WayGraphConstants.SEGMENT_NAME, segment.getName());
 		}
 		if (segment.getSpeedCalcBkw() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_SPEED_CALC_BKW, segment.getSpeedCalcBkw());
+			properties.put(WayGraphConstants.SEGMENT_SPEED_CALC_BKW, segment.getSpeedCalcBkw());
 		}
 		if (segment.getSpeedCalcTow() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_SPEED_CALC_TOW, segment.getSpeedCalcTow());
+			properties.put(WayGraphConstants.SEGMENT_SPEED_CALC_TOW, segment.getSpeedCalcTow());
 		}
-		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_ID, segment.getStartNodeId());
-		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_INDEX, segment.getStartNodeIndex());
+		properties.put(WayGraphConstants.SEGMENT_STARTNODE_ID, segment.getStartNodeId());
+		properties.put(WayGraphConstants.SEGMENT_STARTNODE_INDEX, segment.getStartNodeIndex());
 		if (segment.getStreetType() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_STREETTYPE, segment.getStreetType());
+			properties.put(WayGraphConstants.SEGMENT_STREETTYPE, segment.getStreetType());
 		}
 		if (segment.isTunnel()) {
-			node.setProperty(WayGraphConstants.SEGMENT_TUNNEL, segment.isTunnel());
+			properties.put(WayGraphConstants.SEGMENT_TUNNEL, segment.isTunnel());
 		}
 		if (segment.isUrban()) {
-			node.setProperty(WayGraphConstants.SEGMENT_URBAN, segment.isUrban());
+			properties.put(WayGraphConstants.SEGMENT_URBAN, segment.isUrban());
 		}
 		if (segment.getId() != segment.getWayId()) {
-			node.setProperty(WayGraphConstants.SEGMENT_WAY_ID, segment.getWayId());
+			properties.put(WayGraphConstants.SEGMENT_WAY_ID, segment.getWayId());
 		}
 		if (segment.getGeometry() != null) {
-			node.setProperty(WayGraphConstants.SEGMENT_GEOM, wkbWriter.write(segment.getGeometry()));
+			properties.put(WayGraphConstants.SEGMENT_GEOM, WKB_WRITER.get().write(segment.getGeometry()));
 			Coordinate startCoord = segment.getGeometry().getCoordinates()[0];
 			Coordinate endCoord = segment.getGeometry().getCoordinates()[segment.getGeometry().getCoordinates().length - 1];
-			node.setProperty(WayGraphConstants.SEGMENT_START_X, startCoord.x);
-			node.setProperty(WayGraphConstants.SEGMENT_START_Y, startCoord.y);
-			node.setProperty(WayGraphConstants.SEGMENT_END_X, endCoord.x);
-			node.setProperty(WayGraphConstants.SEGMENT_END_Y, endCoord.y);
+			properties.put(WayGraphConstants.SEGMENT_START_X, startCoord.x);
+			properties.put(WayGraphConstants.SEGMENT_START_Y, startCoord.y);
+			properties.put(WayGraphConstants.SEGMENT_END_X, endCoord.x);
+			properties.put(WayGraphConstants.SEGMENT_END_Y, endCoord.y);
 		}
 		if (segment.getTags() != null) {
-			Neo4jTagMappingUtils.createTagProperties(node, segment.getTags(), WayGraphConstants.SEGMENT_TAG_PREFIX);
+			Neo4jTagMappingUtils.createTagProperties(properties, segment.getTags(), WayGraphConstants.SEGMENT_TAG_PREFIX);
+		}
+		return properties;
+	}
+
+	private void setNodeProperties(Node node, Map<String, Object> properties) {
+		for (Map.Entry<String, Object> property : properties.entrySet()) {
+			node.setProperty(property.getKey(), property.getValue());
 		}
 	}
 
@@ -157,6 +184,41 @@ public class Neo4jWaySegmentHelperImpl implements INeo4jWaySegmentHelper<IWaySeg
 		}
 	}
 	
+	/**
+	 * @param accessTypes byte[] with IDs of access types
+	 * @return bitmask with bit (1 << ID) set for each access type; 0 if no access types are given
+	 */
+	public static long parseAccessBitmask(byte[] accessTypes) {
+		long bitmask = 0;
+		if (accessTypes != null) {
+			for (byte accessType : accessTypes) {
+				if (accessType >= 0 && accessType < Long.SIZE) {
+					bitmask |= 1L << accessType;
+				}
+			}
+		}
+		return bitmask;
+	}
+	
+	/**
+	 * @return access bitmask of a connection; precomputed bitmask if available, otherwise parsed from the access array
+	 */
+	public static long getConnectionAccessBitmask(Relationship connection) {
+		Object bitmask = connection.getProperty(WayGraphConstants.CONNECTION_ACCESS_BITMASK, null);
+		if (bitmask != null) {
+			return (long) bitmask;
+		}
+		// connection has been imported without precomputed bitmask
+		return parseAccessBitmask((byte[]) connection.getProperty(WayGraphConstants.CONNECTION_ACCESS, null));
+	}
+	
+	/**
+	 * @return bitmask with bit (1 << ID) set for the access type
+	 */
+	public static long createAccessBitmask(Access access) {
+		return 1L << access.getId();
+	}
+	
 	public static Set<Access> getAccessOverlappings(Set<Access> accesses1, Set<Access> accesses2) {
 		Set<Access> overlappingAccesses = new HashSet<>();
 		for (Access access1 : accesses1) {
@@ -172,8 +234,11 @@ public class Neo4jWaySegmentHelperImpl implements INeo4jWaySegmentHelper<IWaySeg
 	}
 	
 	public static LineString encodeLineString(Node node) throws ParseException {
-		WKBReader wkbReader = new WKBReader();
-		return (LineString) wkbReader.read((byte[]) node.getProperty(WayGraphConstants.SEGMENT_GEOM));
+		return encodeLineString((byte[]) node.getProperty(WayGraphConstants.SEGMENT_GEOM));
+	}
+	
+	public static LineString encodeLineString(byte[] wkb) throws ParseException {
+		return (LineString) WKB_READER.get().read(wkb);
 	}
 	
 }
@@ -0,0 +1,43 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index;
+
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Spatial index over the segments of one graph version.
+ */
+public interface ISpatialIndex {
+
+	/**
+	 * @param referencePoint point to measure the distance of segments to
+	 * @param searchEnvelope only segments whose envelopes intersect the search envelope will be considered
+	 * @param limit maximum number of results; all segments within search envelope if <= 0
+	 * @return IDs of the segments' Neo4j nodes ordered by distance to the reference point (nearest first)
+	 */
+	List<Long> findNearestSegmentIds(Point referencePoint, Envelope searchEnvelope, int limit);
+
+	/**
+	 * @return number of indexed segments
+	 */
+	int size();
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+
+/**
+ * Persists the segments cache of a graph version (from which the STR-Tree will be built) into a snapshot file
+ * per graph version. On startup snapshots will be memory-mapped and rehydrated without reading any segment
+ * from Neo4j.
+ *
+ * Snapshots store Neo4j node IDs and are only valid for the database they have been created from. Each
+ * snapshot holds the graph version's valid from and storage timestamps; if they do not match the metadata
+ * the snapshot will be ignored.
+ *
+ * File layout (big endian): header (magic, format version, valid from, storage timestamp, SRID, segments count,
+ * coordinates count) followed by the columns segment IDs, node IDs, lengths, max speeds tow, max speeds bkw,
+ * FRCs, coordinate offsets and packed coordinates.
+ */
+public class STRTreeSnapshotStore {
+
+	private static Logger log = LoggerFactory.getLogger(STRTreeSnapshotStore.class);
+
+	private static final int MAGIC = 0x47535452; // "GSTR"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+	private static final String FILE_SUFFIX = ".strtree";
+	// number of coordinate values per mapped chunk (2^27 doubles = 1 GB)
+	private static final int CHUNK_SHIFT = 27;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private String snapshotDirectory;
+
+	public boolean isEnabled() {
+		return snapshotDirectory != null && !snapshotDirectory.trim().isEmpty();
+	}
+
+	/**
+	 * @return segments cache read from snapshot or null if no valid snapshot exists
+	 */
+	public GraphSegmentsCacheEntry load(String graphVersionName, IWayGraphVersionMetadata metadata) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Path file = getSnapshotFile(graphVersionName);
+		if (!Files.isReadable(file)) {
+			return null;
+		}
+
+		long startTime = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				log.warn("Snapshot " + file + " is corrupt and will be ignored");
+				return null;
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+				log.warn("Snapshot " + file + " has an unknown format and will be ignored");
+				return null;
+			}
+			if (header.getLong(8) != getValidFrom(metadata) || header.getLong(16) != getStorageTimestamp(metadata)) {
+				log.info("Snapshot " + file + " is outdated and will be ignored");
+				return null;
+			}
+			int srid = header.getInt(24);
+			int size = header.getInt(28);
+			int coordinatesSize = header.getInt(32);
+
+			long pos = HEADER_SIZE;
+			MappedByteBuffer segmentIds = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 8L);
+			pos += size * 8L;
+			MappedByteBuffer nodeIds = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 8L);
+			pos += size * 8L;
+			MappedByteBuffer lengths = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 4L);
+			pos += size * 4L;
+			MappedByteBuffer maxSpeedsTow = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 2L);
+			pos += size * 2L;
+			MappedByteBuffer maxSpeedsBkw = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 2L);
+			pos += size * 2L;
+			MappedByteBuffer frcs = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 2L);
+			pos += size * 2L;
+			MappedByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, (size + 1) * 4L);
+			pos += (size + 1) * 4L;
+			if (channel.size() != pos + coordinatesSize * 8L) {
+				log.warn("Snapshot " + file + " is corrupt and will be ignored");
+				return null;
+			}
+			// coordinates may exceed the maximum size of a single mapped buffer
+			MappedByteBuffer[] coordinateChunks = new MappedByteBuffer[(int) ((coordinatesSize + (long) CHUNK_MASK) >>> CHUNK_SHIFT)];
+			for (int c = 0; c < coordinateChunks.length; c++) {
+				long chunkSize = Math.min(CHUNK_MASK + 1, coordinatesSize - ((long) c << CHUNK_SHIFT));
+				coordinateChunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, pos + ((long) c << CHUNK_SHIFT) * 8, chunkSize * 8);
+			}
+
+			GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(metadata, size);
+			segmentsCache.setGeometryFactory(new GeometryFactory(new PrecisionModel(), srid), srid);
+
+			double[] coords = new double[64];
+			for (int i = 0; i < size; i++) {
+				int coordOffset = offsets.getInt(i * 4);
+				int coordLength = offsets.getInt((i + 1) * 4) - coordOffset;
+				if (coords.length < coordLength) {
+					coords = new double[coordLength];
+				}
+				for (int j = 0; j < coordLength; j++) {
+					int k = coordOffset + j;
+					coords[j] = coordinateChunks[k >>> CHUNK_SHIFT].getDouble((k & CHUNK_MASK) * 8);
+				}
+				segmentsCache.addSegmentsCacheEntry(
+						segmentIds.getLong(i * 8),
+						nodeIds.getLong(i * 8),
+						coords,
+						coordLength / 2,
+						lengths.getFloat(i * 4),
+						maxSpeedsTow.getShort(i * 2),
+						maxSpeedsBkw.getShort(i * 2),
+						frcs.getShort(i * 2));
+			}
+			segmentsCache.trimToSize();
+
+			log.info("Loaded " + size + " segments of graph version " + graphVersionName + " from snapshot in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+			return segmentsCache;
+		} catch (IOException e) {
+			log.error("Could not read snapshot " + file, e);
+			return null;
+		}
+	}
+
+	public void save(String graphVersionName, IWayGraphVersionMetadata metadata, GraphSegmentsCacheEntry segmentsCache) {
+		if (!isEnabled()) {
+			return;
+		}
+		Path file = getSnapshotFile(graphVersionName);
+		Path tmpFile = Paths.get(file.toString() + ".tmp");
+
+		long startTime = System.currentTimeMillis();
+		try {
+			Files.createDirectories(file.getParent());
+			int size = segmentsCache.size();
+			int coordinatesSize = 0;
+			for (int i = 0; i < size; i++) {
+				coordinatesSize += segmentsCache.getCoordinatesCount(i) * 2;
+			}
+
+			try (OutputStream os = Files.newOutputStream(tmpFile);
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(getValidFrom(metadata));
+				out.writeLong(getStorageTimestamp(metadata));
+				out.writeInt(segmentsCache.getSrid());
+				out.writeInt(size);
+				out.writeInt(coordinatesSize);
+
+				for (int i = 0; i < size; i++) {
+					out.writeLong(segmentsCache.getSegmentId(i));
+				}
+				for (int i = 0; i < size; i++) {
+					out.writeLong(segmentsCache.getNodeId(i));
+				}
+				for (int i = 0; i < size; i++) {
+					out.writeFloat(segmentsCache.getLength(i));
+				}
+				for (int i = 0; i < size; i++) {
+					out.writeShort(segmentsCache.getMaxSpeedTow(i));
+				}
+				for (int i = 0; i < size; i++) {
+					out.writeShort(segmentsCache.getMaxSpeedBkw(i));
+				}
+				for (int i = 0; i < size; i++) {
+					out.writeShort(segmentsCache.getFrc(i));
+				}
+				int offset = 0;
+				out.writeInt(offset);
+				for (int i = 0; i < size; i++) {
+					offset += segmentsCache.getCoordinatesCount(i) * 2;
+					out.writeInt(offset);
+				}
+				for (int i = 0; i < size; i++) {
+					for (int j = 0; j < segmentsCache.getCoordinatesCount(i); j++) {
+						out.writeDouble(segmentsCache.getX(i, j));
+						out.writeDouble(segmentsCache.getY(i, j));
+					}
+				}
+			}
+
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.info("Snapshot of graph version " + graphVersionName + " written in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		} catch (IOException e) {
+			log.error("Could not write snapshot " + file, e);
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e1) {
+				log.warn("Could not delete temporary snapshot file " + tmpFile);
+			}
+		}
+	}
+
+	public void delete(String graphVersionName) {
+		if (!isEnabled()) {
+			return;
+		}
+		Path file = getSnapshotFile(graphVersionName);
+		try {
+			if (Files.deleteIfExists(file)) {
+				log.info("Snapshot of graph version " + graphVersionName + " deleted");
+			}
+		} catch (IOException e) {
+			log.error("Could not delete snapshot " + file, e);
+		}
+	}
+
+	private Path getSnapshotFile(String graphVersionName) {
+		return Paths.get(snapshotDirectory, graphVersionName + FILE_SUFFIX);
+	}
+
+	private long getValidFrom(IWayGraphVersionMetadata metadata) {
+		return metadata.getValidFrom() != null ? metadata.getValidFrom().getTime() : 0;
+	}
+
+	private long getStorageTimestamp(IWayGraphVersionMetadata metadata) {
+		return metadata.getStorageTimestamp() != null ? metadata.getStorageTimestamp().getTime() : 0;
+	}
+
+	public String getSnapshotDirectory() {
+		return snapshotDirectory;
+	}
+
+	public void setSnapshotDirectory(String snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+}
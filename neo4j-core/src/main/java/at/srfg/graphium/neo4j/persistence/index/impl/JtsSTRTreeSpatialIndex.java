@@ -0,0 +1,89 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.model.index.STRTreeEntity;
+import at.srfg.graphium.neo4j.persistence.index.ISpatialIndex;
+import at.srfg.graphium.neo4j.persistence.index.STRTreeEntityComparator;
+
+/**
+ * Spatial index based on JTS' STR-Tree. All candidates within the search envelope will be sorted by distance.
+ */
+public class JtsSTRTreeSpatialIndex implements ISpatialIndex {
+
+	private STRtree tree;
+
+	public JtsSTRTreeSpatialIndex(STRtree tree) {
+		this.tree = tree;
+	}
+
+	public JtsSTRTreeSpatialIndex(GraphSegmentsCacheEntry segmentsCache) {
+		tree = new STRtree();
+		for (int i = 0; i < segmentsCache.size(); i++) {
+			LineString geom = segmentsCache.getGeometry(i);
+			// CAUTION: node IDs are only valid if nodes will not be deleted!
+			STRTreeEntity entity = new STRTreeEntity(geom.getCoordinateSequence(), geom.getFactory(), segmentsCache.getNodeId(i));
+			tree.insert(geom.getEnvelopeInternal(), entity);
+		}
+		tree.build();
+	}
+
+	@Override
+	public List<Long> findNearestSegmentIds(Point referencePoint, Envelope searchEnvelope, int limit) {
+		List<Long> segmentIds = new ArrayList<>();
+		
+		List<STRTreeEntity> candidates = tree.query(searchEnvelope);
+		if (candidates != null && !candidates.isEmpty()) {
+			candidates.sort(new STRTreeEntityComparator(referencePoint));
+			int lim;
+			if (limit > 0) {
+				lim = limit;
+			} else {
+				lim = candidates.size();
+			}
+			Iterator<STRTreeEntity> it = candidates.iterator();
+			int i = 0;
+			while (it.hasNext() && i < lim) {
+				segmentIds.add(it.next().getSegmentId());
+				i++;
+			}
+		}
+		
+		return segmentIds;
+	}
+
+	@Override
+	public int size() {
+		return tree.size();
+	}
+
+	public STRtree getTree() {
+		return tree;
+	}
+
+}
@@ -0,0 +1,413 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Point;
+
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.index.ISpatialIndex;
+
+/**
+ * Static packed Hilbert R-Tree. Segments are sorted along a Hilbert curve and packed bottom-up into nodes of
+ * a fixed size; the whole tree is held in a primitive bounding box and index array. Segment geometries are
+ * not copied but read from the graph version's segments cache.
+ *
+ * Nearest neighbour searches expand the tree best-first using a priority queue on the minimum distance of
+ * node bounding boxes and exact segment distances; the search terminates as soon as the requested number of
+ * segments has been found. Distances are planar distances within the coordinate system of the segments (as
+ * JTS' Geometry.distance()).
+ */
+public class PackedHilbertRTreeSpatialIndex implements ISpatialIndex {
+
+	private static final int DEFAULT_NODE_SIZE = 16;
+	private static final int HILBERT_MAX = (1 << 16) - 1;
+
+	private final GraphSegmentsCacheEntry segmentsCache;
+	private final int nodeSize;
+	private final int numItems;
+	// bounding boxes of all items and nodes (minX, minY, maxX, maxY); items first, root last
+	private final double[] boxes;
+	// row index in segments cache for items, position of first child for nodes
+	private final int[] indices;
+	// end position (exclusive) of each level
+	private final int[] levelBounds;
+
+	public PackedHilbertRTreeSpatialIndex(GraphSegmentsCacheEntry segmentsCache) {
+		this(segmentsCache, DEFAULT_NODE_SIZE);
+	}
+
+	public PackedHilbertRTreeSpatialIndex(GraphSegmentsCacheEntry segmentsCache, int nodeSize) {
+		this.segmentsCache = segmentsCache;
+		this.nodeSize = Math.max(2, nodeSize);
+		this.numItems = segmentsCache.size();
+
+		// calculate number of nodes per level
+		int[] bounds = new int[32];
+		int levels = 0;
+		int n = numItems;
+		int numNodes = n;
+		bounds[levels++] = numNodes;
+		do {
+			n = (n + this.nodeSize - 1) / this.nodeSize;
+			numNodes += n;
+			bounds[levels++] = numNodes;
+		} while (n > 1);
+		this.levelBounds = Arrays.copyOf(bounds, levels);
+
+		this.boxes = new double[numNodes * 4];
+		this.indices = new int[numNodes];
+
+		build();
+	}
+
+	private void build() {
+		if (numItems == 0) {
+			return;
+		}
+
+		// items' bounding boxes and extent of all items
+		double[] itemBoxes = new double[numItems * 4];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numItems; i++) {
+			double bMinX = Double.POSITIVE_INFINITY;
+			double bMinY = Double.POSITIVE_INFINITY;
+			double bMaxX = Double.NEGATIVE_INFINITY;
+			double bMaxY = Double.NEGATIVE_INFINITY;
+			int count = segmentsCache.getCoordinatesCount(i);
+			for (int j = 0; j < count; j++) {
+				double x = segmentsCache.getX(i, j);
+				double y = segmentsCache.getY(i, j);
+				bMinX = Math.min(bMinX, x);
+				bMinY = Math.min(bMinY, y);
+				bMaxX = Math.max(bMaxX, x);
+				bMaxY = Math.max(bMaxY, y);
+			}
+			itemBoxes[i * 4] = bMinX;
+			itemBoxes[i * 4 + 1] = bMinY;
+			itemBoxes[i * 4 + 2] = bMaxX;
+			itemBoxes[i * 4 + 3] = bMaxY;
+			minX = Math.min(minX, bMinX);
+			minY = Math.min(minY, bMinY);
+			maxX = Math.max(maxX, bMaxX);
+			maxY = Math.max(maxY, bMaxY);
+		}
+
+		// sort items by Hilbert value of their centers
+		double width = maxX - minX;
+		double height = maxY - minY;
+		long[] hilbertValues = new long[numItems];
+		for (int i = 0; i < numItems; i++) {
+			int x = width == 0 ? 0 : (int) (HILBERT_MAX * ((itemBoxes[i * 4] + itemBoxes[i * 4 + 2]) / 2 - minX) / width);
+			int y = height == 0 ? 0 : (int) (HILBERT_MAX * ((itemBoxes[i * 4 + 1] + itemBoxes[i * 4 + 3]) / 2 - minY) / height);
+			hilbertValues[i] = hilbert(x, y);
+		}
+		int[] order = sortByHilbertValue(hilbertValues);
+
+		for (int pos = 0; pos < numItems; pos++) {
+			int item = order[pos];
+			System.arraycopy(itemBoxes, item * 4, boxes, pos * 4, 4);
+			indices[pos] = item;
+		}
+
+		// pack nodes bottom-up
+		int pos = 0;
+		int nodePos = numItems;
+		for (int level = 0; level < levelBounds.length - 1; level++) {
+			int end = levelBounds[level];
+			while (pos < end) {
+				int firstChild = pos;
+				double nMinX = Double.POSITIVE_INFINITY;
+				double nMinY = Double.POSITIVE_INFINITY;
+				double nMaxX = Double.NEGATIVE_INFINITY;
+				double nMaxY = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < nodeSize && pos < end; i++, pos++) {
+					nMinX = Math.min(nMinX, boxes[pos * 4]);
+					nMinY = Math.min(nMinY, boxes[pos * 4 + 1]);
+					nMaxX = Math.max(nMaxX, boxes[pos * 4 + 2]);
+					nMaxY = Math.max(nMaxY, boxes[pos * 4 + 3]);
+				}
+				boxes[nodePos * 4] = nMinX;
+				boxes[nodePos * 4 + 1] = nMinY;
+				boxes[nodePos * 4 + 2] = nMaxX;
+				boxes[nodePos * 4 + 3] = nMaxY;
+				indices[nodePos] = firstChild;
+				nodePos++;
+			}
+		}
+	}
+
+	@Override
+	public List<Long> findNearestSegmentIds(Point referencePoint, Envelope searchEnvelope, int limit) {
+		List<Long> segmentIds = new ArrayList<>(limit > 0 ? limit : 16);
+		if (numItems == 0) {
+			return segmentIds;
+		}
+
+		double px = referencePoint.getX();
+		double py = referencePoint.getY();
+		int maxResults = limit > 0 ? limit : Integer.MAX_VALUE;
+		int itemsEnd = numItems;
+
+		// queue values: position << 1 | 1 for nodes, item << 1 for items
+		MinHeap queue = new MinHeap(nodeSize * 4);
+		int nodePos = boxes.length / 4 - 1;
+		boolean root = true;
+
+		while (nodePos >= 0) {
+			if (root && !intersects(nodePos, searchEnvelope)) {
+				break;
+			}
+			root = false;
+
+			// add children of current node
+			int firstChild = indices[nodePos];
+			int end = Math.min(firstChild + nodeSize, upperBound(firstChild));
+			for (int pos = firstChild; pos < end; pos++) {
+				if (!intersects(pos, searchEnvelope)) {
+					continue;
+				}
+				if (pos < itemsEnd) {
+					int item = indices[pos];
+					queue.push(segmentDistance(item, px, py), item << 1);
+				} else {
+					queue.push(boxDistance(pos, px, py), (pos << 1) | 1);
+				}
+			}
+
+			// pop all items nearer than any remaining node
+			while (!queue.isEmpty() && (queue.peekValue() & 1) == 0) {
+				segmentIds.add(segmentsCache.getNodeId(queue.pop() >>> 1));
+				if (segmentIds.size() >= maxResults) {
+					return segmentIds;
+				}
+			}
+
+			nodePos = queue.isEmpty() ? -1 : (queue.pop() >>> 1);
+		}
+
+		return segmentIds;
+	}
+
+	@Override
+	public int size() {
+		return numItems;
+	}
+
+	private int upperBound(int pos) {
+		for (int bound : levelBounds) {
+			if (bound > pos) {
+				return bound;
+			}
+		}
+		return levelBounds[levelBounds.length - 1];
+	}
+
+	private boolean intersects(int pos, Envelope env) {
+		return !(boxes[pos * 4] > env.getMaxX() || boxes[pos * 4 + 1] > env.getMaxY() ||
+				 boxes[pos * 4 + 2] < env.getMinX() || boxes[pos * 4 + 3] < env.getMinY());
+	}
+
+	private double boxDistance(int pos, double px, double py) {
+		double dx = axisDistance(px, boxes[pos * 4], boxes[pos * 4 + 2]);
+		double dy = axisDistance(py, boxes[pos * 4 + 1], boxes[pos * 4 + 3]);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static double axisDistance(double p, double min, double max) {
+		return p < min ? min - p : (p > max ? p - max : 0);
+	}
+
+	private double segmentDistance(int item, double px, double py) {
+		int count = segmentsCache.getCoordinatesCount(item);
+		double x1 = segmentsCache.getX(item, 0);
+		double y1 = segmentsCache.getY(item, 0);
+		if (count == 1) {
+			return Math.hypot(px - x1, py - y1);
+		}
+		double minDistSq = Double.POSITIVE_INFINITY;
+		for (int j = 1; j < count; j++) {
+			double x2 = segmentsCache.getX(item, j);
+			double y2 = segmentsCache.getY(item, j);
+			minDistSq = Math.min(minDistSq, pointLineSegmentDistanceSq(px, py, x1, y1, x2, y2));
+			x1 = x2;
+			y1 = y2;
+		}
+		return Math.sqrt(minDistSq);
+	}
+
+	static double pointLineSegmentDistanceSq(double px, double py, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lenSq = dx * dx + dy * dy;
+		double t = 0;
+		if (lenSq > 0) {
+			t = ((px - x1) * dx + (py - y1) * dy) / lenSq;
+			t = t < 0 ? 0 : (t > 1 ? 1 : t);
+		}
+		double ex = x1 + t * dx - px;
+		double ey = y1 + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * @param hilbertValues Hilbert values (unsigned 32 bit) per item
+	 * @return items in ascending order of their Hilbert values
+	 */
+	static int[] sortByHilbertValue(long[] hilbertValues) {
+		// key = hilbert value (upper 32 bits) | item (lower 32 bits); the sign bit is flipped to sort the keys unsigned,
+		// otherwise the upper half of the curve would be placed before the lower half
+		long[] keys = new long[hilbertValues.length];
+		for (int i = 0; i < hilbertValues.length; i++) {
+			keys[i] = ((hilbertValues[i] << 32) | i) ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Hilbert curve index of a point within a 2^16 x 2^16 grid
+	 * (see "Fast Hilbert curve generation" by rawrunprotected, public domain)
+	 */
+	static long hilbert(int x, int y) {
+		int a = x ^ y;
+		int b = 0xFFFF ^ a;
+		int c = 0xFFFF ^ (x | y);
+		int d = x & (y ^ 0xFFFF);
+
+		int A = a | (b >> 1);
+		int B = (a >> 1) ^ a;
+		int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+		int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+		a = A; b = B; c = C; d = D;
+		A = (a & (a >> 2)) ^ (b & (b >> 2));
+		B = (a & (b >> 2)) ^ (b & ((a ^ b) >> 2));
+		C ^= (a & (c >> 2)) ^ (b & (d >> 2));
+		D ^= (b & (c >> 2)) ^ ((a ^ b) & (d >> 2));
+
+		a = A; b = B; c = C; d = D;
+		A = (a & (a >> 4)) ^ (b & (b >> 4));
+		B = (a & (b >> 4)) ^ (b & ((a ^ b) >> 4));
+		C ^= (a & (c >> 4)) ^ (b & (d >> 4));
+		D ^= (b & (c >> 4)) ^ ((a ^ b) & (d >> 4));
+
+		a = A; b = B; c = C; d = D;
+		C ^= (a & (c >> 8)) ^ (b & (d >> 8));
+		D ^= (b & (c >> 8)) ^ ((a ^ b) & (d >> 8));
+
+		a = C ^ (C >> 1);
+		b = D ^ (D >> 1);
+
+		int i0 = x ^ y;
+		int i1 = b | (0xFFFF ^ (i0 | a));
+
+		i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+		i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+		i0 = (i0 | (i0 << 2)) & 0x33333333;
+		i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+		i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+		i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+		i1 = (i1 | (i1 << 2)) & 0x33333333;
+		i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+		return (((long) i1 << 1) | i0) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Binary min heap of primitive (distance, value) pairs.
+	 */
+	private static class MinHeap {
+
+		private double[] keys;
+		private int[] values;
+		private int size = 0;
+
+		MinHeap(int capacity) {
+			keys = new double[capacity];
+			values = new int[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int peekValue() {
+			return values[0];
+		}
+
+		void push(double key, int value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			int pos = size++;
+			while (pos > 0) {
+				int parent = (pos - 1) >> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				keys[pos] = keys[parent];
+				values[pos] = values[parent];
+				pos = parent;
+			}
+			keys[pos] = key;
+			values[pos] = value;
+		}
+
+		int pop() {
+			int top = values[0];
+			size--;
+			if (size > 0) {
+				double key = keys[size];
+				int value = values[size];
+				int pos = 0;
+				int half = size >> 1;
+				while (pos < half) {
+					int child = (pos << 1) + 1;
+					if (child + 1 < size && keys[child + 1] < keys[child]) {
+						child++;
+					}
+					if (keys[child] >= key) {
+						break;
+					}
+					keys[pos] = keys[child];
+					values[pos] = values[child];
+					pos = child;
+				}
+				keys[pos] = key;
+				values[pos] = value;
+			}
+			return top;
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@
  */
 package at.srfg.graphium.neo4j.persistence.nodemapper.impl;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import org.neo4j.graphdb.Node;
@@ -30,8 +31,9 @@ import at.srfg.graphium.model.FormOfWay;
 import at.srfg.graphium.model.FuncRoadClass;
 import at.srfg.graphium.model.IWayGraphModelFactory;
 import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.neo4j.model.LazyWaySegment;
 import at.srfg.graphium.neo4j.model.WayGraphConstants;
-import at.srfg.graphium.neo4j.model.cache.SegmentCacheEntry;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
 import at.srfg.graphium.neo4j.persistence.impl.Neo4jWayGraphWriteDaoImpl;
 import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
 import at.srfg.graphium.neo4j.persistence.nodemapper.INeo4jXInfoNodeMapper;
@@ -59,6 +61,88 @@ public class Neo4jWaySegmentMapper implements INeo4jXInfoNodeMapper<IWaySegment>
 		IWaySegment segment = factory.newSegment();
 
 		Map<String, Object> properties = node.getAllProperties();
+		mapAttributes(segment, properties);
+		//		segment.setId((long) properties.get(WayGraphConstants.SEGMENT_TIMESTAMP));
+		if (properties.containsKey(WayGraphConstants.SEGMENT_ACCESS_TOW)) {
+			segment.setAccessTow(Neo4jWaySegmentHelperImpl.parseAccessTypes((byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_TOW)));
+		}
+		if (properties.containsKey(WayGraphConstants.SEGMENT_ACCESS_BKW)) {
+			segment.setAccessBkw(Neo4jWaySegmentHelperImpl.parseAccessTypes((byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_BKW)));
+		}
+
+		if (properties.containsKey(WayGraphConstants.SEGMENT_GEOM)) {
+			LineString geometry = null;
+			if (graphName != null && version != null && cache != null) {
+				GraphSegmentsCacheEntry segmentsCache = cache.getSegmentsCache(graphName, version);
+				if (segmentsCache != null) {
+					int index = segmentsCache.getIndexPerNodeId(node.getId());
+					if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
+						geometry = segmentsCache.getGeometry(index);
+					}
+				}
+			}
+			if (geometry == null) {
+				try {
+					geometry = Neo4jWaySegmentHelperImpl.encodeLineString((byte[]) properties.get(WayGraphConstants.SEGMENT_GEOM));
+				} catch (ParseException e) {
+					log.error("Could not parse geometry", e);
+				}
+			}
+			if (geometry != null) {
+				segment.setGeometry(geometry);
+			}
+		}
+
+		this.setSegmentXInfos(segment, types);
+
+		segment.setTags(Neo4jTagMappingUtils.mapTagProperties(properties));
+
+		return segment;
+	}
+
+	/**
+	 * Maps the node to a {@link LazyWaySegment}: geometry, tags and access types will be decoded on their first access.
+	 * The geometry property will only be read if the segment is not cached.
+	 * 
+	 * @param segmentsCache segments cache of the node's graph version providing the geometry; optional
+	 */
+	public IWaySegment mapLazily(Node node, GraphSegmentsCacheEntry segmentsCache) {
+		int index = GraphSegmentsCacheEntry.NOT_CACHED;
+		if (segmentsCache != null) {
+			index = segmentsCache.getIndexPerNodeId(node.getId());
+		}
+		boolean cached = index != GraphSegmentsCacheEntry.NOT_CACHED;
+		
+		Map<String, Object> properties = new HashMap<>();
+		Map<String, Object> tagProperties = null;
+		byte[] wkb = null;
+		for (String key : node.getPropertyKeys()) {
+			if (key.startsWith(WayGraphConstants.SEGMENT_TAG_PREFIX)) {
+				if (tagProperties == null) {
+					tagProperties = new HashMap<>();
+				}
+				tagProperties.put(key, node.getProperty(key));
+			} else if (key.equals(WayGraphConstants.SEGMENT_GEOM)) {
+				if (!cached) {
+					wkb = (byte[]) node.getProperty(key);
+				}
+			} else {
+				properties.put(key, node.getProperty(key));
+			}
+		}
+		
+		LazyWaySegment segment = new LazyWaySegment(wkb, tagProperties, 
+				(byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_TOW), 
+				(byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_BKW), 
+				cached ? segmentsCache : null, index);
+		mapAttributes(segment, properties);
+		return segment;
+	}
+
+	/**
+	 * Maps all attributes except geometry, tags and access types.
+	 */
+	private void mapAttributes(IWaySegment segment, Map<String, Object> properties) {
 		segment.setId((long) properties.get(WayGraphConstants.SEGMENT_ID));
 		segment.setName((String) properties.get(WayGraphConstants.SEGMENT_NAME));
 		if (properties.containsKey(WayGraphConstants.SEGMENT_MAXSPEED_TOW)) {
@@ -121,39 +205,6 @@ public class Neo4jWaySegmentMapper implements INeo4jXInfoNodeMapper<IWaySegment>
 		} else {
 			segment.setUrban(false);
 		}
-		//		segment.setId((long) properties.get(WayGraphConstants.SEGMENT_TIMESTAMP));
-		if (properties.containsKey(WayGraphConstants.SEGMENT_ACCESS_TOW)) {
-			segment.setAccessTow(Neo4jWaySegmentHelperImpl.parseAccessTypes((byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_TOW)));
-		}
-		if (properties.containsKey(WayGraphConstants.SEGMENT_ACCESS_BKW)) {
-			segment.setAccessBkw(Neo4jWaySegmentHelperImpl.parseAccessTypes((byte[]) properties.get(WayGraphConstants.SEGMENT_ACCESS_BKW)));
-		}
-
-		if (properties.containsKey(WayGraphConstants.SEGMENT_GEOM)) {
-			LineString geometry = null;
-			if (graphName != null && version != null && cache != null) {
-				SegmentCacheEntry cacheEntry = cache.getCacheEntryPerNodeId(graphName, version, node.getId());
-				if (cacheEntry != null) {
-					geometry = cacheEntry.getGeometry();
-				}
-			}
-			if (geometry == null) {
-				try {
-					geometry = Neo4jWaySegmentHelperImpl.encodeLineString(node);
-				} catch (ParseException e) {
-					log.error("Could not parse geometry", e);
-				}
-			}
-			if (geometry != null) {
-				segment.setGeometry(geometry);
-			}
-		}
-
-		this.setSegmentXInfos(segment, types);
-
-		segment.setTags(Neo4jTagMappingUtils.mapTagProperties(node));
-
-		return segment;
 	}
 
 	private void setSegmentXInfos(IWaySegment segment, String... types) {
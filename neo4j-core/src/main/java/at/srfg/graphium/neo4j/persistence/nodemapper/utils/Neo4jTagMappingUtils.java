@@ -33,6 +33,12 @@ public class Neo4jTagMappingUtils {
 		}
 	}
 	
+	public static void createTagProperties(Map<String,Object> properties, Map<String,String> tags, String prefix) {
+		for (String key : tags.keySet()) {
+			properties.put(prefix+key, tags.get(key));
+		}
+	}
+	
 	public static Map<String, String> mapTagProperties(Node node) {
 		Map<String, String> tags = new HashMap<>();
 		
@@ -49,4 +55,20 @@ public class Neo4jTagMappingUtils {
 		return tags;
 	}
 	
+	public static Map<String, String> mapTagProperties(Map<String, Object> properties) {
+		Map<String, String> tags = new HashMap<>();
+		
+		for (Map.Entry<String, Object> property : properties.entrySet()) {
+			if (property.getKey().startsWith(WayGraphConstants.SEGMENT_TAG_PREFIX)) {
+				tags.put(StringUtils.removeStart(
+						property.getKey(), WayGraphConstants.SEGMENT_TAG_PREFIX), (String) property.getValue());
+			}
+		}
+		
+		if (tags.isEmpty()) {
+			tags = null;
+		}
+		return tags;
+	}
+	
 }
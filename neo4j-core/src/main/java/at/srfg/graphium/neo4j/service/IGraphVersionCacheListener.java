@@ -0,0 +1,38 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.service;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+
+/**
+ * Listener for caches depending on graph versions (e.g. cached routes). Listeners will be notified by the 
+ * STRTreeCacheManager if a graph version has been activated or removed, so dependent entries can be invalidated.
+ */
+public interface IGraphVersionCacheListener {
+
+	/**
+	 * Called after a new graph version has been activated and indexed.
+	 */
+	void graphVersionActivated(IWayGraphVersionMetadata metadata);
+
+	/**
+	 * Called after a graph version has been removed from the caches.
+	 */
+	void graphVersionRemoved(String graphName, String version);
+	
+}
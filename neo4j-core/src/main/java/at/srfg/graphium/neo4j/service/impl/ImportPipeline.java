@@ -0,0 +1,225 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.core.exception.GraphImportException;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.neo4j.model.PreparedWaySegment;
+import at.srfg.graphium.neo4j.persistence.INeo4jWaySegmentHelper;
+
+/**
+ * Import pipeline of one graph version: parsed batches will be mapped to node properties (incl. WKB encoding) by a pool
+ * of worker threads and written by a single writer thread in the order they have been submitted. The number of batches
+ * in the pipeline is limited; submitting blocks as long as the limit is reached (back-pressure on the parser).
+ */
+public class ImportPipeline {
+
+	private static Logger log = LoggerFactory.getLogger(ImportPipeline.class);
+
+	/**
+	 * Writes prepared batches; will be called by the writer thread only.
+	 */
+	public interface IBatchWriter {
+		void write(List<PreparedWaySegment> segments, List<IWaySegmentConnection> connections) throws Exception;
+	}
+
+	private final INeo4jWaySegmentHelper<IWaySegment> segmentHelper;
+	private final IBatchWriter writer;
+	private final Semaphore pendingBatches;
+	private final ExecutorService prepareExecutor;
+	private final ExecutorService writeExecutor;
+	private volatile Exception failure = null;
+	private volatile boolean aborted = false;
+
+	// per stage metrics
+	private final long startTime = System.currentTimeMillis();
+	private final AtomicLong submittedSegments = new AtomicLong();
+	private final AtomicLong preparedSegments = new AtomicLong();
+	private final AtomicLong writtenSegments = new AtomicLong();
+	private final AtomicLong prepareTimeInNs = new AtomicLong();
+	private final AtomicLong writeTimeInNs = new AtomicLong();
+	private final AtomicLong blockedTimeInNs = new AtomicLong();
+
+	public ImportPipeline(INeo4jWaySegmentHelper<IWaySegment> segmentHelper, IBatchWriter writer, int threads,
+			int maxPendingBatches) {
+		this.segmentHelper = segmentHelper;
+		this.writer = writer;
+		this.pendingBatches = new Semaphore(maxPendingBatches);
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		this.prepareExecutor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "import-prepare-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.writeExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "import-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Submits a batch; blocks if the maximum number of pending batches has been reached.
+	 * 
+	 * @throws GraphImportException if writing a previous batch failed
+	 */
+	public void submit(List<? extends IWaySegment> segments, List<IWaySegmentConnection> connections) throws GraphImportException {
+		checkFailure();
+		long blockStart = System.nanoTime();
+		try {
+			pendingBatches.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GraphImportException("Import interrupted", e);
+		}
+		blockedTimeInNs.addAndGet(System.nanoTime() - blockStart);
+		
+		// batch lists could be reused by the caller
+		final List<IWaySegment> batchSegments = segments != null ? new ArrayList<>(segments) : new ArrayList<>();
+		final List<IWaySegmentConnection> batchConnections = connections != null ? new ArrayList<>(connections) : null;
+		submittedSegments.addAndGet(batchSegments.size());
+		
+		Future<List<PreparedWaySegment>> preparedBatch = prepareExecutor.submit(() -> prepare(batchSegments));
+		writeExecutor.execute(() -> {
+			try {
+				if (failure == null && !aborted) {
+					List<PreparedWaySegment> prepared = preparedBatch.get();
+					long writeStart = System.nanoTime();
+					writer.write(prepared, batchConnections);
+					writeTimeInNs.addAndGet(System.nanoTime() - writeStart);
+					writtenSegments.addAndGet(prepared.size());
+				}
+			} catch (Exception e) {
+				log.error("Error during writing batch", e);
+				failure = e;
+			} finally {
+				pendingBatches.release();
+			}
+		});
+	}
+
+	private List<PreparedWaySegment> prepare(List<IWaySegment> segments) {
+		long prepareStart = System.nanoTime();
+		List<PreparedWaySegment> prepared = new ArrayList<>(segments.size());
+		for (IWaySegment segment : segments) {
+			prepared.add(new PreparedWaySegment(segment, segmentHelper.prepareNodeProperties(segment)));
+		}
+		prepareTimeInNs.addAndGet(System.nanoTime() - prepareStart);
+		preparedSegments.addAndGet(prepared.size());
+		return prepared;
+	}
+
+	/**
+	 * Waits until all submitted batches have been written and stops the pipeline.
+	 * 
+	 * @throws GraphImportException if writing a batch failed
+	 */
+	public void finish() throws GraphImportException {
+		writeExecutor.shutdown();
+		try {
+			while (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+				log.info(writtenSegments.get() + " of " + submittedSegments.get() + " segments written");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GraphImportException("Import interrupted", e);
+		} finally {
+			prepareExecutor.shutdownNow();
+		}
+		checkFailure();
+		logStatistics();
+	}
+
+	/**
+	 * Stops the pipeline; pending batches will be discarded. Waits until the batch currently written has been finished, 
+	 * so the graph version can be rolled back afterwards.
+	 */
+	public void abort() {
+		aborted = true;
+		writeExecutor.shutdownNow();
+		prepareExecutor.shutdownNow();
+		try {
+			while (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+				log.info("Waiting for the writer to finish the current batch");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted while waiting for the writer to finish");
+		}
+	}
+
+	private void checkFailure() throws GraphImportException {
+		if (failure != null) {
+			throw new GraphImportException("Error during saving batch", failure);
+		}
+	}
+
+	private void logStatistics() {
+		log.info("Import pipeline finished in " + (System.currentTimeMillis() - startTime) + " ms: " 
+				+ preparedSegments.get() + " segments prepared (" + getThroughput(preparedSegments.get(), prepareTimeInNs.get()) 
+				+ " segments/s per worker), " + writtenSegments.get() + " segments written (" 
+				+ getThroughput(writtenSegments.get(), writeTimeInNs.get()) + " segments/s), parser blocked for " 
+				+ TimeUnit.NANOSECONDS.toMillis(blockedTimeInNs.get()) + " ms");
+	}
+
+	private long getThroughput(long count, long timeInNs) {
+		return timeInNs > 0 ? count * 1000000000L / timeInNs : 0;
+	}
+
+	public long getSubmittedSegments() {
+		return submittedSegments.get();
+	}
+
+	public long getPreparedSegments() {
+		return preparedSegments.get();
+	}
+
+	public long getWrittenSegments() {
+		return writtenSegments.get();
+	}
+
+	public long getPrepareTimeInMs() {
+		return TimeUnit.NANOSECONDS.toMillis(prepareTimeInNs.get());
+	}
+
+	public long getWriteTimeInMs() {
+		return TimeUnit.NANOSECONDS.toMillis(writeTimeInNs.get());
+	}
+
+	/**
+	 * @return time the parser has been blocked by back-pressure
+	 */
+	public long getBlockedTimeInMs() {
+		return TimeUnit.NANOSECONDS.toMillis(blockedTimeInNs.get());
+	}
+
+}
@@ -37,7 +37,10 @@ import at.srfg.graphium.core.service.impl.QueuingGraphVersionImportServiceImpl;
 import at.srfg.graphium.model.IWayGraph;
 import at.srfg.graphium.model.IWaySegment;
 import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.neo4j.model.PreparedWaySegment;
+import at.srfg.graphium.neo4j.persistence.INeo4jWayGraphBulkWriteDao;
 import at.srfg.graphium.neo4j.persistence.INeo4jWayGraphIndexDao;
+import at.srfg.graphium.neo4j.persistence.INeo4jWaySegmentHelper;
 import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
 
 /**
@@ -50,6 +53,18 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 	private IGraphDatabaseProvider graphDatabaseProvider;
 	private INeo4jWayGraphIndexDao indexDao;
 	private int batchSizeForSpatialInsertion = 5000;
+	// if true new graph versions will be bulk imported (segmentId index will be created after import)
+	private boolean bulkImport = false;
+	private INeo4jWayGraphBulkWriteDao bulkWriteDao;
+	// if true segments will be mapped to node properties by worker threads while batches will be written by a single thread
+	private boolean pipelinedImport = false;
+	// number of worker threads mapping segments (0 = number of available processors - 1)
+	private int pipelineThreads = 0;
+	// maximum number of batches in the pipeline before the parser will be blocked
+	private int maxPendingBatches = 4;
+	private INeo4jWaySegmentHelper<IWaySegment> segmentHelper;
+	// pipeline of the running import (imports will be run one by one)
+	private volatile ImportPipeline importPipeline = null;
 
 	@Override
 	public void preImport(String graphName, String version) {
@@ -62,6 +77,28 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 			
 			tx.success();
 		}
+		
+		if (isBulkImportEnabled()) {
+			bulkWriteDao.startBulkImport(graphName, version);
+		}
+		
+		if (pipelinedImport) {
+			if (bulkWriteDao == null || segmentHelper == null) {
+				log.warn("Pipelined import enabled but no bulk write DAO or segment helper configured");
+			} else {
+				int threads = pipelineThreads > 0 ? pipelineThreads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+				importPipeline = new ImportPipeline(segmentHelper, 
+						(segments, connections) -> writePreparedBatch(segments, connections, graphName, version),
+						threads, maxPendingBatches);
+			}
+		}
+	}
+	
+	private boolean isBulkImportEnabled() {
+		if (bulkImport && bulkWriteDao == null) {
+			log.warn("Bulk import enabled but no bulk write DAO configured");
+		}
+		return bulkImport && bulkWriteDao != null;
 	}
 	
 	private void deleteGraphVersion(String graphName, String version) throws GraphNotExistsException {
@@ -72,6 +109,12 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 	@Override
 	protected void saveBatch(List<T> segmentsToSave, List<IWaySegmentConnection> connectionsToSave,
 			String graphName, String version) throws GraphImportException {
+		ImportPipeline pipeline = importPipeline;
+		if (pipeline != null) {
+			pipeline.submit(segmentsToSave, connectionsToSave);
+			return;
+		}
+		
 		Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx();
 		try {
 			super.saveBatch(segmentsToSave, connectionsToSave, graphName, version);
@@ -88,9 +131,30 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 		}
 	}
 
+	private void writePreparedBatch(List<PreparedWaySegment> segmentsToSave, List<IWaySegmentConnection> connectionsToSave,
+			String graphName, String version) {
+		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
+			if (!segmentsToSave.isEmpty()) {
+				bulkWriteDao.savePreparedSegments(segmentsToSave, graphName, version);
+			}
+			if (connectionsToSave != null && !connectionsToSave.isEmpty()) {
+				writeDao.saveConnections(connectionsToSave, graphName, version);
+			}
+			tx.success();
+		}
+	}
+
 	@Override
 	protected void handleImportError(String graphName, String version, Exception e) throws GraphImportException {
 		log.error(e.toString(), e);
+		ImportPipeline pipeline = importPipeline;
+		if (pipeline != null) {
+			pipeline.abort();
+			importPipeline = null;
+		}
+		if (bulkWriteDao != null) {
+			bulkWriteDao.abortBulkImport(graphName, version);
+		}
 		// Hier muss manuell ein Rollback getriggered werden => Löschen der Graphversion + Metadata + Spatial Layer
 		try {
 			if (e instanceof GraphAlreadyExistException) {
@@ -106,9 +170,31 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 
 	@Override
 	public void postImport(IWayGraph wayGraph, String version, boolean graphVersionAlreadyExisted) {
+		String graphName = wayGraph.getName();
+		ImportPipeline pipeline = importPipeline;
+		if (pipeline != null) {
+			// all batches have to be written before the import can be finished
+			try {
+				pipeline.finish();
+				importPipeline = null;
+			} catch (GraphImportException e) {
+				// graph version has been rolled back; indexes must not be created for a failed import
+				try {
+					handleImportError(graphName, version, e);
+				} catch (GraphImportException e1) {
+					throw new IllegalStateException(e1.getMessage(), e1);
+				}
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+		
+		// segmentId index has to exist before the graph version can be read
+		if (bulkWriteDao != null && bulkWriteDao.isBulkImportRunning(graphName, version)) {
+			bulkWriteDao.finishBulkImport(graphName, version);
+		}
+		
 		super.postImport(wayGraph, version, graphVersionAlreadyExisted);
 		
-		String graphName = wayGraph.getName();
 		log.info("Creating indexes...");
 		writeDao.createIndexes(graphName, version);
 		log.info("Indexes created successfully");
@@ -130,6 +216,61 @@ public class Neo4jQueuingGraphVersionImportServiceImpl<T extends IWaySegment> ex
 		this.batchSizeForSpatialInsertion = batchSizeForSpatialInsertion;
 	}
 
+	public boolean isBulkImport() {
+		return bulkImport;
+	}
+
+	public void setBulkImport(boolean bulkImport) {
+		this.bulkImport = bulkImport;
+	}
+
+	public INeo4jWayGraphBulkWriteDao getBulkWriteDao() {
+		return bulkWriteDao;
+	}
+
+	public void setBulkWriteDao(INeo4jWayGraphBulkWriteDao bulkWriteDao) {
+		this.bulkWriteDao = bulkWriteDao;
+	}
+
+	public boolean isPipelinedImport() {
+		return pipelinedImport;
+	}
+
+	public void setPipelinedImport(boolean pipelinedImport) {
+		this.pipelinedImport = pipelinedImport;
+	}
+
+	public int getPipelineThreads() {
+		return pipelineThreads;
+	}
+
+	public void setPipelineThreads(int pipelineThreads) {
+		this.pipelineThreads = pipelineThreads;
+	}
+
+	public int getMaxPendingBatches() {
+		return maxPendingBatches;
+	}
+
+	public void setMaxPendingBatches(int maxPendingBatches) {
+		this.maxPendingBatches = maxPendingBatches;
+	}
+
+	public INeo4jWaySegmentHelper<IWaySegment> getSegmentHelper() {
+		return segmentHelper;
+	}
+
+	public void setSegmentHelper(INeo4jWaySegmentHelper<IWaySegment> segmentHelper) {
+		this.segmentHelper = segmentHelper;
+	}
+
+	/**
+	 * @return pipeline of the running import (provides per stage metrics) or null
+	 */
+	public ImportPipeline getImportPipeline() {
+		return importPipeline;
+	}
+
 	public INeo4jWayGraphIndexDao getIndexDao() {
 		return indexDao;
 	}
@@ -17,26 +17,26 @@
  */
 package at.srfg.graphium.neo4j.service.impl;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.neo4j.graphdb.Label;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.ResourceIterator;
-import org.neo4j.graphdb.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.index.strtree.STRtree;
-import com.vividsolutions.jts.io.ParseException;
 
 import at.srfg.graphium.core.helper.GraphVersionHelper;
 import at.srfg.graphium.core.observer.IGraphVersionStateModifiedObserver;
@@ -44,13 +44,16 @@ import at.srfg.graphium.core.observer.impl.AbstractGraphVersionStateModifiedObse
 import at.srfg.graphium.core.service.IGraphVersionMetadataService;
 import at.srfg.graphium.model.IWayGraphVersionMetadata;
 import at.srfg.graphium.model.State;
-import at.srfg.graphium.neo4j.model.WayGraphConstants;
 import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
 import at.srfg.graphium.neo4j.model.cache.STRTreeCacheEntry;
 import at.srfg.graphium.neo4j.model.cache.SegmentCacheEntry;
-import at.srfg.graphium.neo4j.model.index.STRTreeEntity;
 import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
-import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.neo4j.persistence.index.ISpatialIndex;
+import at.srfg.graphium.neo4j.persistence.index.STRTreeSnapshotStore;
+import at.srfg.graphium.neo4j.persistence.index.SpatialIndexType;
+import at.srfg.graphium.neo4j.persistence.index.impl.JtsSTRTreeSpatialIndex;
+import at.srfg.graphium.neo4j.persistence.index.impl.PackedHilbertRTreeSpatialIndex;
+import at.srfg.graphium.neo4j.service.IGraphVersionCacheListener;
 
 /**
  * @author mwimmer
@@ -61,19 +64,35 @@ implements IGraphVersionStateModifiedObserver {
 
 	private IGraphVersionMetadataService metadataService;
 	private IGraphDatabaseProvider graphDatabaseProvider;
+	// optional store for persisted segments caches / STR-Trees
+	private STRTreeSnapshotStore snapshotStore;
+	// implementation of the spatial index built per graph version
+	private SpatialIndexType indexType = SpatialIndexType.STR_TREE;
 	
-	// the current (active) version of each graph 
-	private Map<String, STRTreeCacheEntry> activeIndexCache = null;
+	// the current (active) version of each graph; entries will be replaced atomically after a new version has been built
+	private Map<String, STRTreeCacheEntry> activeIndexCache = new ConcurrentHashMap<>();
 	// the last n requested historic (active) graph versions
-	private Cache<String, STRtree> historicIndexCache = null;
-	// segment's cache, key segmentId
-	private Cache<String, GraphSegmentsCacheEntry> graphsSegmentIdCache = null;
-	// segment's cache, key nodeId
-	private Cache<String, GraphSegmentsCacheEntry> graphsNodeIdCache = null;
+	private Cache<String, STRTreeCacheEntry> historicIndexCache = null;
 	
 	private long expirationTime = 60;
 	private int maximumHistoricCachSize = 3;
-	private Map<String, STRtree> lastBuiltTree = new HashMap<>(1);
+	// builds per graph version; the last completed build is kept to avoid building the same version twice
+	private Map<String, CompletableFuture<STRTreeCacheEntry>> builds = new ConcurrentHashMap<>();
+	// caches depending on graph versions
+	private List<IGraphVersionCacheListener> cacheListeners = new CopyOnWriteArrayList<>();
+	// number of threads reading segments from Neo4j (0 = number of available processors)
+	private int buildThreads = 0;
+	// number of segment nodes read per task
+	private int buildChunkSize = 10000;
+	
+	// build metrics
+	private volatile String buildingGraphVersion = null;
+	private volatile AtomicLong buildProgress = new AtomicLong();
+	private volatile long lastBuildDurationInMs = -1;
+	private volatile long lastBuildSegmentsCount = -1;
+	
+	// builds indexes of newly activated graph versions while the current versions keep serving requests
+	private ExecutorService rebuildExecutor;
 	
 	@PostConstruct
 	public void setup() {
@@ -82,25 +101,20 @@ implements IGraphVersionStateModifiedObserver {
 										 .maximumSize(maximumHistoricCachSize)
 										 .build();
 		
-		graphsSegmentIdCache = CacheBuilder.newBuilder()
-										 .expireAfterAccess(expirationTime, TimeUnit.SECONDS)
-										 .build();
-		
-		graphsNodeIdCache = CacheBuilder.newBuilder()
-										 .expireAfterAccess(expirationTime, TimeUnit.SECONDS)
-										 .build();
+		rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "strtree-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
 
 		List<String> graphNamesToIndex = metadataService.getGraphs();
 		
 		if (graphNamesToIndex != null && !graphNamesToIndex.isEmpty()) {
-		
-			activeIndexCache = new HashMap<>(graphNamesToIndex.size());
-			
 			for (String graphName : graphNamesToIndex) {
 				IWayGraphVersionMetadata metadata = metadataService.getCurrentWayGraphVersionMetadata(graphName);
 				if (metadata != null) {
 //					String graphVersionName = GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion());
-					activeIndexCache.put(graphName, new STRTreeCacheEntry(metadata, buildTree(metadata)));
+					activeIndexCache.put(graphName, buildTree(metadata, true));
 				} else {
 					log.warn("No current version found for graph " + graphName);
 				}
@@ -108,140 +122,183 @@ implements IGraphVersionStateModifiedObserver {
 		}
 	}
 	
-	private synchronized STRtree buildTree(IWayGraphVersionMetadata metadata) {
+	@PreDestroy
+	public void shutdown() {
+		if (rebuildExecutor != null) {
+			rebuildExecutor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Builds the spatial index of a graph version. Only one build per graph version will be executed; concurrent
+	 * callers wait for the running build of the same graph version, builds of other graph versions do not block.
+	 * 
+	 * @param useSnapshot if true the segments cache will be loaded from a snapshot (if available) instead of reading
+	 * 					  all segments from Neo4j
+	 * @return cache entry holding the spatial index and the segments cache it has been built from
+	 */
+	private STRTreeCacheEntry buildTree(IWayGraphVersionMetadata metadata, boolean useSnapshot) {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion());
-		if (lastBuiltTree.containsKey(graphVersionName)) {
-			log.info("Already built STR-Tree found for graph version " + graphVersionName);
-			return lastBuiltTree.get(graphVersionName);
+		CompletableFuture<STRTreeCacheEntry> build = new CompletableFuture<>();
+		CompletableFuture<STRTreeCacheEntry> existingBuild = builds.putIfAbsent(graphVersionName, build);
+		if (existingBuild != null) {
+			log.info("Already built or running build of STR-Tree found for graph version " + graphVersionName);
+			try {
+				return existingBuild.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		
+		STRTreeCacheEntry entry;
+		try {
+			entry = doBuildTree(graphVersionName, metadata, useSnapshot);
+		} catch (RuntimeException | Error e) {
+			builds.remove(graphVersionName, build);
+			build.completeExceptionally(e);
+			throw e;
+		}
+		build.complete(entry);
+		// previously built tree is only removed after the new tree is complete
+		builds.entrySet().removeIf(b -> !b.getKey().equals(graphVersionName) && b.getValue().isDone());
+		return entry;
+	}
+	
+	private STRTreeCacheEntry doBuildTree(String graphVersionName, IWayGraphVersionMetadata metadata, boolean useSnapshot) {
+		if (useSnapshot && snapshotStore != null) {
+			GraphSegmentsCacheEntry segmentsCache = snapshotStore.load(graphVersionName, metadata);
+			if (segmentsCache != null) {
+				log.info("Building " + indexType + " for graph version " + graphVersionName + " from snapshot ...");
+				STRTreeCacheEntry entry = new STRTreeCacheEntry(metadata, createIndex(segmentsCache), segmentsCache);
+				log.info(indexType + " built");
+				return entry;
+			}
 		}
 		
-		log.info("Building STR-Tree for graph version " + graphVersionName + " ...");
-		lastBuiltTree.clear();
-		STRtree tree = new STRtree();
-		GraphSegmentsCacheEntry segmentIdCache = new GraphSegmentsCacheEntry(metadata);
-		GraphSegmentsCacheEntry nodeIdCache = new GraphSegmentsCacheEntry(metadata);
+		log.info("Building " + indexType + " for graph version " + graphVersionName + " ...");
+		long startTime = System.currentTimeMillis();
+		AtomicLong progress = new AtomicLong();
+		buildingGraphVersion = graphVersionName;
+		buildProgress = progress;
 		
 		printMemoryUsage();
 
-		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
-			ResourceIterator<Node> segmentNodes = graphDatabaseProvider.getGraphDatabase().findNodes(
-					Label.label(Neo4jWaySegmentHelperImpl.createSegmentNodeLabel(graphVersionName)));
+		GraphSegmentsCacheEntry segmentsCache;
+		try {
+			SegmentsCacheLoader loader = new SegmentsCacheLoader(graphDatabaseProvider.getGraphDatabase(),
+					buildThreads > 0 ? buildThreads : Runtime.getRuntime().availableProcessors(), buildChunkSize, progress);
+			segmentsCache = loader.load(graphVersionName, metadata);
 			
-			int i=0;
-			Node segmentNode = null;
-			Long segmentId = null;
-			Float length = null;
-			Short maxSpeedTow = null;
-			Short maxSpeedBkw = null;
-			Short frc = null;
-			
-			while (segmentNodes.hasNext()) {
-				segmentNode = segmentNodes.next();
-				LineString geom;
-				try {
-					geom = Neo4jWaySegmentHelperImpl.encodeLineString(segmentNode);
-					
-					// TODO: currently only max speed attributes considered - no current speeds!
-					segmentId = (Long)segmentNode.getProperty(WayGraphConstants.SEGMENT_ID);
-					length = (Float)segmentNode.getProperty(WayGraphConstants.SEGMENT_LENGTH);
-					maxSpeedTow = (Short)segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_TOW);
-					maxSpeedBkw = (Short)segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_BKW);
-					frc = (Short)segmentNode.getProperty(WayGraphConstants.SEGMENT_FRC);
-					
-					// fill segmentIDs cache
-					segmentIdCache.addSegmentsCacheEntry(segmentId, new SegmentCacheEntry(
-																				segmentId,
-																				geom,
-																				length,
-																				maxSpeedTow,
-																				maxSpeedBkw,
-																				frc));
-					
-					// fill nodeIDs cache
-					nodeIdCache.addSegmentsCacheEntry(segmentNode.getId(), new SegmentCacheEntry(
-							segmentNode.getId(),
-							geom,
-							length,
-							maxSpeedTow,
-							maxSpeedBkw,
-							frc));
-
-					// CAUTION: node IDs are only valid if nodes will not be deleted!
-					STRTreeEntity entity = new STRTreeEntity(geom.getCoordinateSequence(), geom.getFactory(), segmentNode.getId());
-					tree.insert(geom.getEnvelopeInternal(), entity);
-				} catch (ParseException e) {
-					log.error("Could not parse geometry", e);
-				}
-				i++;
+			log.info(segmentsCache.size() + " segments read in " + (System.currentTimeMillis() - startTime) + " ms");
+		} finally {
+			if (buildProgress == progress) {
+				buildingGraphVersion = null;
 			}
-
-			graphsSegmentIdCache.put(graphVersionName, segmentIdCache);
-			graphsNodeIdCache.put(graphVersionName, nodeIdCache);
-			
-			log.info(i + " segments indexed");
-			
-			tx.success();
 		}
 		
-		tree.build();
+		STRTreeCacheEntry entry = new STRTreeCacheEntry(metadata, createIndex(segmentsCache), segmentsCache);
 		
 		// TODO: count object bytes and log memory usage
 		printMemoryUsage();
 		
-		lastBuiltTree.put(graphVersionName, tree);
+		lastBuildDurationInMs = System.currentTimeMillis() - startTime;
+		lastBuildSegmentsCount = segmentsCache.size();
+		
+		log.info(indexType + " built in " + lastBuildDurationInMs + " ms");
 		
-		log.info("STR-Tree built");
+		if (snapshotStore != null) {
+			snapshotStore.save(graphVersionName, metadata, segmentsCache);
+		}
 		
-		return tree;
+		return entry;
+	}
+	
+	private ISpatialIndex createIndex(GraphSegmentsCacheEntry segmentsCache) {
+		ISpatialIndex index;
+		if (indexType == SpatialIndexType.HILBERT_R_TREE) {
+			index = new PackedHilbertRTreeSpatialIndex(segmentsCache);
+		} else {
+			index = new JtsSTRTreeSpatialIndex(segmentsCache);
+		}
+		log.info(index.size() + " segments indexed");
+		return index;
 	}
 
-	public STRtree getIndex(String graphName, String version) {
-		STRtree index = null;
-		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
-		
-		if (activeIndexCache != null && activeIndexCache.containsKey(graphName)) {
+	public ISpatialIndex getIndex(String graphName, String version) {
+		STRTreeCacheEntry entry = getIndexEntry(graphName, version);
+		return entry != null ? entry.getTree() : null;
+	}
+	
+	private STRTreeCacheEntry getIndexEntry(String graphName, String version) {
+		// read the published entry only once; it could be swapped concurrently
+		STRTreeCacheEntry entry = activeIndexCache.get(graphName);
+		if (entry != null && entry.getMetadata().getVersion().equals(version)) {
 			// requested graph version is an active one
-			if (activeIndexCache.get(graphName).getMetadata().getVersion().equals(version)) {
-				index = activeIndexCache.get(graphName).getTree();
+			return entry;
+		}
+		
+		// requested graph version is an historic one
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+		entry = historicIndexCache.getIfPresent(graphVersionName);
+		if (entry == null) {
+			// requested graph version is not in cache => load, build and cache tree index 
+			IWayGraphVersionMetadata metadata = metadataService.getWayGraphVersionMetadata(graphName, version);
+			if (metadata != null && metadata.getState().equals(State.ACTIVE)) {
+				// if requested version was null take version of metadata (should be current version)
+				graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, metadata.getVersion());
+				// maybe now we can find the right version in index cache?
+				STRTreeCacheEntry activeEntry = activeIndexCache.get(graphName);
+				if (activeEntry != null && activeEntry.getMetadata().getVersion().equals(metadata.getVersion())) {
+					entry = activeEntry;
+				} else {
+					entry = buildTree(metadata, true);
+					historicIndexCache.put(graphVersionName, entry);
+				}
 			}
-		} 
-		if (index == null) {
-			// requested graph version is an historic one
-			index = historicIndexCache.getIfPresent(graphVersionName);
-			if (index == null) {
-				// requested graph version is not in cache => load, build and cache tree index 
-				IWayGraphVersionMetadata metadata = metadataService.getWayGraphVersionMetadata(graphName, version);
-				if (metadata != null && metadata.getState().equals(State.ACTIVE)) {
-					// if requested version was null take version of metadata (should be current version)
-					graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, metadata.getVersion());
-					// maybe now we can find the right version in index cache?
-					if (activeIndexCache != null && activeIndexCache.containsKey(graphName) &&
-						activeIndexCache.get(graphName).getMetadata().getVersion().equals(metadata.getVersion())) {
-						index = activeIndexCache.get(graphName).getTree();
-					} else {
-						historicIndexCache.put(graphVersionName, buildTree(metadata));
-						index = historicIndexCache.getIfPresent(graphVersionName);
-					}
+		}
+		return entry;
+	}
+	
+	/**
+	 * @return columnar segments cache of the graph version or null if not cached; segment attributes can be read
+	 * 		   per row index without creating any objects. The segments cache is kept as long as the spatial index of
+	 * 		   the graph version is cached.
+	 */
+	public GraphSegmentsCacheEntry getSegmentsCache(String graphName, String version) {
+		STRTreeCacheEntry entry = activeIndexCache.get(graphName);
+		if (entry == null || !entry.getMetadata().getVersion().equals(version)) {
+			String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
+			entry = historicIndexCache.getIfPresent(graphVersionName);
+			if (entry == null) {
+				CompletableFuture<STRTreeCacheEntry> build = builds.get(graphVersionName);
+				if (build != null && build.isDone() && !build.isCompletedExceptionally()) {
+					entry = build.join();
 				}
 			}
 		}
-		return index;
+		return entry != null ? entry.getSegmentsCache() : null;
 	}
 	
 	public SegmentCacheEntry getCacheEntryPerSegmentId(String graphName, String version, long segmentId) {
-		return getCacheEntry(graphsSegmentIdCache, graphName, version, segmentId);
+		return getCacheEntry(graphName, version, segmentId, false);
 	}
 	
-	public SegmentCacheEntry getCacheEntryPerNodeId(String graphName, String version, long segmentId) {
-		return getCacheEntry(graphsNodeIdCache, graphName, version, segmentId);
+	public SegmentCacheEntry getCacheEntryPerNodeId(String graphName, String version, long nodeId) {
+		return getCacheEntry(graphName, version, nodeId, true);
 	}
 
-	public SegmentCacheEntry getCacheEntry(Cache<String, GraphSegmentsCacheEntry> cache, String graphName, String version, long segmentId) {
+	private SegmentCacheEntry getCacheEntry(String graphName, String version, long id, boolean perNodeId) {
 		SegmentCacheEntry entry = null;
-		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
-		GraphSegmentsCacheEntry graphSegmentsCacheEntry = cache.getIfPresent(graphVersionName);
+		GraphSegmentsCacheEntry graphSegmentsCacheEntry = getSegmentsCache(graphName, version);
 		if (graphSegmentsCacheEntry != null) {
-			entry = graphSegmentsCacheEntry.getSegmentsCacheEntry(segmentId);
+			int index = perNodeId ? graphSegmentsCacheEntry.getIndexPerNodeId(id) 
+								  : graphSegmentsCacheEntry.getIndexPerSegmentId(id);
+			if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
+				entry = graphSegmentsCacheEntry.getSegmentsCacheEntry(index, perNodeId);
+			}
 		}
 		return entry;
 	}
@@ -253,16 +310,11 @@ implements IGraphVersionStateModifiedObserver {
 				IWayGraphVersionMetadata metadata = (IWayGraphVersionMetadata) metadataObj;
 				if (((IWayGraphVersionMetadata) metadata).getState().equals(State.ACTIVE)) {
 					// if a new graph version has been activated STRTree has to be built and cached
-					if (activeIndexCache == null ||
-						(activeIndexCache != null && (!activeIndexCache.containsKey(metadata.getGraphName()) ||
-						(activeIndexCache.containsKey(metadata.getGraphName()) && 
-						 activeIndexCache.get(metadata.getGraphName()).getMetadata().getValidFrom().before(metadata.getValidFrom()))))) {
+					STRTreeCacheEntry activeEntry = activeIndexCache.get(metadata.getGraphName());
+					if (activeEntry == null || activeEntry.getMetadata().getValidFrom().before(metadata.getValidFrom())) {
 						log.info("Got update to rebuild STR-Tree");
-//						String graphVersionName = GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion());
-						if (activeIndexCache == null) {
-							activeIndexCache = new HashMap<>();
-						}
-						activeIndexCache.put(metadata.getGraphName(), new STRTreeCacheEntry(metadata, buildTree(metadata)));
+						// the current version keeps serving requests until the new tree has been built
+						rebuildExecutor.execute(() -> activate(metadata));
 					}
 				} else if (metadata.getState().equals(State.DELETED)) {
 					log.info("Got update to remove graph version " + metadata.getGraphName() + "_" + 
@@ -277,17 +329,95 @@ implements IGraphVersionStateModifiedObserver {
 		}
 	}
 
+	private void activate(IWayGraphVersionMetadata metadata) {
+		String graphName = metadata.getGraphName();
+		try {
+			// graph version could have been modified => do not trust an existing snapshot
+			STRTreeCacheEntry newEntry = buildTree(metadata, false);
+			
+			synchronized (activeIndexCache) {
+				STRTreeCacheEntry oldEntry = activeIndexCache.get(graphName);
+				if (oldEntry != null && !oldEntry.getMetadata().getValidFrom().before(metadata.getValidFrom())) {
+					log.info("Newer version of graph " + graphName + " already active, STR-Tree of version " 
+							+ metadata.getVersion() + " will not be published");
+					return;
+				}
+				activeIndexCache.put(graphName, newEntry);
+				historicIndexCache.invalidate(GraphVersionHelper.createGraphVersionName(graphName, metadata.getVersion()));
+				if (oldEntry != null) {
+					// requests for the previous version will still be served without rebuilding its tree
+					historicIndexCache.put(GraphVersionHelper.createGraphVersionName(graphName, 
+							oldEntry.getMetadata().getVersion()), oldEntry);
+				}
+			}
+			log.info("STR-Tree of graph version " + graphName + "_" + metadata.getVersion() + " published");
+		} catch (RuntimeException e) {
+			log.error("Could not build STR-Tree for graph version " + graphName + "_" + metadata.getVersion(), e);
+			return;
+		}
+		
+		for (IGraphVersionCacheListener listener : cacheListeners) {
+			listener.graphVersionActivated(metadata);
+		}
+	}
+
 	private void removeFromTree(String graphName, String version) {
 		String graphVersionName = GraphVersionHelper.createGraphVersionName(graphName, version);
-		if (activeIndexCache != null && activeIndexCache.containsKey(graphName) && 
-			activeIndexCache.get(graphName).getMetadata().getVersion().equals(version)) {
-			activeIndexCache.remove(graphName);
-		} else {
-			historicIndexCache.invalidate(graphVersionName);
+		synchronized (activeIndexCache) {
+			STRTreeCacheEntry entry = activeIndexCache.get(graphName);
+			if (entry != null && entry.getMetadata().getVersion().equals(version)) {
+				activeIndexCache.remove(graphName);
+			} else {
+				historicIndexCache.invalidate(graphVersionName);
+			}
+		}
+		// requests which already hold the removed entry finish on it; it will be garbage collected afterwards
+		builds.remove(graphVersionName);
+		
+		if (snapshotStore != null) {
+			snapshotStore.delete(graphVersionName);
 		}
 		
-		graphsSegmentIdCache.invalidate(graphVersionName);
-		graphsNodeIdCache.invalidate(graphVersionName);
+		for (IGraphVersionCacheListener listener : cacheListeners) {
+			listener.graphVersionRemoved(graphName, version);
+		}
+	}
+
+	/**
+	 * Registers a cache which has to be invalidated if a graph version will be activated or removed.
+	 */
+	public void addCacheListener(IGraphVersionCacheListener listener) {
+		cacheListeners.add(listener);
+	}
+
+	public void removeCacheListener(IGraphVersionCacheListener listener) {
+		cacheListeners.remove(listener);
+	}
+
+	/**
+	 * @return name of the graph version whose segments are currently read from Neo4j (the latest one if several builds
+	 * 		   are running) or null if no build is running
+	 */
+	public String getBuildingGraphVersion() {
+		return buildingGraphVersion;
+	}
+
+	/**
+	 * @return number of segments read by the latest running build
+	 */
+	public long getBuildProgress() {
+		return buildProgress.get();
+	}
+
+	/**
+	 * @return duration of the last build from Neo4j (reading segments and building the spatial index) or -1
+	 */
+	public long getLastBuildDurationInMs() {
+		return lastBuildDurationInMs;
+	}
+
+	public long getLastBuildSegmentsCount() {
+		return lastBuildSegmentsCount;
 	}
 
 	private void printMemoryUsage() {
@@ -311,6 +441,22 @@ implements IGraphVersionStateModifiedObserver {
 		this.graphDatabaseProvider = graphDatabaseProvider;
 	}
 
+	public STRTreeSnapshotStore getSnapshotStore() {
+		return snapshotStore;
+	}
+
+	public void setSnapshotStore(STRTreeSnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	public SpatialIndexType getIndexType() {
+		return indexType;
+	}
+
+	public void setIndexType(SpatialIndexType indexType) {
+		this.indexType = indexType;
+	}
+
 	public long getExpirationTime() {
 		return expirationTime;
 	}
@@ -326,5 +472,21 @@ implements IGraphVersionStateModifiedObserver {
 	public void setMaximumHistoricCachSize(int maximumHistoricCachSize) {
 		this.maximumHistoricCachSize = maximumHistoricCachSize;
 	}
+
+	public int getBuildThreads() {
+		return buildThreads;
+	}
+
+	public void setBuildThreads(int buildThreads) {
+		this.buildThreads = buildThreads;
+	}
+
+	public int getBuildChunkSize() {
+		return buildChunkSize;
+	}
+
+	public void setBuildChunkSize(int buildChunkSize) {
+		this.buildChunkSize = buildChunkSize;
+	}
 	
 }
\ No newline at end of file
@@ -17,8 +17,6 @@
  */
 package at.srfg.graphium.neo4j.service.impl;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -26,11 +24,10 @@ import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Point;
-import com.vividsolutions.jts.index.strtree.STRtree;
 
 import at.srfg.graphium.geomutils.GeometryUtils;
-import at.srfg.graphium.neo4j.model.index.STRTreeEntity;
-import at.srfg.graphium.neo4j.persistence.index.STRTreeEntityComparator;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.index.ISpatialIndex;
 
 /**
  * @author mwimmer
@@ -56,34 +53,44 @@ public class STRTreeService {
 	private List<Long> findNearestSegmentIds(String graphName, String version, Point referencePoint, int limit,
 			Envelope env) {
 		List<Long> segmentIds = null;
-		STRtree tree = cacheManager.getIndex(graphName, version);
+		ISpatialIndex index = cacheManager.getIndex(graphName, version);
 		
-		if (tree == null) {
-			log.warn("no STR-Tree found for graph name " + graphName + " and version " + version);
+		if (index == null) {
+			log.warn("no spatial index found for graph name " + graphName + " and version " + version);
 		} else {
-			segmentIds = new ArrayList<>();
-			
-			List<STRTreeEntity> candidates = tree.query(env);
-			if (candidates != null && !candidates.isEmpty()) {
-				candidates.sort(new STRTreeEntityComparator(referencePoint));
-				int lim;
-				if (limit > 0) {
-					lim = limit;
-				} else {
-					lim = candidates.size();
-				}
-				Iterator<STRTreeEntity> it = candidates.iterator();
-				int i = 0;
-				while (it.hasNext() && i < lim) {
-					segmentIds.add(it.next().getSegmentId());
-					i++;
-				}
-			}
+			segmentIds = index.findNearestSegmentIds(referencePoint, env, limit);
 		}
 		
 		return segmentIds;
 	}
 
+	/**
+	 * Resolves the Neo4j node ID of a segment from the segments cache built alongside the spatial index.
+	 * 
+	 * @return node ID or {@link GraphSegmentsCacheEntry#NOT_CACHED} if the segment or the graph version is not cached
+	 */
+	public long getNodeIdPerSegmentId(String graphName, String version, long segmentId) {
+		GraphSegmentsCacheEntry segmentsCache = cacheManager.getSegmentsCache(graphName, version);
+		if (segmentsCache == null) {
+			return GraphSegmentsCacheEntry.NOT_CACHED;
+		}
+		return segmentsCache.getNodeIdPerSegmentId(segmentId);
+	}
+
+	/**
+	 * Resolves the Neo4j node IDs of many segments from the segments cache built alongside the spatial index.
+	 * 
+	 * @return node IDs in the order of the segment IDs ({@link GraphSegmentsCacheEntry#NOT_CACHED} for segments not cached) 
+	 * 		   or null if the graph version is not cached
+	 */
+	public long[] getNodeIdsPerSegmentIds(String graphName, String version, List<Long> segmentIds) {
+		GraphSegmentsCacheEntry segmentsCache = cacheManager.getSegmentsCache(graphName, version);
+		if (segmentsCache == null) {
+			return null;
+		}
+		return segmentsCache.getNodeIdsPerSegmentIds(segmentIds);
+	}
+
 	public STRTreeCacheManager getCacheManager() {
 		return cacheManager;
 	}
@@ -0,0 +1,220 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.ParseException;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+
+/**
+ * Reads all segments of a graph version from Neo4j into a segments cache using several threads. The calling thread scans
+ * the segment nodes' label and partitions their node IDs into chunks; worker threads read and decode the chunks within
+ * their own transactions (geometries are decoded by thread-local WKB readers). Chunks will be appended to the cache in scan
+ * order, so the resulting cache does not depend on the number of threads.
+ */
+class SegmentsCacheLoader {
+
+	private static Logger log = LoggerFactory.getLogger(SegmentsCacheLoader.class);
+
+	private static final int PROGRESS_LOG_INTERVAL = 1000000;
+
+	private final GraphDatabaseService graphDatabase;
+	private final int threads;
+	private final int chunkSize;
+	// number of segments read
+	private final AtomicLong progress;
+
+	SegmentsCacheLoader(GraphDatabaseService graphDatabase, int threads, int chunkSize, AtomicLong progress) {
+		this.graphDatabase = graphDatabase;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		this.progress = progress;
+	}
+
+	GraphSegmentsCacheEntry load(String graphVersionName, IWayGraphVersionMetadata metadata) {
+		GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(metadata, metadata.getSegmentsCount());
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "segments-cache-loader-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// bounds the number of chunks held in memory
+		int maxPendingChunks = threads * 2;
+		Deque<Future<SegmentsChunk>> pendingChunks = new ArrayDeque<>();
+		
+		try {
+			try (Transaction tx = graphDatabase.beginTx()) {
+				ResourceIterator<Node> segmentNodes = graphDatabase.findNodes(
+						Label.label(Neo4jWaySegmentHelperImpl.createSegmentNodeLabel(graphVersionName)));
+				long[] nodeIds = new long[chunkSize];
+				int count = 0;
+				while (segmentNodes.hasNext()) {
+					nodeIds[count++] = segmentNodes.next().getId();
+					if (count == chunkSize) {
+						final long[] chunkNodeIds = nodeIds;
+						pendingChunks.add(executor.submit(() -> readChunk(chunkNodeIds, chunkSize)));
+						nodeIds = new long[chunkSize];
+						count = 0;
+						while (pendingChunks.size() > maxPendingChunks) {
+							append(segmentsCache, pendingChunks.poll().get());
+						}
+					}
+				}
+				if (count > 0) {
+					final long[] chunkNodeIds = nodeIds;
+					final int chunkCount = count;
+					pendingChunks.add(executor.submit(() -> readChunk(chunkNodeIds, chunkCount)));
+				}
+				tx.success();
+			}
+			while (!pendingChunks.isEmpty()) {
+				append(segmentsCache, pendingChunks.poll().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Reading segments of graph version " + graphVersionName + " interrupted");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not read segments of graph version " + graphVersionName, e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		segmentsCache.trimToSize();
+		return segmentsCache;
+	}
+
+	private SegmentsChunk readChunk(long[] nodeIds, int count) {
+		SegmentsChunk chunk = new SegmentsChunk(count);
+		try (Transaction tx = graphDatabase.beginTx()) {
+			for (int i = 0; i < count; i++) {
+				Node segmentNode = graphDatabase.getNodeById(nodeIds[i]);
+				try {
+					LineString geom = Neo4jWaySegmentHelperImpl.encodeLineString(segmentNode);
+					// TODO: currently only max speed attributes considered - no current speeds!
+					chunk.add((long) segmentNode.getProperty(WayGraphConstants.SEGMENT_ID),
+							segmentNode.getId(),
+							geom,
+							(float) segmentNode.getProperty(WayGraphConstants.SEGMENT_LENGTH),
+							(short) segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_TOW),
+							(short) segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_BKW),
+							(short) segmentNode.getProperty(WayGraphConstants.SEGMENT_FRC));
+				} catch (ParseException e) {
+					log.error("Could not parse geometry", e);
+				}
+			}
+			tx.success();
+		}
+		
+		long read = progress.addAndGet(count);
+		if (read / PROGRESS_LOG_INTERVAL != (read - count) / PROGRESS_LOG_INTERVAL) {
+			log.info(read + " segments read");
+		}
+		return chunk;
+	}
+
+	private void append(GraphSegmentsCacheEntry segmentsCache, SegmentsChunk chunk) {
+		if (segmentsCache.getGeometryFactory() == null && chunk.geometryFactory != null) {
+			segmentsCache.setGeometryFactory(chunk.geometryFactory, chunk.srid);
+		}
+		for (int i = 0; i < chunk.size; i++) {
+			// CAUTION: node IDs are only valid if nodes will not be deleted!
+			segmentsCache.addSegmentsCacheEntry(chunk.segmentIds[i], chunk.nodeIds[i], chunk.coordinates, chunk.coordinateOffsets[i],
+					(chunk.coordinateOffsets[i + 1] - chunk.coordinateOffsets[i]) / 2,
+					chunk.lengths[i], chunk.maxSpeedsTow[i], chunk.maxSpeedsBkw[i], chunk.frcs[i]);
+		}
+	}
+
+	/**
+	 * Segments read by one worker in the same columnar layout as the segments cache.
+	 */
+	private static class SegmentsChunk {
+
+		private int size = 0;
+		private final long[] segmentIds;
+		private final long[] nodeIds;
+		private final float[] lengths;
+		private final short[] maxSpeedsTow;
+		private final short[] maxSpeedsBkw;
+		private final short[] frcs;
+		private final int[] coordinateOffsets;
+		private double[] coordinates;
+		private GeometryFactory geometryFactory;
+		private int srid;
+
+		private SegmentsChunk(int capacity) {
+			segmentIds = new long[capacity];
+			nodeIds = new long[capacity];
+			lengths = new float[capacity];
+			maxSpeedsTow = new short[capacity];
+			maxSpeedsBkw = new short[capacity];
+			frcs = new short[capacity];
+			coordinateOffsets = new int[capacity + 1];
+			coordinates = new double[capacity * 8];
+		}
+
+		private void add(long segmentId, long nodeId, LineString geometry, float length, short maxSpeedTow, short maxSpeedBkw, short frc) {
+			if (geometryFactory == null) {
+				geometryFactory = geometry.getFactory();
+				srid = geometry.getSRID();
+			}
+			CoordinateSequence coordSeq = geometry.getCoordinateSequence();
+			int coordOffset = coordinateOffsets[size];
+			if (coordOffset + coordSeq.size() * 2 > coordinates.length) {
+				coordinates = Arrays.copyOf(coordinates, Math.max(coordOffset + coordSeq.size() * 2, coordinates.length * 2));
+			}
+			for (int i = 0; i < coordSeq.size(); i++) {
+				coordinates[coordOffset++] = coordSeq.getX(i);
+				coordinates[coordOffset++] = coordSeq.getY(i);
+			}
+			segmentIds[size] = segmentId;
+			nodeIds[size] = nodeId;
+			lengths[size] = length;
+			maxSpeedsTow[size] = maxSpeedTow;
+			maxSpeedsBkw[size] = maxSpeedBkw;
+			frcs[size] = frc;
+			coordinateOffsets[++size] = coordOffset;
+		}
+
+	}
+
+}
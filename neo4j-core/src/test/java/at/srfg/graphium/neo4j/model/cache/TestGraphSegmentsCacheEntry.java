@@ -0,0 +1,94 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.model.cache;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+public class TestGraphSegmentsCacheEntry {
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+
+	@Test
+	public void testAddAndLookup() {
+		// initial capacity of 1 forces the columns to grow
+		GraphSegmentsCacheEntry cache = new GraphSegmentsCacheEntry(null, 1);
+
+		for (int i = 0; i < 100; i++) {
+			LineString geom = createLine(i, i + 2);
+			cache.addSegmentsCacheEntry(1000 + i, i, geom, 10f * i, (short) 50, (short) 100, (short) (i % 9));
+		}
+		cache.trimToSize();
+
+		Assert.assertEquals(100, cache.size());
+		Assert.assertEquals(GraphSegmentsCacheEntry.NOT_CACHED, cache.getIndexPerSegmentId(42));
+		Assert.assertEquals(GraphSegmentsCacheEntry.NOT_CACHED, cache.getIndexPerNodeId(1042));
+
+		int index = cache.getIndexPerSegmentId(1042);
+		Assert.assertEquals(index, cache.getIndexPerNodeId(42));
+		Assert.assertEquals(1042, cache.getSegmentId(index));
+		Assert.assertEquals(42, cache.getNodeId(index));
+		Assert.assertEquals(420f, cache.getLength(index), 0.0001);
+		Assert.assertEquals(6, cache.getFrc(index));
+		Assert.assertEquals(30, cache.getDuration(index, true));
+		Assert.assertEquals(15, cache.getDuration(index, false));
+
+		Assert.assertEquals(44, cache.getCoordinatesCount(index));
+		Assert.assertEquals(43d, cache.getX(index, 43), 0d);
+		Assert.assertEquals(42d + 43d / 10, cache.getY(index, 43), 0d);
+
+		LineString geom = cache.getGeometry(index);
+		Assert.assertTrue(createLine(42, 44).equalsExact(geom));
+		Assert.assertEquals(4326, geom.getSRID());
+
+		SegmentCacheEntry entry = cache.getSegmentsCacheEntry(index, false);
+		Assert.assertEquals(1042, entry.getId());
+		Assert.assertEquals(cache.getDuration(index, true), entry.getDuration(true));
+	}
+
+	@Test
+	public void testResolveNodeIds() {
+		GraphSegmentsCacheEntry cache = new GraphSegmentsCacheEntry(null, 10);
+		for (int i = 0; i < 10; i++) {
+			cache.addSegmentsCacheEntry(1000 + i, 500 + i, createLine(i, 2), 10f, (short) 50, (short) 50, (short) 0);
+		}
+		cache.trimToSize();
+
+		Assert.assertEquals(503, cache.getNodeIdPerSegmentId(1003));
+		Assert.assertEquals(GraphSegmentsCacheEntry.NOT_CACHED, cache.getNodeIdPerSegmentId(3));
+
+		long[] nodeIds = cache.getNodeIdsPerSegmentIds(Arrays.asList(1009L, 42L, 1000L));
+		Assert.assertArrayEquals(new long[] {509, GraphSegmentsCacheEntry.NOT_CACHED, 500}, nodeIds);
+	}
+
+	private LineString createLine(int y, int coordinatesCount) {
+		Coordinate[] coords = new Coordinate[coordinatesCount];
+		for (int i = 0; i < coordinatesCount; i++) {
+			coords[i] = new Coordinate(i, y + (double) i / 10);
+		}
+		return factory.createLineString(coords);
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.impl;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import at.srfg.graphium.core.helper.GraphVersionHelper;
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.model.impl.WaySegmentConnection;
+import at.srfg.graphium.neo4j.model.PreparedWaySegment;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+
+/**
+ * Tests the connections and the segment ID index stored by {@link Neo4jWayGraphWriteDaoImpl} on an embedded database.
+ */
+public class TestNeo4jWayGraphWriteDaoImpl {
+
+	private static final String GRAPH = "test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphDatabaseService graphDb;
+	private Neo4jWayGraphWriteDaoImpl dao;
+
+	@Before
+	public void setup() throws Exception {
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("db"));
+		dao = new Neo4jWayGraphWriteDaoImpl();
+		dao.setGraphDatabaseProvider(() -> graphDb);
+		dao.setSegmentHelper(new Neo4jWaySegmentHelperImpl());
+	}
+
+	@After
+	public void shutdown() {
+		graphDb.shutdown();
+	}
+
+	@Test
+	public void testConnectionDirectionAndAccess() {
+		// segment 1 from junction 1 to 2; other segments touch its start or end junction in both of their directions
+		List<PreparedWaySegment> segments = new ArrayList<>();
+		segments.add(createSegment(1, 1, 2));
+		segments.add(createSegment(2, 2, 3));
+		segments.add(createSegment(3, 4, 2));
+		segments.add(createSegment(4, 1, 5));
+		segments.add(createSegment(5, 6, 1));
+		dao.savePreparedSegments(segments, GRAPH, "1");
+
+		List<IWaySegmentConnection> connections = new ArrayList<>();
+		connections.add(new WaySegmentConnection(2, 1, 2, EnumSet.of(Access.PRIVATE_CAR)));
+		connections.add(new WaySegmentConnection(2, 1, 3, EnumSet.of(Access.PRIVATE_CAR, Access.BICYCLE)));
+		connections.add(new WaySegmentConnection(1, 1, 4, EnumSet.of(Access.PEDESTRIAN)));
+		connections.add(new WaySegmentConnection(1, 1, 5, EnumSet.of(Access.BICYCLE, Access.PEDESTRIAN)));
+		connections.add(new WaySegmentConnection(2, 3, 1, EnumSet.of(Access.PRIVATE_CAR)));
+		dao.saveConnections(connections, GRAPH, "1");
+
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(GRAPH, "1");
+		try (Transaction tx = graphDb.beginTx()) {
+			assertConnection(graphVersionName, connections.get(0), false, true);
+			assertConnection(graphVersionName, connections.get(1), false, false);
+			assertConnection(graphVersionName, connections.get(2), true, true);
+			assertConnection(graphVersionName, connections.get(3), true, false);
+			assertConnection(graphVersionName, connections.get(4), false, false);
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testConnectionAccessBitmaskWithoutPrecomputedBitmask() {
+		try (Transaction tx = graphDb.beginTx()) {
+			Relationship rel = graphDb.createNode().createRelationshipTo(graphDb.createNode(), 
+					WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE);
+			Assert.assertEquals(0, Neo4jWaySegmentHelperImpl.getConnectionAccessBitmask(rel));
+
+			// connection imported before access bitmasks have been precomputed
+			byte[] access = Neo4jWaySegmentHelperImpl.createAccessArray(EnumSet.of(Access.PRIVATE_CAR, Access.PEDESTRIAN));
+			rel.setProperty(WayGraphConstants.CONNECTION_ACCESS, access);
+			long bitmask = Neo4jWaySegmentHelperImpl.parseAccessBitmask(access);
+			Assert.assertEquals(bitmask, Neo4jWaySegmentHelperImpl.getConnectionAccessBitmask(rel));
+			Assert.assertEquals(2, Long.bitCount(bitmask));
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testBulkImportSegmentIdIndex() {
+		// index is created in several transactions
+		dao.setBatchSizeForIndexCreation(7);
+		importGraph("1", false);
+		importGraph("2", true);
+		Assert.assertFalse(dao.isBulkImportRunning(GRAPH, "2"));
+
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(GRAPH, "1");
+		String bulkGraphVersionName = GraphVersionHelper.createGraphVersionName(GRAPH, "2");
+		try (Transaction tx = graphDb.beginTx()) {
+			for (long segmentId = 0; segmentId <= 60; segmentId++) {
+				Node node = dao.getSegmentNode(graphVersionName, segmentId);
+				Node bulkNode = dao.getSegmentNode(bulkGraphVersionName, segmentId);
+				Assert.assertEquals(dao.getSegmentIdIndex(graphVersionName).get(WayGraphConstants.SEGMENT_ID, segmentId).size(),
+						dao.getSegmentIdIndex(bulkGraphVersionName).get(WayGraphConstants.SEGMENT_ID, segmentId).size());
+				if (segmentId == 0 || segmentId > 50) {
+					Assert.assertNull(node);
+					Assert.assertNull(bulkNode);
+				} else {
+					Assert.assertNotEquals(node, bulkNode);
+					Assert.assertEquals(segmentId, (long) node.getProperty(WayGraphConstants.SEGMENT_ID));
+					Assert.assertEquals(segmentId, (long) bulkNode.getProperty(WayGraphConstants.SEGMENT_ID));
+					Assert.assertEquals(getConnectedSegmentIds(node), getConnectedSegmentIds(bulkNode));
+				}
+			}
+			tx.success();
+		}
+	}
+
+	/**
+	 * Imports a chain of segments 1 to 50 with connections between neighbouring segments in several batches.
+	 */
+	private void importGraph(String version, boolean bulkImport) {
+		if (bulkImport) {
+			dao.startBulkImport(GRAPH, version);
+		}
+		for (long firstSegmentId = 1; firstSegmentId <= 50; firstSegmentId += 10) {
+			List<PreparedWaySegment> segments = new ArrayList<>();
+			for (long segmentId = firstSegmentId; segmentId < firstSegmentId + 10; segmentId++) {
+				segments.add(createSegment(segmentId, segmentId, segmentId + 1));
+			}
+			dao.savePreparedSegments(segments, GRAPH, version);
+		}
+		List<IWaySegmentConnection> connections = new ArrayList<>();
+		for (long segmentId = 1; segmentId < 50; segmentId++) {
+			connections.add(new WaySegmentConnection(segmentId + 1, segmentId, segmentId + 1, EnumSet.of(Access.PRIVATE_CAR)));
+			connections.add(new WaySegmentConnection(segmentId + 1, segmentId + 1, segmentId, EnumSet.of(Access.PRIVATE_CAR)));
+		}
+		dao.saveConnections(connections, GRAPH, version);
+		if (bulkImport) {
+			Assert.assertTrue(dao.isBulkImportRunning(GRAPH, version));
+			dao.finishBulkImport(GRAPH, version);
+		}
+	}
+
+	private Set<Long> getConnectedSegmentIds(Node node) {
+		Set<Long> segmentIds = new HashSet<>();
+		for (Relationship rel : node.getRelationships(Direction.OUTGOING, 
+				WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE, WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE)) {
+			segmentIds.add((long) rel.getEndNode().getProperty(WayGraphConstants.SEGMENT_ID));
+		}
+		return segmentIds;
+	}
+
+	/**
+	 * Asserts that exactly one relationship has been stored for the connection and that its precomputed properties match
+	 * the junction of the connection.
+	 */
+	private void assertConnection(String graphVersionName, IWaySegmentConnection connection, boolean fromStartNode,
+			boolean toStartNode) {
+		Node from = dao.getSegmentNode(graphVersionName, connection.getFromSegmentId());
+		Relationship connectionRel = null;
+		for (Relationship rel : from.getRelationships(Direction.OUTGOING, 
+				WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE, WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE)) {
+			if ((long) rel.getEndNode().getProperty(WayGraphConstants.SEGMENT_ID) == connection.getToSegmentId()) {
+				Assert.assertNull(connectionRel);
+				connectionRel = rel;
+			}
+		}
+		Assert.assertNotNull(connectionRel);
+		Assert.assertEquals(fromStartNode, connectionRel.isType(WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE));
+		Assert.assertEquals(connection.getNodeId(), (long) connectionRel.getProperty(WayGraphConstants.CONNECTION_NODE_ID));
+
+		byte direction = (byte) connectionRel.getProperty(WayGraphConstants.CONNECTION_DIRECTION);
+		Assert.assertEquals(fromStartNode, (direction & WayGraphConstants.CONNECTION_DIRECTION_FROM_STARTNODE) != 0);
+		Assert.assertEquals(toStartNode, (direction & WayGraphConstants.CONNECTION_DIRECTION_TO_STARTNODE) != 0);
+
+		long bitmask = (long) connectionRel.getProperty(WayGraphConstants.CONNECTION_ACCESS_BITMASK);
+		Assert.assertEquals(Neo4jWaySegmentHelperImpl.parseAccessBitmask(
+				Neo4jWaySegmentHelperImpl.createAccessArray(connection.getAccess())), bitmask);
+		Assert.assertEquals(connection.getAccess().size(), Long.bitCount(bitmask));
+		Assert.assertEquals(bitmask, Neo4jWaySegmentHelperImpl.getConnectionAccessBitmask(connectionRel));
+	}
+
+	/**
+	 * Creates a segment with the node properties needed for saving connections.
+	 */
+	private PreparedWaySegment createSegment(long segmentId, long startNodeId, long endNodeId) {
+		IWaySegment segment = new WaySegment();
+		segment.setId(segmentId);
+		Map<String, Object> nodeProperties = new HashMap<>();
+		nodeProperties.put(WayGraphConstants.SEGMENT_ID, segmentId);
+		nodeProperties.put(WayGraphConstants.SEGMENT_STARTNODE_ID, startNodeId);
+		nodeProperties.put(WayGraphConstants.SEGMENT_ENDNODE_ID, endNodeId);
+		return new PreparedWaySegment(segment, nodeProperties);
+	}
+
+}
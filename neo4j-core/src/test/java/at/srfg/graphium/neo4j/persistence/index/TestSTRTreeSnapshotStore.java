@@ -0,0 +1,172 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+
+public class TestSTRTreeSnapshotStore {
+
+	private static final String GRAPH_VERSION = "test_1";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+	private STRTreeSnapshotStore store;
+	private IWayGraphVersionMetadata metadata;
+
+	@Before
+	public void setup() throws Exception {
+		store = new STRTreeSnapshotStore();
+		store.setSnapshotDirectory(folder.newFolder("snapshots").getAbsolutePath());
+		metadata = createMetadata(1000, 2000);
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		GraphSegmentsCacheEntry segmentsCache = createSegmentsCache(100);
+		store.save(GRAPH_VERSION, metadata, segmentsCache);
+
+		GraphSegmentsCacheEntry loaded = store.load(GRAPH_VERSION, metadata);
+		Assert.assertNotNull(loaded);
+		Assert.assertSame(metadata, loaded.getMetadata());
+		Assert.assertEquals(segmentsCache.getSrid(), loaded.getSrid());
+		Assert.assertEquals(segmentsCache.size(), loaded.size());
+		for (int i = 0; i < segmentsCache.size(); i++) {
+			Assert.assertEquals(segmentsCache.getSegmentId(i), loaded.getSegmentId(i));
+			Assert.assertEquals(segmentsCache.getNodeId(i), loaded.getNodeId(i));
+			Assert.assertEquals(segmentsCache.getLength(i), loaded.getLength(i), 0);
+			Assert.assertEquals(segmentsCache.getMaxSpeedTow(i), loaded.getMaxSpeedTow(i));
+			Assert.assertEquals(segmentsCache.getMaxSpeedBkw(i), loaded.getMaxSpeedBkw(i));
+			Assert.assertEquals(segmentsCache.getFrc(i), loaded.getFrc(i));
+			Assert.assertEquals(segmentsCache.getCoordinatesCount(i), loaded.getCoordinatesCount(i));
+			Assert.assertTrue(segmentsCache.getGeometry(i).equalsExact(loaded.getGeometry(i)));
+			Assert.assertEquals(4326, loaded.getGeometry(i).getSRID());
+
+			// lookups used by the STR-Tree
+			Assert.assertEquals(i, loaded.getIndexPerSegmentId(segmentsCache.getSegmentId(i)));
+			Assert.assertEquals(i, loaded.getIndexPerNodeId(segmentsCache.getNodeId(i)));
+		}
+	}
+
+	@Test
+	public void testSaveAndLoadEmpty() {
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(0));
+
+		GraphSegmentsCacheEntry loaded = store.load(GRAPH_VERSION, metadata);
+		Assert.assertNotNull(loaded);
+		Assert.assertEquals(0, loaded.size());
+	}
+
+	@Test
+	public void testOutdatedSnapshot() {
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(10));
+
+		Assert.assertNull(store.load(GRAPH_VERSION, createMetadata(1000, 2001)));
+		Assert.assertNull(store.load(GRAPH_VERSION, createMetadata(999, 2000)));
+		Assert.assertNull(store.load("test_2", metadata));
+		Assert.assertNotNull(store.load(GRAPH_VERSION, createMetadata(1000, 2000)));
+	}
+
+	@Test
+	public void testCorruptSnapshot() throws Exception {
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(10));
+		File file = new File(store.getSnapshotDirectory(), GRAPH_VERSION + ".strtree");
+		long length = file.length();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// truncated coordinates
+			raf.setLength(length - 8);
+			Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+
+			// appended garbage
+			raf.setLength(length + 8);
+			Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+
+			// truncated header
+			raf.setLength(10);
+			Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+		}
+
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(10));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// unknown magic
+			raf.writeInt(0);
+		}
+		Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+	}
+
+	@Test
+	public void testDelete() {
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(10));
+		store.delete(GRAPH_VERSION);
+		Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+	}
+
+	@Test
+	public void testDisabled() {
+		store.setSnapshotDirectory(null);
+		Assert.assertFalse(store.isEnabled());
+		store.save(GRAPH_VERSION, metadata, createSegmentsCache(10));
+		Assert.assertNull(store.load(GRAPH_VERSION, metadata));
+	}
+
+	private GraphSegmentsCacheEntry createSegmentsCache(int size) {
+		GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(metadata, size);
+		segmentsCache.setGeometryFactory(factory, 4326);
+		for (int i = 0; i < size; i++) {
+			segmentsCache.addSegmentsCacheEntry(1000 + i, 500 + i, createLine(i, 2 + i % 5), 10.5f * i,
+					(short) (30 + i), (short) (50 + i), (short) (i % 9));
+		}
+		segmentsCache.trimToSize();
+		return segmentsCache;
+	}
+
+	private LineString createLine(int y, int coordinatesCount) {
+		Coordinate[] coords = new Coordinate[coordinatesCount];
+		for (int i = 0; i < coordinatesCount; i++) {
+			coords[i] = new Coordinate(13 + i / 1000d, 47 + y / 1000d + i / 10000d);
+		}
+		return factory.createLineString(coords);
+	}
+
+	private IWayGraphVersionMetadata createMetadata(long validFrom, long storageTimestamp) {
+		IWayGraphVersionMetadata metadata = new WayGraphVersionMetadata();
+		metadata.setValidFrom(new Date(validFrom));
+		metadata.setStorageTimestamp(new Date(storageTimestamp));
+		return metadata;
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.index.impl;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+
+public class TestPackedHilbertRTreeSpatialIndex {
+
+	private GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+
+	@Test
+	public void testFindNearestSegmentIds() {
+		Random random = new Random(42);
+		GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(null);
+		for (int i = 0; i < 5000; i++) {
+			double x = 13 + random.nextDouble();
+			double y = 47 + random.nextDouble();
+			Coordinate[] coords = new Coordinate[2 + random.nextInt(4)];
+			for (int j = 0; j < coords.length; j++) {
+				coords[j] = new Coordinate(x + random.nextDouble() * 0.01, y + random.nextDouble() * 0.01);
+			}
+			LineString geom = factory.createLineString(coords);
+			segmentsCache.addSegmentsCacheEntry(i, 100000 + i, geom, 10f, (short) 50, (short) 50, (short) 3);
+		}
+		segmentsCache.trimToSize();
+
+		PackedHilbertRTreeSpatialIndex hilbertIndex = new PackedHilbertRTreeSpatialIndex(segmentsCache);
+		JtsSTRTreeSpatialIndex strTreeIndex = new JtsSTRTreeSpatialIndex(segmentsCache);
+		Assert.assertEquals(5000, hilbertIndex.size());
+
+		for (int q = 0; q < 50; q++) {
+			Point referencePoint = factory.createPoint(new Coordinate(13 + random.nextDouble(), 47 + random.nextDouble()));
+			Envelope env = new Envelope(referencePoint.getCoordinate());
+			env.expandBy(0.02);
+
+			List<Long> expected = strTreeIndex.findNearestSegmentIds(referencePoint, env, 0);
+			Assert.assertEquals(expected, hilbertIndex.findNearestSegmentIds(referencePoint, env, 0));
+			List<Long> nearest = hilbertIndex.findNearestSegmentIds(referencePoint, env, 5);
+			Assert.assertEquals(expected.subList(0, Math.min(5, expected.size())), nearest);
+		}
+	}
+
+	@Test
+	public void testSortByHilbertValue() {
+		// values of the upper half of the curve (>= 2^31) have to be sorted after the lower half
+		long[] hilbertValues = {0xFFFFFFFFL, 5, 0x80000000L, 0x7FFFFFFFL, 0, 5};
+		Assert.assertArrayEquals(new int[] {4, 1, 5, 3, 2, 0}, PackedHilbertRTreeSpatialIndex.sortByHilbertValue(hilbertValues));
+
+		Random random = new Random(42);
+		hilbertValues = new long[1000];
+		for (int i = 0; i < hilbertValues.length; i++) {
+			hilbertValues[i] = PackedHilbertRTreeSpatialIndex.hilbert(random.nextInt(1 << 16), random.nextInt(1 << 16));
+		}
+		int[] order = PackedHilbertRTreeSpatialIndex.sortByHilbertValue(hilbertValues);
+		for (int i = 1; i < order.length; i++) {
+			Assert.assertTrue(hilbertValues[order[i - 1]] <= hilbertValues[order[i]]);
+		}
+	}
+
+	@Test
+	public void testEmptyIndex() {
+		GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(null);
+		segmentsCache.trimToSize();
+		PackedHilbertRTreeSpatialIndex index = new PackedHilbertRTreeSpatialIndex(segmentsCache);
+		Point referencePoint = factory.createPoint(new Coordinate(13, 47));
+		Assert.assertTrue(index.findNearestSegmentIds(referencePoint, new Envelope(12, 14, 46, 48), 5).isEmpty());
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.persistence.nodemapper.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.WKBWriter;
+
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.IWayGraphModelFactory;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.neo4j.model.LazyWaySegment;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+
+public class TestNeo4jWaySegmentMapper {
+
+	private static final long NODE_ID = 42;
+
+	private GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+	private Neo4jWaySegmentMapper mapper;
+	private Map<String, Object> properties;
+	// properties read by the mapper via Node.getProperty()
+	private Set<String> readProperties = new HashSet<>();
+
+	@Before
+	public void setup() {
+		mapper = new Neo4jWaySegmentMapper();
+		mapper.setFactory(createFactory());
+
+		properties = new HashMap<>();
+		properties.put(WayGraphConstants.SEGMENT_ID, 1042L);
+		properties.put(WayGraphConstants.SEGMENT_NAME, "Hauptstrasse");
+		properties.put(WayGraphConstants.SEGMENT_MAXSPEED_TOW, (short) 50);
+		properties.put(WayGraphConstants.SEGMENT_MAXSPEED_BKW, (short) 30);
+		properties.put(WayGraphConstants.SEGMENT_LANES_TOW, (short) 2);
+		properties.put(WayGraphConstants.SEGMENT_LENGTH, 123.5f);
+		properties.put(WayGraphConstants.SEGMENT_FRC, (short) 3);
+		properties.put(WayGraphConstants.SEGMENT_FOW, (short) 3);
+		properties.put(WayGraphConstants.SEGMENT_STARTNODE_ID, 7L);
+		properties.put(WayGraphConstants.SEGMENT_STARTNODE_INDEX, 0);
+		properties.put(WayGraphConstants.SEGMENT_ENDNODE_ID, 8L);
+		properties.put(WayGraphConstants.SEGMENT_ENDNODE_INDEX, 2);
+		properties.put(WayGraphConstants.SEGMENT_BRIDGE, true);
+		properties.put(WayGraphConstants.SEGMENT_ACCESS_TOW, Neo4jWaySegmentHelperImpl.createAccessArray(
+				EnumSet.of(Access.PRIVATE_CAR, Access.BICYCLE)));
+		properties.put(WayGraphConstants.SEGMENT_ACCESS_BKW, Neo4jWaySegmentHelperImpl.createAccessArray(
+				EnumSet.of(Access.PEDESTRIAN)));
+		properties.put(WayGraphConstants.SEGMENT_GEOM, new WKBWriter().write(createLine(0)));
+		properties.put(WayGraphConstants.SEGMENT_TAG_PREFIX + "surface", "asphalt");
+		properties.put(WayGraphConstants.SEGMENT_TAG_PREFIX + "lit", "yes");
+	}
+
+	@Test
+	public void testLazyEqualsEagerMapping() {
+		Node node = createNode();
+		IWaySegment eager = mapper.mapWithXInfoTypes(node, null, null);
+		IWaySegment lazy = mapper.mapLazily(node, null);
+
+		Assert.assertTrue(lazy instanceof LazyWaySegment);
+		assertEqualSegments(eager, lazy);
+		Assert.assertTrue(readProperties.contains(WayGraphConstants.SEGMENT_GEOM));
+	}
+
+	@Test
+	public void testLazyMappingWithoutOptionalProperties() {
+		properties.remove(WayGraphConstants.SEGMENT_ACCESS_BKW);
+		properties.remove(WayGraphConstants.SEGMENT_TAG_PREFIX + "surface");
+		properties.remove(WayGraphConstants.SEGMENT_TAG_PREFIX + "lit");
+		Node node = createNode();
+
+		IWaySegment eager = mapper.mapWithXInfoTypes(node, null, null);
+		IWaySegment lazy = mapper.mapLazily(node, null);
+
+		assertEqualSegments(eager, lazy);
+		Assert.assertNull(lazy.getTags());
+		Assert.assertNull(lazy.getAccessBkw());
+	}
+
+	@Test
+	public void testLazyMappingOfCachedSegment() {
+		GraphSegmentsCacheEntry segmentsCache = new GraphSegmentsCacheEntry(null, 1);
+		segmentsCache.addSegmentsCacheEntry(1042, NODE_ID, createLine(1), 123.5f, (short) 50, (short) 30, (short) 3);
+		segmentsCache.trimToSize();
+
+		IWaySegment lazy = mapper.mapLazily(createNode(), segmentsCache);
+
+		// the geometry will be taken from the cache, so its WKB must not even be read from the node
+		Assert.assertFalse(readProperties.contains(WayGraphConstants.SEGMENT_GEOM));
+		Assert.assertTrue(createLine(1).equalsExact(lazy.getGeometry()));
+		Assert.assertEquals("asphalt", lazy.getTags().get("surface"));
+		Assert.assertEquals(EnumSet.of(Access.PEDESTRIAN), lazy.getAccessBkw());
+	}
+
+	@Test
+	public void testClonesDecodeIndependently() throws CloneNotSupportedException {
+		IWaySegment lazy = mapper.mapLazily(createNode(), null);
+		IWaySegment clone = (IWaySegment) lazy.clone();
+
+		Assert.assertTrue(createLine(0).equalsExact(lazy.getGeometry()));
+		Assert.assertTrue(createLine(0).equalsExact(clone.getGeometry()));
+		Assert.assertEquals(lazy.getTags(), clone.getTags());
+		Assert.assertEquals(lazy.getAccessTow(), clone.getAccessTow());
+	}
+
+	private void assertEqualSegments(IWaySegment expected, IWaySegment actual) {
+		Assert.assertEquals(expected.getId(), actual.getId());
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertEquals(expected.getMaxSpeedTow(), actual.getMaxSpeedTow());
+		Assert.assertEquals(expected.getMaxSpeedBkw(), actual.getMaxSpeedBkw());
+		Assert.assertEquals(expected.getLanesTow(), actual.getLanesTow());
+		Assert.assertEquals(expected.getLength(), actual.getLength(), 0d);
+		Assert.assertEquals(expected.getFrc(), actual.getFrc());
+		Assert.assertEquals(expected.getFormOfWay(), actual.getFormOfWay());
+		Assert.assertEquals(expected.getStartNodeId(), actual.getStartNodeId());
+		Assert.assertEquals(expected.getStartNodeIndex(), actual.getStartNodeIndex());
+		Assert.assertEquals(expected.getEndNodeId(), actual.getEndNodeId());
+		Assert.assertEquals(expected.getEndNodeIndex(), actual.getEndNodeIndex());
+		Assert.assertEquals(expected.isBridge(), actual.isBridge());
+		Assert.assertEquals(expected.isTunnel(), actual.isTunnel());
+		Assert.assertEquals(expected.getAccessTow(), actual.getAccessTow());
+		Assert.assertEquals(expected.getAccessBkw(), actual.getAccessBkw());
+		Assert.assertEquals(expected.getTags(), actual.getTags());
+		Assert.assertTrue(expected.getGeometry().equalsExact(actual.getGeometry()));
+	}
+
+	private Node createNode() {
+		return (Node) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Node.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getId":
+						return NODE_ID;
+					case "getAllProperties":
+						readProperties.addAll(properties.keySet());
+						return new HashMap<>(properties);
+					case "getPropertyKeys":
+						return properties.keySet();
+					case "hasProperty":
+						return properties.containsKey(args[0]);
+					case "getProperty":
+						readProperties.add((String) args[0]);
+						return properties.containsKey(args[0]) || args.length == 1 ? properties.get(args[0]) : args[1];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@SuppressWarnings("unchecked")
+	private IWayGraphModelFactory<IWaySegment> createFactory() {
+		return (IWayGraphModelFactory<IWaySegment>) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {IWayGraphModelFactory.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("newSegment")) {
+						return new WaySegment();
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private LineString createLine(int y) {
+		return geometryFactory.createLineString(new Coordinate[] {
+				new Coordinate(13.0, 47.0 + y), new Coordinate(13.001, 47.0005 + y), new Coordinate(13.002, 47.001 + y)});
+	}
+
+}
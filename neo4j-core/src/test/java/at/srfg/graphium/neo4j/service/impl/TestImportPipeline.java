@@ -0,0 +1,255 @@
+/**
+ * Graphium Neo4j - Module of Graphserver for Neo4j extension
+ * Copyright © 2019 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.neo4j.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import at.srfg.graphium.core.exception.GraphImportException;
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.model.impl.WaySegmentConnection;
+import at.srfg.graphium.neo4j.persistence.INeo4jWaySegmentHelper;
+
+public class TestImportPipeline {
+
+	@Test
+	public void testWriteOrder() throws Exception {
+		List<Long> written = Collections.synchronizedList(new ArrayList<>());
+		List<Long> connectionSegmentIds = Collections.synchronizedList(new ArrayList<>());
+		// earlier batches take longer to prepare, so later batches are prepared first
+		ImportPipeline pipeline = new ImportPipeline(new SegmentHelper(id -> (100 - id) / 10), (segments, connections) -> {
+			segments.forEach(s -> written.add(s.getSegment().getId()));
+			connections.forEach(c -> connectionSegmentIds.add(c.getFromSegmentId()));
+		}, 4, 8);
+
+		for (long firstId = 0; firstId < 100; firstId += 10) {
+			List<IWaySegmentConnection> connections = new ArrayList<>();
+			connections.add(new WaySegmentConnection(firstId, firstId, firstId + 1, EnumSet.of(Access.PRIVATE_CAR)));
+			pipeline.submit(createBatch(firstId, 10), connections);
+		}
+		pipeline.finish();
+
+		Assert.assertEquals(100, written.size());
+		for (int i = 0; i < written.size(); i++) {
+			Assert.assertEquals(i, (long) written.get(i));
+		}
+		// connections are written with the segments of their batch
+		Assert.assertEquals(10, connectionSegmentIds.size());
+		for (int i = 0; i < connectionSegmentIds.size(); i++) {
+			Assert.assertEquals(i * 10, (long) connectionSegmentIds.get(i));
+		}
+		Assert.assertEquals(100, pipeline.getSubmittedSegments());
+		Assert.assertEquals(100, pipeline.getPreparedSegments());
+		Assert.assertEquals(100, pipeline.getWrittenSegments());
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		ImportPipeline pipeline = new ImportPipeline(new SegmentHelper(), (segments, connections) -> {
+			writing.countDown();
+			proceed.await();
+		}, 2, 2);
+
+		pipeline.submit(createBatch(0, 10), null);
+		pipeline.submit(createBatch(10, 10), null);
+		Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+		AtomicBoolean submitted = new AtomicBoolean(false);
+		Thread parserThread = new Thread(() -> {
+			try {
+				pipeline.submit(createBatch(20, 10), null);
+				submitted.set(true);
+			} catch (GraphImportException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		parserThread.start();
+		parserThread.join(200);
+		Assert.assertTrue("parser has not been blocked by pending batches", parserThread.isAlive());
+		Assert.assertEquals(20, pipeline.getSubmittedSegments());
+
+		// writing a batch makes room for the next one
+		proceed.countDown();
+		parserThread.join(10000);
+		Assert.assertFalse(parserThread.isAlive());
+		Assert.assertTrue(submitted.get());
+		Assert.assertTrue(pipeline.getBlockedTimeInMs() >= 100);
+
+		pipeline.finish();
+		Assert.assertEquals(30, pipeline.getWrittenSegments());
+	}
+
+	@Test
+	public void testWriteFailure() throws Exception {
+		List<Long> written = Collections.synchronizedList(new ArrayList<>());
+		ImportPipeline pipeline = new ImportPipeline(new SegmentHelper(), (segments, connections) -> {
+			if (segments.get(0).getSegment().getId() == 10) {
+				throw new IllegalStateException("write failed");
+			}
+			segments.forEach(s -> written.add(s.getSegment().getId()));
+		}, 2, 2);
+
+		pipeline.submit(createBatch(0, 10), null);
+		pipeline.submit(createBatch(10, 10), null);
+		pipeline.submit(createBatch(20, 10), null);
+
+		try {
+			pipeline.finish();
+			Assert.fail("failed batch has not been reported");
+		} catch (GraphImportException e) {
+			Assert.assertEquals("write failed", e.getCause().getMessage());
+		}
+		// batches after the failed one must not be written
+		Assert.assertEquals(10, written.size());
+		Assert.assertEquals(10, pipeline.getWrittenSegments());
+	}
+
+	@Test
+	public void testSubmitAfterWriteFailure() throws Exception {
+		CountDownLatch failed = new CountDownLatch(1);
+		ImportPipeline pipeline = new ImportPipeline(new SegmentHelper(), (segments, connections) -> {
+			failed.countDown();
+			throw new IllegalStateException("write failed");
+		}, 1, 1);
+
+		pipeline.submit(createBatch(0, 10), null);
+		Assert.assertTrue(failed.await(10, TimeUnit.SECONDS));
+		// wait until the failed batch has left the pipeline
+		long timeout = System.currentTimeMillis() + 10000;
+		GraphImportException exception = null;
+		while (exception == null && System.currentTimeMillis() < timeout) {
+			try {
+				pipeline.submit(createBatch(10, 10), null);
+				Thread.sleep(10);
+			} catch (GraphImportException e) {
+				exception = e;
+			}
+		}
+		Assert.assertNotNull("parser has not been stopped after a failed batch", exception);
+		pipeline.abort();
+	}
+
+	@Test
+	public void testAbortWaitsForWriter() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1);
+		AtomicBoolean proceed = new AtomicBoolean(false);
+		AtomicBoolean writeFinished = new AtomicBoolean(false);
+		ImportPipeline pipeline = new ImportPipeline(new SegmentHelper(), (segments, connections) -> {
+			writing.countDown();
+			// simulates a write transaction not reacting on interrupts
+			while (!proceed.get()) {
+				Thread.yield();
+			}
+			writeFinished.set(true);
+		}, 1, 2);
+
+		pipeline.submit(createBatch(0, 10), null);
+		pipeline.submit(createBatch(10, 10), null);
+		Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+		AtomicBoolean writeFinishedOnAbort = new AtomicBoolean(false);
+		Thread abortThread = new Thread(() -> {
+			pipeline.abort();
+			writeFinishedOnAbort.set(writeFinished.get());
+		});
+		abortThread.start();
+		abortThread.join(200);
+		Assert.assertTrue("abort returned while a batch is written", abortThread.isAlive());
+
+		proceed.set(true);
+		abortThread.join(10000);
+		Assert.assertFalse(abortThread.isAlive());
+		Assert.assertTrue(writeFinishedOnAbort.get());
+		// pending batch has been discarded
+		Assert.assertEquals(10, pipeline.getWrittenSegments());
+	}
+
+	private List<IWaySegment> createBatch(long firstId, int size) {
+		List<IWaySegment> segments = new ArrayList<>(size);
+		for (long id = firstId; id < firstId + size; id++) {
+			WaySegment segment = new WaySegment();
+			segment.setId(id);
+			segments.add(segment);
+		}
+		return segments;
+	}
+
+	private static class SegmentHelper implements INeo4jWaySegmentHelper<IWaySegment> {
+
+		// prepare delay in ms per segment ID
+		private final ToLongFunction<Long> delay;
+
+		public SegmentHelper() {
+			this(id -> 0);
+		}
+
+		public SegmentHelper(ToLongFunction<Long> delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public Node createNode(GraphDatabaseService graphDb, IWaySegment segment, String graphVersionName) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void updateNodeProperties(GraphDatabaseService graphDb, IWaySegment segment, Node node) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<String, Object> prepareNodeProperties(IWaySegment segment) {
+			long delayInMs = delay.applyAsLong(segment.getId());
+			if (delayInMs > 0) {
+				try {
+					Thread.sleep(delayInMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			Map<String, Object> properties = new HashMap<>();
+			properties.put("segment_id", segment.getId());
+			return properties;
+		}
+
+		@Override
+		public Node createPreparedNode(GraphDatabaseService graphDb, Map<String, Object> nodeProperties, String graphVersionName) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,296 @@
+/**
+ * Graphium Neo4j - JMH benchmarks of Graphium routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import at.srfg.graphium.core.persistence.IWayGraphVersionMetadataDao;
+import at.srfg.graphium.core.persistence.IWayGraphWriteDao;
+import at.srfg.graphium.model.IWayGraphModelFactory;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
+import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
+import at.srfg.graphium.routing.algo.IRoutingAlgo;
+import at.srfg.graphium.routing.algo.IRoutingAlgoFactory;
+import at.srfg.graphium.routing.algo.ISegmentIdToRoutingNodeResolver;
+import at.srfg.graphium.routing.exception.RoutingException;
+import at.srfg.graphium.routing.exception.UnkownRoutingAlgoException;
+import at.srfg.graphium.routing.model.IRoute;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingAlgorithms;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.algos.impl.BidirectionalDijkstra;
+import at.srfg.graphium.routing.neo4j.algos.impl.Dijkstra;
+import at.srfg.graphium.routing.service.IRoutingService;
+
+/**
+ * JMH benchmarks of Neo4jRoutingServiceImpl comparing Dijkstra and bidirectional Dijkstra on a synthetic road graph
+ * generated by {@link SyntheticGraphGenerator} into a temporary embedded Neo4j database.
+ *
+ * Each invocation routes one of a fixed, seeded list of random segment pairs. Throughput and sampled latencies
+ * (including percentiles) are reported per algorithm and routing criteria. The secondary results settledNodes and
+ * routes count the settled nodes and routes of each iteration, their quotient is the search space per route. Settled
+ * nodes are counted once per query during setup by running the query's algorithm directly, so counting does not
+ * affect the measured routes.
+ * Allocation rates can be added by JMH's GC profiler:
+ *
+ * <pre>
+ * mvn clean package
+ * java -jar target/benchmarks.jar RoutingBenchmark -prof gc
+ * java -jar target/benchmarks.jar RoutingBenchmark -p gridSize=300 -p criteria=MIN_DURATION
+ * </pre>
+ *
+ * Routing on the in-memory graph is disabled by default to measure the algorithms on the Neo4j graph; settled
+ * nodes are only counted there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RoutingBenchmark {
+
+	private static Logger log = LoggerFactory.getLogger(RoutingBenchmark.class);
+
+	private static final String GRAPH_NAME = "synthetic";
+	private static final String VERSION = "1";
+	private static final int QUERIES_COUNT = 1000;
+
+	@Param({"100"})
+	private int gridSize;
+
+	@Param({"DIJKSTRA", "BIDIRECTIONAL_DIJKSTRA"})
+	private RoutingAlgorithms algorithm;
+
+	@Param({"LENGTH", "MIN_DURATION", "CURRENT_DURATION"})
+	private RoutingCriteria criteria;
+
+	@Param({"false"})
+	private boolean inMemoryGraph;
+
+	@Param({"42"})
+	private long seed;
+
+	private Path tempDirectory;
+	private ClassPathXmlApplicationContext context;
+	private IRoutingService<IWaySegment, Double, IRoutingOptions> routingService;
+	// start and target segment IDs per query
+	private long[][] queries;
+	// nodes settled by the search of each query
+	private int[] settledCounts;
+
+	@State(Scope.Thread)
+	public static class QueryCursor {
+
+		private int next = 0;
+
+		int next(int size) {
+			int query = next;
+			next = (next + 1) % size;
+			return query;
+		}
+
+	}
+
+	/**
+	 * Secondary results per iteration; public fields are reported by JMH.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class SearchSpaceCounters {
+
+		public long settledNodes;
+		public long routes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			settledNodes = 0;
+			routes = 0;
+		}
+
+		void add(int settledCount) {
+			settledNodes += settledCount;
+			routes++;
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+		tempDirectory = Files.createTempDirectory("graphium-routing-benchmark");
+		Path neo4jProperties = Files.write(tempDirectory.resolve("neo4j.properties"), Arrays.asList("maxNodeReferences=50"));
+		System.setProperty("graphium.neo4j.dbDirectory", tempDirectory.resolve("graph.db").toString());
+		System.setProperty("graphium.neo4j.propertiesFile", neo4jProperties.toString());
+		System.setProperty("routing.inMemoryGraph.enabled", Boolean.toString(inMemoryGraph));
+
+		context = new ClassPathXmlApplicationContext(
+				"classpath:/application-context-graphium-routing-neo4j_benchmark.xml",
+				"classpath:/application-context-graphium-core.xml",
+				"classpath:/application-context-graphium-model.xml");
+		routingService = context.getBean("neo4jRoutingService", IRoutingService.class);
+
+		SyntheticGraphGenerator generator = new SyntheticGraphGenerator(
+				context.getBean("neo4jWayGraphWriteDao", IWayGraphWriteDao.class),
+				context.getBean("neo4jWayGraphVersionMetadataDao", IWayGraphVersionMetadataDao.class),
+				context.getBean("wayGraphModelFactory", IWayGraphModelFactory.class));
+		List<Long> segmentIds = generator.generate(GRAPH_NAME, VERSION, gridSize, seed);
+
+		waitForActiveGraphVersion();
+
+		Random random = new Random(seed);
+		queries = new long[QUERIES_COUNT][];
+		for (int i = 0; i < QUERIES_COUNT; i++) {
+			long startSegmentId = segmentIds.get(random.nextInt(segmentIds.size()));
+			long targetSegmentId;
+			do {
+				targetSegmentId = segmentIds.get(random.nextInt(segmentIds.size()));
+			} while (targetSegmentId == startSegmentId);
+			queries[i] = new long[] {startSegmentId, targetSegmentId};
+		}
+		countSettledNodes();
+	}
+
+	/**
+	 * Runs the search of each query on the algorithm the routing service would use and stores its settled nodes.
+	 * Algorithms on the in-memory graph do not count settled nodes.
+	 */
+	@SuppressWarnings("unchecked")
+	private void countSettledNodes() throws UnkownRoutingAlgoException {
+		IRoutingAlgoFactory<IRoutingOptions, Node, Double> algoFactory = context.getBean("neo4jRoutingAlgoFactory", IRoutingAlgoFactory.class);
+		ISegmentIdToRoutingNodeResolver<Node> nodeResolver = context.getBean("neo4jRoutingNodeResolver", ISegmentIdToRoutingNodeResolver.class);
+		IGraphDatabaseProvider graphDatabaseProvider = context.getBean("graphDatabaseProvider", IGraphDatabaseProvider.class);
+
+		settledCounts = new int[queries.length];
+		long settledNodes = 0;
+		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
+			for (int i = 0; i < queries.length; i++) {
+				IRoutingOptions options = createOptions();
+				Node startNode = nodeResolver.resolveSegment(queries[i][0], GRAPH_NAME, VERSION);
+				Node targetNode = nodeResolver.resolveSegment(queries[i][1], GRAPH_NAME, VERSION);
+				IRoutingAlgo<IRoutingOptions, Node, Double> algo = algoFactory.createInstance(options, startNode, null, targetNode, null);
+				if (algo instanceof Dijkstra) {
+					((Dijkstra<?>) algo).calculateShortestPath(startNode, targetNode);
+					settledCounts[i] = ((Dijkstra<?>) algo).getSettledCount();
+				} else if (algo instanceof BidirectionalDijkstra) {
+					((BidirectionalDijkstra<?>) algo).calculateShortestPath(startNode, targetNode);
+					settledCounts[i] = ((BidirectionalDijkstra<?>) algo).getSettledCount();
+				}
+				settledNodes += settledCounts[i];
+			}
+			tx.success();
+		}
+		log.info(settledNodes / queries.length + " nodes settled per route on average");
+	}
+
+	/**
+	 * Activates the graph version in the caches (as the metadata service would after an import) and waits until
+	 * its STR-Tree has been built in the background.
+	 */
+	private void waitForActiveGraphVersion() throws InterruptedException {
+		STRTreeCacheManager cacheManager = context.getBean("strtreeCacheManager", STRTreeCacheManager.class);
+		IWayGraphVersionMetadataDao metadataDao = context.getBean("neo4jWayGraphVersionMetadataDao", IWayGraphVersionMetadataDao.class);
+		cacheManager.update(null, metadataDao.getWayGraphVersionMetadata(GRAPH_NAME, VERSION));
+		long timeout = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10);
+		while (cacheManager.getIndex(GRAPH_NAME, VERSION) == null) {
+			if (System.currentTimeMillis() > timeout) {
+				throw new IllegalStateException("STR-Tree of graph version " + GRAPH_NAME + "_" + VERSION + " has not been built");
+			}
+			Thread.sleep(100);
+		}
+		log.info("Graph version " + GRAPH_NAME + "_" + VERSION + " is active");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if (context != null) {
+			// shuts down Neo4j and deletes the database directory
+			context.close();
+		}
+		Files.deleteIfExists(tempDirectory.resolve("neo4j.properties"));
+		Files.deleteIfExists(tempDirectory);
+		System.clearProperty("graphium.neo4j.dbDirectory");
+		System.clearProperty("graphium.neo4j.propertiesFile");
+		System.clearProperty("routing.inMemoryGraph.enabled");
+	}
+
+	@Benchmark
+	public IRoute<IWaySegment, Double> routePerSegmentIds(QueryCursor cursor, SearchSpaceCounters counters)
+			throws UnkownRoutingAlgoException, RoutingException {
+		int query = cursor.next(queries.length);
+		IRoute<IWaySegment, Double> route = routingService.routePerSegmentIds(createOptions(),
+				Arrays.asList(queries[query][0], queries[query][1]));
+		counters.add(settledCounts[query]);
+		return route;
+	}
+
+	@Benchmark
+	public IRoute<IWaySegment, Double> routePerSegments(QueryCursor cursor, SearchSpaceCounters counters)
+			throws UnkownRoutingAlgoException, RoutingException {
+		int query = cursor.next(queries.length);
+		List<IWaySegment> segments = new ArrayList<>(2);
+		for (long segmentId : queries[query]) {
+			IWaySegment segment = new WaySegment();
+			segment.setId(segmentId);
+			segments.add(segment);
+		}
+		IRoute<IWaySegment, Double> route = routingService.routePerSegments(createOptions(), segments);
+		counters.add(settledCounts[query]);
+		return route;
+	}
+
+	private IRoutingOptions createOptions() {
+		IRoutingOptions options = new RoutingOptionsImpl(GRAPH_NAME, VERSION);
+		options.setAlgorithm(algorithm);
+		options.setCriteria(criteria);
+		options.setMode(RoutingMode.CAR);
+		return options;
+	}
+
+}
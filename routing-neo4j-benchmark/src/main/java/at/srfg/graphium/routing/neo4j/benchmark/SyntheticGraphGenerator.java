@@ -0,0 +1,302 @@
+/**
+ * Graphium Neo4j - JMH benchmarks of Graphium routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import at.srfg.graphium.core.exception.GraphAlreadyExistException;
+import at.srfg.graphium.core.persistence.IWayGraphVersionMetadataDao;
+import at.srfg.graphium.core.persistence.IWayGraphWriteDao;
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.FuncRoadClass;
+import at.srfg.graphium.model.IWayGraphModelFactory;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWaySegmentConnection;
+import at.srfg.graphium.model.State;
+import at.srfg.graphium.model.impl.WaySegment;
+import at.srfg.graphium.model.management.impl.Source;
+
+/**
+ * Generates reproducible synthetic road graphs and saves them as active graph versions.
+ *
+ * {@link #generate(String, String, int, long)} creates a grid of gridSize x gridSize intersections with a spacing
+ * of about 100 m. Every tenth row and column is an arterial road with higher speeds; the middle row and column are
+ * motorways crossing in the grid's center. A share of the local roads is one-way. Other generators can create
+ * their own segments by {@link #createSegment(long, long, long, Coordinate[], FuncRoadClass, short, boolean)} and
+ * save them by {@link #save(String, String, List, String)}.
+ *
+ * Speeds of the current traffic situation are randomized per segment, so routing by current duration differs from
+ * routing by minimum duration. All random decisions are taken from a {@link Random} initialized by the given seed,
+ * so the same parameters always result in the same graph.
+ */
+public class SyntheticGraphGenerator {
+
+	private static Logger log = LoggerFactory.getLogger(SyntheticGraphGenerator.class);
+
+	private static final double ORIGIN_X = 13.0;
+	private static final double ORIGIN_Y = 47.8;
+	private static final double SPACING = 0.001;
+	private static final double METERS_PER_DEGREE = 111320;
+	private static final int ARTERIAL_INTERVAL = 10;
+	private static final double ONE_WAY_SHARE = 0.1;
+	private static final int BATCH_SIZE = 5000;
+
+	private IWayGraphWriteDao<IWaySegment> writeDao;
+	private IWayGraphVersionMetadataDao metadataDao;
+	private IWayGraphModelFactory<IWaySegment> modelFactory;
+	private GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+	private Set<Access> access = EnumSet.of(Access.PRIVATE_CAR);
+	private Random random = new Random(0);
+
+	public SyntheticGraphGenerator(IWayGraphWriteDao<IWaySegment> writeDao, IWayGraphVersionMetadataDao metadataDao,
+			IWayGraphModelFactory<IWaySegment> modelFactory) {
+		this.writeDao = writeDao;
+		this.metadataDao = metadataDao;
+		this.modelFactory = modelFactory;
+	}
+
+	/**
+	 * Generates a grid graph and saves it as active graph version.
+	 *
+	 * @return IDs of the generated segments in ascending order
+	 */
+	public List<Long> generate(String graphName, String version, int gridSize, long seed) throws GraphAlreadyExistException {
+		setSeed(seed);
+
+		List<IWaySegment> segments = new ArrayList<>(2 * gridSize * (gridSize - 1));
+		long segmentId = 1;
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				if (col + 1 < gridSize) {
+					segments.add(createGridSegment(segmentId++, gridSize, row, col, row, col + 1, getRoadClass(gridSize, row)));
+				}
+				if (row + 1 < gridSize) {
+					segments.add(createGridSegment(segmentId++, gridSize, row, col, row + 1, col, getRoadClass(gridSize, col)));
+				}
+			}
+		}
+
+		save(graphName, version, segments, "Synthetic graph of " + gridSize + " x " + gridSize + " intersections");
+
+		List<Long> segmentIds = new ArrayList<>(segments.size());
+		segments.forEach(s -> segmentIds.add(s.getId()));
+		return segmentIds;
+	}
+
+	/**
+	 * Connects all segments sharing a node which can be traversed one after another and saves segments,
+	 * connections and the metadata of an active graph version.
+	 */
+	public void save(String graphName, String version, List<IWaySegment> segments, String description) throws GraphAlreadyExistException {
+		long startTime = System.currentTimeMillis();
+
+		List<IWaySegmentConnection> connections = createConnections(segments);
+
+		writeDao.createGraphVersion(graphName, version, true, true);
+		for (int i = 0; i < segments.size(); i += BATCH_SIZE) {
+			writeDao.saveSegments(segments.subList(i, Math.min(i + BATCH_SIZE, segments.size())), graphName, version);
+		}
+		// connections can only be saved after both of their segments
+		for (int i = 0; i < connections.size(); i += BATCH_SIZE) {
+			writeDao.saveConnections(connections.subList(i, Math.min(i + BATCH_SIZE, connections.size())), graphName, version);
+		}
+
+		saveMetadata(graphName, version, segments, connections.size(), description);
+
+		log.info("Generated graph " + graphName + "_" + version + " with " + segments.size() + " segments and "
+				+ connections.size() + " connections in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Resets the random decisions taken by {@link #createSegment(long, long, long, Coordinate[], FuncRoadClass, short, boolean)}.
+	 */
+	public void setSeed(long seed) {
+		random.setSeed(seed);
+	}
+
+	/**
+	 * @return segment accessible by car with randomized current speeds
+	 */
+	public IWaySegment createSegment(long id, long startNodeId, long endNodeId, Coordinate[] coordinates,
+			FuncRoadClass frc, short maxSpeed, boolean oneWay) {
+		IWaySegment segment = new WaySegment();
+		segment.setId(id);
+		segment.setWayId(id);
+		segment.setName((frc == FuncRoadClass.LOCAL_CONNECTING_ROAD ? "Local road " : "Arterial road ") + id);
+		segment.setGeometry(geometryFactory.createLineString(coordinates));
+		segment.setLength((float) calculateLength(coordinates));
+		segment.setStartNodeId(startNodeId);
+		segment.setStartNodeIndex(0);
+		segment.setEndNodeId(endNodeId);
+		segment.setEndNodeIndex(coordinates.length - 1);
+		segment.setFrc(frc);
+		segment.setLanesTow((short) 1);
+		segment.setLanesBkw(oneWay ? 0 : (short) 1);
+		segment.setMaxSpeedTow(maxSpeed);
+		segment.setMaxSpeedBkw(oneWay ? 0 : maxSpeed);
+		// current speeds vary between 40 and 100 percent of the maximum speed
+		segment.setSpeedCalcTow((short) (maxSpeed * (0.4 + 0.6 * random.nextDouble())));
+		segment.setSpeedCalcBkw(oneWay ? 0 : (short) (maxSpeed * (0.4 + 0.6 * random.nextDouble())));
+		segment.setAccessTow(EnumSet.copyOf(access));
+		segment.setAccessBkw(oneWay ? EnumSet.noneOf(Access.class) : EnumSet.copyOf(access));
+		segment.setStartNodeCons(new ArrayList<>());
+		segment.setEndNodeCons(new ArrayList<>());
+		return segment;
+	}
+
+	/**
+	 * @return functional road class of a grid road along the given row or column
+	 */
+	private FuncRoadClass getRoadClass(int gridSize, int line) {
+		if (line == gridSize / 2) {
+			return FuncRoadClass.MOTORWAY_FREEWAY_OR_OTHER_MAJOR_MOTORWAY;
+		} else if (line % ARTERIAL_INTERVAL == 0) {
+			return FuncRoadClass.OTHER_MAJOR_ROAD;
+		} else {
+			return FuncRoadClass.LOCAL_CONNECTING_ROAD;
+		}
+	}
+
+	private IWaySegment createGridSegment(long id, int gridSize, int startRow, int startCol, int endRow, int endCol,
+			FuncRoadClass frc) {
+		short maxSpeed;
+		switch (frc) {
+		case MOTORWAY_FREEWAY_OR_OTHER_MAJOR_MOTORWAY:
+			maxSpeed = 130;
+			break;
+		case OTHER_MAJOR_ROAD:
+			maxSpeed = 80;
+			break;
+		default:
+			maxSpeed = 50;
+			break;
+		}
+		boolean oneWay = frc == FuncRoadClass.LOCAL_CONNECTING_ROAD && random.nextDouble() < ONE_WAY_SHARE;
+
+		return createSegment(id, startRow * gridSize + startCol + 1, endRow * gridSize + endCol + 1,
+				new Coordinate[] {
+						new Coordinate(ORIGIN_X + startCol * SPACING, ORIGIN_Y + startRow * SPACING),
+						new Coordinate(ORIGIN_X + endCol * SPACING, ORIGIN_Y + endRow * SPACING)},
+				frc, maxSpeed, oneWay);
+	}
+
+	/**
+	 * Connects all segments of each node which can be traversed one after another.
+	 */
+	private List<IWaySegmentConnection> createConnections(List<IWaySegment> segments) {
+		Map<Long, List<IWaySegment>> segmentsPerNode = new HashMap<>();
+		for (IWaySegment segment : segments) {
+			segmentsPerNode.computeIfAbsent(segment.getStartNodeId(), n -> new ArrayList<>(4)).add(segment);
+			segmentsPerNode.computeIfAbsent(segment.getEndNodeId(), n -> new ArrayList<>(4)).add(segment);
+		}
+
+		List<IWaySegmentConnection> connections = new ArrayList<>(segments.size() * 4);
+		for (Map.Entry<Long, List<IWaySegment>> entry : segmentsPerNode.entrySet()) {
+			long nodeId = entry.getKey();
+			for (IWaySegment from : entry.getValue()) {
+				if (!canReach(from, nodeId)) {
+					continue;
+				}
+				for (IWaySegment to : entry.getValue()) {
+					if (from != to && canDepart(to, nodeId)) {
+						IWaySegmentConnection connection = modelFactory.newWaySegmentConnection(nodeId, from.getId(),
+								to.getId(), EnumSet.copyOf(access));
+						if (from.getStartNodeId() == nodeId) {
+							from.getStartNodeCons().add(connection);
+						} else {
+							from.getEndNodeCons().add(connection);
+						}
+						connections.add(connection);
+					}
+				}
+			}
+		}
+		return connections;
+	}
+
+	/**
+	 * @return true if the segment can be traversed towards the node
+	 */
+	private boolean canReach(IWaySegment segment, long nodeId) {
+		return segment.getEndNodeId() == nodeId || !segment.getAccessBkw().isEmpty();
+	}
+
+	/**
+	 * @return true if the segment can be traversed starting at the node
+	 */
+	private boolean canDepart(IWaySegment segment, long nodeId) {
+		return segment.getStartNodeId() == nodeId || !segment.getAccessBkw().isEmpty();
+	}
+
+	private void saveMetadata(String graphName, String version, List<IWaySegment> segments, int connectionsCount,
+			String description) {
+		if (!metadataDao.checkIfGraphExists(graphName)) {
+			metadataDao.saveGraph(graphName);
+		}
+		Date now = new Date();
+		IWayGraphVersionMetadata metadata = metadataDao.newWayGraphVersionMetadata(0, 0, graphName, version, graphName,
+				version, State.ACTIVE, now, null, getCoveredArea(segments), segments.size(), connectionsCount,
+				EnumSet.copyOf(access), null, new Source(0, "synthetic"), "synthetic", description, now, now,
+				"benchmark", null);
+		metadataDao.saveGraphVersion(metadata);
+	}
+
+	private Polygon getCoveredArea(List<IWaySegment> segments) {
+		Envelope envelope = new Envelope();
+		for (IWaySegment segment : segments) {
+			envelope.expandToInclude(segment.getGeometry().getEnvelopeInternal());
+		}
+		Geometry area = geometryFactory.toGeometry(envelope);
+		if (!(area instanceof Polygon)) {
+			// envelope of a single straight segment
+			area = area.buffer(SPACING);
+		}
+		area.setSRID(4326);
+		return (Polygon) area;
+	}
+
+	private double calculateLength(Coordinate[] coordinates) {
+		double cosY = Math.cos(Math.toRadians(coordinates[0].y));
+		double length = 0;
+		for (int i = 1; i < coordinates.length; i++) {
+			double dx = (coordinates[i].x - coordinates[i - 1].x) * cosY;
+			double dy = coordinates[i].y - coordinates[i - 1].y;
+			length += Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE;
+		}
+		return length;
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * Calculates the costs of the best routes between many source and target segments in one run.
+ */
+public interface IRoutingMatrixAlgo {
+
+	/**
+	 * @param sourceNodes Neo4j nodes of the source segments; null if not resolvable
+	 * @param targetNodes Neo4j nodes of the target segments; null if not resolvable
+	 * @return costs in row-major order (one row per source); {@link Float#POSITIVE_INFINITY} if the target is not
+	 * 		   reachable or the calculation has been cancelled
+	 */
+	float[] calculateMatrix(Node[] sourceNodes, Node[] targetNodes);
+
+}
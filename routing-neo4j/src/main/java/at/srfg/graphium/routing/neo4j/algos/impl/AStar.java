@@ -0,0 +1,57 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PathExpander;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+
+/**
+ * A* on the Neo4j graph. Nodes are expanded in the order of their costs plus the estimated costs to the target
+ * (e.g. calculated by NodeBasedCostEstimator). Estimates are calculated once per node when it is reached first.
+ */
+public class AStar<W extends IBaseWaySegment> extends Dijkstra<W> {
+
+	protected EstimateEvaluator<Double> estimateEvaluator;
+	private Node targetNode;
+
+	public AStar(PathExpander<Object> expander, CostEvaluator<Double> costEvaluator,
+			EstimateEvaluator<Double> estimateEvaluator, IRoutingOptions options) {
+		super(expander, costEvaluator, options);
+		this.estimateEvaluator = estimateEvaluator;
+	}
+
+	@Override
+	public Path calculateShortestPath(Node sourceNode, Node targetNode) {
+		this.targetNode = targetNode;
+		return super.calculateShortestPath(sourceNode, targetNode);
+	}
+
+	@Override
+	protected double estimate(Node node) {
+		if (node.getId() == targetNode.getId()) {
+			return 0;
+		}
+		return estimateEvaluator.getCost(node, targetNode);
+	}
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+
+import at.srfg.graphium.model.Access;
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.algo.IRoutingAlgo;
+import at.srfg.graphium.routing.algo.impl.DefaultRoutingAlgoResultImpl;
+import at.srfg.graphium.routing.model.IDirectedSegment;
+import at.srfg.graphium.routing.model.IDirectedSegmentSet;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.DirectedSegmentImpl;
+import at.srfg.graphium.routing.model.impl.DirectedSegmentSetImpl;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import scala.NotImplementedError;
+
+/**
+ * Base class of routing algorithms working on an in-memory {@link CSRRoutingGraph}. Neo4j nodes are only used to
+ * resolve the start and target segments.
+ *
+ * Costs are modelled per entered state: the start segment's costs are counted from the start (either fully or
+ * weighted by the start offset), intermediate segments are counted fully and the target segment's costs are
+ * counted weighted by the end offset (or not at all if routing is not offset aware). This results in the same
+ * costs as calculated by NodeBasedCostEvaluator and OffsetAwareNodeBasedCostEvaluator.
+ */
+public abstract class AbstractCSRRoutingAlgo<W extends IBaseWaySegment> implements IRoutingAlgo<IRoutingOptions, Node, Double> {
+
+	protected CSRRoutingGraph graph;
+	protected IRoutingOptions options;
+	protected float[] costs;
+	protected boolean offsetAware;
+	// bitmask of access types required on connections; 0 if not filtered
+	protected long requiredAccess;
+	// optional service to filter temporary restricted segments
+	protected IRestrictionsService restrictionsService;
+
+	// query specific values
+	protected int targetSegmentIndex;
+	protected double[] targetCosts = new double[2];
+
+	public AbstractCSRRoutingAlgo(CSRRoutingGraph graph, IRoutingOptions options, boolean offsetAware,
+			IRestrictionsService restrictionsService) {
+		this.graph = graph;
+		this.options = options;
+		this.costs = graph.getCosts(options.getCriteria());
+		this.offsetAware = offsetAware;
+		this.restrictionsService = restrictionsService;
+		this.requiredAccess = getRequiredAccess(options.getMode());
+	}
+
+	/**
+	 * @return bitmask of access types required on connections for the routing mode; 0 if not filtered
+	 */
+	public static long getRequiredAccess(RoutingMode mode) {
+		if (RoutingMode.CAR.equals(mode)) {
+			return Neo4jWaySegmentHelperImpl.createAccessBitmask(Access.PRIVATE_CAR);
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public IRoutedPath<Double> bestRoute(IRoutingOptions routeOptions, Node sourceNode, float percentageStartWeight,
+			Node targetNode, float percentageEndWeight) {
+		if (sourceNode == null || targetNode == null) {
+			return null;
+		}
+		int sourceSegmentIndex = graph.getSegmentIndexPerNodeId(sourceNode.getId());
+		targetSegmentIndex = graph.getSegmentIndexPerNodeId(targetNode.getId());
+		if (sourceSegmentIndex == CSRRoutingGraph.NOT_FOUND || targetSegmentIndex == CSRRoutingGraph.NOT_FOUND) {
+			return null;
+		}
+		if (sourceSegmentIndex == targetSegmentIndex) {
+			// same result as a search which settles the target immediately
+			IntArrayList states = new IntArrayList(1);
+			states.add(CSRRoutingGraph.getState(sourceSegmentIndex, true));
+			return convertPath2RoutedPath(states, 0);
+		}
+
+		for (int d = 0; d < 2; d++) {
+			int targetState = CSRRoutingGraph.getState(targetSegmentIndex, d == 0);
+			targetCosts[d] = offsetAware ? costs[targetState] * getOffsetFactor(targetState, percentageEndWeight) : 0;
+		}
+
+		return calculateShortestPath(sourceSegmentIndex, percentageStartWeight);
+	}
+
+	@Override
+	public List<IRoutedPath<Double>> bestRoutes(IRoutingOptions routeOptions, Node sourceNode, float precentageStartWeight,
+			Node targetNode, float percentageEndWeight, short amount) {
+		throw new NotImplementedError();
+	}
+
+	protected abstract IRoutedPath<Double> calculateShortestPath(int sourceSegmentIndex, float percentageStartWeight);
+
+	/**
+	 * @return costs of the start state
+	 */
+	protected double getStartCosts(int state, float percentageStartWeight) {
+		if (offsetAware) {
+			return costs[state] * getOffsetFactor(state, percentageStartWeight);
+		} else {
+			return costs[state];
+		}
+	}
+
+	/**
+	 * @return costs of entering the state
+	 */
+	protected double getCosts(int state) {
+		if (CSRRoutingGraph.getSegmentIndex(state) == targetSegmentIndex) {
+			return targetCosts[state & 1];
+		} else {
+			return costs[state];
+		}
+	}
+
+	// given offsets are based on geometry direction
+	private double getOffsetFactor(int state, float percentageWeight) {
+		return CSRRoutingGraph.isStartToEnd(state) ? percentageWeight : 1 - percentageWeight;
+	}
+
+	protected boolean isAccessible(long access) {
+		return requiredAccess == 0 || (access & requiredAccess) != 0;
+	}
+
+	/**
+	 * @return true if the state must not be entered because of a temporary restriction
+	 */
+	protected boolean isRestricted(int state) {
+		return restrictionsService != null &&
+			   restrictionsService.isRestrictedSegment(options.getGraphName(),
+					   graph.getSegmentId(CSRRoutingGraph.getSegmentIndex(state)),
+					   CSRRoutingGraph.isStartToEnd(state),
+					   options.getRoutingTimestamp());
+	}
+
+	/**
+	 * @param states states of the path ordered from start to target
+	 */
+	protected IRoutedPath<Double> convertPath2RoutedPath(IntArrayList states, double totalCost) {
+		List<IDirectedSegment> segments = new ArrayList<>(states.size());
+		for (int i = 0; i < states.size(); i++) {
+			int state = states.getInt(i);
+			segments.add(new DirectedSegmentImpl(graph.getSegmentId(CSRRoutingGraph.getSegmentIndex(state)),
+					CSRRoutingGraph.isStartToEnd(state)));
+		}
+		IDirectedSegmentSet segmentSet = new DirectedSegmentSetImpl(1L, segments);
+		return new DefaultRoutingAlgoResultImpl(segmentSet, totalCost);
+	}
+
+}
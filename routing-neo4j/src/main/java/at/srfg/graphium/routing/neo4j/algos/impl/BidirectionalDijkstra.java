@@ -19,7 +19,6 @@ package at.srfg.graphium.routing.neo4j.algos.impl;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.neo4j.graphalgo.CostEvaluator;
 import org.neo4j.graphdb.Direction;
@@ -41,12 +40,13 @@ import at.srfg.graphium.routing.model.IRoutingOptions;
 import at.srfg.graphium.routing.model.impl.DirectedSegmentImpl;
 import at.srfg.graphium.routing.model.impl.DirectedSegmentSetImpl;
 import at.srfg.graphium.routing.neo4j.model.impl.SimplePathImpl;
-import it.unimi.dsi.fastutil.PriorityQueue;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import scala.NotImplementedError;
 
 /**
+ * Bidirectional Dijkstra on the Neo4j graph. The forward search expands outgoing relationships from the start
+ * node, the backward search expands incoming relationships from the target node. Both searches are held in
+ * pooled {@link DijkstraSearchSpace}s.
  * 
  * @author mwimmer
  */
@@ -58,6 +58,13 @@ public class BidirectionalDijkstra<W extends IBaseWaySegment> implements IRoutin
 	protected PathExpander<Object> expanderIncoming;
 	protected CostEvaluator<Double> costEvaluator;
 	protected IRoutingOptions options;
+
+	// query specific values
+	private double bestPathCost;
+	// copy of the best path found so far; labels may still be re-parented after a meeting has been recorded
+	private Path bestPath;
+	// number of nodes settled by both directions of the last search
+	private int settledCount = 0;
 	
 	public BidirectionalDijkstra(PathExpander<Object> expanderOutgoing, PathExpander<Object> expanderIncoming, CostEvaluator<Double> costEvaluator, IRoutingOptions options) {
 		super();
@@ -98,216 +105,128 @@ public class BidirectionalDijkstra<W extends IBaseWaySegment> implements IRoutin
 			return null;
 		}
 
-		double bestPathLength = Double.POSITIVE_INFINITY;
-		double mtmp = 0;
-		
-		Map<Long, PathNode> visitedF = new Long2ObjectOpenHashMap<>();
-		Map<Long, PathNode> visitedB = new Long2ObjectOpenHashMap<>();
-		
-		PriorityQueue<PathNode> prioQueueF = new ObjectHeapPriorityQueue<PathNode>(); // front
-		PriorityQueue<PathNode> prioQueueB = new ObjectHeapPriorityQueue<PathNode>(); // back
-		
-	    PathNode start = getStartNode(sourceNode);
-	    PathNode end = getStartNode(targetNode);
-	    prioQueueF.enqueue(start);
-	    prioQueueB.enqueue(end);
-	    
-	    PathNode[] intersectingNodes = null;
-	    PathNode[] tmpIntersectingNodes = null;
-	    
-		while (!options.isCancelled() &&
-			   !prioQueueF.isEmpty() && !prioQueueB.isEmpty()) {
-			
-			List<PathNode> neighboursF = BFS(prioQueueF, visitedF, true);
-			List<PathNode> neighboursB = BFS(prioQueueB, visitedB, false);
-			
-			Map<Long, PathNode> allFoundNodesF = createPathNodeMap(visitedF, neighboursF);
-			Map<Long, PathNode> allFoundNodesB = createPathNodeMap(visitedB, neighboursB);
-			
-			tmpIntersectingNodes = getIntersectingNode(neighboursF, neighboursB, allFoundNodesF, allFoundNodesB);
-			
-			if (tmpIntersectingNodes != null) {
-				// We found an intersecting node v.
-				// Calculate length of paths from start to v and end to v.
-				double tmpBestPathLength = tmpIntersectingNodes[0].getCost() + tmpIntersectingNodes[1].getCost();
-				if (tmpBestPathLength < bestPathLength) {
-					bestPathLength = tmpBestPathLength;
-					intersectingNodes = tmpIntersectingNodes;
-				}
-				// Calculate the lengths of the best paths seen so far
-				if (!prioQueueF.isEmpty() && !prioQueueB.isEmpty()) {
-					mtmp = prioQueueF.first().getCost() + prioQueueB.first().getCost();
-				} else {
-					// one queue is empty => break processing, target found
-					mtmp = bestPathLength;
+		DijkstraSearchSpace spaceF = DijkstraSearchSpace.acquire(); // front
+		DijkstraSearchSpace spaceB = DijkstraSearchSpace.acquire(); // back
+		try {
+			bestPathCost = Double.POSITIVE_INFINITY;
+			bestPath = null;
+
+			spaceF.addLabel(getId(sourceNode), sourceNode, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+			spaceB.addLabel(getId(targetNode), targetNode, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+
+			while (!options.isCancelled() &&
+				   !spaceF.isQueueEmpty() && !spaceB.isQueueEmpty()) {
+				// Stop if no path via unsettled nodes can be shorter than the best path found so far.
+				if (spaceF.peekKey() + spaceB.peekKey() >= bestPathCost) {
+					break;
 				}
-			}
-			
-			if (mtmp >= bestPathLength) {
-				// Stop if lengths of best paths seen so far are equal or greater than the length of paths from start to v and end to v.
-				// The intersecting node at this point does not have to be the same as the found intersecting node at first!
-				if (log.isDebugEnabled()) {
-					log.debug("intersection segment: " + intersectingNodes[0].getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_ID));
-					log.debug("visited: " + visitedF.size() + " / " + visitedB.size() + " nodes to reach target");
+				expand(spaceF, spaceB, true);
+				if (!spaceB.isQueueEmpty()) {
+					expand(spaceB, spaceF, false);
 				}
-				return createPath(intersectingNodes);
 			}
-			
-		}
 
-		// no path found
-		if (log.isDebugEnabled()) {
-			log.debug("visited: " + visitedF.size() + " / " + visitedB.size() + " nodes to reach target");
-		}
-		return null;
-	}
-
-	private Map<Long, PathNode> createPathNodeMap(Map<Long, PathNode> visited, List<PathNode> neighbours) {
-		Map<Long, PathNode> allFoundNodes = new Long2ObjectOpenHashMap<>(visited);
-		if (neighbours != null) {
-			for (PathNode neighbour : neighbours) {
-				allFoundNodes.put(neighbour.getId(), neighbour);
+			if (log.isDebugEnabled()) {
+				log.debug("visited: " + spaceF.getSettledCount() + " / " + spaceB.getSettledCount() + " nodes to reach target");
 			}
-		}
-		return allFoundNodes;
-	}
 
-	private PathNode[] getIntersectingNode(List<PathNode> neighboursF, List<PathNode> neighboursB,
-			Map<Long, PathNode> visitedF, Map<Long, PathNode> visitedB) {
-		if (neighboursF != null) {
-			for (PathNode neighbourF : neighboursF) {
-				if (visitedB.containsKey(neighbourF.getId())) {
-					PathNode intersectingCandidateB = visitedB.get(neighbourF.getId());
-					if (intersectingCandidateB.getLastRelationship() == null ||
-						neighbourF.getLastRelationship() == null ||
-						!((Long)intersectingCandidateB.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID)).equals(
-						  (Long)neighbourF.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID))) {
-						// only valid if paths hit segment/node from diffent directions
-						PathNode[] intersectingNodes = new PathNode[2];
-						intersectingNodes[0] = neighbourF;
-						intersectingNodes[1] = intersectingCandidateB;
-						return intersectingNodes;
-					}
-				}
+			if (bestPath == null || options.isCancelled()) {
+				// no path found
+				return null;
 			}
+			determineNodeDirections(bestPath);
+			return bestPath;
+		} finally {
+			settledCount = spaceF.getSettledCount() + spaceB.getSettledCount();
+			spaceF.release();
+			spaceB.release();
 		}
-		if (neighboursB != null) {
-			for (PathNode neighbourB : neighboursB) {
-				if (visitedF.containsKey(neighbourB.getId())) {
-					PathNode intersectingCandidateF = visitedF.get(neighbourB.getId());
-					if (intersectingCandidateF.getLastRelationship() == null ||
-						neighbourB.getLastRelationship() == null ||
-						!((Long)intersectingCandidateF.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID)).equals(
-						  (Long)neighbourB.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID))) {
-						// only valid if paths hit segment/node from diffent directions
-						PathNode[] intersectingNodes = new PathNode[2];
-						intersectingNodes[0] = intersectingCandidateF;
-						intersectingNodes[1] = neighbourB;
-						return intersectingNodes;
-					}
-				}
-			}
-		}			
-		return null;
 	}
 
-	private List<PathNode> BFS(PriorityQueue<PathNode> prioQueue, Map<Long, PathNode> visited, boolean front) {
-		List<PathNode> neighbours = null;
-		PathNode currentNode = prioQueue.dequeue();
-		if (!visited.containsKey(currentNode.getId())) {
-			visited.put(currentNode.getId(), currentNode);
+	/**
+	 * @return number of nodes settled by the last search of this instance
+	 */
+	public int getSettledCount() {
+		return settledCount;
+	}
 
-			// read neighbours
-			if (front) {
-				neighbours = getNeighbours(currentNode, true);
+	/**
+	 * Settles the next label of one search direction and relaxes the relationships to its neighbours. Each
+	 * improved label is checked against the label of the same node in the opposite search, so an intersection
+	 * is detected in constant time. Neither label of a meeting has to be settled yet, so the path is copied
+	 * as soon as the meeting is recorded.
+	 */
+	private void expand(DijkstraSearchSpace space, DijkstraSearchSpace oppositeSpace, boolean front) {
+		int currentLabel = space.poll();
+		double currentCost = space.getCost(currentLabel);
+		for (Relationship rel : getRelationships(space, currentLabel, front)) {
+			Node neighbourNode = front ? rel.getEndNode() : rel.getStartNode();
+			long id = getId(neighbourNode);
+			double cost = currentCost + costEvaluator.getCost(rel, Direction.OUTGOING);
+			int label = space.getLabel(id);
+			if (label == DijkstraSearchSpace.NOT_FOUND) {
+				label = space.addLabel(id, neighbourNode, rel, cost, 0, currentLabel);
+			} else if (!space.isSettled(label) && cost < space.getCost(label)) {
+				space.updateLabel(label, rel, cost, currentLabel);
 			} else {
-				neighbours = getNeighbours(currentNode, false);
+				continue;
+			}
+
+			int oppositeLabel = oppositeSpace.getLabel(id);
+			if (oppositeLabel != DijkstraSearchSpace.NOT_FOUND &&
+				cost + oppositeSpace.getCost(oppositeLabel) < bestPathCost &&
+				isIntersecting(rel, oppositeSpace.getRelationship(oppositeLabel))) {
+				bestPathCost = cost + oppositeSpace.getCost(oppositeLabel);
+				if (front) {
+					bestPath = createPath(space, label, oppositeSpace, oppositeLabel);
+				} else {
+					bestPath = createPath(oppositeSpace, oppositeLabel, space, label);
+				}
+				if (log.isDebugEnabled()) {
+					log.debug("intersection segment: " + neighbourNode.getProperty(WayGraphConstants.SEGMENT_ID));
+				}
 			}
-	        for (PathNode neighbour : neighbours) {
-	        	// calculate costs of neighbours and add them to the priority queue
-	        	calcCosts(neighbour, currentNode);
-        		prioQueue.enqueue(neighbour);
-	        }
 		}
-		return neighbours;
+	}
+
+	// only valid if paths hit segment/node from different directions
+	private boolean isIntersecting(Relationship rel, Relationship oppositeRel) {
+		return rel == null || oppositeRel == null ||
+			   !((Long) rel.getProperty(WayGraphConstants.CONNECTION_NODE_ID)).equals(
+				 (Long) oppositeRel.getProperty(WayGraphConstants.CONNECTION_NODE_ID));
 	}
 
 	// read connected segments regarding their direction!
-	protected List<PathNode> getNeighbours(PathNode currentNode, boolean front) {
-		Relationship lastRelationship = null;
+	protected Iterable<Relationship> getRelationships(DijkstraSearchSpace space, int currentLabel, boolean front) {
+		Node currentNode = space.getNode(currentLabel);
+		Relationship lastRelationship = space.getRelationship(currentLabel);
 		Node startNode = null;
 		Node endNode = null;
 		
 		if (log.isDebugEnabled()) {
-			log.debug("getting neighbours from Neo4j node with ID " + currentNode.getNeo4jNode().getId()); // + " and segment ID " + currentNode.getId());
-			if (currentNode.getLastRelationship() != null) {
-				log.debug("last relationship's connection ID = " + currentNode.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID));
-				log.debug("current segment's startNodeId = " + currentNode.getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) + 
-						", endNodeId = " + currentNode.getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID));
+			log.debug("getting neighbours from Neo4j node with ID " + currentNode.getId());
+			if (lastRelationship != null) {
+				log.debug("last relationship's connection ID = " + lastRelationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID));
+				log.debug("current segment's startNodeId = " + currentNode.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) + 
+						", endNodeId = " + currentNode.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID));
 			}
 		}
 		
-		org.neo4j.graphdb.Path neoPath;
 		if (front) {
-			endNode = currentNode.getNeo4jNode();
-			if (currentNode.getLastRelationship() != null) {
-				lastRelationship = currentNode.getLastRelationship();
+			endNode = currentNode;
+			if (lastRelationship != null) {
 				startNode = lastRelationship.getStartNode();
 			}
-			neoPath = new SimplePathImpl(startNode, endNode, lastRelationship);
-			return expandFront(neoPath, currentNode);
-		
+			return expanderOutgoing.expand(new SimplePathImpl(startNode, endNode, lastRelationship), null);
 		} else {
-			startNode = currentNode.getNeo4jNode();
-			if (currentNode.getLastRelationship() != null) {
-				lastRelationship = currentNode.getLastRelationship();
-				endNode = currentNode.getParentNode().getNeo4jNode();
+			startNode = currentNode;
+			if (lastRelationship != null) {
+				endNode = space.getNode(space.getParent(currentLabel));
 			}
-			neoPath = new SimplePathImpl(startNode, endNode, lastRelationship);
-			return expandBack(neoPath, currentNode);
+			return expanderIncoming.expand(new SimplePathImpl(startNode, endNode, lastRelationship), null);
 		}
 	}
 
-	private List<PathNode> expandFront(org.neo4j.graphdb.Path neoPath, PathNode currentNode) {
-		Iterable<Relationship> relationships = expanderOutgoing.expand(neoPath, null);
-		
-		List<PathNode> nodes = new ArrayList<>();
-		Node endNode;
-		for (Relationship rel : relationships) {
-			endNode = rel.getEndNode();
-			PathNode node = new PathNode(getId(endNode), null, endNode, rel, 
-					costEvaluator.getCost(rel, Direction.OUTGOING), currentNode);
-			
-			if (log.isDebugEnabled()) {
-				node.setSegmentId((long) endNode.getProperty(WayGraphConstants.SEGMENT_ID));
-			}
-
-			nodes.add(node);
-		}
-		
-		return nodes;
-	}
-
-	private List<PathNode> expandBack(org.neo4j.graphdb.Path neoPath, PathNode currentNode) {
-		Iterable<Relationship> relationships = expanderIncoming.expand(neoPath, null);
-		
-		List<PathNode> nodes = new ArrayList<>();
-		Node startNode;
-		for (Relationship rel : relationships) {
-			startNode = rel.getStartNode();
-			PathNode node = new PathNode(getId(startNode), null, startNode, rel, 
-					costEvaluator.getCost(rel, Direction.OUTGOING), currentNode);
-			
-			if (log.isDebugEnabled()) {
-				node.setSegmentId((long) startNode.getProperty(WayGraphConstants.SEGMENT_ID));
-			}
-
-			nodes.add(node);
-		}
-		
-		return nodes;
-	}
-
 	// TODO: in case of HD waysegments we need a better logic for extracting the direction (=> parallel lanes...)
 	protected Boolean determineDirectionFront(Relationship rel, Node endNode) {
 		long connectionNodeId = (long)rel.getProperty(WayGraphConstants.CONNECTION_NODE_ID);
@@ -351,28 +270,27 @@ public class BidirectionalDijkstra<W extends IBaseWaySegment> implements IRoutin
 		}
 	}
 
-	private Path createPath(PathNode[] intersectingNodes) {
+	/**
+	 * Copies the path via the meeting labels, which are the forward and the backward label of the same node.
+	 */
+	private Path createPath(DijkstraSearchSpace spaceF, int meetingLabelF, DijkstraSearchSpace spaceB, int meetingLabelB) {
 		Path path = new Path();
+		path.setTotalCost(bestPathCost);
 		
-		// intersectingNodes: [0] .. node coming from front search
-		//					  [1] .. node coming from back search
-		PathNode currentNodeF = intersectingNodes[0];
-		PathNode currentNodeB = intersectingNodes[1];
-		path.setTotalCost(currentNodeF.getCost() + currentNodeB.getCost()); // cost of last node is total cost of path
-		
-		while (currentNodeF != null) {
-			path.addNodeAtStart(currentNodeF);
-			currentNodeF = currentNodeF.getParentNode();
+		IntArrayList labelsF = new IntArrayList();
+		for (int label = meetingLabelF; label != DijkstraSearchSpace.NOT_FOUND; label = spaceF.getParent(label)) {
+			labelsF.add(label);
 		}
-		
-		while (currentNodeB != null) {
-			if (currentNodeB != intersectingNodes[1]) {
-				path.addNode(currentNodeB);
-			}
-			currentNodeB = currentNodeB.getParentNode();
+		for (int i = labelsF.size() - 1; i >= 0; i--) {
+			path.addNode(createPathNode(spaceF, labelsF.getInt(i)));
 		}
-		
-		// determine node directions
+		for (int label = spaceB.getParent(meetingLabelB); label != DijkstraSearchSpace.NOT_FOUND; label = spaceB.getParent(label)) {
+			path.addNode(createPathNode(spaceB, label));
+		}
+		return path;
+	}
+
+	private void determineNodeDirections(Path path) {
 		PathNode pred = null;
 		for (PathNode succ : path.getNodes()) {
 			if (pred != null) {
@@ -380,35 +298,19 @@ public class BidirectionalDijkstra<W extends IBaseWaySegment> implements IRoutin
 			}
 			pred = succ;
 		}
-		
-		return path;
 	}
 
-	protected Long getId(Node node) {
-		return node.getId();
-	}
-
-	protected void calcCosts(PathNode neighbour, PathNode currentNode) {
-    	neighbour.setCost(neighbour.getCost() + currentNode.getCost());
+	private PathNode createPathNode(DijkstraSearchSpace space, int label) {
+		PathNode node = new PathNode(space.getId(label), null, space.getNode(label), space.getRelationship(label),
+				space.getCost(label), null);
+		if (log.isDebugEnabled()) {
+			node.setSegmentId((long) space.getNode(label).getProperty(WayGraphConstants.SEGMENT_ID));
+		}
+		return node;
 	}
 
-	protected PathNode getStartNode(Node startNode) {
-		if (startNode == null) {
-			return null;
-		} else {
-			PathNode start = new PathNode(startNode.getId(),
-							null,
-							startNode, 
-							null, 
-							0, 
-							null);
-
-			if (log.isDebugEnabled()) {
-				start.setSegmentId((long) startNode.getProperty(WayGraphConstants.SEGMENT_ID));
-			}
-			
-			return start;
-		}
+	protected long getId(Node node) {
+		return node.getId();
 	}
 	
 }
\ No newline at end of file
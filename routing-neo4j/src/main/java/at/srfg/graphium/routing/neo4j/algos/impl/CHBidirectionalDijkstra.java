@@ -0,0 +1,259 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.neo4j.graphdb.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchy;
+import at.srfg.graphium.routing.neo4j.graph.StateHeap;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+/**
+ * Bidirectional Dijkstra on a {@link ContractionHierarchy}. Both searches only relax edges leading to higher
+ * ranked states and stall states which can be reached cheaper via a higher ranked state (stall-on-demand).
+ * Shortcuts of the best path are unpacked into the states of the underlying {@link CSRRoutingGraph}.
+ *
+ * Forward costs contain the costs of the state itself, backward costs of the target states are initialized with
+ * the (offset aware) target costs minus the state's full costs, so the costs of a path are the sum of forward and
+ * backward costs of the meeting state.
+ *
+ * Temporary restrictions are not part of the hierarchy. If the best path contains a restricted state the route
+ * will be calculated by {@link CSRBidirectionalDijkstra}.
+ */
+public class CHBidirectionalDijkstra<W extends IBaseWaySegment> extends AbstractCSRRoutingAlgo<W> {
+
+	private static Logger log = LoggerFactory.getLogger(CHBidirectionalDijkstra.class);
+
+	private ContractionHierarchy hierarchy;
+
+	private Int2DoubleOpenHashMap costsF;
+	private Int2DoubleOpenHashMap costsB;
+	// hierarchy edge used to reach a state
+	private Int2IntOpenHashMap predecessorEdgesF;
+	private Int2IntOpenHashMap successorEdgesB;
+	private IntOpenHashSet visitedF;
+	private IntOpenHashSet visitedB;
+
+	private double bestPathCosts;
+	private int meetingState;
+	private boolean restrictedPath;
+
+	public CHBidirectionalDijkstra(CSRRoutingGraph graph, ContractionHierarchy hierarchy, IRoutingOptions options,
+			boolean offsetAware, IRestrictionsService restrictionsService) {
+		super(graph, options, offsetAware, restrictionsService);
+		this.hierarchy = hierarchy;
+	}
+
+	@Override
+	public IRoutedPath<Double> bestRoute(IRoutingOptions routeOptions, Node sourceNode, float percentageStartWeight,
+			Node targetNode, float percentageEndWeight) {
+		restrictedPath = false;
+		IRoutedPath<Double> path = super.bestRoute(routeOptions, sourceNode, percentageStartWeight, targetNode, percentageEndWeight);
+		if (restrictedPath) {
+			log.debug("Best path contains restricted segments, falling back to bidirectional Dijkstra");
+			return new CSRBidirectionalDijkstra<W>(graph, options, offsetAware, restrictionsService)
+					.bestRoute(routeOptions, sourceNode, percentageStartWeight, targetNode, percentageEndWeight);
+		}
+		return path;
+	}
+
+	@Override
+	protected IRoutedPath<Double> calculateShortestPath(int sourceSegmentIndex, float percentageStartWeight) {
+
+		costsF = createCostsMap();
+		costsB = createCostsMap();
+		predecessorEdgesF = createEdgeMap();
+		successorEdgesB = createEdgeMap();
+		visitedF = new IntOpenHashSet();
+		visitedB = new IntOpenHashSet();
+		StateHeap prioQueueF = new StateHeap();
+		StateHeap prioQueueB = new StateHeap();
+
+		bestPathCosts = Double.POSITIVE_INFINITY;
+		meetingState = CSRRoutingGraph.NOT_FOUND;
+
+		// minimum initial costs of each search; used to bound the other search
+		double minStartCostsF = Double.POSITIVE_INFINITY;
+		double minStartCostsB = Double.POSITIVE_INFINITY;
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			double startCosts = getStartCosts(startState, percentageStartWeight);
+			costsF.put(startState, startCosts);
+			prioQueueF.push(startCosts, startState);
+			minStartCostsF = Math.min(minStartCostsF, startCosts);
+
+			int targetState = CSRRoutingGraph.getState(targetSegmentIndex, d == 0);
+			double targetCosts = getCosts(targetState) - costs[targetState];
+			costsB.put(targetState, targetCosts);
+			prioQueueB.push(targetCosts, targetState);
+			minStartCostsB = Math.min(minStartCostsB, targetCosts);
+		}
+
+		boolean finishedF = false;
+		boolean finishedB = false;
+		while (!options.isCancelled() && !(finishedF && finishedB)) {
+			if (!finishedF) {
+				if (prioQueueF.isEmpty() || prioQueueF.peekKey() + minStartCostsB >= bestPathCosts) {
+					finishedF = true;
+				} else {
+					expandForward(prioQueueF);
+				}
+			}
+			if (!finishedB) {
+				if (prioQueueB.isEmpty() || prioQueueB.peekKey() + minStartCostsF >= bestPathCosts) {
+					finishedB = true;
+				} else {
+					expandBackward(prioQueueB);
+				}
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("visited: " + visitedF.size() + " / " + visitedB.size() + " states to reach target");
+		}
+
+		if (meetingState == CSRRoutingGraph.NOT_FOUND || options.isCancelled()) {
+			// no path found
+			return null;
+		}
+
+		IntArrayList states = createPath();
+		if (restrictionsService != null) {
+			// start states are not checked by other algorithms either
+			for (int i = 1; i < states.size(); i++) {
+				if (isRestricted(states.getInt(i))) {
+					restrictedPath = true;
+					return null;
+				}
+			}
+		}
+		return convertPath2RoutedPath(states, bestPathCosts);
+	}
+
+	private void expandForward(StateHeap prioQueue) {
+		double currentCosts = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		if (!visitedF.add(currentState)) {
+			return;
+		}
+		updateBestPath(currentState, currentCosts + costsB.get(currentState));
+
+		// stall-on-demand: skip the state if a higher ranked state reaches it cheaper
+		int lastEdge = hierarchy.getFirstBackwardEdge(currentState + 1);
+		for (int i = hierarchy.getFirstBackwardEdge(currentState); i < lastEdge; i++) {
+			int edge = hierarchy.getBackwardEdge(i);
+			if (costsF.get(hierarchy.getEdgeSource(edge)) + hierarchy.getEdgeWeight(edge) < currentCosts) {
+				return;
+			}
+		}
+
+		lastEdge = hierarchy.getFirstForwardEdge(currentState + 1);
+		for (int i = hierarchy.getFirstForwardEdge(currentState); i < lastEdge; i++) {
+			int edge = hierarchy.getForwardEdge(i);
+			int neighbour = hierarchy.getEdgeTarget(edge);
+			double neighbourCosts = currentCosts + hierarchy.getEdgeWeight(edge);
+			if (neighbourCosts < costsF.get(neighbour)) {
+				costsF.put(neighbour, neighbourCosts);
+				predecessorEdgesF.put(neighbour, edge);
+				prioQueue.push(neighbourCosts, neighbour);
+			}
+		}
+	}
+
+	private void expandBackward(StateHeap prioQueue) {
+		double currentCosts = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		if (!visitedB.add(currentState)) {
+			return;
+		}
+		updateBestPath(currentState, costsF.get(currentState) + currentCosts);
+
+		int lastEdge = hierarchy.getFirstForwardEdge(currentState + 1);
+		for (int i = hierarchy.getFirstForwardEdge(currentState); i < lastEdge; i++) {
+			int edge = hierarchy.getForwardEdge(i);
+			if (costsB.get(hierarchy.getEdgeTarget(edge)) + hierarchy.getEdgeWeight(edge) < currentCosts) {
+				return;
+			}
+		}
+
+		lastEdge = hierarchy.getFirstBackwardEdge(currentState + 1);
+		for (int i = hierarchy.getFirstBackwardEdge(currentState); i < lastEdge; i++) {
+			int edge = hierarchy.getBackwardEdge(i);
+			int neighbour = hierarchy.getEdgeSource(edge);
+			double neighbourCosts = currentCosts + hierarchy.getEdgeWeight(edge);
+			if (neighbourCosts < costsB.get(neighbour)) {
+				costsB.put(neighbour, neighbourCosts);
+				successorEdgesB.put(neighbour, edge);
+				prioQueue.push(neighbourCosts, neighbour);
+			}
+		}
+	}
+
+	private void updateBestPath(int state, double pathCosts) {
+		if (pathCosts < bestPathCosts) {
+			bestPathCosts = pathCosts;
+			meetingState = state;
+		}
+	}
+
+	private IntArrayList createPath() {
+		// hierarchy edges from start to meeting state have been collected in reverse order
+		IntArrayList edgesF = new IntArrayList();
+		int state = meetingState;
+		int edge;
+		while ((edge = predecessorEdgesF.get(state)) != ContractionHierarchy.NO_EDGE) {
+			edgesF.add(edge);
+			state = hierarchy.getEdgeSource(edge);
+		}
+
+		IntArrayList states = new IntArrayList();
+		states.add(state);
+		for (int i = edgesF.size() - 1; i >= 0; i--) {
+			hierarchy.unpackEdge(edgesF.getInt(i), states);
+		}
+		state = meetingState;
+		while ((edge = successorEdgesB.get(state)) != ContractionHierarchy.NO_EDGE) {
+			hierarchy.unpackEdge(edge, states);
+			state = hierarchy.getEdgeTarget(edge);
+		}
+		return states;
+	}
+
+	private Int2DoubleOpenHashMap createCostsMap() {
+		Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+		map.defaultReturnValue(Double.POSITIVE_INFINITY);
+		return map;
+	}
+
+	private Int2IntOpenHashMap createEdgeMap() {
+		Int2IntOpenHashMap map = new Int2IntOpenHashMap();
+		map.defaultReturnValue(ContractionHierarchy.NO_EDGE);
+		return map;
+	}
+
+}
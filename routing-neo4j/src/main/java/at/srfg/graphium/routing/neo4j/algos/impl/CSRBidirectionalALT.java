@@ -0,0 +1,283 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistances;
+import at.srfg.graphium.routing.neo4j.graph.StateHeap;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Bidirectional A* on an in-memory {@link CSRRoutingGraph} using lower bounds derived from
+ * {@link LandmarkDistances} (ALT). The forward search is directed by lower bounds of the costs to the target
+ * segment, the backward search by lower bounds of the costs from the start segment.
+ *
+ * Both searches use their own heuristic (symmetric bidirectional A*), which only requires the lower bounds to be
+ * admissible: states are re-expanded if cheaper costs have been found, and the search stops as soon as one queue's
+ * minimum estimated path costs reach the costs of the best path found so far.
+ */
+public class CSRBidirectionalALT<W extends IBaseWaySegment> extends AbstractCSRRoutingAlgo<W> {
+
+	private static Logger log = LoggerFactory.getLogger(CSRBidirectionalALT.class);
+
+	private LandmarkDistances landmarks;
+
+	private Int2DoubleOpenHashMap costsF;
+	private Int2DoubleOpenHashMap costsB;
+	// lower bounds of each state's remaining costs (forward) or costs from start (backward)
+	private Int2DoubleOpenHashMap estimatesF;
+	private Int2DoubleOpenHashMap estimatesB;
+	private Int2IntOpenHashMap predecessorsF;
+	private Int2IntOpenHashMap successorsB;
+
+	private int sourceSegmentIndex;
+	private double[] startCosts = new double[2];
+	private double bestPathCosts;
+	// edge where forward and backward search met
+	private int meetingStateF;
+	private int meetingStateB;
+	private int expandedF;
+	private int expandedB;
+
+	public CSRBidirectionalALT(CSRRoutingGraph graph, LandmarkDistances landmarks, IRoutingOptions options,
+			boolean offsetAware, IRestrictionsService restrictionsService) {
+		super(graph, options, offsetAware, restrictionsService);
+		this.landmarks = landmarks;
+	}
+
+	@Override
+	protected IRoutedPath<Double> calculateShortestPath(int sourceSegmentIndex, float percentageStartWeight) {
+		this.sourceSegmentIndex = sourceSegmentIndex;
+
+		costsF = createMap(Double.POSITIVE_INFINITY);
+		costsB = createMap(Double.POSITIVE_INFINITY);
+		estimatesF = createMap(-1);
+		estimatesB = createMap(-1);
+		predecessorsF = createStateMap();
+		successorsB = createStateMap();
+		StateHeap prioQueueF = new StateHeap(); // front
+		StateHeap prioQueueB = new StateHeap(); // back
+
+		bestPathCosts = Double.POSITIVE_INFINITY;
+		meetingStateF = CSRRoutingGraph.NOT_FOUND;
+		meetingStateB = CSRRoutingGraph.NOT_FOUND;
+		expandedF = 0;
+		expandedB = 0;
+
+		for (int d = 0; d < 2; d++) {
+			startCosts[d] = getStartCosts(CSRRoutingGraph.getState(sourceSegmentIndex, d == 0), percentageStartWeight);
+		}
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			costsF.put(startState, startCosts[d]);
+			prioQueueF.push(startCosts[d] + getEstimateF(startState), startState);
+
+			int targetState = CSRRoutingGraph.getState(targetSegmentIndex, d == 0);
+			if (!isRestricted(targetState)) {
+				costsB.put(targetState, 0);
+				prioQueueB.push(getEstimateB(targetState), targetState);
+			}
+		}
+
+		while (!options.isCancelled() &&
+			   !prioQueueF.isEmpty() && !prioQueueB.isEmpty()) {
+			// stop if no path via unexpanded states of either search can be shorter than the best path found so far
+			if (prioQueueF.peekKey() >= bestPathCosts || prioQueueB.peekKey() >= bestPathCosts) {
+				break;
+			}
+			expandForward(prioQueueF);
+			if (!prioQueueB.isEmpty() && prioQueueB.peekKey() < bestPathCosts) {
+				expandBackward(prioQueueB);
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("expanded: " + expandedF + " / " + expandedB + " states to reach target");
+		}
+
+		if (meetingStateF == CSRRoutingGraph.NOT_FOUND || options.isCancelled()) {
+			// no path found
+			return null;
+		}
+		IntArrayList states = createPath();
+		return convertPath2RoutedPath(states, calculatePathCosts(states));
+	}
+
+	private void expandForward(StateHeap prioQueue) {
+		double currentKey = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		double currentCosts = costsF.get(currentState);
+		// skip outdated queue entries
+		if (currentKey > currentCosts + getEstimateF(currentState) ||
+			CSRRoutingGraph.getSegmentIndex(currentState) == targetSegmentIndex) {
+			return;
+		}
+		expandedF++;
+
+		int lastEdge = graph.getFirstOutgoingEdge(currentState + 1);
+		for (int edge = graph.getFirstOutgoingEdge(currentState); edge < lastEdge; edge++) {
+			int neighbour = graph.getOutgoingEdgeTarget(edge);
+			if (!isAccessible(graph.getOutgoingEdgeAccess(edge))) {
+				continue;
+			}
+			double neighbourCosts = currentCosts + getCosts(neighbour);
+			if (neighbourCosts < costsF.get(neighbour)) {
+				if (isRestricted(neighbour)) {
+					continue;
+				}
+				costsF.put(neighbour, neighbourCosts);
+				predecessorsF.put(neighbour, currentState);
+				prioQueue.push(neighbourCosts + getEstimateF(neighbour), neighbour);
+			}
+			updateBestPath(currentState, neighbour, neighbourCosts + costsB.get(neighbour));
+		}
+	}
+
+	private void expandBackward(StateHeap prioQueue) {
+		double currentKey = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		double currentCosts = costsB.get(currentState);
+		if (currentKey > currentCosts + getEstimateB(currentState) ||
+			CSRRoutingGraph.getSegmentIndex(currentState) == sourceSegmentIndex ||
+			isRestricted(currentState)) {
+			return;
+		}
+		expandedB++;
+
+		double enteringCosts = currentCosts + getCosts(currentState);
+		int lastEdge = graph.getFirstIncomingEdge(currentState + 1);
+		for (int edge = graph.getFirstIncomingEdge(currentState); edge < lastEdge; edge++) {
+			int neighbour = graph.getIncomingEdgeSource(edge);
+			if (!isAccessible(graph.getIncomingEdgeAccess(edge))) {
+				continue;
+			}
+			if (enteringCosts < costsB.get(neighbour)) {
+				costsB.put(neighbour, enteringCosts);
+				successorsB.put(neighbour, currentState);
+				prioQueue.push(enteringCosts + getEstimateB(neighbour), neighbour);
+			}
+			updateBestPath(neighbour, currentState, costsF.get(neighbour) + enteringCosts);
+		}
+	}
+
+	/**
+	 * @return lower bound of the costs from the state (excluded) to the end of the target segment
+	 */
+	private double getEstimateF(int state) {
+		double estimate = estimatesF.get(state);
+		if (estimate < 0) {
+			estimate = Double.POSITIVE_INFINITY;
+			for (int d = 0; d < 2; d++) {
+				int targetState = CSRRoutingGraph.getState(targetSegmentIndex, d == 0);
+				if (state == targetState) {
+					estimate = 0;
+				} else {
+					// target state is entered with its offset aware costs
+					estimate = Math.min(estimate, Math.max(0,
+							landmarks.getLowerBound(state, targetState) - costs[targetState] + getCosts(targetState)));
+				}
+			}
+			estimatesF.put(state, estimate);
+		}
+		return estimate;
+	}
+
+	/**
+	 * @return lower bound of the costs from the start to the state (included)
+	 */
+	private double getEstimateB(int state) {
+		double estimate = estimatesB.get(state);
+		if (estimate < 0) {
+			estimate = Double.POSITIVE_INFINITY;
+			for (int d = 0; d < 2; d++) {
+				int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+				if (state == startState) {
+					estimate = Math.min(estimate, startCosts[d]);
+				} else {
+					estimate = Math.min(estimate, startCosts[d] + Math.max(getCosts(state),
+							landmarks.getLowerBound(startState, state) - costs[state] + getCosts(state)));
+				}
+			}
+			estimatesB.put(state, estimate);
+		}
+		return estimate;
+	}
+
+	private void updateBestPath(int stateF, int stateB, double pathCosts) {
+		if (pathCosts < bestPathCosts) {
+			bestPathCosts = pathCosts;
+			meetingStateF = stateF;
+			meetingStateB = stateB;
+		}
+	}
+
+	private IntArrayList createPath() {
+		IntArrayList states = new IntArrayList();
+		int state = meetingStateF;
+		while (state != CSRRoutingGraph.NOT_FOUND) {
+			states.add(state);
+			state = predecessorsF.get(state);
+		}
+		// forward states have been collected from meeting state to start
+		for (int i = 0, j = states.size() - 1; i < j; i++, j--) {
+			int tmp = states.getInt(i);
+			states.set(i, states.getInt(j));
+			states.set(j, tmp);
+		}
+		state = meetingStateB;
+		while (state != CSRRoutingGraph.NOT_FOUND) {
+			states.add(state);
+			state = successorsB.get(state);
+		}
+		return states;
+	}
+
+	/**
+	 * Costs are summed up along the path, because states may have been re-expanded after the best path has been
+	 * found.
+	 */
+	private double calculatePathCosts(IntArrayList states) {
+		double pathCosts = startCosts[states.getInt(0) & 1];
+		for (int i = 1; i < states.size(); i++) {
+			pathCosts += getCosts(states.getInt(i));
+		}
+		return pathCosts;
+	}
+
+	private Int2DoubleOpenHashMap createMap(double defaultValue) {
+		Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+		map.defaultReturnValue(defaultValue);
+		return map;
+	}
+
+	private Int2IntOpenHashMap createStateMap() {
+		Int2IntOpenHashMap map = new Int2IntOpenHashMap();
+		map.defaultReturnValue(CSRRoutingGraph.NOT_FOUND);
+		return map;
+	}
+
+}
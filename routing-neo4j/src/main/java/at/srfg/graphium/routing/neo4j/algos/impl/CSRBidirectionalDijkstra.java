@@ -0,0 +1,206 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.StateHeap;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+/**
+ * Bidirectional Dijkstra on an in-memory {@link CSRRoutingGraph}. The forward search expands outgoing edges
+ * from the start segment, the backward search expands incoming edges from the target segment. Costs of the
+ * backward search do not contain the costs of the state itself (they are part of the forward costs).
+ */
+public class CSRBidirectionalDijkstra<W extends IBaseWaySegment> extends AbstractCSRRoutingAlgo<W> {
+
+	private static Logger log = LoggerFactory.getLogger(CSRBidirectionalDijkstra.class);
+
+	private Int2DoubleOpenHashMap costsF;
+	private Int2DoubleOpenHashMap costsB;
+	private Int2IntOpenHashMap predecessorsF;
+	private Int2IntOpenHashMap successorsB;
+	private IntOpenHashSet visitedF;
+	private IntOpenHashSet visitedB;
+
+	private double bestPathCosts;
+	// edge where forward and backward search met
+	private int meetingStateF;
+	private int meetingStateB;
+
+	public CSRBidirectionalDijkstra(CSRRoutingGraph graph, IRoutingOptions options, boolean offsetAware,
+			IRestrictionsService restrictionsService) {
+		super(graph, options, offsetAware, restrictionsService);
+	}
+
+	@Override
+	protected IRoutedPath<Double> calculateShortestPath(int sourceSegmentIndex, float percentageStartWeight) {
+
+		costsF = createCostsMap();
+		costsB = createCostsMap();
+		predecessorsF = createStateMap();
+		successorsB = createStateMap();
+		visitedF = new IntOpenHashSet();
+		visitedB = new IntOpenHashSet();
+		StateHeap prioQueueF = new StateHeap(); // front
+		StateHeap prioQueueB = new StateHeap(); // back
+
+		bestPathCosts = Double.POSITIVE_INFINITY;
+		meetingStateF = CSRRoutingGraph.NOT_FOUND;
+		meetingStateB = CSRRoutingGraph.NOT_FOUND;
+
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			double startCosts = getStartCosts(startState, percentageStartWeight);
+			costsF.put(startState, startCosts);
+			prioQueueF.push(startCosts, startState);
+
+			int targetState = CSRRoutingGraph.getState(targetSegmentIndex, d == 0);
+			if (!isRestricted(targetState)) {
+				costsB.put(targetState, 0);
+				prioQueueB.push(0, targetState);
+			}
+		}
+
+		while (!options.isCancelled() &&
+			   !prioQueueF.isEmpty() && !prioQueueB.isEmpty()) {
+			// stop if no path via unvisited states can be shorter than the best path found so far
+			if (prioQueueF.peekKey() + prioQueueB.peekKey() >= bestPathCosts) {
+				break;
+			}
+			expandForward(prioQueueF);
+			if (!prioQueueB.isEmpty()) {
+				expandBackward(prioQueueB, sourceSegmentIndex);
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("visited: " + visitedF.size() + " / " + visitedB.size() + " states to reach target");
+		}
+
+		if (meetingStateF == CSRRoutingGraph.NOT_FOUND || options.isCancelled()) {
+			// no path found
+			return null;
+		}
+		return convertPath2RoutedPath(createPath(), bestPathCosts);
+	}
+
+	private void expandForward(StateHeap prioQueue) {
+		double currentCosts = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		if (!visitedF.add(currentState) ||
+			CSRRoutingGraph.getSegmentIndex(currentState) == targetSegmentIndex) {
+			return;
+		}
+
+		int lastEdge = graph.getFirstOutgoingEdge(currentState + 1);
+		for (int edge = graph.getFirstOutgoingEdge(currentState); edge < lastEdge; edge++) {
+			int neighbour = graph.getOutgoingEdgeTarget(edge);
+			if (visitedF.contains(neighbour) || !isAccessible(graph.getOutgoingEdgeAccess(edge))) {
+				continue;
+			}
+			double neighbourCosts = currentCosts + getCosts(neighbour);
+			if (neighbourCosts < costsF.get(neighbour)) {
+				if (isRestricted(neighbour)) {
+					continue;
+				}
+				costsF.put(neighbour, neighbourCosts);
+				predecessorsF.put(neighbour, currentState);
+				prioQueue.push(neighbourCosts, neighbour);
+			}
+			// neighbour has been checked for restrictions when it got its forward costs
+			updateBestPath(currentState, neighbour, neighbourCosts + costsB.get(neighbour));
+		}
+	}
+
+	private void expandBackward(StateHeap prioQueue, int sourceSegmentIndex) {
+		double currentCosts = prioQueue.peekKey();
+		int currentState = prioQueue.poll();
+		if (!visitedB.add(currentState) ||
+			CSRRoutingGraph.getSegmentIndex(currentState) == sourceSegmentIndex ||
+			isRestricted(currentState)) {
+			return;
+		}
+
+		double enteringCosts = currentCosts + getCosts(currentState);
+		int lastEdge = graph.getFirstIncomingEdge(currentState + 1);
+		for (int edge = graph.getFirstIncomingEdge(currentState); edge < lastEdge; edge++) {
+			int neighbour = graph.getIncomingEdgeSource(edge);
+			if (visitedB.contains(neighbour) || !isAccessible(graph.getIncomingEdgeAccess(edge))) {
+				continue;
+			}
+			if (enteringCosts < costsB.get(neighbour)) {
+				costsB.put(neighbour, enteringCosts);
+				successorsB.put(neighbour, currentState);
+				prioQueue.push(enteringCosts, neighbour);
+			}
+			updateBestPath(neighbour, currentState, costsF.get(neighbour) + enteringCosts);
+		}
+	}
+
+	private void updateBestPath(int stateF, int stateB, double pathCosts) {
+		if (pathCosts < bestPathCosts) {
+			bestPathCosts = pathCosts;
+			meetingStateF = stateF;
+			meetingStateB = stateB;
+		}
+	}
+
+	private IntArrayList createPath() {
+		IntArrayList states = new IntArrayList();
+		int state = meetingStateF;
+		while (state != CSRRoutingGraph.NOT_FOUND) {
+			states.add(state);
+			state = predecessorsF.get(state);
+		}
+		// forward states have been collected from meeting state to start
+		for (int i = 0, j = states.size() - 1; i < j; i++, j--) {
+			int tmp = states.getInt(i);
+			states.set(i, states.getInt(j));
+			states.set(j, tmp);
+		}
+		state = meetingStateB;
+		while (state != CSRRoutingGraph.NOT_FOUND) {
+			states.add(state);
+			state = successorsB.get(state);
+		}
+		return states;
+	}
+
+	private Int2DoubleOpenHashMap createCostsMap() {
+		Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+		map.defaultReturnValue(Double.POSITIVE_INFINITY);
+		return map;
+	}
+
+	private Int2IntOpenHashMap createStateMap() {
+		Int2IntOpenHashMap map = new Int2IntOpenHashMap();
+		map.defaultReturnValue(CSRRoutingGraph.NOT_FOUND);
+		return map;
+	}
+
+}
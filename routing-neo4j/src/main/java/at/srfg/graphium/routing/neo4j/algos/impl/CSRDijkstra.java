@@ -0,0 +1,111 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.StateHeap;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+/**
+ * Dijkstra on an in-memory {@link CSRRoutingGraph}.
+ */
+public class CSRDijkstra<W extends IBaseWaySegment> extends AbstractCSRRoutingAlgo<W> {
+
+	private static Logger log = LoggerFactory.getLogger(CSRDijkstra.class);
+
+	public CSRDijkstra(CSRRoutingGraph graph, IRoutingOptions options, boolean offsetAware,
+			IRestrictionsService restrictionsService) {
+		super(graph, options, offsetAware, restrictionsService);
+	}
+
+	@Override
+	protected IRoutedPath<Double> calculateShortestPath(int sourceSegmentIndex, float percentageStartWeight) {
+		Int2DoubleOpenHashMap costsPerState = new Int2DoubleOpenHashMap();
+		costsPerState.defaultReturnValue(Double.POSITIVE_INFINITY);
+		Int2IntOpenHashMap predecessors = new Int2IntOpenHashMap();
+		predecessors.defaultReturnValue(CSRRoutingGraph.NOT_FOUND);
+		IntOpenHashSet visited = new IntOpenHashSet();
+		StateHeap prioQueue = new StateHeap();
+
+		// route can start in both directions
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			double startCosts = getStartCosts(startState, percentageStartWeight);
+			costsPerState.put(startState, startCosts);
+			prioQueue.push(startCosts, startState);
+		}
+
+		while (!options.isCancelled() && !prioQueue.isEmpty()) {
+			double currentCosts = prioQueue.peekKey();
+			int currentState = prioQueue.poll();
+			if (!visited.add(currentState)) {
+				continue;
+			}
+
+			if (CSRRoutingGraph.getSegmentIndex(currentState) == targetSegmentIndex) {
+				// target found
+				log.debug("visited: " + visited.size() + " states to reach target");
+				return convertPath2RoutedPath(createPath(currentState, predecessors), currentCosts);
+			}
+
+			int lastEdge = graph.getFirstOutgoingEdge(currentState + 1);
+			for (int edge = graph.getFirstOutgoingEdge(currentState); edge < lastEdge; edge++) {
+				int neighbour = graph.getOutgoingEdgeTarget(edge);
+				if (visited.contains(neighbour) || !isAccessible(graph.getOutgoingEdgeAccess(edge))) {
+					continue;
+				}
+				double neighbourCosts = currentCosts + getCosts(neighbour);
+				if (neighbourCosts < costsPerState.get(neighbour) && !isRestricted(neighbour)) {
+					costsPerState.put(neighbour, neighbourCosts);
+					predecessors.put(neighbour, currentState);
+					prioQueue.push(neighbourCosts, neighbour);
+				}
+			}
+		}
+
+		// no path found
+		return null;
+	}
+
+	private IntArrayList createPath(int targetState, Int2IntOpenHashMap predecessors) {
+		IntArrayList states = new IntArrayList();
+		int state = targetState;
+		while (state != CSRRoutingGraph.NOT_FOUND) {
+			states.add(state);
+			state = predecessors.get(state);
+		}
+		// states have been collected from target to start
+		for (int i = 0, j = states.size() - 1; i < j; i++, j--) {
+			int tmp = states.getInt(i);
+			states.set(i, states.getInt(j));
+			states.set(j, tmp);
+		}
+		return states;
+	}
+
+}
@@ -0,0 +1,356 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.Arrays;
+
+import org.neo4j.graphdb.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.algos.IRoutingMatrixAlgo;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchy;
+import at.srfg.graphium.routing.neo4j.graph.IndexedStateHeap;
+import at.srfg.graphium.routing.service.IRestrictionsService;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Calculates costs between many source and target segments on an in-memory {@link CSRRoutingGraph}. Costs are
+ * the same as calculated by {@link CSRDijkstra} without offsets: the source segment's costs are counted fully,
+ * the target segment's costs are not counted.
+ *
+ * If a {@link ContractionHierarchy} is given a bucket based many-to-many search will be used: an upward search
+ * from each target stores its costs in buckets of the settled states, an upward search from each source scans the
+ * buckets of its settled states. Otherwise one multi-target Dijkstra per source will be run, which stops as soon
+ * as all targets have been reached. Temporary restrictions are only supported by the latter.
+ */
+public class CSRRoutingMatrixAlgo implements IRoutingMatrixAlgo {
+
+	private static Logger log = LoggerFactory.getLogger(CSRRoutingMatrixAlgo.class);
+
+	private static final int NO_ENTRY = -1;
+
+	private CSRRoutingGraph graph;
+	private ContractionHierarchy hierarchy;
+	private IRoutingOptions options;
+	private float[] costs;
+	// bitmask of access types required on connections; 0 if not filtered
+	private long requiredAccess;
+	private IRestrictionsService restrictionsService;
+
+	// labels shared by all searches of a matrix; a label is valid if its stamp equals the current search's stamp
+	private double[] labelCosts;
+	private int[] labelStamps;
+	private int stamp = 0;
+	private IndexedStateHeap queue;
+
+	// distinct target segments
+	private Int2IntOpenHashMap targetSlots;
+	private int[] slotSegments;
+	private double[] slotCosts;
+
+	// buckets of the many-to-many search: linked entries per state
+	private Int2IntOpenHashMap bucketHeads;
+	private IntArrayList bucketNext;
+	private IntArrayList bucketSlots;
+	private DoubleArrayList bucketCosts;
+
+	/**
+	 * @param hierarchy contraction hierarchy matching the options' criteria and routing mode; null if not available
+	 * @param restrictionsService optional service to filter temporary restricted segments; must be null if a
+	 * 		  hierarchy is given
+	 */
+	public CSRRoutingMatrixAlgo(CSRRoutingGraph graph, ContractionHierarchy hierarchy, IRoutingOptions options,
+			IRestrictionsService restrictionsService) {
+		if (hierarchy != null && restrictionsService != null) {
+			throw new IllegalArgumentException("temporary restrictions are not supported on contraction hierarchies");
+		}
+		this.graph = graph;
+		this.hierarchy = hierarchy;
+		this.options = options;
+		this.costs = graph.getCosts(options.getCriteria());
+		this.requiredAccess = AbstractCSRRoutingAlgo.getRequiredAccess(options.getMode());
+		this.restrictionsService = restrictionsService;
+	}
+
+	@Override
+	public float[] calculateMatrix(Node[] sourceNodes, Node[] targetNodes) {
+		long startTime = System.currentTimeMillis();
+		float[] matrix = new float[sourceNodes.length * targetNodes.length];
+		Arrays.fill(matrix, Float.POSITIVE_INFINITY);
+
+		int[] columnSlots = createTargetSlots(targetNodes);
+		labelCosts = new double[graph.getStatesCount()];
+		labelStamps = new int[graph.getStatesCount()];
+		queue = new IndexedStateHeap(IndexedStateHeap.DEFAULT_ARITY, 1024);
+		slotCosts = new double[slotSegments.length];
+
+		if (hierarchy != null) {
+			fillBuckets();
+		}
+
+		for (int i = 0; i < sourceNodes.length && !options.isCancelled(); i++) {
+			int sourceSegmentIndex = resolveSegmentIndex(sourceNodes[i]);
+			if (sourceSegmentIndex == CSRRoutingGraph.NOT_FOUND) {
+				continue;
+			}
+			Arrays.fill(slotCosts, Double.POSITIVE_INFINITY);
+			if (hierarchy != null) {
+				searchBuckets(sourceSegmentIndex);
+			} else {
+				searchTargets(sourceSegmentIndex);
+			}
+			int row = i * targetNodes.length;
+			for (int j = 0; j < columnSlots.length; j++) {
+				if (columnSlots[j] != NO_ENTRY) {
+					matrix[row + j] = (float) slotCosts[columnSlots[j]];
+				}
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("matrix of " + sourceNodes.length + " x " + targetNodes.length + " segments calculated "
+					+ (hierarchy != null ? "on contraction hierarchy " : "") + "in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return slot of each target column or NO_ENTRY if the target segment is not part of the routing graph
+	 */
+	private int[] createTargetSlots(Node[] targetNodes) {
+		targetSlots = new Int2IntOpenHashMap(targetNodes.length);
+		targetSlots.defaultReturnValue(NO_ENTRY);
+		IntArrayList segments = new IntArrayList(targetNodes.length);
+		int[] columnSlots = new int[targetNodes.length];
+		for (int j = 0; j < targetNodes.length; j++) {
+			int segmentIndex = resolveSegmentIndex(targetNodes[j]);
+			if (segmentIndex == CSRRoutingGraph.NOT_FOUND) {
+				columnSlots[j] = NO_ENTRY;
+			} else {
+				int slot = targetSlots.get(segmentIndex);
+				if (slot == NO_ENTRY) {
+					slot = segments.size();
+					segments.add(segmentIndex);
+					targetSlots.put(segmentIndex, slot);
+				}
+				columnSlots[j] = slot;
+			}
+		}
+		slotSegments = segments.toIntArray();
+		return columnSlots;
+	}
+
+	private int resolveSegmentIndex(Node node) {
+		return node == null ? CSRRoutingGraph.NOT_FOUND : graph.getSegmentIndexPerNodeId(node.getId());
+	}
+
+	/**
+	 * Multi-target Dijkstra from the source segment. Costs of a target are final as soon as it is reached from a
+	 * settled state, because the target segment's own costs are not counted.
+	 */
+	private void searchTargets(int sourceSegmentIndex) {
+		int remaining = slotSegments.length;
+		int sourceSlot = targetSlots.get(sourceSegmentIndex);
+		if (sourceSlot != NO_ENTRY) {
+			slotCosts[sourceSlot] = 0;
+			remaining--;
+		}
+
+		startSearch();
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			updateLabel(startState, costs[startState]);
+		}
+
+		while (remaining > 0 && !queue.isEmpty() && !options.isCancelled()) {
+			double currentCosts = queue.peekKey();
+			int currentState = queue.poll();
+
+			int lastEdge = graph.getFirstOutgoingEdge(currentState + 1);
+			for (int edge = graph.getFirstOutgoingEdge(currentState); edge < lastEdge; edge++) {
+				if (!isAccessible(graph.getOutgoingEdgeAccess(edge))) {
+					continue;
+				}
+				int neighbour = graph.getOutgoingEdgeTarget(edge);
+				double neighbourCosts = currentCosts + costs[neighbour];
+				int slot = targetSlots.get(CSRRoutingGraph.getSegmentIndex(neighbour));
+				boolean reachTarget = slot != NO_ENTRY && slotCosts[slot] == Double.POSITIVE_INFINITY;
+				if ((reachTarget || neighbourCosts < getLabelCosts(neighbour)) && !isRestricted(neighbour)) {
+					if (reachTarget) {
+						slotCosts[slot] = currentCosts;
+						remaining--;
+					}
+					if (neighbourCosts < getLabelCosts(neighbour)) {
+						updateLabel(neighbour, neighbourCosts);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the backward upward search of each target and stores the costs of all settled states in buckets.
+	 * Backward costs of the target states are initialized with minus their costs, so the sum of forward and
+	 * backward costs does not contain the target segment's costs.
+	 */
+	private void fillBuckets() {
+		bucketHeads = new Int2IntOpenHashMap();
+		bucketHeads.defaultReturnValue(NO_ENTRY);
+		bucketNext = new IntArrayList();
+		bucketSlots = new IntArrayList();
+		bucketCosts = new DoubleArrayList();
+
+		for (int slot = 0; slot < slotSegments.length && !options.isCancelled(); slot++) {
+			startSearch();
+			for (int d = 0; d < 2; d++) {
+				int targetState = CSRRoutingGraph.getState(slotSegments[slot], d == 0);
+				updateLabel(targetState, -costs[targetState]);
+			}
+
+			while (!queue.isEmpty()) {
+				double currentCosts = queue.peekKey();
+				int currentState = queue.poll();
+
+				// stall-on-demand: skip the state if a higher ranked state reaches the target cheaper
+				if (isStalled(currentState, currentCosts, false)) {
+					continue;
+				}
+				addBucketEntry(currentState, slot, currentCosts);
+
+				int lastEdge = hierarchy.getFirstBackwardEdge(currentState + 1);
+				for (int i = hierarchy.getFirstBackwardEdge(currentState); i < lastEdge; i++) {
+					int edge = hierarchy.getBackwardEdge(i);
+					int neighbour = hierarchy.getEdgeSource(edge);
+					double neighbourCosts = currentCosts + hierarchy.getEdgeWeight(edge);
+					if (neighbourCosts < getLabelCosts(neighbour)) {
+						updateLabel(neighbour, neighbourCosts);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forward upward search from the source segment scanning the buckets of each settled state.
+	 */
+	private void searchBuckets(int sourceSegmentIndex) {
+		int sourceSlot = targetSlots.get(sourceSegmentIndex);
+
+		startSearch();
+		for (int d = 0; d < 2; d++) {
+			int startState = CSRRoutingGraph.getState(sourceSegmentIndex, d == 0);
+			updateLabel(startState, costs[startState]);
+		}
+
+		while (!queue.isEmpty()) {
+			double currentCosts = queue.peekKey();
+			int currentState = queue.poll();
+
+			if (isStalled(currentState, currentCosts, true)) {
+				continue;
+			}
+			for (int entry = bucketHeads.get(currentState); entry != NO_ENTRY; entry = bucketNext.getInt(entry)) {
+				int slot = bucketSlots.getInt(entry);
+				double pathCosts = currentCosts + bucketCosts.getDouble(entry);
+				if (pathCosts < slotCosts[slot]) {
+					slotCosts[slot] = pathCosts;
+				}
+			}
+
+			int lastEdge = hierarchy.getFirstForwardEdge(currentState + 1);
+			for (int i = hierarchy.getFirstForwardEdge(currentState); i < lastEdge; i++) {
+				int edge = hierarchy.getForwardEdge(i);
+				int neighbour = hierarchy.getEdgeTarget(edge);
+				double neighbourCosts = currentCosts + hierarchy.getEdgeWeight(edge);
+				if (neighbourCosts < getLabelCosts(neighbour)) {
+					updateLabel(neighbour, neighbourCosts);
+				}
+			}
+		}
+
+		if (sourceSlot != NO_ENTRY) {
+			slotCosts[sourceSlot] = 0;
+		}
+	}
+
+	/**
+	 * @return true if a higher ranked state reaches the state cheaper within the current upward search
+	 */
+	private boolean isStalled(int state, double stateCosts, boolean forward) {
+		if (forward) {
+			int lastEdge = hierarchy.getFirstBackwardEdge(state + 1);
+			for (int i = hierarchy.getFirstBackwardEdge(state); i < lastEdge; i++) {
+				int edge = hierarchy.getBackwardEdge(i);
+				if (getLabelCosts(hierarchy.getEdgeSource(edge)) + hierarchy.getEdgeWeight(edge) < stateCosts) {
+					return true;
+				}
+			}
+		} else {
+			int lastEdge = hierarchy.getFirstForwardEdge(state + 1);
+			for (int i = hierarchy.getFirstForwardEdge(state); i < lastEdge; i++) {
+				int edge = hierarchy.getForwardEdge(i);
+				if (getLabelCosts(hierarchy.getEdgeTarget(edge)) + hierarchy.getEdgeWeight(edge) < stateCosts) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void addBucketEntry(int state, int slot, double entryCosts) {
+		int entry = bucketSlots.size();
+		bucketSlots.add(slot);
+		bucketCosts.add(entryCosts);
+		bucketNext.add(bucketHeads.get(state));
+		bucketHeads.put(state, entry);
+	}
+
+	private void startSearch() {
+		stamp++;
+		queue.clear();
+	}
+
+	private double getLabelCosts(int state) {
+		return labelStamps[state] == stamp ? labelCosts[state] : Double.POSITIVE_INFINITY;
+	}
+
+	private void updateLabel(int state, double stateCosts) {
+		labelCosts[state] = stateCosts;
+		labelStamps[state] = stamp;
+		queue.push(state, stateCosts);
+	}
+
+	private boolean isAccessible(long access) {
+		return requiredAccess == 0 || (access & requiredAccess) != 0;
+	}
+
+	private boolean isRestricted(int state) {
+		return restrictionsService != null &&
+			   restrictionsService.isRestrictedSegment(options.getGraphName(),
+					   graph.getSegmentId(CSRRoutingGraph.getSegmentIndex(state)),
+					   CSRRoutingGraph.isStartToEnd(state),
+					   options.getRoutingTimestamp());
+	}
+
+}
@@ -19,7 +19,6 @@ package at.srfg.graphium.routing.neo4j.algos.impl;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.neo4j.graphalgo.CostEvaluator;
 import org.neo4j.graphdb.Direction;
@@ -40,9 +39,7 @@ import at.srfg.graphium.routing.model.IRoutingOptions;
 import at.srfg.graphium.routing.model.impl.DirectedSegmentImpl;
 import at.srfg.graphium.routing.model.impl.DirectedSegmentSetImpl;
 import at.srfg.graphium.routing.neo4j.model.impl.SimplePathImpl;
-import it.unimi.dsi.fastutil.PriorityQueue;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
-import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import scala.NotImplementedError;
 
 /**
@@ -56,6 +53,8 @@ public class Dijkstra<W extends IBaseWaySegment> implements IRoutingAlgo<IRoutin
 	protected PathExpander<Object> expander;
 	protected CostEvaluator<Double> costEvaluator;
 	protected IRoutingOptions options;
+	// number of nodes settled by the last search
+	private int settledCount = 0;
 	
 	public Dijkstra(PathExpander<Object> expander, CostEvaluator<Double> costEvaluator, IRoutingOptions options) {
 		super();
@@ -91,45 +90,81 @@ public class Dijkstra<W extends IBaseWaySegment> implements IRoutingAlgo<IRoutin
 	}
 
 	public Path calculateShortestPath(Node sourceNode, Node targetNode) {
-		Set<Long> visited = new LongOpenHashSet(60000);
-		
-		PriorityQueue<PathNode> prioQueue = new ObjectHeapPriorityQueue<PathNode>();
-		long targetId = targetNode.getId();
-		 
-	    PathNode start = getStartNode(sourceNode);
-	    prioQueue.enqueue(start);
-	    
-		while (!options.isCancelled() &&
-			   prioQueue.size() > 0) {
-			PathNode currentNode = prioQueue.dequeue();
-			if (!visited.contains(currentNode.getId())) {
-				// to each node there could be several paths
-				// by checking <visited> we ensure that we get the shortest path to this node
-				visited.add(currentNode.getId());
-				
-				if (currentNode.getId() == targetId) {
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		try {
+			long targetId = getId(targetNode);
+			space.addLabel(getId(sourceNode), sourceNode, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+
+			while (!options.isCancelled() &&
+				   !space.isQueueEmpty()) {
+				// each node is queued only once with its lowest costs found so far
+				int currentLabel = space.poll();
+				if (space.getId(currentLabel) == targetId) {
 					// target found
-					// probably there will be several path to the target, but priority queue ensures that we get the shortest path
-					log.debug("visited: " + visited.size() + " nodes to reach target");
-					return createPath(currentNode);
+					log.debug("visited: " + space.getSettledCount() + " nodes to reach target");
+					return createPath(space, currentLabel);
 				}
-				
-				// read neighbours
-				List<PathNode> neighbours = getNeighbours(currentNode);
-		        for (PathNode neighbour : neighbours) {
-		        	// calculate costs of neighbours and add them to the priority queue
-		        	calcCosts(neighbour, currentNode);
-	        		prioQueue.enqueue(neighbour);
-		        }
-				
+				expand(space, currentLabel);
 			}
+
+			// no path found
+			return null;
+		} finally {
+			settledCount = space.getSettledCount();
+			space.release();
 		}
+	}
 
-		// no path found
-		return null;
+	/**
+	 * @return number of nodes settled by the last search of this instance
+	 */
+	public int getSettledCount() {
+		return settledCount;
 	}
 
-	private Path createPath(PathNode node) {
+	/**
+	 * Relaxes all relationships leading from the settled label's node to its neighbours.
+	 */
+	protected void expand(DijkstraSearchSpace space, int currentLabel) {
+		double currentCost = space.getCost(currentLabel);
+		for (Relationship rel : getRelationships(space, currentLabel)) {
+			Node endNode = rel.getEndNode();
+			long id = getId(endNode);
+			double cost = currentCost + costEvaluator.getCost(rel, Direction.OUTGOING);
+			int label = space.getLabel(id);
+			if (label == DijkstraSearchSpace.NOT_FOUND) {
+				space.addLabel(id, endNode, rel, cost, estimate(endNode), currentLabel);
+			} else if (!space.isSettled(label) && cost < space.getCost(label)) {
+				space.updateLabel(label, rel, cost, currentLabel);
+			}
+		}
+	}
+
+	/**
+	 * @return estimated costs from the node to the target; 0 for Dijkstra
+	 */
+	protected double estimate(Node node) {
+		return 0;
+	}
+
+	/**
+	 * Creates the path from the start to the given label.
+	 */
+	protected Path createPath(DijkstraSearchSpace space, int label) {
+		// path nodes are only created for the resulting path
+		PathNode node = null;
+		IntArrayList labels = new IntArrayList();
+		for (int l = label; l != DijkstraSearchSpace.NOT_FOUND; l = space.getParent(l)) {
+			labels.add(l);
+		}
+		for (int i = labels.size() - 1; i >= 0; i--) {
+			int l = labels.getInt(i);
+			node = new PathNode(space.getId(l), null, space.getNode(l), space.getRelationship(l), space.getCost(l), node);
+		}
+		return createPath(node);
+	}
+
+	protected Path createPath(PathNode node) {
 		Path path = new Path();
 		PathNode currentNode = node;
 		path.setTotalCost(node.getCost()); // cost of last node is total cost of path
@@ -151,38 +186,26 @@ public class Dijkstra<W extends IBaseWaySegment> implements IRoutingAlgo<IRoutin
 	}
 
 	// read connected segments regarding their direction!
-	protected List<PathNode> getNeighbours(PathNode currentNode) {
-		Relationship lastRelationship = null;
+	protected Iterable<Relationship> getRelationships(DijkstraSearchSpace space, int currentLabel) {
+		Node currentNode = space.getNode(currentLabel);
+		Relationship lastRelationship = space.getRelationship(currentLabel);
 		Node startNode = null;
-		if (currentNode.getLastRelationship() != null) {
-			lastRelationship = currentNode.getLastRelationship();
+		if (lastRelationship != null) {
 			startNode = lastRelationship.getStartNode();
 		}
-		org.neo4j.graphdb.Path neoPath = new SimplePathImpl(startNode, currentNode.getNeo4jNode(), lastRelationship);
-		
+		org.neo4j.graphdb.Path neoPath = new SimplePathImpl(startNode, currentNode, lastRelationship);
 		
 		if (log.isDebugEnabled()) {
-			log.debug("getting neighbours from Neo4j node with ID " + currentNode.getNeo4jNode().getId() 
-					+ " and segment ID " + currentNode.getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_ID));
-			if (currentNode.getLastRelationship() != null) {
-				log.debug("last relationship's connection ID = " + currentNode.getLastRelationship().getProperty(WayGraphConstants.CONNECTION_NODE_ID));
-				log.debug("current segment's startNodeId = " + currentNode.getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) + 
-						", endNodeId = " + currentNode.getNeo4jNode().getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID));
+			log.debug("getting neighbours from Neo4j node with ID " + currentNode.getId() 
+					+ " and segment ID " + currentNode.getProperty(WayGraphConstants.SEGMENT_ID));
+			if (lastRelationship != null) {
+				log.debug("last relationship's connection ID = " + lastRelationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID));
+				log.debug("current segment's startNodeId = " + currentNode.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) + 
+						", endNodeId = " + currentNode.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID));
 			}
 		}
 		
-		Iterable<Relationship> relationships = expander.expand(neoPath, null);
-	
-		List<PathNode> nodes = new ArrayList<>();
-		Node endNode;
-		for(Relationship rel : relationships) {
-			endNode = rel.getEndNode();
-			nodes.add(new PathNode(getId(endNode), null, endNode, rel, 
-					costEvaluator.getCost(rel, Direction.OUTGOING), 
-					currentNode));
-		}
-		
-		return nodes;
+		return expander.expand(neoPath, null);
 	}
 
 	protected void determineStartNodeDirection(PathNode node) {
@@ -214,25 +237,8 @@ public class Dijkstra<W extends IBaseWaySegment> implements IRoutingAlgo<IRoutin
 		}
 	}
 
-	protected Long getId(Node node) {
+	protected long getId(Node node) {
 		return node.getId();
 	}
-
-	protected void calcCosts(PathNode neighbour, PathNode currentNode) {
-    	neighbour.setCost(neighbour.getCost() + currentNode.getCost());
-	}
-
-	protected PathNode getStartNode(Node startNode) {
-		if (startNode == null) {
-			return null;
-		} else {
-			return new PathNode(startNode.getId(),
-							null,
-							startNode, 
-							null, 
-							0, 
-							null);
-		}
-	}
 	
 }
\ No newline at end of file
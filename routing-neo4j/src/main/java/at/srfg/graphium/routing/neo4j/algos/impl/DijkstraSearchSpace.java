@@ -0,0 +1,211 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import at.srfg.graphium.routing.neo4j.graph.IndexedStateHeap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * Labels of one search direction of a Dijkstra based search on the Neo4j graph. Each reached node gets a dense
+ * label index (resolved by its node ID); costs, parents, estimates and the relationship the node has been reached
+ * by are held in arrays indexed by label. Labels are queued in an {@link IndexedStateHeap}, so each node is queued
+ * at most once and improved costs decrease its key.
+ *
+ * Instances are pooled per thread: {@link #acquire()} returns a cleared instance, {@link #release()} gives it back
+ * to the pool. Arrays grown by a query are reused by subsequent queries of the same thread unless they exceed
+ * {@link #MAX_POOLED_CAPACITY} labels.
+ */
+public class DijkstraSearchSpace {
+
+	public static final int NOT_FOUND = -1;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int MAX_POOLED_CAPACITY = 1 << 20;
+	// forward and backward search of a bidirectional query
+	private static final int MAX_POOLED_INSTANCES = 2;
+
+	private static final ThreadLocal<ArrayDeque<DijkstraSearchSpace>> pool =
+			ThreadLocal.withInitial(() -> new ArrayDeque<>(MAX_POOLED_INSTANCES));
+
+	private Long2IntOpenHashMap labels;
+	private IndexedStateHeap queue;
+	private int size = 0;
+	private int settledCount = 0;
+	private long[] ids;
+	private double[] costs;
+	private double[] estimates;
+	private int[] parents;
+	private boolean[] settled;
+	private Node[] nodes;
+	private Relationship[] relationships;
+
+	private DijkstraSearchSpace() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @return cleared search space of the current thread's pool
+	 */
+	public static DijkstraSearchSpace acquire() {
+		DijkstraSearchSpace space = pool.get().poll();
+		return space != null ? space : new DijkstraSearchSpace();
+	}
+
+	/**
+	 * Clears the search space and returns it to the current thread's pool. The search space must not be used
+	 * afterwards.
+	 */
+	public void release() {
+		if (ids.length > MAX_POOLED_CAPACITY) {
+			allocate(DEFAULT_CAPACITY);
+			size = 0;
+			settledCount = 0;
+		} else {
+			clear();
+		}
+		ArrayDeque<DijkstraSearchSpace> instances = pool.get();
+		if (instances.size() < MAX_POOLED_INSTANCES) {
+			instances.push(this);
+		}
+	}
+
+	private void clear() {
+		labels.clear();
+		queue.clear();
+		Arrays.fill(settled, 0, size, false);
+		// do not keep references to Neo4j entities
+		Arrays.fill(nodes, 0, size, null);
+		Arrays.fill(relationships, 0, size, null);
+		size = 0;
+		settledCount = 0;
+	}
+
+	private void allocate(int capacity) {
+		labels = new Long2IntOpenHashMap(capacity);
+		labels.defaultReturnValue(NOT_FOUND);
+		queue = new IndexedStateHeap(IndexedStateHeap.DEFAULT_ARITY, capacity);
+		ids = new long[capacity];
+		costs = new double[capacity];
+		estimates = new double[capacity];
+		parents = new int[capacity];
+		settled = new boolean[capacity];
+		nodes = new Node[capacity];
+		relationships = new Relationship[capacity];
+	}
+
+	/**
+	 * @return label of the node or {@link #NOT_FOUND} if the node has not been reached yet
+	 */
+	public int getLabel(long id) {
+		return labels.get(id);
+	}
+
+	/**
+	 * Adds a label for a reached node and queues it with the given key.
+	 *
+	 * @param parent label of the node's predecessor or {@link #NOT_FOUND}
+	 * @return label of the node
+	 */
+	public int addLabel(long id, Node node, Relationship relationship, double cost, double estimate, int parent) {
+		if (size == ids.length) {
+			int capacity = size + (size >> 1);
+			ids = Arrays.copyOf(ids, capacity);
+			costs = Arrays.copyOf(costs, capacity);
+			estimates = Arrays.copyOf(estimates, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			settled = Arrays.copyOf(settled, capacity);
+			nodes = Arrays.copyOf(nodes, capacity);
+			relationships = Arrays.copyOf(relationships, capacity);
+		}
+		int label = size++;
+		ids[label] = id;
+		nodes[label] = node;
+		estimates[label] = estimate;
+		labels.put(id, label);
+		updateLabel(label, relationship, cost, parent);
+		return label;
+	}
+
+	/**
+	 * Sets lower costs of a queued label and decreases its key.
+	 */
+	public void updateLabel(int label, Relationship relationship, double cost, int parent) {
+		costs[label] = cost;
+		parents[label] = parent;
+		relationships[label] = relationship;
+		queue.push(label, cost + estimates[label]);
+	}
+
+	public boolean isQueueEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * @return minimum key of queued labels or positive infinity if no label is queued
+	 */
+	public double peekKey() {
+		return queue.peekKey();
+	}
+
+	/**
+	 * Removes the label with minimum key from the queue and marks it as settled.
+	 *
+	 * @return settled label
+	 */
+	public int poll() {
+		int label = queue.poll();
+		settled[label] = true;
+		settledCount++;
+		return label;
+	}
+
+	public boolean isSettled(int label) {
+		return settled[label];
+	}
+
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	public long getId(int label) {
+		return ids[label];
+	}
+
+	public double getCost(int label) {
+		return costs[label];
+	}
+
+	public int getParent(int label) {
+		return parents[label];
+	}
+
+	public Node getNode(int label) {
+		return nodes[label];
+	}
+
+	public Relationship getRelationship(int label) {
+		return relationships[label];
+	}
+
+}
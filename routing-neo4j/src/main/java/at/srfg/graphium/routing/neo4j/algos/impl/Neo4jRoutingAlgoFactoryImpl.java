@@ -43,10 +43,16 @@ import at.srfg.graphium.routing.exception.UnkownRoutingAlgoException;
 import at.srfg.graphium.routing.model.IRoutingOptions;
 import at.srfg.graphium.routing.model.impl.RoutingAlgorithms;
 import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.neo4j.algos.IRoutingMatrixAlgo;
+import at.srfg.graphium.routing.neo4j.evaluators.impl.NodeBasedCostEstimator;
 import at.srfg.graphium.routing.neo4j.evaluators.impl.NodeBasedCostEvaluator;
 import at.srfg.graphium.routing.neo4j.evaluators.impl.OffsetAwareNodeBasedCostEvaluator;
 import at.srfg.graphium.routing.neo4j.filters.BlockedRoadNodeFilter;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchy;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistances;
 import at.srfg.graphium.routing.service.IRestrictionsService;
+import at.srfg.graphium.routing.service.neo4j.impl.CSRRoutingGraphCacheManager;
 /**
  * @author mwimmer
  *
@@ -58,12 +64,46 @@ public class Neo4jRoutingAlgoFactoryImpl<T extends IWaySegment> implements IRout
 	private STRTreeCacheManager cache;
 	private boolean enableTemporaryRestrictedSegments;
 	private IRestrictionsService restrictionsService;
+	// optional cache of in-memory routing graphs
+	private CSRRoutingGraphCacheManager routingGraphCache;
+	// requests for this algorithm will be answered by contraction hierarchies if available; none if null
+	private RoutingAlgorithms contractionHierarchiesAlgorithm = null;
+	// factor applied to estimates of A* (has to be <= 1 to underestimate)
+	private float astarEstimatorFactor = 0.8f;
 
 	@Override
 	public IRoutingAlgo<IRoutingOptions, Node, Double> createInstance(IRoutingOptions routeOptions, Node startNode, 
 			Float percentageStartWeight, Node endNode, Float percentageEndWeight)
 			throws UnkownRoutingAlgoException {
 		
+		// route on in-memory graph if possible
+		CSRRoutingGraph routingGraph = getRoutingGraph(routeOptions);
+		if (routingGraph != null) {
+			boolean offsetAware = percentageStartWeight != null && percentageEndWeight != null;
+			IRestrictionsService restrictions = enableTemporaryRestrictedSegments ? restrictionsService : null;
+			if (contractionHierarchiesAlgorithm != null && routeOptions.getAlgorithm() == contractionHierarchiesAlgorithm) {
+				ContractionHierarchy hierarchy = routingGraphCache.getContractionHierarchy(routingGraph,
+						routeOptions.getCriteria(), AbstractCSRRoutingAlgo.getRequiredAccess(routeOptions.getMode()));
+				if (hierarchy != null) {
+					return new CHBidirectionalDijkstra<T>(routingGraph, hierarchy, routeOptions, offsetAware, restrictions);
+				}
+			}
+			switch ((RoutingAlgorithms)routeOptions.getAlgorithm()) {
+			case DIJKSTRA:
+				return new CSRDijkstra<T>(routingGraph, routeOptions, offsetAware, restrictions);
+			case BIDIRECTIONAL_DIJKSTRA:
+				return new CSRBidirectionalDijkstra<T>(routingGraph, routeOptions, offsetAware, restrictions);
+			case ASTAR:
+				LandmarkDistances landmarks = routingGraphCache.getLandmarkDistances(routingGraph, routeOptions.getCriteria());
+				if (landmarks != null) {
+					return new CSRBidirectionalALT<T>(routingGraph, landmarks, routeOptions, offsetAware, restrictions);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		
 		// create expander und costEvaluator based on routeOptions
 		PathExpander<Object> expander = getOutgoingExpander(routeOptions, Direction.OUTGOING); 
 		CostEvaluator<Double> costEvaluator = createCostEvaluator(routeOptions, startNode, percentageStartWeight, endNode, percentageEndWeight);
@@ -75,12 +115,52 @@ public class Neo4jRoutingAlgoFactoryImpl<T extends IWaySegment> implements IRout
 			// TODO: return instance of custom astar
 			PathExpander<Object> expanderIncomings = getIncomingExpander(routeOptions, Direction.INCOMING);
 			return new BidirectionalDijkstra<T>(expander, expanderIncomings, costEvaluator, routeOptions);
+		case ASTAR:
+			return new AStar<T>(expander, costEvaluator, 
+					new NodeBasedCostEstimator(routeOptions.getCriteria(), astarEstimatorFactor), routeOptions);
 		default:
 			throw new UnkownRoutingAlgoException((RoutingAlgorithms) routeOptions.getAlgorithm());
 		}
 			
 	}
 
+	/**
+	 * Creates an algorithm calculating costs between many source and target segments. Costs do not contain
+	 * offsets; routing options' algorithm is ignored.
+	 */
+	public IRoutingMatrixAlgo createMatrixInstance(IRoutingOptions routeOptions) {
+		CSRRoutingGraph routingGraph = getRoutingGraph(routeOptions);
+		if (routingGraph != null) {
+			IRestrictionsService restrictions = enableTemporaryRestrictedSegments ? restrictionsService : null;
+			ContractionHierarchy hierarchy = null;
+			if (restrictions == null) {
+				hierarchy = routingGraphCache.getContractionHierarchy(routingGraph,
+						routeOptions.getCriteria(), AbstractCSRRoutingAlgo.getRequiredAccess(routeOptions.getMode()));
+			}
+			return new CSRRoutingMatrixAlgo(routingGraph, hierarchy, routeOptions, restrictions);
+		}
+
+		PathExpander<Object> expander = getOutgoingExpander(routeOptions, Direction.OUTGOING);
+		CostEvaluator<Double> costEvaluator = createCostEvaluator(routeOptions, null, null, null, null);
+		return new OneToManyDijkstra<T>(expander, costEvaluator, routeOptions);
+	}
+
+	/**
+	 * @return in-memory routing graph or null if the graph version is not held in memory or the routing options
+	 * 		   require node properties not contained in the in-memory graph
+	 */
+	protected CSRRoutingGraph getRoutingGraph(IRoutingOptions options) {
+		if (routingGraphCache == null ||
+			(options.getTagValueFilters() != null && !options.getTagValueFilters().isEmpty())) {
+			return null;
+		}
+		CSRRoutingGraph routingGraph = routingGraphCache.getRoutingGraph(options.getGraphName(), options.getGraphVersion());
+		if (routingGraph != null && routingGraph.getCosts(options.getCriteria()) == null) {
+			return null;
+		}
+		return routingGraph;
+	}
+
 	protected PathExpander<Object> getOutgoingExpander(IRoutingOptions options, Direction direction) {
 		DirectedOutgoingConnectionPathExpander expander = new DirectedOutgoingConnectionPathExpander(null);
 		
@@ -143,21 +223,18 @@ public class Neo4jRoutingAlgoFactoryImpl<T extends IWaySegment> implements IRout
 	}
 
 	protected Predicate<? super Node> getNodePredicate(Access mode) {
-		return n -> (n.hasProperty(WayGraphConstants.SEGMENT_ACCESS_BKW) &&
-				Neo4jWaySegmentHelperImpl.parseAccessTypes(
-				(byte[]) n.getProperty(WayGraphConstants.SEGMENT_ACCESS_BKW)
-				).contains(mode)) ||
-				(n.hasProperty(WayGraphConstants.SEGMENT_ACCESS_TOW) &&
-				Neo4jWaySegmentHelperImpl.parseAccessTypes(
-				(byte[]) n.getProperty(WayGraphConstants.SEGMENT_ACCESS_TOW)
-				).contains(mode));
+		// access types will be checked as bitmasks; no sets will be created per node
+		long accessBitmask = Neo4jWaySegmentHelperImpl.createAccessBitmask(mode);
+		return n -> (Neo4jWaySegmentHelperImpl.parseAccessBitmask(
+				(byte[]) n.getProperty(WayGraphConstants.SEGMENT_ACCESS_BKW, null)) & accessBitmask) != 0 ||
+				(Neo4jWaySegmentHelperImpl.parseAccessBitmask(
+				(byte[]) n.getProperty(WayGraphConstants.SEGMENT_ACCESS_TOW, null)) & accessBitmask) != 0;
 	}
 
 	protected Predicate<? super Relationship> getRelationshipPredicate(Access mode) {
-		// see: https://www.javahabit.com/2016/06/16/understanding-java-8-lambda-final-finally-variable/
-		Object[] access = new Object[1];
-		return r -> (access[0] = r.getProperty(WayGraphConstants.CONNECTION_ACCESS)) != null && 
-				Neo4jWaySegmentHelperImpl.parseAccessTypes((byte[]) access[0]).contains(mode);
+		// uses the access bitmask precomputed on import
+		long accessBitmask = Neo4jWaySegmentHelperImpl.createAccessBitmask(mode);
+		return r -> (Neo4jWaySegmentHelperImpl.getConnectionAccessBitmask(r) & accessBitmask) != 0;
 	}
 	
 	public STRTreeCacheManager getCache() {
@@ -183,5 +260,29 @@ public class Neo4jRoutingAlgoFactoryImpl<T extends IWaySegment> implements IRout
 	public void setRestrictionsService(IRestrictionsService restrictionsService) {
 		this.restrictionsService = restrictionsService;
 	}
+
+	public CSRRoutingGraphCacheManager getRoutingGraphCache() {
+		return routingGraphCache;
+	}
+
+	public void setRoutingGraphCache(CSRRoutingGraphCacheManager routingGraphCache) {
+		this.routingGraphCache = routingGraphCache;
+	}
+
+	public RoutingAlgorithms getContractionHierarchiesAlgorithm() {
+		return contractionHierarchiesAlgorithm;
+	}
+
+	public void setContractionHierarchiesAlgorithm(RoutingAlgorithms contractionHierarchiesAlgorithm) {
+		this.contractionHierarchiesAlgorithm = contractionHierarchiesAlgorithm;
+	}
+
+	public float getAstarEstimatorFactor() {
+		return astarEstimatorFactor;
+	}
+
+	public void setAstarEstimatorFactor(float astarEstimatorFactor) {
+		this.astarEstimatorFactor = astarEstimatorFactor;
+	}
 	
 }
\ No newline at end of file
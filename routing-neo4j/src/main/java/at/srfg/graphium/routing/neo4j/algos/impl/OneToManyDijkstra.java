@@ -0,0 +1,118 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PathExpander;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IBaseWaySegment;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.algos.IRoutingMatrixAlgo;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * Calculates costs between many source and target nodes on the Neo4j graph. Runs one Dijkstra per source node,
+ * which stops as soon as all target nodes have been settled. Costs are the same as the total costs of the paths
+ * calculated by {@link Dijkstra}.
+ */
+public class OneToManyDijkstra<W extends IBaseWaySegment> extends Dijkstra<W> implements IRoutingMatrixAlgo {
+
+	private static Logger log = LoggerFactory.getLogger(OneToManyDijkstra.class);
+
+	private static final int NO_ENTRY = -1;
+
+	public OneToManyDijkstra(PathExpander<Object> expander, CostEvaluator<Double> costEvaluator, IRoutingOptions options) {
+		super(expander, costEvaluator, options);
+	}
+
+	@Override
+	public float[] calculateMatrix(Node[] sourceNodes, Node[] targetNodes) {
+		long startTime = System.currentTimeMillis();
+		float[] matrix = new float[sourceNodes.length * targetNodes.length];
+		Arrays.fill(matrix, Float.POSITIVE_INFINITY);
+
+		// distinct target nodes
+		Long2IntOpenHashMap targetSlots = new Long2IntOpenHashMap(targetNodes.length);
+		targetSlots.defaultReturnValue(NO_ENTRY);
+		int[] columnSlots = new int[targetNodes.length];
+		for (int j = 0; j < targetNodes.length; j++) {
+			if (targetNodes[j] == null) {
+				columnSlots[j] = NO_ENTRY;
+			} else {
+				int slot = targetSlots.get(getId(targetNodes[j]));
+				if (slot == NO_ENTRY) {
+					slot = targetSlots.size();
+					targetSlots.put(getId(targetNodes[j]), slot);
+				}
+				columnSlots[j] = slot;
+			}
+		}
+
+		double[] slotCosts = new double[targetSlots.size()];
+		for (int i = 0; i < sourceNodes.length && !options.isCancelled(); i++) {
+			if (sourceNodes[i] == null) {
+				continue;
+			}
+			calculateCosts(sourceNodes[i], targetSlots, slotCosts);
+			int row = i * targetNodes.length;
+			for (int j = 0; j < columnSlots.length; j++) {
+				if (columnSlots[j] != NO_ENTRY) {
+					matrix[row + j] = (float) slotCosts[columnSlots[j]];
+				}
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("matrix of " + sourceNodes.length + " x " + targetNodes.length + " segments calculated in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		}
+		return matrix;
+	}
+
+	private void calculateCosts(Node sourceNode, Long2IntOpenHashMap targetSlots, double[] slotCosts) {
+		Arrays.fill(slotCosts, Double.POSITIVE_INFINITY);
+		int remaining = slotCosts.length;
+
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		try {
+			space.addLabel(getId(sourceNode), sourceNode, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+
+			while (remaining > 0 &&
+				   !options.isCancelled() &&
+				   !space.isQueueEmpty()) {
+				int currentLabel = space.poll();
+				int slot = targetSlots.get(space.getId(currentLabel));
+				if (slot != NO_ENTRY) {
+					slotCosts[slot] = space.getCost(currentLabel);
+					remaining--;
+				}
+				if (remaining > 0) {
+					expand(space, currentLabel);
+				}
+			}
+		} finally {
+			space.release();
+		}
+	}
+
+}
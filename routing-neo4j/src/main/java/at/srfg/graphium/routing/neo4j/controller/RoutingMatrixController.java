@@ -0,0 +1,183 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.controller;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.dto.RoutingMatrixRequestDTO;
+import at.srfg.graphium.routing.neo4j.model.IRoutingMatrix;
+import at.srfg.graphium.routing.service.neo4j.IRoutingMatrixService;
+
+/**
+ * Calculates costs between many source and target segments. The whole matrix is calculated before the response
+ * is written, so invalid requests and routing errors can still be answered with an error status. The matrix is
+ * written row by row via a JSON generator without intermediate DTOs; costs of unreachable targets are written as null.
+ */
+@Controller
+public class RoutingMatrixController {
+
+	private static Logger log = LoggerFactory.getLogger(RoutingMatrixController.class);
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private IRoutingMatrixService routingMatrixService;
+
+	@RequestMapping(value="/routing/graphs/{graph}/matrix", method=RequestMethod.POST)
+	public void routeMatrix(
+			@PathVariable(value = "graph") String graphName,
+			@RequestParam(name = "mode", required = false, defaultValue = "car") String routingMode,
+			@RequestParam(name = "criteria", required = false, defaultValue = "length") String routingCriteria,
+			@RequestParam(name = "time", required = false) String timestamp,
+			@RequestBody RoutingMatrixRequestDTO request,
+			HttpServletResponse response) throws IOException {
+		routeMatrixOnGraphVersion(graphName, null, routingMode, routingCriteria, timestamp, request, response);
+	}
+
+	@RequestMapping(value="/routing/graphs/{graph}/versions/{version}/matrix", method=RequestMethod.POST)
+	public void routeMatrixOnGraphVersion(
+			@PathVariable(value = "graph") String graphName,
+			@PathVariable(value = "version") String graphVersion,
+			@RequestParam(name = "mode", required = false, defaultValue = "car") String routingMode,
+			@RequestParam(name = "criteria", required = false, defaultValue = "length") String routingCriteria,
+			@RequestParam(name = "time", required = false) String timestamp,
+			@RequestBody RoutingMatrixRequestDTO request,
+			HttpServletResponse response) throws IOException {
+		if (request == null || request.getSources() == null || request.getTargets() == null) {
+			throw new IllegalArgumentException("sources and targets are required");
+		}
+
+		IRoutingOptions options = new RoutingOptionsImpl(graphName, graphVersion);
+		options.setMode(parseMode(routingMode));
+		options.setCriteria(parseCriteria(routingCriteria));
+		if (timestamp != null) {
+			options.setRoutingTimestamp(parseTimestamp(timestamp));
+		}
+
+		IRoutingMatrix matrix = routingMatrixService.routeMatrix(options, request.getSources(), request.getTargets());
+
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+			writeMatrix(matrix, generator);
+		}
+	}
+
+	private void writeMatrix(IRoutingMatrix matrix, JsonGenerator generator) throws IOException {
+		long[] sources = matrix.getSourceSegmentIds();
+		long[] targets = matrix.getTargetSegmentIds();
+		float[] costs = matrix.getCosts();
+
+		generator.writeStartObject();
+		generator.writeStringField("graphName", matrix.getGraphName());
+		generator.writeStringField("graphVersion", matrix.getGraphVersion());
+		generator.writeNumberField("runtimeInMs", matrix.getRuntimeInMs());
+		generator.writeFieldName("sources");
+		generator.writeArray(sources, 0, sources.length);
+		generator.writeFieldName("targets");
+		generator.writeArray(targets, 0, targets.length);
+		generator.writeArrayFieldStart("costs");
+		for (int i = 0; i < sources.length; i++) {
+			generator.writeStartArray();
+			for (int j = 0; j < targets.length; j++) {
+				float cost = costs[i * targets.length + j];
+				if (Float.isInfinite(cost)) {
+					generator.writeNull();
+				} else {
+					generator.writeNumber(cost);
+				}
+			}
+			generator.writeEndArray();
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private RoutingMode parseMode(String routingMode) {
+		RoutingMode mode = RoutingMode.fromValue(routingMode);
+		if (mode == null) {
+			throw new IllegalArgumentException("unknown routing mode " + routingMode);
+		}
+		return mode;
+	}
+
+	private RoutingCriteria parseCriteria(String routingCriteria) {
+		RoutingCriteria criteria = RoutingCriteria.fromValue(routingCriteria);
+		if (criteria == null) {
+			throw new IllegalArgumentException("unknown routing criteria " + routingCriteria);
+		}
+		return criteria;
+	}
+
+	/**
+	 * @param timestamp ISO-8601 format or UNIX timestamp in milliseconds
+	 */
+	private LocalDateTime parseTimestamp(String timestamp) {
+		try {
+			if (timestamp.matches("\\d+")) {
+				return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(timestamp)), ZoneId.systemDefault());
+			} else {
+				return LocalDateTime.parse(timestamp);
+			}
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new IllegalArgumentException("invalid timestamp " + timestamp, e);
+		}
+	}
+
+	@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "routing parameter not valid")
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void handleIllegalArgumentException(
+			IllegalArgumentException ex, HttpServletRequest request) {
+		log.warn(ex.getMessage());
+	}
+
+	public IRoutingMatrixService getRoutingMatrixService() {
+		return routingMatrixService;
+	}
+
+	public void setRoutingMatrixService(IRoutingMatrixService routingMatrixService) {
+		this.routingMatrixService = routingMatrixService;
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.dto;
+
+import java.util.List;
+
+/**
+ * Request body of a routing matrix request.
+ */
+public class RoutingMatrixRequestDTO {
+
+	private List<Long> sources;
+	private List<Long> targets;
+
+	public List<Long> getSources() {
+		return sources;
+	}
+
+	public void setSources(List<Long> sources) {
+		this.sources = sources;
+	}
+
+	public List<Long> getTargets() {
+		return targets;
+	}
+
+	public void setTargets(List<Long> targets) {
+		this.targets = targets;
+	}
+
+}
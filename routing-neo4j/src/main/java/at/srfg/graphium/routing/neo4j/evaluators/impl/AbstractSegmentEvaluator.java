@@ -29,7 +29,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import at.srfg.graphium.neo4j.model.WayGraphConstants;
-import at.srfg.graphium.neo4j.model.cache.SegmentCacheEntry;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
 import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
 
 /**
@@ -42,6 +43,8 @@ public abstract class AbstractSegmentEvaluator {
 	protected String graphName;
 	protected String version;
 	protected STRTreeCacheManager cache;
+	// resolved once per evaluator to avoid a cache lookup per relationship
+	private GraphSegmentsCacheEntry segmentsCache;
 
 	public AbstractSegmentEvaluator(String graphName, String version, STRTreeCacheManager cache) {
 		super();
@@ -55,41 +58,7 @@ public abstract class AbstractSegmentEvaluator {
 	 * @return
 	 */
 	protected Object getCurrentDurationCosts(Node node, Relationship relationship) {
-		Integer duration = null;
-		if (((long)relationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID)) == ((long)node.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID))) {
-			if (relationship.getEndNode().getId() == node.getId()) {
-				// node is end node of relationship
-				if (node.hasProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW)) {
-					duration = (Integer) node.getProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW);
-				} else {
-					duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_TOW);
-				}
-			} else {
-				// node is start node of relationship
-				if (node.hasProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW)) {
-					duration = (Integer) node.getProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW);
-				} else {
-					duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_BKW);
-				}
-			}
-		} else {
-			if (relationship.getEndNode().getId() == node.getId()) {
-				// node is end node of relationship
-				if (node.hasProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW)) {
-					duration = (Integer) node.getProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW);
-				} else {
-					duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_BKW);
-				}
-			} else {
-				// node is start node of relationship
-				if (node.hasProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW)) {
-					duration = (Integer) node.getProperty(WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW);
-				} else {
-					duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_TOW);
-				}
-			}
-		}
-		return duration;
+		return getCurrentDuration(node, relationship);
 	}
 
 	/**
@@ -97,39 +66,92 @@ public abstract class AbstractSegmentEvaluator {
 	 * @return
 	 */
 	protected Object getMinDurationCosts(Node node, Relationship relationship) {
-		Integer duration = null;
-		if (((long)relationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID)) == ((long)node.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID))) {
-			if (relationship.getEndNode().getId() == node.getId()) {
-				// node is end node of relationship
-				duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_TOW);
-			} else {
-				// node is start node of relationship
-				duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_BKW);
+		return getMinDuration(node, relationship);
+	}
+
+	/**
+	 * @return current duration of the segment node in the direction it will be traversed via relationship; min duration 
+	 * 		   if no current duration has been set
+	 */
+	protected int getCurrentDuration(Node node, Relationship relationship) {
+		boolean tow = isTraversedTow(node, relationship);
+		Object duration = node.getProperty(tow ? WayGraphConstants.SEGMENT_CURRENT_DURATION_TOW 
+											   : WayGraphConstants.SEGMENT_CURRENT_DURATION_BKW, null);
+		if (duration != null) {
+			return (int) duration;
+		}
+		return getMinDuration(node, tow);
+	}
+
+	/**
+	 * @return min duration of the segment node in the direction it will be traversed via relationship
+	 */
+	protected int getMinDuration(Node node, Relationship relationship) {
+		return getMinDuration(node, isTraversedTow(node, relationship));
+	}
+
+	protected int getMinDuration(Node node, boolean tow) {
+		GraphSegmentsCacheEntry segmentsCache = getSegmentsCache();
+		if (segmentsCache != null) {
+			int index = segmentsCache.getIndexPerNodeId(node.getId());
+			if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
+				return segmentsCache.getDuration(index, tow);
 			}
-		} else {
-			if (relationship.getEndNode().getId() == node.getId()) {
-				// node is end node of relationship
-				duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_BKW);
-			} else {
-				// node is start node of relationship
-				duration = (Integer) getNodeProperty(node, WayGraphConstants.SEGMENT_MIN_DURATION_TOW);
+		}
+		return (int) node.getProperty(tow ? WayGraphConstants.SEGMENT_MIN_DURATION_TOW 
+										  : WayGraphConstants.SEGMENT_MIN_DURATION_BKW);
+	}
+
+	protected float getLength(Node node) {
+		GraphSegmentsCacheEntry segmentsCache = getSegmentsCache();
+		if (segmentsCache != null) {
+			int index = segmentsCache.getIndexPerNodeId(node.getId());
+			if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
+				return segmentsCache.getLength(index);
 			}
 		}
-		return duration;
+		return (float) node.getProperty(WayGraphConstants.SEGMENT_LENGTH);
+	}
+
+	/**
+	 * @param node start or end node of relationship
+	 * @return true if the segment node will be traversed in geometry direction (entered via its start node or left via its 
+	 * 		   end node)
+	 */
+	protected boolean isTraversedTow(Node node, Relationship relationship) {
+		boolean endNode = relationship.getEndNodeId() == node.getId();
+		return isConnectedOnStartNode(node, relationship, endNode) == endNode;
+	}
+
+	/**
+	 * @param endNode true if node is end node of relationship
+	 * @return true if the relationship's connection lies on the segment node's start node
+	 */
+	protected boolean isConnectedOnStartNode(Node node, Relationship relationship, boolean endNode) {
+		if (!endNode) {
+			// relationship type has been selected by the start node of the relationship's start segment
+			return relationship.isType(WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE);
+		}
+		Object direction = relationship.getProperty(WayGraphConstants.CONNECTION_DIRECTION, null);
+		if (direction != null) {
+			return ((byte) direction & WayGraphConstants.CONNECTION_DIRECTION_TO_STARTNODE) != 0;
+		}
+		// connection has been imported without precomputed direction
+		return ((long)relationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID)) == ((long)node.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID));
 	}
 	
 	protected Object getNodeProperty(Node node, String propertyName) {
 		Object value = null;
-		if (cache != null) {
-			long nodeId = node.getId();
-			SegmentCacheEntry cacheEntry = cache.getCacheEntryPerNodeId(graphName, version, nodeId);
-			if (cacheEntry != null) {
+		GraphSegmentsCacheEntry segmentsCache = getSegmentsCache();
+		if (segmentsCache != null) {
+			int index = segmentsCache.getIndexPerNodeId(node.getId());
+			if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
 				if (propertyName.equals(WayGraphConstants.SEGMENT_MIN_DURATION_BKW)) {
-					value = cacheEntry.getDuration(false);
+					value = segmentsCache.getDuration(index, false);
 				} else if (propertyName.equals(WayGraphConstants.SEGMENT_MIN_DURATION_TOW)) {
-					value = cacheEntry.getDuration(true);
+					value = segmentsCache.getDuration(index, true);
 				} else if (propertyName.equals(WayGraphConstants.SEGMENT_LENGTH)) {
-					value = cacheEntry.getLength();
+					value = segmentsCache.getLength(index);
 				}
 			}
 		}
@@ -138,5 +160,12 @@ public abstract class AbstractSegmentEvaluator {
 		}
 		return value;
 	}
+	
+	protected GraphSegmentsCacheEntry getSegmentsCache() {
+		if (segmentsCache == null && cache != null) {
+			segmentsCache = cache.getSegmentsCache(graphName, version);
+		}
+		return segmentsCache;
+	}
 
 }
\ No newline at end of file
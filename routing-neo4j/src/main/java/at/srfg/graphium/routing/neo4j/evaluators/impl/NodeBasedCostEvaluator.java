@@ -57,30 +57,29 @@ public class NodeBasedCostEvaluator extends AbstractSegmentEvaluator implements
 	}
 	
 	protected double getCostValue(Node node, Relationship relationship, String propertyName) {
-		Object costObject = null;
+		double cost;
+		// durations and lengths will be read as primitives from precomputed connection flags and the segments cache
 		if (propertyName.equals(RoutingCriteria.MIN_DURATION.getValue())) {
-			costObject = getMinDurationCosts(node, relationship);
+			cost = getMinDuration(node, relationship);
 		} else if (propertyName.equals(RoutingCriteria.CURRENT_DURATION.getValue())) {
-			costObject = getCurrentDurationCosts(node, relationship);
-			if (costObject == null) {
-				// costObject could be null in case of inconsistency
-				costObject = getMinDurationCosts(node, relationship);
-			}
+			// falls back to min duration if no current duration has been set
+			cost = getCurrentDuration(node, relationship);
+		} else if (propertyName.equals(WayGraphConstants.SEGMENT_LENGTH)) {
+			cost = getLength(node);
 		} else {
-			costObject = getNodeProperty(node, propertyName);
+			Object costObject = getNodeProperty(node, propertyName);
+			if (costObject instanceof Number) {
+				cost = ((Number) costObject).doubleValue();
+			} else {
+				cost = NumberUtils.toDouble(costObject.toString(), 0.0);
+			}
 		}
 		
-		Number cost;
-		if (costObject instanceof Number) {
-			cost = (Number)costObject;
-		} else {
-			cost = NumberUtils.toDouble(costObject.toString(), 0.0);
-		}
-		if (cost.doubleValue() < LOWERCOSTTRESH) {
+		if (cost < LOWERCOSTTRESH) {
 			return LOWERCOSTTRESH;
 		}
 		
-		return cost.doubleValue();
+		return cost;
 	}
 
 }
@@ -21,7 +21,6 @@ import org.neo4j.graphdb.Relationship;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import at.srfg.graphium.neo4j.model.WayGraphConstants;
 import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
 import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
 /**
@@ -72,8 +71,7 @@ public class OffsetAwareNodeBasedCostEvaluator extends NodeBasedCostEvaluator  {
 		}
 		else if (this.endNodeId == endNodeId) {
 			// given offset is based on geometry direction
-			long connectionNodeId = (long) relationship.getProperty(WayGraphConstants.CONNECTION_NODE_ID);
-			if (connectionNodeId == (long) relationship.getEndNode().getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID)) {
+			if (isConnectedOnStartNode(relationship.getEndNode(), relationship, true)) {
 				offset = endNodeOffset;
 			} else {
 				offset = 1 - endNodeOffset;
@@ -0,0 +1,209 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * In-memory routing graph of one graph version stored as compressed sparse rows (CSR).
+ *
+ * Each segment is represented by two directed states: state 2*i traverses segment i from its start node to its
+ * end node (startToEnd), state 2*i+1 the other way round. Edges connect a state to the state entered by a turn
+ * connection and carry the access bitmask of the connection. Outgoing and incoming edges of state s are stored
+ * in the ranges [getFirstOutgoingEdge(s), getFirstOutgoingEdge(s+1)) and [getFirstIncomingEdge(s),
+ * getFirstIncomingEdge(s+1)). Costs are held per state (= per segment and direction).
+ *
+ * The graph is immutable and can be shared by concurrent routing requests.
+ */
+public class CSRRoutingGraph {
+
+	public static final int NOT_FOUND = -1;
+
+	private final IWayGraphVersionMetadata metadata;
+	private final int segmentsCount;
+	private final long[] segmentIds;
+	private final long[] nodeIds;
+	private final Long2IntOpenHashMap nodeIdIndex;
+
+	// costs per state
+	private final float[] lengthCosts;
+	private final float[] minDurationCosts;
+
+	private final int[] outgoingOffsets;
+	private final int[] outgoingTargets;
+	private final long[] outgoingAccess;
+	private final int[] incomingOffsets;
+	private final int[] incomingSources;
+	private final long[] incomingAccess;
+
+	/**
+	 * @param segmentIds segment IDs per segment index
+	 * @param nodeIds Neo4j node IDs per segment index
+	 * @param lengthCosts length costs per state
+	 * @param minDurationCosts minimum duration costs per state
+	 * @param edgeSources source state per edge
+	 * @param edgeTargets target state per edge
+	 * @param edgeAccess access bitmask per edge
+	 * @param edgesCount number of edges
+	 */
+	public CSRRoutingGraph(IWayGraphVersionMetadata metadata, long[] segmentIds, long[] nodeIds,
+			float[] lengthCosts, float[] minDurationCosts,
+			int[] edgeSources, int[] edgeTargets, long[] edgeAccess, int edgesCount) {
+		this.metadata = metadata;
+		this.segmentsCount = segmentIds.length;
+		this.segmentIds = segmentIds;
+		this.nodeIds = nodeIds;
+		this.lengthCosts = lengthCosts;
+		this.minDurationCosts = minDurationCosts;
+
+		this.nodeIdIndex = new Long2IntOpenHashMap(segmentsCount);
+		this.nodeIdIndex.defaultReturnValue(NOT_FOUND);
+		for (int i = 0; i < segmentsCount; i++) {
+			nodeIdIndex.put(nodeIds[i], i);
+		}
+
+		int statesCount = segmentsCount * 2;
+		this.outgoingOffsets = new int[statesCount + 1];
+		this.outgoingTargets = new int[edgesCount];
+		this.outgoingAccess = new long[edgesCount];
+		this.incomingOffsets = new int[statesCount + 1];
+		this.incomingSources = new int[edgesCount];
+		this.incomingAccess = new long[edgesCount];
+
+		// counting sort of edges per source state (outgoing) and target state (incoming)
+		for (int e = 0; e < edgesCount; e++) {
+			outgoingOffsets[edgeSources[e] + 1]++;
+			incomingOffsets[edgeTargets[e] + 1]++;
+		}
+		for (int s = 0; s < statesCount; s++) {
+			outgoingOffsets[s + 1] += outgoingOffsets[s];
+			incomingOffsets[s + 1] += incomingOffsets[s];
+		}
+		int[] outgoingPos = new int[statesCount];
+		int[] incomingPos = new int[statesCount];
+		System.arraycopy(outgoingOffsets, 0, outgoingPos, 0, statesCount);
+		System.arraycopy(incomingOffsets, 0, incomingPos, 0, statesCount);
+		for (int e = 0; e < edgesCount; e++) {
+			int out = outgoingPos[edgeSources[e]]++;
+			outgoingTargets[out] = edgeTargets[e];
+			outgoingAccess[out] = edgeAccess[e];
+			int in = incomingPos[edgeTargets[e]]++;
+			incomingSources[in] = edgeSources[e];
+			incomingAccess[in] = edgeAccess[e];
+		}
+	}
+
+	public static int getState(int segmentIndex, boolean startToEnd) {
+		return (segmentIndex << 1) | (startToEnd ? 0 : 1);
+	}
+
+	public static int getSegmentIndex(int state) {
+		return state >>> 1;
+	}
+
+	public static boolean isStartToEnd(int state) {
+		return (state & 1) == 0;
+	}
+
+	/**
+	 * @return state of the same segment in opposite direction
+	 */
+	public static int getReverseState(int state) {
+		return state ^ 1;
+	}
+
+	public IWayGraphVersionMetadata getMetadata() {
+		return metadata;
+	}
+
+	public String getGraphName() {
+		return metadata.getGraphName();
+	}
+
+	public String getVersion() {
+		return metadata.getVersion();
+	}
+
+	public int getSegmentsCount() {
+		return segmentsCount;
+	}
+
+	public int getStatesCount() {
+		return segmentsCount * 2;
+	}
+
+	public int getEdgesCount() {
+		return outgoingTargets.length;
+	}
+
+	/**
+	 * @return index of the segment represented by the Neo4j node or {@link #NOT_FOUND}
+	 */
+	public int getSegmentIndexPerNodeId(long nodeId) {
+		return nodeIdIndex.get(nodeId);
+	}
+
+	public long getSegmentId(int segmentIndex) {
+		return segmentIds[segmentIndex];
+	}
+
+	public long getNodeId(int segmentIndex) {
+		return nodeIds[segmentIndex];
+	}
+
+	/**
+	 * @return costs per state for the routing criteria or null if criteria is not supported by the in-memory graph
+	 * 		   (e.g. current durations change independently of the graph version); must not be modified
+	 */
+	public float[] getCosts(RoutingCriteria criteria) {
+		if (RoutingCriteria.LENGTH.equals(criteria)) {
+			return lengthCosts;
+		} else if (RoutingCriteria.MIN_DURATION.equals(criteria)) {
+			return minDurationCosts;
+		} else {
+			return null;
+		}
+	}
+
+	public int getFirstOutgoingEdge(int state) {
+		return outgoingOffsets[state];
+	}
+
+	public int getOutgoingEdgeTarget(int edge) {
+		return outgoingTargets[edge];
+	}
+
+	public long getOutgoingEdgeAccess(int edge) {
+		return outgoingAccess[edge];
+	}
+
+	public int getFirstIncomingEdge(int state) {
+		return incomingOffsets[state];
+	}
+
+	public int getIncomingEdgeSource(int edge) {
+		return incomingSources[edge];
+	}
+
+	public long getIncomingEdgeAccess(int edge) {
+		return incomingAccess[edge];
+	}
+
+}
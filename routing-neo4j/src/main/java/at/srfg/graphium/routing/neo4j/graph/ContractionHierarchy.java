@@ -0,0 +1,193 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Contraction hierarchy of a {@link CSRRoutingGraph} for one routing criteria and access filter. Nodes of the
+ * hierarchy are the graph's states, so turn connections are respected (edge-based contraction hierarchy).
+ *
+ * Edges are either original connections (weight = costs of entering the target state) or shortcuts skipping a
+ * contracted state; a shortcut references the two edges it replaces. Edges leading to a higher ranked state are
+ * stored as upward edges of their source state (forward search), edges leading to a lower ranked state are stored
+ * as upward edges of their target state (backward search).
+ *
+ * The hierarchy is immutable and can be shared by concurrent routing requests.
+ */
+public class ContractionHierarchy {
+
+	public static final int NO_EDGE = -1;
+
+	private final CSRRoutingGraph graph;
+	private final RoutingCriteria criteria;
+	private final long requiredAccess;
+
+	private final int[] ranks;
+
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final double[] edgeWeights;
+	private final int[] edgeSkipped1;
+	private final int[] edgeSkipped2;
+
+	private final int[] forwardOffsets;
+	private final int[] forwardEdges;
+	private final int[] backwardOffsets;
+	private final int[] backwardEdges;
+
+	/**
+	 * @param ranks rank (contraction order) per state
+	 * @param edgeSkipped1 first skipped edge per edge or {@link #NO_EDGE} for original edges
+	 * @param edgeSkipped2 second skipped edge per edge or {@link #NO_EDGE} for original edges
+	 */
+	public ContractionHierarchy(CSRRoutingGraph graph, RoutingCriteria criteria, long requiredAccess, int[] ranks,
+			int[] edgeSources, int[] edgeTargets, double[] edgeWeights, int[] edgeSkipped1, int[] edgeSkipped2) {
+		this.graph = graph;
+		this.criteria = criteria;
+		this.requiredAccess = requiredAccess;
+		this.ranks = ranks;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeWeights = edgeWeights;
+		this.edgeSkipped1 = edgeSkipped1;
+		this.edgeSkipped2 = edgeSkipped2;
+
+		int statesCount = ranks.length;
+		int edgesCount = edgeSources.length;
+		this.forwardOffsets = new int[statesCount + 1];
+		this.backwardOffsets = new int[statesCount + 1];
+		for (int e = 0; e < edgesCount; e++) {
+			if (isUpward(e)) {
+				forwardOffsets[edgeSources[e] + 1]++;
+			} else {
+				backwardOffsets[edgeTargets[e] + 1]++;
+			}
+		}
+		for (int s = 0; s < statesCount; s++) {
+			forwardOffsets[s + 1] += forwardOffsets[s];
+			backwardOffsets[s + 1] += backwardOffsets[s];
+		}
+		this.forwardEdges = new int[forwardOffsets[statesCount]];
+		this.backwardEdges = new int[backwardOffsets[statesCount]];
+		int[] forwardPos = new int[statesCount];
+		int[] backwardPos = new int[statesCount];
+		System.arraycopy(forwardOffsets, 0, forwardPos, 0, statesCount);
+		System.arraycopy(backwardOffsets, 0, backwardPos, 0, statesCount);
+		for (int e = 0; e < edgesCount; e++) {
+			if (isUpward(e)) {
+				forwardEdges[forwardPos[edgeSources[e]]++] = e;
+			} else {
+				backwardEdges[backwardPos[edgeTargets[e]]++] = e;
+			}
+		}
+	}
+
+	private boolean isUpward(int edge) {
+		return ranks[edgeSources[edge]] < ranks[edgeTargets[edge]];
+	}
+
+	public CSRRoutingGraph getRoutingGraph() {
+		return graph;
+	}
+
+	public RoutingCriteria getCriteria() {
+		return criteria;
+	}
+
+	public long getRequiredAccess() {
+		return requiredAccess;
+	}
+
+	public int getStatesCount() {
+		return ranks.length;
+	}
+
+	public int getEdgesCount() {
+		return edgeSources.length;
+	}
+
+	public int getRank(int state) {
+		return ranks[state];
+	}
+
+	/**
+	 * Upward edges of the forward search of state s are stored in the range [getFirstForwardEdge(s),
+	 * getFirstForwardEdge(s+1)).
+	 */
+	public int getFirstForwardEdge(int state) {
+		return forwardOffsets[state];
+	}
+
+	public int getForwardEdge(int index) {
+		return forwardEdges[index];
+	}
+
+	/**
+	 * Upward edges of the backward search of state s (edges entering s from a higher ranked state) are stored in
+	 * the range [getFirstBackwardEdge(s), getFirstBackwardEdge(s+1)).
+	 */
+	public int getFirstBackwardEdge(int state) {
+		return backwardOffsets[state];
+	}
+
+	public int getBackwardEdge(int index) {
+		return backwardEdges[index];
+	}
+
+	public int getEdgeSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	public int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	public double getEdgeWeight(int edge) {
+		return edgeWeights[edge];
+	}
+
+	public int getEdgeSkipped1(int edge) {
+		return edgeSkipped1[edge];
+	}
+
+	public int getEdgeSkipped2(int edge) {
+		return edgeSkipped2[edge];
+	}
+
+	/**
+	 * Resolves the edge into original edges and adds the states entered along the edge (excluding the edge's
+	 * source state).
+	 */
+	public void unpackEdge(int edge, IntArrayList states) {
+		IntArrayList stack = new IntArrayList();
+		stack.add(edge);
+		while (!stack.isEmpty()) {
+			int e = stack.popInt();
+			if (edgeSkipped1[e] == NO_EDGE) {
+				states.add(edgeTargets[e]);
+			} else {
+				// first skipped edge has to be resolved first
+				stack.add(edgeSkipped2[e]);
+				stack.add(edgeSkipped1[e]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Preprocesses a {@link ContractionHierarchy} of a {@link CSRRoutingGraph}. States are contracted in the order of
+ * their priority (edge difference, number of contracted neighbours and level), priorities are updated lazily.
+ * Shortcuts are only added if a local witness search does not find a path avoiding the contracted state which is
+ * at most as expensive.
+ *
+ * A builder instance builds one hierarchy and must not be shared between threads.
+ */
+public class ContractionHierarchyBuilder {
+
+	private static Logger log = LoggerFactory.getLogger(ContractionHierarchyBuilder.class);
+
+	// maximum number of states settled by a witness search while simulating / executing a contraction
+	private static final int SIMULATION_SETTLED_LIMIT = 50;
+	private static final int CONTRACTION_SETTLED_LIMIT = 500;
+
+	private final CSRRoutingGraph graph;
+	private final RoutingCriteria criteria;
+	private final long requiredAccess;
+	private final int statesCount;
+
+	// edges (original edges and shortcuts) as linked lists of outgoing and incoming edges per state
+	private int edgesCount = 0;
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private double[] edgeWeights;
+	private int[] edgeSkipped1;
+	private int[] edgeSkipped2;
+	private int[] nextOutgoingEdges;
+	private int[] nextIncomingEdges;
+	private int[] firstOutgoingEdges;
+	private int[] firstIncomingEdges;
+
+	private boolean[] contracted;
+	private int[] contractedNeighbours;
+	private int[] levels;
+
+	// witness search
+	private double[] witnessCosts;
+	// targets of the current witness search are marked with the search's number
+	private int[] witnessTargets;
+	private int witnessSearch = 0;
+	private IntArrayList touchedStates = new IntArrayList();
+	private StateHeap witnessQueue = new StateHeap();
+
+	// shortcuts of the current contraction
+	private IntArrayList shortcutStates = new IntArrayList();
+	private IntArrayList shortcutEdges = new IntArrayList();
+	private DoubleArrayList shortcutWeights = new DoubleArrayList();
+
+	/**
+	 * @param requiredAccess bitmask of access types required on connections; 0 if not filtered
+	 */
+	public ContractionHierarchyBuilder(CSRRoutingGraph graph, RoutingCriteria criteria, long requiredAccess) {
+		this.graph = graph;
+		this.criteria = criteria;
+		this.requiredAccess = requiredAccess;
+		this.statesCount = graph.getStatesCount();
+	}
+
+	public ContractionHierarchy build() {
+		long startTime = System.currentTimeMillis();
+		float[] costs = graph.getCosts(criteria);
+		if (costs == null) {
+			throw new IllegalArgumentException("Routing criteria " + criteria + " is not supported by in-memory routing graphs");
+		}
+
+		int capacity = Math.max(graph.getEdgesCount() * 2, 16);
+		edgeSources = new int[capacity];
+		edgeTargets = new int[capacity];
+		edgeWeights = new double[capacity];
+		edgeSkipped1 = new int[capacity];
+		edgeSkipped2 = new int[capacity];
+		nextOutgoingEdges = new int[capacity];
+		nextIncomingEdges = new int[capacity];
+		firstOutgoingEdges = new int[statesCount];
+		firstIncomingEdges = new int[statesCount];
+		Arrays.fill(firstOutgoingEdges, ContractionHierarchy.NO_EDGE);
+		Arrays.fill(firstIncomingEdges, ContractionHierarchy.NO_EDGE);
+		contracted = new boolean[statesCount];
+		contractedNeighbours = new int[statesCount];
+		levels = new int[statesCount];
+		witnessCosts = new double[statesCount];
+		witnessTargets = new int[statesCount];
+		Arrays.fill(witnessCosts, Double.POSITIVE_INFINITY);
+
+		for (int state = 0; state < statesCount; state++) {
+			int lastEdge = graph.getFirstOutgoingEdge(state + 1);
+			for (int edge = graph.getFirstOutgoingEdge(state); edge < lastEdge; edge++) {
+				int target = graph.getOutgoingEdgeTarget(edge);
+				long access = graph.getOutgoingEdgeAccess(edge);
+				if (target != state && (requiredAccess == 0 || (access & requiredAccess) != 0)) {
+					addOrImproveEdge(state, target, costs[target], ContractionHierarchy.NO_EDGE, ContractionHierarchy.NO_EDGE);
+				}
+			}
+		}
+		int originalEdgesCount = edgesCount;
+
+		StateHeap queue = new StateHeap(statesCount);
+		for (int state = 0; state < statesCount; state++) {
+			queue.push(calculatePriority(state), state);
+		}
+
+		int[] ranks = new int[statesCount];
+		int rank = 0;
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			// lazy update: re-insert the state if its current priority is worse than the next state's
+			double priority = calculatePriority(state);
+			if (!queue.isEmpty() && priority > queue.peekKey()) {
+				queue.push(priority, state);
+				continue;
+			}
+			contract(state);
+			ranks[state] = rank++;
+		}
+
+		ContractionHierarchy hierarchy = new ContractionHierarchy(graph, criteria, requiredAccess, ranks,
+				Arrays.copyOf(edgeSources, edgesCount),
+				Arrays.copyOf(edgeTargets, edgesCount),
+				Arrays.copyOf(edgeWeights, edgesCount),
+				Arrays.copyOf(edgeSkipped1, edgesCount),
+				Arrays.copyOf(edgeSkipped2, edgesCount));
+
+		log.info("Contraction hierarchy for graph version " + graph.getGraphName() + "_" + graph.getVersion()
+				+ " and criteria " + criteria + " built with " + originalEdgesCount + " edges and "
+				+ (edgesCount - originalEdgesCount) + " shortcuts in " + (System.currentTimeMillis() - startTime) + " ms");
+		return hierarchy;
+	}
+
+	private double calculatePriority(int state) {
+		int edgeDifference = findShortcuts(state, SIMULATION_SETTLED_LIMIT);
+		for (int edge = firstIncomingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextIncomingEdges[edge]) {
+			if (!contracted[edgeSources[edge]]) {
+				edgeDifference--;
+			}
+		}
+		for (int edge = firstOutgoingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextOutgoingEdges[edge]) {
+			if (!contracted[edgeTargets[edge]]) {
+				edgeDifference--;
+			}
+		}
+		return 2 * edgeDifference + contractedNeighbours[state] + levels[state];
+	}
+
+	private void contract(int state) {
+		findShortcuts(state, CONTRACTION_SETTLED_LIMIT);
+		for (int i = 0; i < shortcutWeights.size(); i++) {
+			addOrImproveEdge(shortcutStates.getInt(2 * i), shortcutStates.getInt(2 * i + 1), shortcutWeights.getDouble(i),
+					shortcutEdges.getInt(2 * i), shortcutEdges.getInt(2 * i + 1));
+		}
+		contracted[state] = true;
+
+		for (int edge = firstIncomingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextIncomingEdges[edge]) {
+			updateNeighbour(edgeSources[edge], state);
+		}
+		for (int edge = firstOutgoingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextOutgoingEdges[edge]) {
+			updateNeighbour(edgeTargets[edge], state);
+		}
+	}
+
+	private void updateNeighbour(int neighbour, int contractedState) {
+		if (!contracted[neighbour]) {
+			contractedNeighbours[neighbour]++;
+			levels[neighbour] = Math.max(levels[neighbour], levels[contractedState] + 1);
+			removeContractedEdges(neighbour);
+		}
+	}
+
+	/**
+	 * Unlinks edges to or from contracted states from the state's edge lists. The edges remain part of the hierarchy.
+	 */
+	private void removeContractedEdges(int state) {
+		int previous = ContractionHierarchy.NO_EDGE;
+		for (int edge = firstOutgoingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextOutgoingEdges[edge]) {
+			if (contracted[edgeTargets[edge]]) {
+				if (previous == ContractionHierarchy.NO_EDGE) {
+					firstOutgoingEdges[state] = nextOutgoingEdges[edge];
+				} else {
+					nextOutgoingEdges[previous] = nextOutgoingEdges[edge];
+				}
+			} else {
+				previous = edge;
+			}
+		}
+		previous = ContractionHierarchy.NO_EDGE;
+		for (int edge = firstIncomingEdges[state]; edge != ContractionHierarchy.NO_EDGE; edge = nextIncomingEdges[edge]) {
+			if (contracted[edgeSources[edge]]) {
+				if (previous == ContractionHierarchy.NO_EDGE) {
+					firstIncomingEdges[state] = nextIncomingEdges[edge];
+				} else {
+					nextIncomingEdges[previous] = nextIncomingEdges[edge];
+				}
+			} else {
+				previous = edge;
+			}
+		}
+	}
+
+	/**
+	 * Collects the shortcuts required to contract the state.
+	 *
+	 * @return number of shortcuts
+	 */
+	private int findShortcuts(int state, int settledLimit) {
+		shortcutStates.clear();
+		shortcutEdges.clear();
+		shortcutWeights.clear();
+
+		for (int inEdge = firstIncomingEdges[state]; inEdge != ContractionHierarchy.NO_EDGE; inEdge = nextIncomingEdges[inEdge]) {
+			int source = edgeSources[inEdge];
+			if (contracted[source]) {
+				continue;
+			}
+			witnessSearch++;
+			int targetsCount = 0;
+			double maxCosts = 0;
+			for (int outEdge = firstOutgoingEdges[state]; outEdge != ContractionHierarchy.NO_EDGE; outEdge = nextOutgoingEdges[outEdge]) {
+				int target = edgeTargets[outEdge];
+				if (!contracted[target] && target != source) {
+					maxCosts = Math.max(maxCosts, edgeWeights[inEdge] + edgeWeights[outEdge]);
+					witnessTargets[target] = witnessSearch;
+					targetsCount++;
+				}
+			}
+			if (targetsCount == 0) {
+				continue;
+			}
+
+			searchWitnesses(source, state, maxCosts, targetsCount, settledLimit);
+
+			for (int outEdge = firstOutgoingEdges[state]; outEdge != ContractionHierarchy.NO_EDGE; outEdge = nextOutgoingEdges[outEdge]) {
+				int target = edgeTargets[outEdge];
+				if (contracted[target] || target == source) {
+					continue;
+				}
+				double shortcutWeight = edgeWeights[inEdge] + edgeWeights[outEdge];
+				if (witnessCosts[target] > shortcutWeight) {
+					shortcutStates.add(source);
+					shortcutStates.add(target);
+					shortcutEdges.add(inEdge);
+					shortcutEdges.add(outEdge);
+					shortcutWeights.add(shortcutWeight);
+				}
+			}
+			resetWitnessCosts();
+		}
+		return shortcutWeights.size();
+	}
+
+	/**
+	 * Local Dijkstra from source avoiding the state to contract and all contracted states.
+	 */
+	private void searchWitnesses(int source, int avoidedState, double maxCosts, int targetsCount, int settledLimit) {
+		witnessQueue.clear();
+		witnessCosts[source] = 0;
+		touchedStates.add(source);
+		witnessQueue.push(0, source);
+		int settled = 0;
+		while (!witnessQueue.isEmpty() && settled < settledLimit) {
+			double currentCosts = witnessQueue.peekKey();
+			int current = witnessQueue.poll();
+			if (currentCosts > witnessCosts[current]) {
+				continue;
+			}
+			// stop as soon as all targets have been settled
+			if (witnessTargets[current] == witnessSearch && --targetsCount == 0) {
+				break;
+			}
+			settled++;
+			for (int edge = firstOutgoingEdges[current]; edge != ContractionHierarchy.NO_EDGE; edge = nextOutgoingEdges[edge]) {
+				int neighbour = edgeTargets[edge];
+				if (neighbour == avoidedState || contracted[neighbour]) {
+					continue;
+				}
+				double neighbourCosts = currentCosts + edgeWeights[edge];
+				if (neighbourCosts <= maxCosts && neighbourCosts < witnessCosts[neighbour]) {
+					if (witnessCosts[neighbour] == Double.POSITIVE_INFINITY) {
+						touchedStates.add(neighbour);
+					}
+					witnessCosts[neighbour] = neighbourCosts;
+					witnessQueue.push(neighbourCosts, neighbour);
+				}
+			}
+		}
+	}
+
+	private void resetWitnessCosts() {
+		for (int i = 0; i < touchedStates.size(); i++) {
+			witnessCosts[touchedStates.getInt(i)] = Double.POSITIVE_INFINITY;
+		}
+		touchedStates.clear();
+	}
+
+	/**
+	 * Adds an edge between two uncontracted states or lowers the weight of an existing edge between them.
+	 */
+	private void addOrImproveEdge(int source, int target, double weight, int skipped1, int skipped2) {
+		for (int edge = firstOutgoingEdges[source]; edge != ContractionHierarchy.NO_EDGE; edge = nextOutgoingEdges[edge]) {
+			if (edgeTargets[edge] == target) {
+				// an edge between uncontracted states has not been skipped by any shortcut yet and may be replaced
+				if (weight < edgeWeights[edge]) {
+					edgeWeights[edge] = weight;
+					edgeSkipped1[edge] = skipped1;
+					edgeSkipped2[edge] = skipped2;
+				}
+				return;
+			}
+		}
+
+		if (edgesCount == edgeSources.length) {
+			int newCapacity = edgesCount + (edgesCount >> 1);
+			edgeSources = Arrays.copyOf(edgeSources, newCapacity);
+			edgeTargets = Arrays.copyOf(edgeTargets, newCapacity);
+			edgeWeights = Arrays.copyOf(edgeWeights, newCapacity);
+			edgeSkipped1 = Arrays.copyOf(edgeSkipped1, newCapacity);
+			edgeSkipped2 = Arrays.copyOf(edgeSkipped2, newCapacity);
+			nextOutgoingEdges = Arrays.copyOf(nextOutgoingEdges, newCapacity);
+			nextIncomingEdges = Arrays.copyOf(nextIncomingEdges, newCapacity);
+		}
+		int edge = edgesCount++;
+		edgeSources[edge] = source;
+		edgeTargets[edge] = target;
+		edgeWeights[edge] = weight;
+		edgeSkipped1[edge] = skipped1;
+		edgeSkipped2[edge] = skipped2;
+		nextOutgoingEdges[edge] = firstOutgoingEdges[source];
+		firstOutgoingEdges[source] = edge;
+		nextIncomingEdges[edge] = firstIncomingEdges[target];
+		firstIncomingEdges[target] = edge;
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+
+/**
+ * Persists contraction hierarchies into one file per graph version, routing criteria and access filter, so
+ * they don't have to be preprocessed again after a restart.
+ *
+ * Hierarchies reference states of a {@link CSRRoutingGraph}, whose order depends on the order Neo4j returns the
+ * segments. Each file therefore holds the graph version's valid from and storage timestamps as well as a
+ * fingerprint of the routing graph; if one of them does not match the file will be ignored.
+ *
+ * File layout (big endian): header (magic, format version, valid from, storage timestamp, fingerprint, states
+ * count, edges count) followed by the columns ranks, edge sources, edge targets, edge weights, first skipped
+ * edges and second skipped edges.
+ */
+public class ContractionHierarchyStore {
+
+	private static Logger log = LoggerFactory.getLogger(ContractionHierarchyStore.class);
+
+	private static final int MAGIC = 0x47434831; // "GCH1"
+	private static final int FORMAT_VERSION = 1;
+	private static final String FILE_SUFFIX = ".ch";
+
+	private String directory;
+
+	public boolean isEnabled() {
+		return directory != null && !directory.trim().isEmpty();
+	}
+
+	/**
+	 * @return contraction hierarchy read from file or null if no valid file exists
+	 */
+	public ContractionHierarchy load(String graphVersionName, CSRRoutingGraph graph, RoutingCriteria criteria,
+			long requiredAccess) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Path file = getFile(graphVersionName, criteria, requiredAccess);
+		if (!Files.isReadable(file)) {
+			return null;
+		}
+
+		long startTime = System.currentTimeMillis();
+		try (InputStream is = Files.newInputStream(file);
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				log.warn("Contraction hierarchy " + file + " has an unknown format and will be ignored");
+				return null;
+			}
+			if (in.readLong() != getValidFrom(graph.getMetadata()) ||
+				in.readLong() != getStorageTimestamp(graph.getMetadata()) ||
+				in.readLong() != createFingerprint(graph)) {
+				log.info("Contraction hierarchy " + file + " is outdated and will be ignored");
+				return null;
+			}
+			int statesCount = in.readInt();
+			int edgesCount = in.readInt();
+			if (statesCount != graph.getStatesCount()) {
+				log.warn("Contraction hierarchy " + file + " is corrupt and will be ignored");
+				return null;
+			}
+
+			int[] ranks = readInts(in, statesCount);
+			int[] edgeSources = readInts(in, edgesCount);
+			int[] edgeTargets = readInts(in, edgesCount);
+			double[] edgeWeights = new double[edgesCount];
+			for (int i = 0; i < edgesCount; i++) {
+				edgeWeights[i] = in.readDouble();
+			}
+			int[] edgeSkipped1 = readInts(in, edgesCount);
+			int[] edgeSkipped2 = readInts(in, edgesCount);
+
+			ContractionHierarchy hierarchy = new ContractionHierarchy(graph, criteria, requiredAccess, ranks,
+					edgeSources, edgeTargets, edgeWeights, edgeSkipped1, edgeSkipped2);
+			log.info("Loaded contraction hierarchy of graph version " + graphVersionName + " and criteria " + criteria
+					+ " with " + edgesCount + " edges in " + (System.currentTimeMillis() - startTime) + " ms");
+			return hierarchy;
+		} catch (IOException e) {
+			log.error("Could not read contraction hierarchy " + file, e);
+			return null;
+		}
+	}
+
+	public void save(String graphVersionName, ContractionHierarchy hierarchy) {
+		if (!isEnabled()) {
+			return;
+		}
+		CSRRoutingGraph graph = hierarchy.getRoutingGraph();
+		Path file = getFile(graphVersionName, hierarchy.getCriteria(), hierarchy.getRequiredAccess());
+		Path tmpFile = Paths.get(file.toString() + ".tmp");
+
+		try {
+			Files.createDirectories(file.getParent());
+			int statesCount = hierarchy.getStatesCount();
+			int edgesCount = hierarchy.getEdgesCount();
+			try (OutputStream os = Files.newOutputStream(tmpFile);
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(getValidFrom(graph.getMetadata()));
+				out.writeLong(getStorageTimestamp(graph.getMetadata()));
+				out.writeLong(createFingerprint(graph));
+				out.writeInt(statesCount);
+				out.writeInt(edgesCount);
+
+				for (int s = 0; s < statesCount; s++) {
+					out.writeInt(hierarchy.getRank(s));
+				}
+				for (int e = 0; e < edgesCount; e++) {
+					out.writeInt(hierarchy.getEdgeSource(e));
+				}
+				for (int e = 0; e < edgesCount; e++) {
+					out.writeInt(hierarchy.getEdgeTarget(e));
+				}
+				for (int e = 0; e < edgesCount; e++) {
+					out.writeDouble(hierarchy.getEdgeWeight(e));
+				}
+				for (int e = 0; e < edgesCount; e++) {
+					out.writeInt(hierarchy.getEdgeSkipped1(e));
+				}
+				for (int e = 0; e < edgesCount; e++) {
+					out.writeInt(hierarchy.getEdgeSkipped2(e));
+				}
+			}
+
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.info("Contraction hierarchy of graph version " + graphVersionName + " and criteria "
+					+ hierarchy.getCriteria() + " written to " + file);
+		} catch (IOException e) {
+			log.error("Could not write contraction hierarchy " + file, e);
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e1) {
+				log.warn("Could not delete temporary contraction hierarchy file " + tmpFile);
+			}
+		}
+	}
+
+	/**
+	 * Deletes all contraction hierarchies of the graph version.
+	 */
+	public void delete(String graphVersionName) {
+		if (!isEnabled() || !Files.isDirectory(Paths.get(directory))) {
+			return;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(directory), graphVersionName + "_*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+				log.info("Contraction hierarchy " + file + " deleted");
+			}
+		} catch (IOException e) {
+			log.error("Could not delete contraction hierarchies of graph version " + graphVersionName, e);
+		}
+	}
+
+	private Path getFile(String graphVersionName, RoutingCriteria criteria, long requiredAccess) {
+		return Paths.get(directory, graphVersionName + "_" + criteria.name().toLowerCase() + "_"
+				+ Long.toHexString(requiredAccess) + FILE_SUFFIX);
+	}
+
+	private int[] readInts(DataInputStream in, int count) throws IOException {
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/**
+	 * @return hash of the routing graph's state order and edges
+	 */
+	private long createFingerprint(CSRRoutingGraph graph) {
+		long hash = 1125899906842597L;
+		for (int i = 0; i < graph.getSegmentsCount(); i++) {
+			hash = 31 * hash + graph.getNodeId(i);
+		}
+		for (int s = 0; s < graph.getStatesCount(); s++) {
+			hash = 31 * hash + graph.getFirstOutgoingEdge(s);
+		}
+		for (int e = 0; e < graph.getEdgesCount(); e++) {
+			hash = 31 * hash + graph.getOutgoingEdgeTarget(e);
+			hash = 31 * hash + graph.getOutgoingEdgeAccess(e);
+		}
+		return hash;
+	}
+
+	private long getValidFrom(IWayGraphVersionMetadata metadata) {
+		return metadata.getValidFrom() != null ? metadata.getValidFrom().getTime() : 0;
+	}
+
+	private long getStorageTimestamp(IWayGraphVersionMetadata metadata) {
+		return metadata.getStorageTimestamp() != null ? metadata.getStorageTimestamp().getTime() : 0;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+}
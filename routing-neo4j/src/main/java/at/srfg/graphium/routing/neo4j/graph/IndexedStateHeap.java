@@ -0,0 +1,190 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min heap of states with primitive keys. Each state is contained at most once; its key can be
+ * decreased while it is queued. States are dense indices (0 to capacity - 1); the heap grows on demand.
+ */
+public class IndexedStateHeap {
+
+	public static final int DEFAULT_ARITY = 4;
+
+	private static final int NOT_QUEUED = -1;
+
+	private final int arity;
+	private double[] keys;
+	private int[] states;
+	// position of each state within the heap arrays or NOT_QUEUED
+	private int[] positions;
+	private int size = 0;
+
+	public IndexedStateHeap() {
+		this(DEFAULT_ARITY, 64);
+	}
+
+	public IndexedStateHeap(int arity, int capacity) {
+		if (arity < 2) {
+			throw new IllegalArgumentException("arity has to be at least 2");
+		}
+		this.arity = arity;
+		capacity = Math.max(capacity, 2);
+		keys = new double[capacity];
+		states = new int[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, NOT_QUEUED);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all queued states. Runs in O(size).
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[states[i]] = NOT_QUEUED;
+		}
+		size = 0;
+	}
+
+	public boolean contains(int state) {
+		return state < positions.length && positions[state] != NOT_QUEUED;
+	}
+
+	/**
+	 * @return key of the queued state
+	 */
+	public double getKey(int state) {
+		return keys[positions[state]];
+	}
+
+	/**
+	 * @return minimum key or positive infinity if heap is empty
+	 */
+	public double peekKey() {
+		return size > 0 ? keys[0] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * @return state with minimum key
+	 */
+	public int peek() {
+		return states[0];
+	}
+
+	/**
+	 * Adds the state or decreases its key if it is already queued with a greater key.
+	 *
+	 * @return true if the state has been added or its key has been decreased
+	 */
+	public boolean push(int state, double key) {
+		ensureStatesCapacity(state + 1);
+		int pos = positions[state];
+		if (pos == NOT_QUEUED) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				states = Arrays.copyOf(states, size * 2);
+			}
+			siftUp(size++, state, key);
+			return true;
+		} else if (key < keys[pos]) {
+			siftUp(pos, state, key);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the state with minimum key.
+	 *
+	 * @return state of removed entry
+	 */
+	public int poll() {
+		int top = states[0];
+		positions[top] = NOT_QUEUED;
+		size--;
+		if (size > 0) {
+			siftDown(0, states[size], keys[size]);
+		}
+		return top;
+	}
+
+	private void siftUp(int pos, int state, double key) {
+		while (pos > 0) {
+			int parent = (pos - 1) / arity;
+			if (keys[parent] <= key) {
+				break;
+			}
+			move(parent, pos);
+			pos = parent;
+		}
+		set(pos, state, key);
+	}
+
+	private void siftDown(int pos, int state, double key) {
+		while (true) {
+			int firstChild = pos * arity + 1;
+			if (firstChild >= size) {
+				break;
+			}
+			int lastChild = Math.min(firstChild + arity, size);
+			int minChild = firstChild;
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				if (keys[child] < keys[minChild]) {
+					minChild = child;
+				}
+			}
+			if (keys[minChild] >= key) {
+				break;
+			}
+			move(minChild, pos);
+			pos = minChild;
+		}
+		set(pos, state, key);
+	}
+
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		states[to] = states[from];
+		positions[states[to]] = to;
+	}
+
+	private void set(int pos, int state, double key) {
+		keys[pos] = key;
+		states[pos] = state;
+		positions[state] = pos;
+	}
+
+	private void ensureStatesCapacity(int capacity) {
+		if (capacity > positions.length) {
+			int oldLength = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(capacity, oldLength + (oldLength >> 1)));
+			Arrays.fill(positions, oldLength, positions.length, NOT_QUEUED);
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+
+/**
+ * Precomputed costs from and to a small set of landmark states of a {@link CSRRoutingGraph} for one routing
+ * criteria. They are used to calculate lower bounds of the costs between any two states by the triangle inequality
+ * (ALT = A*, landmarks, triangle inequality).
+ *
+ * Costs are stored as 16 bit values scaled per landmark. Stored values are rounded down, lower bounds subtract one
+ * scale unit, so they never overestimate the real costs. Costs are calculated on the unfiltered graph; since
+ * filters (access, restrictions) only remove connections, the lower bounds remain valid for filtered routing.
+ *
+ * Costs of a path are the costs of all entered states (the path's first state excluded).
+ */
+public class LandmarkDistances {
+
+	// marks unreachable states
+	public static final char UNREACHABLE = Character.MAX_VALUE;
+	public static final int MAX_VALUE = Character.MAX_VALUE - 1;
+
+	private final CSRRoutingGraph graph;
+	private final RoutingCriteria criteria;
+	private final int[] landmarks;
+	private final int landmarksCount;
+
+	// costs per state and landmark (index = state * landmarksCount + landmark)
+	private final char[] costsFromLandmarks;
+	private final char[] costsToLandmarks;
+	private final double[] fromScales;
+	private final double[] toScales;
+
+	public LandmarkDistances(CSRRoutingGraph graph, RoutingCriteria criteria, int[] landmarks,
+			char[] costsFromLandmarks, double[] fromScales, char[] costsToLandmarks, double[] toScales) {
+		this.graph = graph;
+		this.criteria = criteria;
+		this.landmarks = landmarks;
+		this.landmarksCount = landmarks.length;
+		this.costsFromLandmarks = costsFromLandmarks;
+		this.fromScales = fromScales;
+		this.costsToLandmarks = costsToLandmarks;
+		this.toScales = toScales;
+	}
+
+	public CSRRoutingGraph getRoutingGraph() {
+		return graph;
+	}
+
+	public RoutingCriteria getCriteria() {
+		return criteria;
+	}
+
+	public int getLandmarksCount() {
+		return landmarksCount;
+	}
+
+	public int getLandmark(int index) {
+		return landmarks[index];
+	}
+
+	/**
+	 * @return lower bound of the costs of the cheapest path from state to state; 0 if no bound can be derived
+	 */
+	public double getLowerBound(int fromState, int toState) {
+		if (fromState == toState) {
+			return 0;
+		}
+		double bound = 0;
+		int from = fromState * landmarksCount;
+		int to = toState * landmarksCount;
+		for (int l = 0; l < landmarksCount; l++) {
+			// costs(L, to) <= costs(L, from) + costs(from, to)
+			char fromLandmarkToState = costsFromLandmarks[to + l];
+			char fromLandmarkFromState = costsFromLandmarks[from + l];
+			if (fromLandmarkToState != UNREACHABLE && fromLandmarkFromState != UNREACHABLE) {
+				bound = Math.max(bound, (fromLandmarkToState - fromLandmarkFromState - 1) * fromScales[l]);
+			}
+			// costs(from, L) <= costs(from, to) + costs(to, L)
+			char fromStateToLandmark = costsToLandmarks[from + l];
+			char toStateToLandmark = costsToLandmarks[to + l];
+			if (fromStateToLandmark != UNREACHABLE && toStateToLandmark != UNREACHABLE) {
+				bound = Math.max(bound, (fromStateToLandmark - toStateToLandmark - 1) * toScales[l]);
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * @return size of the distance tables in bytes
+	 */
+	public long getSize() {
+		return 2L * (costsFromLandmarks.length + costsToLandmarks.length);
+	}
+
+}
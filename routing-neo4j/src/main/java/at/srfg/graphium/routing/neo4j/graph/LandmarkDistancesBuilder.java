@@ -0,0 +1,175 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+
+/**
+ * Selects landmarks of a {@link CSRRoutingGraph} and calculates the {@link LandmarkDistances}. Landmarks are
+ * selected by the farthest heuristic: each landmark is the reachable state with maximum costs from all landmarks
+ * selected so far, which places landmarks at the border of the graph.
+ */
+public class LandmarkDistancesBuilder {
+
+	private static Logger log = LoggerFactory.getLogger(LandmarkDistancesBuilder.class);
+
+	private final CSRRoutingGraph graph;
+	private final RoutingCriteria criteria;
+	private final int landmarksCount;
+	private final float[] costs;
+	private final int statesCount;
+
+	private double[] distances;
+	private StateHeap queue = new StateHeap();
+
+	public LandmarkDistancesBuilder(CSRRoutingGraph graph, RoutingCriteria criteria, int landmarksCount) {
+		this.graph = graph;
+		this.criteria = criteria;
+		this.landmarksCount = landmarksCount;
+		this.costs = graph.getCosts(criteria);
+		this.statesCount = graph.getStatesCount();
+		if (costs == null) {
+			throw new IllegalArgumentException("Routing criteria " + criteria + " is not supported by in-memory routing graphs");
+		}
+	}
+
+	public LandmarkDistances build() {
+		long startTime = System.currentTimeMillis();
+		distances = new double[statesCount];
+
+		int count = Math.min(landmarksCount, statesCount);
+		int[] landmarks = selectLandmarks(count);
+
+		char[] costsFromLandmarks = new char[statesCount * count];
+		char[] costsToLandmarks = new char[statesCount * count];
+		double[] fromScales = new double[count];
+		double[] toScales = new double[count];
+		for (int l = 0; l < count; l++) {
+			calculateCosts(new int[] {landmarks[l]}, true);
+			fromScales[l] = storeCosts(costsFromLandmarks, l, count);
+			calculateCosts(new int[] {landmarks[l]}, false);
+			toScales[l] = storeCosts(costsToLandmarks, l, count);
+		}
+
+		LandmarkDistances landmarkDistances = new LandmarkDistances(graph, criteria, landmarks,
+				costsFromLandmarks, fromScales, costsToLandmarks, toScales);
+		log.info(count + " landmarks for graph version " + graph.getGraphName() + "_" + graph.getVersion()
+				+ " and criteria " + criteria + " calculated in " + (System.currentTimeMillis() - startTime) + " ms ("
+				+ landmarkDistances.getSize() / 1024 + " kB)");
+		return landmarkDistances;
+	}
+
+	private int[] selectLandmarks(int count) {
+		int[] landmarks = new int[count];
+		if (count == 0) {
+			return landmarks;
+		}
+		// start from the state farthest away from the graph's first state
+		calculateCosts(new int[] {0}, true);
+		landmarks[0] = findFarthestState(0);
+		for (int l = 1; l < count; l++) {
+			calculateCosts(Arrays.copyOf(landmarks, l), true);
+			landmarks[l] = findFarthestState(landmarks[0]);
+		}
+		return landmarks;
+	}
+
+	private int findFarthestState(int defaultState) {
+		int farthestState = defaultState;
+		double maxCosts = 0;
+		for (int state = 0; state < statesCount; state++) {
+			if (distances[state] != Double.POSITIVE_INFINITY && distances[state] > maxCosts) {
+				maxCosts = distances[state];
+				farthestState = state;
+			}
+		}
+		return farthestState;
+	}
+
+	/**
+	 * Dijkstra calculating the costs from the source states to all states (forward) or from all states to the
+	 * source states (backward).
+	 */
+	private void calculateCosts(int[] sources, boolean forward) {
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		queue.clear();
+		for (int source : sources) {
+			distances[source] = 0;
+			queue.push(0, source);
+		}
+		while (!queue.isEmpty()) {
+			double currentCosts = queue.peekKey();
+			int current = queue.poll();
+			if (currentCosts > distances[current]) {
+				continue;
+			}
+			if (forward) {
+				int lastEdge = graph.getFirstOutgoingEdge(current + 1);
+				for (int edge = graph.getFirstOutgoingEdge(current); edge < lastEdge; edge++) {
+					int neighbour = graph.getOutgoingEdgeTarget(edge);
+					relax(neighbour, currentCosts + costs[neighbour]);
+				}
+			} else {
+				// costs of a path contain the costs of the entered states only
+				double enteringCosts = currentCosts + costs[current];
+				int lastEdge = graph.getFirstIncomingEdge(current + 1);
+				for (int edge = graph.getFirstIncomingEdge(current); edge < lastEdge; edge++) {
+					relax(graph.getIncomingEdgeSource(edge), enteringCosts);
+				}
+			}
+		}
+	}
+
+	private void relax(int state, double stateCosts) {
+		if (stateCosts < distances[state]) {
+			distances[state] = stateCosts;
+			queue.push(stateCosts, state);
+		}
+	}
+
+	/**
+	 * Stores the current distances rounded down.
+	 *
+	 * @return scale of stored values
+	 */
+	private double storeCosts(char[] table, int landmark, int count) {
+		double maxCosts = 0;
+		for (int state = 0; state < statesCount; state++) {
+			if (distances[state] != Double.POSITIVE_INFINITY) {
+				maxCosts = Math.max(maxCosts, distances[state]);
+			}
+		}
+		double scale = maxCosts > 0 ? maxCosts / LandmarkDistances.MAX_VALUE : 1;
+		for (int state = 0; state < statesCount; state++) {
+			char value;
+			if (distances[state] == Double.POSITIVE_INFINITY) {
+				value = LandmarkDistances.UNREACHABLE;
+			} else {
+				value = (char) Math.min((long) Math.floor(distances[state] / scale), LandmarkDistances.MAX_VALUE);
+			}
+			table[state * count + landmark] = value;
+		}
+		return scale;
+	}
+
+}
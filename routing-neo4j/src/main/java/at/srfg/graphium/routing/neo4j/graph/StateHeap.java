@@ -0,0 +1,110 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of (cost, state) pairs with primitive keys and values. States may be added several times
+ * (lazy deletion); callers have to skip already settled states.
+ */
+public class StateHeap {
+
+	private double[] keys;
+	private int[] states;
+	private int size = 0;
+
+	public StateHeap() {
+		this(64);
+	}
+
+	public StateHeap(int capacity) {
+		keys = new double[Math.max(capacity, 2)];
+		states = new int[Math.max(capacity, 2)];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return minimum key or positive infinity if heap is empty
+	 */
+	public double peekKey() {
+		return size > 0 ? keys[0] : Double.POSITIVE_INFINITY;
+	}
+
+	public void push(double key, int state) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			states = Arrays.copyOf(states, size * 2);
+		}
+		int pos = size++;
+		while (pos > 0) {
+			int parent = (pos - 1) >> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			keys[pos] = keys[parent];
+			states[pos] = states[parent];
+			pos = parent;
+		}
+		keys[pos] = key;
+		states[pos] = state;
+	}
+
+	/**
+	 * Removes the entry with minimum key.
+	 *
+	 * @return state of removed entry
+	 */
+	public int poll() {
+		int top = states[0];
+		size--;
+		if (size > 0) {
+			double key = keys[size];
+			int state = states[size];
+			int pos = 0;
+			int half = size >> 1;
+			while (pos < half) {
+				int child = (pos << 1) + 1;
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (keys[child] >= key) {
+					break;
+				}
+				keys[pos] = keys[child];
+				states[pos] = states[child];
+				pos = child;
+			}
+			keys[pos] = key;
+			states[pos] = state;
+		}
+		return top;
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.model.impl;
+
+import at.srfg.graphium.routing.neo4j.model.IRoutingMatrix;
+
+public class RoutingMatrixImpl implements IRoutingMatrix {
+
+	private String graphName;
+	private String graphVersion;
+	private long[] sourceSegmentIds;
+	private long[] targetSegmentIds;
+	private float[] costs;
+	private long runtimeInMs;
+
+	public RoutingMatrixImpl(String graphName, String graphVersion, long[] sourceSegmentIds, long[] targetSegmentIds,
+			float[] costs, long runtimeInMs) {
+		if (costs.length != sourceSegmentIds.length * targetSegmentIds.length) {
+			throw new IllegalArgumentException("size of costs does not match sources and targets");
+		}
+		this.graphName = graphName;
+		this.graphVersion = graphVersion;
+		this.sourceSegmentIds = sourceSegmentIds;
+		this.targetSegmentIds = targetSegmentIds;
+		this.costs = costs;
+		this.runtimeInMs = runtimeInMs;
+	}
+
+	@Override
+	public String getGraphName() {
+		return graphName;
+	}
+
+	@Override
+	public String getGraphVersion() {
+		return graphVersion;
+	}
+
+	@Override
+	public long[] getSourceSegmentIds() {
+		return sourceSegmentIds;
+	}
+
+	@Override
+	public long[] getTargetSegmentIds() {
+		return targetSegmentIds;
+	}
+
+	@Override
+	public float getCost(int sourceIndex, int targetIndex) {
+		return costs[sourceIndex * targetSegmentIds.length + targetIndex];
+	}
+
+	@Override
+	public float[] getCosts() {
+		return costs;
+	}
+
+	@Override
+	public long getRuntimeInMs() {
+		return runtimeInMs;
+	}
+
+}
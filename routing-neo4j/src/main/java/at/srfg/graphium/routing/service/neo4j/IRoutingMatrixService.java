@@ -0,0 +1,38 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.service.neo4j;
+
+import java.util.List;
+
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.model.IRoutingMatrix;
+
+/**
+ * Calculates costs between many source and target segments within one request.
+ */
+public interface IRoutingMatrixService {
+
+	/**
+	 * Calculates the costs of the best routes from each source segment to each target segment. Costs contain the
+	 * source segment's costs, but not the target segment's costs. The routing options' algorithm is ignored.
+	 *
+	 * @throws IllegalArgumentException if the matrix exceeds the configured maximum size
+	 */
+	IRoutingMatrix routeMatrix(IRoutingOptions options, List<Long> sourceSegmentIds, List<Long> targetSegmentIds);
+
+}
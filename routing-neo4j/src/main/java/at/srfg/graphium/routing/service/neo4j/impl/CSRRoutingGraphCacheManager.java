@@ -0,0 +1,464 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.service.neo4j.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.srfg.graphium.core.helper.GraphVersionHelper;
+import at.srfg.graphium.core.observer.IGraphVersionStateModifiedObserver;
+import at.srfg.graphium.core.observer.impl.AbstractGraphVersionStateModifiedObserver;
+import at.srfg.graphium.core.service.IGraphVersionMetadataService;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.State;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
+import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.neo4j.algos.impl.AbstractCSRRoutingAlgo;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchy;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchyBuilder;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchyStore;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistances;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistancesBuilder;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Holds an in-memory routing graph ({@link CSRRoutingGraph}) of each graph's active version if enabled (disabled by
+ * default). Routing graphs will be built on startup and rebuilt in background whenever a new graph version has been
+ * activated; until then the previous routing graph will be used for its version.
+ *
+ * Optionally contraction hierarchies will be preprocessed in background for each routing graph and configured
+ * profile (routing mode and criteria, e.g. "car/min_duration,car/length"). Until a hierarchy is available routing
+ * requests are answered without it. Likewise landmark distances (ALT) will be calculated for each supported
+ * routing criteria if a number of landmarks has been configured.
+ */
+public class CSRRoutingGraphCacheManager extends AbstractGraphVersionStateModifiedObserver
+implements IGraphVersionStateModifiedObserver {
+
+	private static Logger log = LoggerFactory.getLogger(CSRRoutingGraphCacheManager.class);
+
+	// costs have to be positive; same threshold as in NodeBasedCostEvaluator
+	private final static float LOWERCOSTTRESH = 0.0000001f;
+
+	private IGraphVersionMetadataService metadataService;
+	private IGraphDatabaseProvider graphDatabaseProvider;
+	private boolean enabled = false;
+	// comma separated list of routing mode / criteria pairs to preprocess contraction hierarchies for
+	private String contractionHierarchiesProfiles;
+	// optional store to persist contraction hierarchies
+	private ContractionHierarchyStore contractionHierarchyStore;
+	// number of landmarks per routing graph and criteria; 0 if no landmarks should be calculated
+	private int landmarksCount = 0;
+
+	// routing graph of the current (active) version of each graph
+	private Map<String, CSRRoutingGraph> routingGraphs = new ConcurrentHashMap<>();
+	// contraction hierarchies of the current routing graphs per graph name, criteria and required access
+	private Map<String, ContractionHierarchy> contractionHierarchies = new ConcurrentHashMap<>();
+	// landmark distances of the current routing graphs per graph name and criteria
+	private Map<String, LandmarkDistances> landmarkDistances = new ConcurrentHashMap<>();
+	private List<RoutingMode> profileModes = new ArrayList<>();
+	private List<RoutingCriteria> profileCriterias = new ArrayList<>();
+	private ExecutorService rebuildExecutor;
+	private ExecutorService preprocessingExecutor;
+
+	@PostConstruct
+	public void setup() {
+		if (!enabled) {
+			log.info("In-memory routing graphs are disabled");
+			return;
+		}
+
+		parseContractionHierarchiesProfiles();
+		// single threads keep updates of a graph in order
+		rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "csr-routing-graph-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (!profileModes.isEmpty() || landmarksCount > 0) {
+			preprocessingExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "csr-routing-graph-preprocessing");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		List<String> graphNames = metadataService.getGraphs();
+		if (graphNames != null) {
+			for (String graphName : graphNames) {
+				IWayGraphVersionMetadata metadata = metadataService.getCurrentWayGraphVersionMetadata(graphName);
+				if (metadata != null) {
+					putRoutingGraph(buildRoutingGraph(metadata));
+				} else {
+					log.warn("No current version found for graph " + graphName);
+				}
+			}
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (rebuildExecutor != null) {
+			rebuildExecutor.shutdownNow();
+		}
+		if (preprocessingExecutor != null) {
+			preprocessingExecutor.shutdownNow();
+		}
+	}
+
+	private void parseContractionHierarchiesProfiles() {
+		if (contractionHierarchiesProfiles == null || contractionHierarchiesProfiles.trim().isEmpty()) {
+			return;
+		}
+		for (String profile : contractionHierarchiesProfiles.split(",")) {
+			String[] tokens = profile.trim().split("/");
+			if (tokens.length != 2) {
+				log.error("Invalid contraction hierarchies profile " + profile + ", expected <routing mode>/<routing criteria>");
+				continue;
+			}
+			RoutingMode mode = RoutingMode.fromValue(tokens[0].trim().toLowerCase());
+			RoutingCriteria criteria = (RoutingCriteria) RoutingCriteria.fromValue(tokens[1].trim().toLowerCase());
+			if (mode == null || criteria == null) {
+				log.error("Invalid contraction hierarchies profile " + profile);
+			} else {
+				profileModes.add(mode);
+				profileCriterias.add(criteria);
+			}
+		}
+	}
+
+	/**
+	 * @param version if null the routing graph of the current version will be returned
+	 * @return routing graph or null if the graph version is not held in memory
+	 */
+	public CSRRoutingGraph getRoutingGraph(String graphName, String version) {
+		if (graphName == null) {
+			return null;
+		}
+		CSRRoutingGraph routingGraph = routingGraphs.get(graphName);
+		if (routingGraph != null && (version == null || routingGraph.getVersion().equals(version))) {
+			return routingGraph;
+		}
+		return null;
+	}
+
+	/**
+	 * @param requiredAccess bitmask of access types required on connections; 0 if not filtered
+	 * @return contraction hierarchy of the routing graph or null if no (preprocessed) hierarchy exists
+	 */
+	public ContractionHierarchy getContractionHierarchy(CSRRoutingGraph routingGraph, RoutingCriteria criteria,
+			long requiredAccess) {
+		ContractionHierarchy hierarchy = contractionHierarchies.get(
+				createHierarchyKey(routingGraph.getGraphName(), criteria, requiredAccess));
+		if (hierarchy != null && hierarchy.getRoutingGraph() == routingGraph) {
+			return hierarchy;
+		}
+		return null;
+	}
+
+	private void putRoutingGraph(CSRRoutingGraph routingGraph) {
+		routingGraphs.put(routingGraph.getGraphName(), routingGraph);
+		// release hierarchies and landmarks of the replaced routing graph
+		contractionHierarchies.values().removeIf(h -> h.getRoutingGraph() != routingGraph &&
+				h.getRoutingGraph().getGraphName().equals(routingGraph.getGraphName()));
+		landmarkDistances.values().removeIf(l -> l.getRoutingGraph() != routingGraph &&
+				l.getRoutingGraph().getGraphName().equals(routingGraph.getGraphName()));
+		if (preprocessingExecutor != null) {
+			preprocessingExecutor.execute(() -> {
+				preprocessLandmarks(routingGraph);
+				preprocessContractionHierarchies(routingGraph);
+			});
+		}
+	}
+
+	/**
+	 * @return landmark distances of the routing graph or null if no landmarks have been calculated
+	 */
+	public LandmarkDistances getLandmarkDistances(CSRRoutingGraph routingGraph, RoutingCriteria criteria) {
+		LandmarkDistances landmarks = landmarkDistances.get(routingGraph.getGraphName() + "|" + criteria);
+		if (landmarks != null && landmarks.getRoutingGraph() == routingGraph) {
+			return landmarks;
+		}
+		return null;
+	}
+
+	private void preprocessLandmarks(CSRRoutingGraph routingGraph) {
+		if (landmarksCount <= 0) {
+			return;
+		}
+		for (RoutingCriteria criteria : new RoutingCriteria[] {RoutingCriteria.MIN_DURATION, RoutingCriteria.LENGTH}) {
+			if (routingGraphs.get(routingGraph.getGraphName()) != routingGraph) {
+				return;
+			}
+			try {
+				landmarkDistances.put(routingGraph.getGraphName() + "|" + criteria,
+						new LandmarkDistancesBuilder(routingGraph, criteria, landmarksCount).build());
+			} catch (RuntimeException e) {
+				log.error("Could not calculate landmarks of graph " + routingGraph.getGraphName(), e);
+			}
+		}
+	}
+
+	private void preprocessContractionHierarchies(CSRRoutingGraph routingGraph) {
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(routingGraph.getGraphName(), routingGraph.getVersion());
+		for (int i = 0; i < profileModes.size(); i++) {
+			// routing graph could have been replaced in the meantime
+			if (routingGraphs.get(routingGraph.getGraphName()) != routingGraph) {
+				return;
+			}
+			RoutingCriteria criteria = profileCriterias.get(i);
+			long requiredAccess = AbstractCSRRoutingAlgo.getRequiredAccess(profileModes.get(i));
+			String key = createHierarchyKey(routingGraph.getGraphName(), criteria, requiredAccess);
+			if (getContractionHierarchy(routingGraph, criteria, requiredAccess) != null) {
+				// different modes may share the same access filter
+				continue;
+			}
+			try {
+				ContractionHierarchy hierarchy = null;
+				if (contractionHierarchyStore != null) {
+					hierarchy = contractionHierarchyStore.load(graphVersionName, routingGraph, criteria, requiredAccess);
+				}
+				if (hierarchy == null) {
+					log.info("Preprocessing contraction hierarchy of graph version " + graphVersionName + " for "
+							+ profileModes.get(i) + "/" + criteria + " ...");
+					hierarchy = new ContractionHierarchyBuilder(routingGraph, criteria, requiredAccess).build();
+					if (contractionHierarchyStore != null) {
+						contractionHierarchyStore.save(graphVersionName, hierarchy);
+					}
+				}
+				contractionHierarchies.put(key, hierarchy);
+			} catch (RuntimeException e) {
+				log.error("Could not preprocess contraction hierarchy of graph version " + graphVersionName, e);
+			}
+		}
+	}
+
+	private String createHierarchyKey(String graphName, RoutingCriteria criteria, long requiredAccess) {
+		return graphName + "|" + criteria + "|" + requiredAccess;
+	}
+
+	private CSRRoutingGraph buildRoutingGraph(IWayGraphVersionMetadata metadata) {
+		String graphVersionName = GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion());
+		log.info("Building in-memory routing graph for graph version " + graphVersionName + " ...");
+		long startTime = System.currentTimeMillis();
+
+		int expectedSize = Math.max(metadata.getSegmentsCount(), 16);
+		LongArrayList segmentIds = new LongArrayList(expectedSize);
+		LongArrayList nodeIds = new LongArrayList(expectedSize);
+		LongArrayList startNodeIds = new LongArrayList(expectedSize);
+		// costs per state (2*i .. start to end, 2*i+1 .. end to start)
+		FloatArrayList lengthCosts = new FloatArrayList(expectedSize * 2);
+		FloatArrayList minDurationCosts = new FloatArrayList(expectedSize * 2);
+		Long2IntOpenHashMap nodeIdIndex = new Long2IntOpenHashMap(expectedSize);
+
+		// connections are collected with Neo4j node IDs, because target segments may not have been read yet
+		IntArrayList connectionSources = new IntArrayList(expectedSize * 3);
+		LongArrayList connectionTargetNodeIds = new LongArrayList(expectedSize * 3);
+		LongArrayList connectionNodeIds = new LongArrayList(expectedSize * 3);
+		LongArrayList connectionAccess = new LongArrayList(expectedSize * 3);
+
+		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
+			ResourceIterator<Node> segmentNodes = graphDatabaseProvider.getGraphDatabase().findNodes(
+					Label.label(Neo4jWaySegmentHelperImpl.createSegmentNodeLabel(graphVersionName)));
+
+			while (segmentNodes.hasNext()) {
+				Node segmentNode = segmentNodes.next();
+				int index = segmentIds.size();
+				float length = (float) segmentNode.getProperty(WayGraphConstants.SEGMENT_LENGTH);
+				short maxSpeedTow = (short) segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_TOW);
+				short maxSpeedBkw = (short) segmentNode.getProperty(WayGraphConstants.SEGMENT_MAXSPEED_BKW);
+
+				segmentIds.add((long) segmentNode.getProperty(WayGraphConstants.SEGMENT_ID));
+				nodeIds.add(segmentNode.getId());
+				startNodeIds.add((long) segmentNode.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID));
+				nodeIdIndex.put(segmentNode.getId(), index);
+
+				lengthCosts.add(Math.max(length, LOWERCOSTTRESH));
+				lengthCosts.add(Math.max(length, LOWERCOSTTRESH));
+				minDurationCosts.add(Math.max(GraphSegmentsCacheEntry.calcDuration(length, maxSpeedTow), LOWERCOSTTRESH));
+				minDurationCosts.add(Math.max(GraphSegmentsCacheEntry.calcDuration(length, maxSpeedBkw), LOWERCOSTTRESH));
+
+				// leaving a segment via its end node continues traversing it from start to end and vice versa
+				addConnections(segmentNode, WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE,
+						CSRRoutingGraph.getState(index, true),
+						connectionSources, connectionTargetNodeIds, connectionNodeIds, connectionAccess);
+				addConnections(segmentNode, WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE,
+						CSRRoutingGraph.getState(index, false),
+						connectionSources, connectionTargetNodeIds, connectionNodeIds, connectionAccess);
+			}
+
+			tx.success();
+		}
+
+		// resolve target states; a connection enters its target segment at the target's start node => start to end
+		int connectionsCount = connectionSources.size();
+		int[] edgeSources = new int[connectionsCount];
+		int[] edgeTargets = new int[connectionsCount];
+		long[] edgeAccess = new long[connectionsCount];
+		int edgesCount = 0;
+		for (int c = 0; c < connectionsCount; c++) {
+			int targetIndex = nodeIdIndex.getOrDefault(connectionTargetNodeIds.getLong(c), CSRRoutingGraph.NOT_FOUND);
+			if (targetIndex != CSRRoutingGraph.NOT_FOUND) {
+				boolean startToEnd = connectionNodeIds.getLong(c) == startNodeIds.getLong(targetIndex);
+				edgeSources[edgesCount] = connectionSources.getInt(c);
+				edgeTargets[edgesCount] = CSRRoutingGraph.getState(targetIndex, startToEnd);
+				edgeAccess[edgesCount] = connectionAccess.getLong(c);
+				edgesCount++;
+			}
+		}
+
+		int segmentsCount = segmentIds.size();
+		CSRRoutingGraph routingGraph = new CSRRoutingGraph(metadata, segmentIds.toLongArray(), nodeIds.toLongArray(),
+				lengthCosts.toFloatArray(), minDurationCosts.toFloatArray(), edgeSources, edgeTargets, edgeAccess, edgesCount);
+
+		log.info("In-memory routing graph for graph version " + graphVersionName + " built with " + segmentsCount
+				+ " segments and " + edgesCount + " connections in " + (System.currentTimeMillis() - startTime) + " ms");
+		return routingGraph;
+	}
+
+	private void addConnections(Node segmentNode, WaySegmentRelationshipType relationshipType, int sourceState,
+			IntArrayList connectionSources, LongArrayList connectionTargetNodeIds, LongArrayList connectionNodeIds,
+			LongArrayList connectionAccess) {
+		for (Relationship rel : segmentNode.getRelationships(Direction.OUTGOING, relationshipType)) {
+			connectionSources.add(sourceState);
+			connectionTargetNodeIds.add(rel.getEndNodeId());
+			connectionNodeIds.add((long) rel.getProperty(WayGraphConstants.CONNECTION_NODE_ID));
+			connectionAccess.add(Neo4jWaySegmentHelperImpl.getConnectionAccessBitmask(rel));
+		}
+	}
+
+	@Override
+	public void update(Observable observable, Object metadataObj) {
+		if (!enabled) {
+			return;
+		}
+		if (metadataObj instanceof IWayGraphVersionMetadata) {
+			IWayGraphVersionMetadata metadata = (IWayGraphVersionMetadata) metadataObj;
+			if (metadata.getState().equals(State.ACTIVE)) {
+				log.info("Got update to rebuild in-memory routing graph");
+				rebuildExecutor.execute(() -> activate(metadata));
+			} else if (metadata.getState().equals(State.DELETED)) {
+				rebuildExecutor.execute(() -> remove(metadata));
+			}
+		} else {
+			log.warn("Got update to rebuild in-memory routing graph, but argument object was no instance of IWayGraphVersionMetadata");
+		}
+	}
+
+	private void activate(IWayGraphVersionMetadata metadata) {
+		// if a new graph version has been activated the routing graph has to be rebuilt
+		CSRRoutingGraph routingGraph = routingGraphs.get(metadata.getGraphName());
+		if (routingGraph == null ||
+			routingGraph.getMetadata().getValidFrom().before(metadata.getValidFrom())) {
+			try {
+				putRoutingGraph(buildRoutingGraph(metadata));
+			} catch (RuntimeException e) {
+				log.error("Could not build in-memory routing graph of graph version " + metadata.getGraphName() + "_" + 
+						metadata.getVersion(), e);
+			}
+		}
+	}
+
+	private void remove(IWayGraphVersionMetadata metadata) {
+		CSRRoutingGraph routingGraph = routingGraphs.get(metadata.getGraphName());
+		if (routingGraph != null && routingGraph.getVersion().equals(metadata.getVersion())) {
+			log.info("Removing in-memory routing graph of graph version " + metadata.getGraphName() + "_" + 
+					metadata.getVersion());
+			routingGraphs.remove(metadata.getGraphName());
+			contractionHierarchies.values().removeIf(h -> h.getRoutingGraph() == routingGraph);
+			landmarkDistances.values().removeIf(l -> l.getRoutingGraph() == routingGraph);
+		}
+		if (contractionHierarchyStore != null) {
+			contractionHierarchyStore.delete(GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion()));
+		}
+	}
+
+	public IGraphVersionMetadataService getMetadataService() {
+		return metadataService;
+	}
+
+	public void setMetadataService(IGraphVersionMetadataService metadataService) {
+		this.metadataService = metadataService;
+	}
+
+	public IGraphDatabaseProvider getGraphDatabaseProvider() {
+		return graphDatabaseProvider;
+	}
+
+	public void setGraphDatabaseProvider(IGraphDatabaseProvider graphDatabaseProvider) {
+		this.graphDatabaseProvider = graphDatabaseProvider;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getContractionHierarchiesProfiles() {
+		return contractionHierarchiesProfiles;
+	}
+
+	public void setContractionHierarchiesProfiles(String contractionHierarchiesProfiles) {
+		this.contractionHierarchiesProfiles = contractionHierarchiesProfiles;
+	}
+
+	public ContractionHierarchyStore getContractionHierarchyStore() {
+		return contractionHierarchyStore;
+	}
+
+	public void setContractionHierarchyStore(ContractionHierarchyStore contractionHierarchyStore) {
+		this.contractionHierarchyStore = contractionHierarchyStore;
+	}
+
+	public int getLandmarksCount() {
+		return landmarksCount;
+	}
+
+	public void setLandmarksCount(int landmarksCount) {
+		this.landmarksCount = landmarksCount;
+	}
+
+}
@@ -21,6 +21,8 @@ import java.util.List;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.io.ParseException;
@@ -28,21 +30,32 @@ import com.vividsolutions.jts.io.ParseException;
 import at.srfg.graphium.model.IWaySegment;
 import at.srfg.graphium.neo4j.persistence.configuration.IGraphDatabaseProvider;
 import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.routing.algo.ISegmentIdToRoutingNodeResolver;
 import at.srfg.graphium.routing.exception.RoutingException;
 import at.srfg.graphium.routing.exception.UnkownRoutingAlgoException;
 import at.srfg.graphium.routing.model.IRoute;
 import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.neo4j.algos.impl.Neo4jRoutingAlgoFactoryImpl;
+import at.srfg.graphium.routing.neo4j.model.IRoutingMatrix;
+import at.srfg.graphium.routing.neo4j.model.impl.RoutingMatrixImpl;
 import at.srfg.graphium.routing.service.IRoutingService;
 import at.srfg.graphium.routing.service.impl.GenericRoutingServiceImpl;
+import at.srfg.graphium.routing.service.neo4j.IRoutingMatrixService;
 
 /**
  * @author mwimmer
  *
  */
 public class Neo4jRoutingServiceImpl extends GenericRoutingServiceImpl<IWaySegment, Node, Double, IRoutingOptions>
-	implements IRoutingService<IWaySegment, Double, IRoutingOptions> {
+	implements IRoutingService<IWaySegment, Double, IRoutingOptions>, IRoutingMatrixService {
 	
+	private static Logger log = LoggerFactory.getLogger(Neo4jRoutingServiceImpl.class);
+
 	protected IGraphDatabaseProvider graphDatabaseProvider;
+	protected Neo4jRoutingAlgoFactoryImpl<IWaySegment> matrixAlgoFactory;
+	protected ISegmentIdToRoutingNodeResolver<Node> matrixNodeResolver;
+	// maximum number of cells (sources x targets) of a routing matrix
+	private int maxMatrixSize = 1000000;
 	
 	@Override
 	public IRoute<IWaySegment, Double> route(IRoutingOptions options)
@@ -75,6 +88,50 @@ public class Neo4jRoutingServiceImpl extends GenericRoutingServiceImpl<IWaySegme
 		return route;
 	}
 
+	@Override
+	public IRoutingMatrix routeMatrix(IRoutingOptions options, List<Long> sourceSegmentIds, List<Long> targetSegmentIds) {
+		if ((long) sourceSegmentIds.size() * targetSegmentIds.size() > maxMatrixSize) {
+			throw new IllegalArgumentException("routing matrix of " + sourceSegmentIds.size() + " x "
+					+ targetSegmentIds.size() + " segments exceeds maximum size of " + maxMatrixSize);
+		}
+		long startTime = System.currentTimeMillis();
+		float[] costs;
+		try (Transaction tx = graphDatabaseProvider.getGraphDatabase().beginTx()) {
+			Node[] sourceNodes = resolveNodes(options, sourceSegmentIds);
+			Node[] targetNodes = resolveNodes(options, targetSegmentIds);
+			costs = matrixAlgoFactory.createMatrixInstance(options).calculateMatrix(sourceNodes, targetNodes);
+			tx.success();
+		}
+		long runtime = System.currentTimeMillis() - startTime;
+		log.info("routing matrix of " + sourceSegmentIds.size() + " x " + targetSegmentIds.size()
+				+ " segments calculated in " + runtime + " ms");
+		return new RoutingMatrixImpl(options.getGraphName(), options.getGraphVersion(),
+				toArray(sourceSegmentIds), toArray(targetSegmentIds), costs, runtime);
+	}
+
+	/**
+	 * @return routing node per segment ID; null if the segment could not be resolved
+	 */
+	private Node[] resolveNodes(IRoutingOptions options, List<Long> segmentIds) {
+		Node[] nodes = new Node[segmentIds.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			Long segmentId = segmentIds.get(i);
+			if (segmentId != null) {
+				nodes[i] = matrixNodeResolver.resolveSegment(segmentId, options.getGraphName(), options.getGraphVersion());
+			}
+		}
+		return nodes;
+	}
+
+	private long[] toArray(List<Long> segmentIds) {
+		long[] ids = new long[segmentIds.size()];
+		for (int i = 0; i < ids.length; i++) {
+			Long segmentId = segmentIds.get(i);
+			ids[i] = segmentId != null ? segmentId : 0;
+		}
+		return ids;
+	}
+
 	@Override
 	protected LineString getNodeGeometry(Node node) {
 		try {
@@ -97,4 +154,28 @@ public class Neo4jRoutingServiceImpl extends GenericRoutingServiceImpl<IWaySegme
 		this.graphDatabaseProvider = graphDatabaseProvider;
 	}
 
+	public Neo4jRoutingAlgoFactoryImpl<IWaySegment> getMatrixAlgoFactory() {
+		return matrixAlgoFactory;
+	}
+
+	public void setMatrixAlgoFactory(Neo4jRoutingAlgoFactoryImpl<IWaySegment> matrixAlgoFactory) {
+		this.matrixAlgoFactory = matrixAlgoFactory;
+	}
+
+	public ISegmentIdToRoutingNodeResolver<Node> getMatrixNodeResolver() {
+		return matrixNodeResolver;
+	}
+
+	public void setMatrixNodeResolver(ISegmentIdToRoutingNodeResolver<Node> matrixNodeResolver) {
+		this.matrixNodeResolver = matrixNodeResolver;
+	}
+
+	public int getMaxMatrixSize() {
+		return maxMatrixSize;
+	}
+
+	public void setMaxMatrixSize(int maxMatrixSize) {
+		this.maxMatrixSize = maxMatrixSize;
+	}
+
 }
\ No newline at end of file
@@ -26,7 +26,7 @@ import at.srfg.graphium.core.persistence.IWayGraphReadDao;
 import at.srfg.graphium.model.FuncRoadClass;
 import at.srfg.graphium.model.IWaySegment;
 import at.srfg.graphium.model.impl.WaySegment;
-import at.srfg.graphium.neo4j.model.cache.SegmentCacheEntry;
+import at.srfg.graphium.neo4j.model.cache.GraphSegmentsCacheEntry;
 import at.srfg.graphium.neo4j.service.impl.STRTreeCacheManager;
 import at.srfg.graphium.routing.service.impl.WaySegmentsByIdLoaderImpl;
 
@@ -55,12 +55,15 @@ public class Neo4jWaySegmentsByIdLoaderImpl<T extends IWaySegment> extends WaySe
 		
 		// use cache
 		if (cache != null) {
-			segments = new ArrayList<>();
-			SegmentCacheEntry cacheEntry;
-			for (Long segmentId : segmentIds) {
-				cacheEntry = cache.getCacheEntryPerSegmentId(graphName, graphVersion, segmentId);
-				if (cacheEntry != null) {
-					segments.add(adapt(cacheEntry));
+			GraphSegmentsCacheEntry segmentsCache = cache.getSegmentsCache(graphName, graphVersion);
+			if (segmentsCache != null) {
+				segments = new ArrayList<>(segmentIds.size());
+				int index;
+				for (Long segmentId : segmentIds) {
+					index = segmentsCache.getIndexPerSegmentId(segmentId);
+					if (index != GraphSegmentsCacheEntry.NOT_CACHED) {
+						segments.add(adapt(segmentsCache, index));
+					}
 				}
 			}
 		}
@@ -72,14 +75,14 @@ public class Neo4jWaySegmentsByIdLoaderImpl<T extends IWaySegment> extends WaySe
 		return segments;
 	}
 
-	private T adapt(SegmentCacheEntry cacheEntry) {
+	private T adapt(GraphSegmentsCacheEntry segmentsCache, int index) {
 		T segment = (T) new WaySegment();
-		segment.setId(cacheEntry.getId());
-		segment.setGeometry(cacheEntry.getGeometry());
-		segment.setLength(cacheEntry.getLength());
-		segment.setMaxSpeedTow(cacheEntry.getMaxSpeedTow());
-		segment.setMaxSpeedBkw(cacheEntry.getMaxSpeedBkw());
-		segment.setFrc(FuncRoadClass.getFuncRoadClassForValue(cacheEntry.getFrc()));
+		segment.setId(segmentsCache.getSegmentId(index));
+		segment.setGeometry(segmentsCache.getGeometry(index));
+		segment.setLength(segmentsCache.getLength(index));
+		segment.setMaxSpeedTow(segmentsCache.getMaxSpeedTow(index));
+		segment.setMaxSpeedBkw(segmentsCache.getMaxSpeedBkw(index));
+		segment.setFrc(FuncRoadClass.getFuncRoadClassForValue(segmentsCache.getFrc(index)));
 		return segment;
 	}
 
@@ -0,0 +1,186 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import at.srfg.graphium.geomutils.GeometryUtils;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.traversal.DirectedOutgoingConnectionPathExpander;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.evaluators.impl.NodeBasedCostEstimator;
+import at.srfg.graphium.routing.neo4j.evaluators.impl.NodeBasedCostEvaluator;
+
+/**
+ * Compares routes of {@link AStar} with routes of {@link Dijkstra} on a grid of segments whose lengths are at least
+ * the distances between their end points.
+ */
+public class TestAStar {
+
+	private static final int GRID_SIZE = 12;
+	private static final int ROUTES = 200;
+	// grid spacing in degrees
+	private static final double SPACING = 0.001;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphDatabaseService graphDb;
+	private List<Node> segments;
+
+	@Before
+	public void setup() throws Exception {
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("db"));
+		segments = createGrid(new Random(7));
+	}
+
+	@After
+	public void shutdown() {
+		graphDb.shutdown();
+	}
+
+	@Test
+	public void testEqualCostsLength() {
+		assertEqualCosts(RoutingCriteria.LENGTH, WayGraphConstants.SEGMENT_LENGTH);
+	}
+
+	@Test
+	public void testEqualCostsMinDuration() {
+		assertEqualCosts(RoutingCriteria.MIN_DURATION, RoutingCriteria.MIN_DURATION.getValue());
+	}
+
+	private void assertEqualCosts(RoutingCriteria criteria, String costProperty) {
+		IRoutingOptions options = new RoutingOptionsImpl("test", "1");
+		options.setCriteria(criteria);
+		Dijkstra<IWaySegment> dijkstra = new Dijkstra<>(new DirectedOutgoingConnectionPathExpander<>(null),
+				new NodeBasedCostEvaluator("test", "1", null, costProperty), options);
+		AStar<IWaySegment> astar = new AStar<>(new DirectedOutgoingConnectionPathExpander<>(null),
+				new NodeBasedCostEvaluator("test", "1", null, costProperty), new NodeBasedCostEstimator(criteria), options);
+
+		Random random = new Random(11);
+		try (Transaction tx = graphDb.beginTx()) {
+			for (int i = 0; i < ROUTES; i++) {
+				Node source = segments.get(random.nextInt(segments.size()));
+				Node target = segments.get(random.nextInt(segments.size()));
+				Path expected = dijkstra.calculateShortestPath(source, target);
+				Path path = astar.calculateShortestPath(source, target);
+				if (expected == null) {
+					Assert.assertNull(path);
+				} else {
+					Assert.assertNotNull(path);
+					Assert.assertEquals(expected.getTotalCost(), path.getTotalCost(), 0.001);
+					Assert.assertEquals(source, path.getNodes().get(0).getNeo4jNode());
+					Assert.assertEquals(target, path.getNodes().get(path.getNodes().size() - 1).getNeo4jNode());
+				}
+			}
+			tx.success();
+		}
+	}
+
+	/**
+	 * Creates segments between neighbouring junctions of a grid; directions are chosen randomly.
+	 */
+	private List<Node> createGrid(Random random) {
+		List<Node> gridSegments = new ArrayList<>();
+		try (Transaction tx = graphDb.beginTx()) {
+			long segmentId = 1;
+			for (int x = 0; x < GRID_SIZE; x++) {
+				for (int y = 0; y < GRID_SIZE; y++) {
+					if (x + 1 < GRID_SIZE) {
+						gridSegments.add(createSegment(segmentId++, x, y, x + 1, y, random));
+					}
+					if (y + 1 < GRID_SIZE) {
+						gridSegments.add(createSegment(segmentId++, x, y, x, y + 1, random));
+					}
+				}
+			}
+			for (Node from : gridSegments) {
+				for (Node to : gridSegments) {
+					if (from != to) {
+						connect(from, to);
+					}
+				}
+			}
+			tx.success();
+		}
+		return gridSegments;
+	}
+
+	private Node createSegment(long segmentId, int x1, int y1, int x2, int y2, Random random) {
+		if (random.nextBoolean()) {
+			return createSegment(segmentId, x2, y2, x1, y1, random);
+		}
+		Coordinate start = new Coordinate(13 + x1 * SPACING, 47 + y1 * SPACING);
+		Coordinate end = new Coordinate(13 + x2 * SPACING, 47 + y2 * SPACING);
+		// segments are not straight, so they are longer than the distance between their end points
+		float length = (float) (GeometryUtils.distanceAndoyer(start, end) * (1 + random.nextInt(100) / 100.0));
+		Node node = graphDb.createNode();
+		node.setProperty(WayGraphConstants.SEGMENT_ID, segmentId);
+		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_ID, junction(x1, y1));
+		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_ID, junction(x2, y2));
+		node.setProperty(WayGraphConstants.SEGMENT_START_X, start.x);
+		node.setProperty(WayGraphConstants.SEGMENT_START_Y, start.y);
+		node.setProperty(WayGraphConstants.SEGMENT_END_X, end.x);
+		node.setProperty(WayGraphConstants.SEGMENT_END_Y, end.y);
+		node.setProperty(WayGraphConstants.SEGMENT_LENGTH, length);
+		// speeds up to 130 km/h
+		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_TOW, (int) Math.ceil(length / ((30 + random.nextInt(100)) / 3.6)));
+		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_BKW, (int) Math.ceil(length / ((30 + random.nextInt(100)) / 3.6)));
+		return node;
+	}
+
+	private void connect(Node from, Node to) {
+		long fromStart = (long) from.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID);
+		long fromEnd = (long) from.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID);
+		for (String key : new String[] {WayGraphConstants.SEGMENT_STARTNODE_ID, WayGraphConstants.SEGMENT_ENDNODE_ID}) {
+			long junction = (long) to.getProperty(key);
+			// grid has no parallel segments, so two segments share at most one junction
+			if (junction == fromStart || junction == fromEnd) {
+				Relationship rel = from.createRelationshipTo(to, junction == fromStart ?
+						WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE : WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE);
+				rel.setProperty(WayGraphConstants.CONNECTION_NODE_ID, junction);
+				return;
+			}
+		}
+	}
+
+	private long junction(int x, int y) {
+		return x * GRID_SIZE + y;
+	}
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.traversal.DirectedIncomingConnectionPathExpander;
+import at.srfg.graphium.neo4j.traversal.DirectedOutgoingConnectionPathExpander;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+
+/**
+ * Compares routes of {@link BidirectionalDijkstra} with routes of {@link Dijkstra}.
+ */
+public class TestBidirectionalDijkstra {
+
+	private static final int GRID_SIZE = 12;
+	private static final int ROUTES = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphDatabaseService graphDb;
+	private IRoutingOptions options = new RoutingOptionsImpl("test", "1");
+	private Dijkstra<IWaySegment> dijkstra;
+	private BidirectionalDijkstra<IWaySegment> bidirectionalDijkstra;
+
+	private CostEvaluator<Double> costEvaluator = (rel, direction) ->
+			(Double) rel.getEndNode().getProperty(WayGraphConstants.SEGMENT_LENGTH);
+
+	@Before
+	public void setup() throws Exception {
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("db"));
+		dijkstra = new Dijkstra<>(new DirectedOutgoingConnectionPathExpander<>(null), costEvaluator, options);
+		bidirectionalDijkstra = new BidirectionalDijkstra<>(new DirectedOutgoingConnectionPathExpander<>(null),
+				new DirectedIncomingConnectionPathExpander<>(null), costEvaluator, options);
+	}
+
+	@After
+	public void shutdown() {
+		graphDb.shutdown();
+	}
+
+	/**
+	 * Routes on a randomly weighted grid of segments.
+	 */
+	@Test
+	public void testEqualCosts() {
+		Random random = new Random(7);
+		try (Transaction tx = graphDb.beginTx()) {
+			// segments between neighbouring junctions of the grid; directions are chosen randomly
+			List<Node> segments = new ArrayList<>();
+			long segmentId = 1;
+			for (int x = 0; x < GRID_SIZE; x++) {
+				for (int y = 0; y < GRID_SIZE; y++) {
+					if (x + 1 < GRID_SIZE) {
+						segments.add(createSegment(segmentId++, junction(x, y), junction(x + 1, y),
+								1 + random.nextInt(100) / 10.0, random.nextBoolean()));
+					}
+					if (y + 1 < GRID_SIZE) {
+						segments.add(createSegment(segmentId++, junction(x, y), junction(x, y + 1),
+								1 + random.nextInt(100) / 10.0, random.nextBoolean()));
+					}
+				}
+			}
+			connectAll(segments);
+
+			for (int i = 0; i < ROUTES; i++) {
+				Node source = segments.get(random.nextInt(segments.size()));
+				Node target = segments.get(random.nextInt(segments.size()));
+				if (!source.equals(target)) {
+					assertEqualRoutes(source, target);
+				}
+			}
+			tx.success();
+		}
+	}
+
+	/**
+	 * The backward search meets the forward search on segment v entering it from junction 1. Afterwards the
+	 * backward label of v is improved via segment b, which enters v from junction 2 like the forward search. The
+	 * route must still use the meeting recorded before instead of turning on v.
+	 */
+	@Test
+	public void testMeetingLabelImprovedAfterwards() {
+		try (Transaction tx = graphDb.beginTx()) {
+			Node s = createSegment(1, 0, 2, 1, false);
+			Node v = createSegment(2, 2, 1, 5, false);
+			Node a = createSegment(3, 1, 3, 10, false);
+			Node t = createSegment(4, 3, 4, 1, false);
+			Node c = createSegment(5, 4, 5, 1, false);
+			Node b = createSegment(6, 5, 2, 1, false);
+			List<Node> segments = new ArrayList<>();
+			Collections.addAll(segments, v, a, t, c, b);
+			connectAll(segments);
+			connect(s, v);
+			connect(v, s);
+			// dead end keeps the forward search busy until the backward search has reached b
+			Node deadEnd = s;
+			for (int i = 0; i < 4; i++) {
+				Node segment = createSegment(10 + i, i == 0 ? 0 : 5 + i, 6 + i, 1, false);
+				connect(deadEnd, segment);
+				connect(segment, deadEnd);
+				deadEnd = segment;
+			}
+
+			assertEqualRoutes(s, t);
+			tx.success();
+		}
+	}
+
+	private void assertEqualRoutes(Node source, Node target) {
+		Path expected = dijkstra.calculateShortestPath(source, target);
+		Path path = bidirectionalDijkstra.calculateShortestPath(source, target);
+		Assert.assertNotNull(expected);
+		Assert.assertNotNull(path);
+		Assert.assertEquals(expected.getTotalCost(), path.getTotalCost(), 0.0001);
+
+		List<PathNode> nodes = path.getNodes();
+		Assert.assertEquals(source, nodes.get(0).getNeo4jNode());
+		Assert.assertEquals(target, nodes.get(nodes.size() - 1).getNeo4jNode());
+		assertValidPath(path);
+	}
+
+	/**
+	 * Checks that the path is connected, contains no U-turns and that its costs match the total costs.
+	 */
+	private void assertValidPath(Path path) {
+		List<PathNode> nodes = path.getNodes();
+		double cost = 0;
+		long lastConnection = -1;
+		for (int i = 1; i < nodes.size(); i++) {
+			Node pred = nodes.get(i - 1).getNeo4jNode();
+			Node succ = nodes.get(i).getNeo4jNode();
+			long connection = getConnection(pred, succ);
+			Assert.assertNotEquals("path is not connected", -1, connection);
+			Assert.assertNotEquals("path contains U-turn", lastConnection, connection);
+			lastConnection = connection;
+			cost += (Double) succ.getProperty(WayGraphConstants.SEGMENT_LENGTH);
+		}
+		Assert.assertEquals(cost, path.getTotalCost(), 0.0001);
+	}
+
+	private Node createSegment(long segmentId, long junction1, long junction2, double length, boolean reverse) {
+		Node node = graphDb.createNode();
+		node.setProperty(WayGraphConstants.SEGMENT_ID, segmentId);
+		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_ID, reverse ? junction2 : junction1);
+		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_ID, reverse ? junction1 : junction2);
+		node.setProperty(WayGraphConstants.SEGMENT_LENGTH, length);
+		return node;
+	}
+
+	private void connectAll(List<Node> segments) {
+		for (Node from : segments) {
+			for (Node to : segments) {
+				if (from != to) {
+					connect(from, to);
+				}
+			}
+		}
+	}
+
+	private void connect(Node from, Node to) {
+		long connection = getConnection(from, to);
+		if (connection != -1) {
+			WaySegmentRelationshipType type;
+			if (connection == (long) from.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID)) {
+				type = WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE;
+			} else {
+				type = WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE;
+			}
+			Relationship rel = from.createRelationshipTo(to, type);
+			rel.setProperty(WayGraphConstants.CONNECTION_NODE_ID, connection);
+		}
+	}
+
+	// grid has no parallel segments, so two segments share at most one junction
+	private long getConnection(Node segment1, Node segment2) {
+		long start = (long) segment1.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID);
+		long end = (long) segment1.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID);
+		for (String key : new String[] {WayGraphConstants.SEGMENT_STARTNODE_ID, WayGraphConstants.SEGMENT_ENDNODE_ID}) {
+			long junction = (long) segment2.getProperty(key);
+			if (junction == start || junction == end) {
+				return junction;
+			}
+		}
+		return -1;
+	}
+
+	private long junction(int x, int y) {
+		return x * GRID_SIZE + y;
+	}
+
+}
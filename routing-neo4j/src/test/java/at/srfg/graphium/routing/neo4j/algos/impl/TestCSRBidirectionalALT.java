@@ -0,0 +1,97 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistances;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistancesBuilder;
+import at.srfg.graphium.routing.neo4j.graph.RoutingGraphGenerator;
+
+/**
+ * Compares routes of {@link CSRBidirectionalALT} with routes of {@link CSRDijkstra}.
+ */
+public class TestCSRBidirectionalALT {
+
+	private static final int ROUTES = 300;
+
+	@Test
+	public void testEqualCostsLength() {
+		assertEqualCosts(RoutingGraphGenerator.createGrid(12, 5), RoutingCriteria.LENGTH, false);
+	}
+
+	@Test
+	public void testEqualCostsMinDuration() {
+		assertEqualCosts(RoutingGraphGenerator.createGrid(12, 5), RoutingCriteria.MIN_DURATION, false);
+	}
+
+	@Test
+	public void testEqualCostsOffsetAware() {
+		assertEqualCosts(RoutingGraphGenerator.createGrid(12, 5), RoutingCriteria.LENGTH, true);
+	}
+
+	/**
+	 * Costs exceed the 16 bit value range of stored landmark distances.
+	 */
+	@Test
+	public void testEqualCostsCoarseScale() {
+		assertEqualCosts(RoutingGraphGenerator.createGrid(12, 5, 1000), RoutingCriteria.LENGTH, true);
+	}
+
+	private void assertEqualCosts(CSRRoutingGraph graph, RoutingCriteria criteria, boolean offsetAware) {
+		IRoutingOptions options = new RoutingOptionsImpl("test", "1");
+		options.setCriteria(criteria);
+		options.setMode(RoutingMode.CAR);
+		LandmarkDistances landmarks = new LandmarkDistancesBuilder(graph, criteria, 6).build();
+
+		CSRDijkstra<IWaySegment> dijkstra = new CSRDijkstra<>(graph, options, offsetAware, null);
+		CSRBidirectionalALT<IWaySegment> alt = new CSRBidirectionalALT<>(graph, landmarks, options, offsetAware, null);
+
+		Random random = new Random(19);
+		for (int i = 0; i < ROUTES; i++) {
+			int source = random.nextInt(graph.getSegmentsCount());
+			int target = random.nextInt(graph.getSegmentsCount());
+			Node sourceNode = RoutingGraphGenerator.createNode(graph, source);
+			Node targetNode = RoutingGraphGenerator.createNode(graph, target);
+			float startWeight = random.nextFloat();
+			float endWeight = random.nextFloat();
+
+			IRoutedPath<Double> expected = dijkstra.bestRoute(options, sourceNode, startWeight, targetNode, endWeight);
+			IRoutedPath<Double> path = alt.bestRoute(options, sourceNode, startWeight, targetNode, endWeight);
+			if (expected == null) {
+				Assert.assertNull(path);
+			} else {
+				Assert.assertNotNull("no route from segment " + source + " to " + target, path);
+				Assert.assertEquals("route from segment " + source + " to " + target, expected.getCost(), path.getCost(),
+						expected.getCost() * 1e-6);
+			}
+		}
+	}
+
+}
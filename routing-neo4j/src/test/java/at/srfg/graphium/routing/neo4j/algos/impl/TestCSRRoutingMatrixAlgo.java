@@ -0,0 +1,115 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchy;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchyBuilder;
+import at.srfg.graphium.routing.neo4j.graph.RoutingGraphGenerator;
+
+/**
+ * Compares costs of {@link CSRRoutingMatrixAlgo} with costs of routes of {@link CSRDijkstra} per source and target.
+ */
+public class TestCSRRoutingMatrixAlgo {
+
+	private static final int SOURCES = 15;
+	private static final int TARGETS = 20;
+
+	@Test
+	public void testEqualCostsLength() {
+		assertEqualCosts(RoutingCriteria.LENGTH, false);
+	}
+
+	@Test
+	public void testEqualCostsMinDuration() {
+		assertEqualCosts(RoutingCriteria.MIN_DURATION, false);
+	}
+
+	@Test
+	public void testEqualCostsOnContractionHierarchyLength() {
+		assertEqualCosts(RoutingCriteria.LENGTH, true);
+	}
+
+	@Test
+	public void testEqualCostsOnContractionHierarchyMinDuration() {
+		assertEqualCosts(RoutingCriteria.MIN_DURATION, true);
+	}
+
+	private void assertEqualCosts(RoutingCriteria criteria, boolean useHierarchy) {
+		CSRRoutingGraph graph = RoutingGraphGenerator.createGrid(12, 9);
+		IRoutingOptions options = createOptions(criteria);
+		ContractionHierarchy hierarchy = null;
+		if (useHierarchy) {
+			hierarchy = new ContractionHierarchyBuilder(graph, criteria,
+					AbstractCSRRoutingAlgo.getRequiredAccess(options.getMode())).build();
+		}
+
+		Random random = new Random(23);
+		Node[] sources = createNodes(graph, SOURCES, random);
+		Node[] targets = createNodes(graph, TARGETS, random);
+		// same segment as source and target, duplicate target and target which is not part of the routing graph
+		targets[0] = sources[0];
+		targets[1] = targets[2];
+		targets[3] = null;
+
+		float[] matrix = new CSRRoutingMatrixAlgo(graph, hierarchy, options, null).calculateMatrix(sources, targets);
+
+		Assert.assertEquals(SOURCES * TARGETS, matrix.length);
+		CSRDijkstra<IWaySegment> dijkstra = new CSRDijkstra<>(graph, options, false, null);
+		for (int i = 0; i < SOURCES; i++) {
+			for (int j = 0; j < TARGETS; j++) {
+				float cost = matrix[i * TARGETS + j];
+				IRoutedPath<Double> path = targets[j] == null ? null : dijkstra.bestRoute(options, sources[i], 0, targets[j], 1);
+				if (path == null) {
+					Assert.assertTrue("source " + i + ", target " + j, Float.isInfinite(cost));
+				} else {
+					Assert.assertEquals("source " + i + ", target " + j, path.getCost(), cost, 0.01);
+				}
+			}
+		}
+		Assert.assertEquals(0, matrix[0], 0);
+	}
+
+	private IRoutingOptions createOptions(RoutingCriteria criteria) {
+		IRoutingOptions options = new RoutingOptionsImpl("test", "1");
+		options.setCriteria(criteria);
+		options.setMode(RoutingMode.CAR);
+		return options;
+	}
+
+	private Node[] createNodes(CSRRoutingGraph graph, int count, Random random) {
+		Node[] nodes = new Node[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = RoutingGraphGenerator.createNode(graph, random.nextInt(graph.getSegmentsCount()));
+		}
+		return nodes;
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.algos.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDijkstraSearchSpace {
+
+	@Test
+	public void testLabels() {
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		try {
+			Assert.assertEquals(DijkstraSearchSpace.NOT_FOUND, space.getLabel(10));
+			int source = space.addLabel(10, null, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+			int a = space.addLabel(20, null, null, 5, 0, source);
+			int b = space.addLabel(30, null, null, 3, 0, source);
+			Assert.assertEquals(source, space.getLabel(10));
+			Assert.assertEquals(a, space.getLabel(20));
+			Assert.assertEquals(30, space.getId(b));
+
+			Assert.assertEquals(source, space.poll());
+			Assert.assertTrue(space.isSettled(source));
+			Assert.assertFalse(space.isSettled(a));
+
+			// lower costs re-parent the label and decrease its key
+			space.updateLabel(a, null, 2, b);
+			Assert.assertEquals(2, space.getCost(a), 0);
+			Assert.assertEquals(b, space.getParent(a));
+			Assert.assertEquals(2, space.peekKey(), 0);
+
+			Assert.assertEquals(a, space.poll());
+			Assert.assertEquals(b, space.poll());
+			Assert.assertTrue(space.isQueueEmpty());
+			Assert.assertEquals(3, space.getSettledCount());
+		} finally {
+			space.release();
+		}
+	}
+
+	@Test
+	public void testEstimates() {
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		try {
+			int a = space.addLabel(1, null, null, 1, 10, DijkstraSearchSpace.NOT_FOUND);
+			int b = space.addLabel(2, null, null, 5, 0, DijkstraSearchSpace.NOT_FOUND);
+			// key is cost plus estimate
+			Assert.assertEquals(5, space.peekKey(), 0);
+			Assert.assertEquals(b, space.poll());
+			Assert.assertEquals(a, space.poll());
+		} finally {
+			space.release();
+		}
+	}
+
+	@Test
+	public void testGrow() {
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		try {
+			int count = 5000;
+			for (int i = 0; i < count; i++) {
+				space.addLabel(i, null, null, count - i, 0, i - 1);
+			}
+			for (int i = count - 1; i >= 0; i--) {
+				int label = space.poll();
+				Assert.assertEquals(i, space.getId(label));
+				Assert.assertEquals(i - 1, space.getParent(label));
+			}
+		} finally {
+			space.release();
+		}
+	}
+
+	@Test
+	public void testReleasedSpaceIsCleared() {
+		DijkstraSearchSpace space = DijkstraSearchSpace.acquire();
+		space.addLabel(1, null, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+		space.poll();
+		space.addLabel(2, null, null, 1, 0, DijkstraSearchSpace.NOT_FOUND);
+		space.release();
+
+		DijkstraSearchSpace pooled = DijkstraSearchSpace.acquire();
+		try {
+			// search spaces are pooled per thread
+			Assert.assertSame(space, pooled);
+			Assert.assertEquals(DijkstraSearchSpace.NOT_FOUND, pooled.getLabel(1));
+			Assert.assertEquals(DijkstraSearchSpace.NOT_FOUND, pooled.getLabel(2));
+			Assert.assertTrue(pooled.isQueueEmpty());
+			Assert.assertEquals(0, pooled.getSettledCount());
+
+			int label = pooled.addLabel(3, null, null, 0, 0, DijkstraSearchSpace.NOT_FOUND);
+			Assert.assertEquals(0, label);
+			Assert.assertFalse(pooled.isSettled(label));
+		} finally {
+			pooled.release();
+		}
+	}
+
+}
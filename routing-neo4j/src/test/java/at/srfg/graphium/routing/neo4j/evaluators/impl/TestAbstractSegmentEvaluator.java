@@ -0,0 +1,158 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.evaluators.impl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+
+/**
+ * Tests the traversal direction of segments derived from connections with and without precomputed direction flags.
+ */
+public class TestAbstractSegmentEvaluator {
+
+	private static final int DURATION_TOW = 10;
+	private static final int DURATION_BKW = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphDatabaseService graphDb;
+	private NodeBasedCostEvaluator evaluator;
+
+	@Before
+	public void setup() throws Exception {
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("db"));
+		evaluator = new NodeBasedCostEvaluator("test", "1", null, WayGraphConstants.SEGMENT_LENGTH);
+	}
+
+	@After
+	public void shutdown() {
+		graphDb.shutdown();
+	}
+
+	@Test
+	public void testDirection() {
+		assertDirections(true);
+	}
+
+	@Test
+	public void testDirectionWithoutPrecomputedFlags() {
+		assertDirections(false);
+	}
+
+	@Test
+	public void testPrecomputedFlagsArePreferred() {
+		try (Transaction tx = graphDb.beginTx()) {
+			Node from = createSegment(1, 1, 2);
+			Node to = createSegment(2, 2, 3);
+			// connection node ID would result in a connection on the end segment's start node
+			Relationship rel = connect(from, to, 2, true);
+			rel.setProperty(WayGraphConstants.CONNECTION_DIRECTION, (byte) 0);
+
+			Assert.assertFalse(evaluator.isConnectedOnStartNode(to, rel, true));
+			Assert.assertFalse(evaluator.isTraversedTow(to, rel));
+			tx.success();
+		}
+	}
+
+	/**
+	 * Connects segment 1 (junction 1 to 2) with segments touching its start or end junction in both of their directions.
+	 */
+	private void assertDirections(boolean precomputed) {
+		try (Transaction tx = graphDb.beginTx()) {
+			Node segment = createSegment(1, 1, 2);
+			Node endToStart = createSegment(2, 2, 3);
+			Node endToEnd = createSegment(3, 4, 2);
+			Node startToStart = createSegment(4, 1, 5);
+			Node startToEnd = createSegment(5, 6, 1);
+
+			Relationship rel = connect(segment, endToStart, 2, precomputed);
+			assertDirection(segment, rel, false, false, true);
+			assertDirection(endToStart, rel, true, true, true);
+
+			rel = connect(segment, endToEnd, 2, precomputed);
+			assertDirection(segment, rel, false, false, true);
+			assertDirection(endToEnd, rel, true, false, false);
+
+			rel = connect(segment, startToStart, 1, precomputed);
+			assertDirection(segment, rel, false, true, false);
+			assertDirection(startToStart, rel, true, true, true);
+
+			rel = connect(segment, startToEnd, 1, precomputed);
+			assertDirection(segment, rel, false, true, false);
+			assertDirection(startToEnd, rel, true, false, false);
+
+			// reverse connection: segment is end node of the relationship
+			rel = connect(endToEnd, segment, 2, precomputed);
+			assertDirection(endToEnd, rel, false, false, true);
+			assertDirection(segment, rel, true, false, false);
+			tx.success();
+		}
+	}
+
+	private void assertDirection(Node node, Relationship rel, boolean endNode, boolean connectedOnStartNode, boolean tow) {
+		Assert.assertEquals(connectedOnStartNode, evaluator.isConnectedOnStartNode(node, rel, endNode));
+		Assert.assertEquals(tow, evaluator.isTraversedTow(node, rel));
+		Assert.assertEquals(tow ? DURATION_TOW : DURATION_BKW, evaluator.getMinDuration(node, rel));
+	}
+
+	private Node createSegment(long segmentId, long startNodeId, long endNodeId) {
+		Node node = graphDb.createNode();
+		node.setProperty(WayGraphConstants.SEGMENT_ID, segmentId);
+		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_ID, startNodeId);
+		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_ID, endNodeId);
+		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_TOW, DURATION_TOW);
+		node.setProperty(WayGraphConstants.SEGMENT_MIN_DURATION_BKW, DURATION_BKW);
+		return node;
+	}
+
+	/**
+	 * Creates the connection like the import; direction flags are only set if they have to be precomputed.
+	 */
+	private Relationship connect(Node from, Node to, long nodeId, boolean precomputed) {
+		boolean fromStartNode = (long) from.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) == nodeId;
+		boolean toStartNode = (long) to.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID) == nodeId;
+		Relationship rel = from.createRelationshipTo(to, fromStartNode ?
+				WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE : WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE);
+		rel.setProperty(WayGraphConstants.CONNECTION_NODE_ID, nodeId);
+		if (precomputed) {
+			byte direction = 0;
+			if (fromStartNode) {
+				direction |= WayGraphConstants.CONNECTION_DIRECTION_FROM_STARTNODE;
+			}
+			if (toStartNode) {
+				direction |= WayGraphConstants.CONNECTION_DIRECTION_TO_STARTNODE;
+			}
+			rel.setProperty(WayGraphConstants.CONNECTION_DIRECTION, direction);
+		}
+		return rel;
+	}
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.Random;
+
+import org.neo4j.graphdb.Node;
+
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Creates randomly weighted grids of segments as {@link CSRRoutingGraph}s for tests of in-memory routing.
+ *
+ * Segments connect neighbouring junctions of the grid, their geometry directions are chosen randomly. About
+ * every tenth segment is a one way; U-turns are not possible. Segment IDs start with 1, Neo4j node IDs with
+ * {@link #NODE_ID_OFFSET}.
+ */
+public class RoutingGraphGenerator {
+
+	public static final long NODE_ID_OFFSET = 1000;
+
+	public static CSRRoutingGraph createGrid(int size, long seed) {
+		return createGrid(size, seed, createMetadata(new Date(0)));
+	}
+
+	public static CSRRoutingGraph createGrid(int size, long seed, IWayGraphVersionMetadata metadata) {
+		return createGrid(size, seed, metadata, 1);
+	}
+
+	/**
+	 * @param costsFactor factor applied to all costs, e.g. to exceed the value range of compressed costs
+	 */
+	public static CSRRoutingGraph createGrid(int size, long seed, float costsFactor) {
+		return createGrid(size, seed, createMetadata(new Date(0)), costsFactor);
+	}
+
+	private static CSRRoutingGraph createGrid(int size, long seed, IWayGraphVersionMetadata metadata, float costsFactor) {
+		Random random = new Random(seed);
+		LongArrayList startJunctions = new LongArrayList();
+		LongArrayList endJunctions = new LongArrayList();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					addSegment(startJunctions, endJunctions, x * size + y, (x + 1) * size + y, random);
+				}
+				if (y + 1 < size) {
+					addSegment(startJunctions, endJunctions, x * size + y, x * size + y + 1, random);
+				}
+			}
+		}
+
+		int segmentsCount = startJunctions.size();
+		long[] segmentIds = new long[segmentsCount];
+		long[] nodeIds = new long[segmentsCount];
+		float[] lengthCosts = new float[segmentsCount * 2];
+		float[] minDurationCosts = new float[segmentsCount * 2];
+		boolean[] oneWay = new boolean[segmentsCount];
+		for (int i = 0; i < segmentsCount; i++) {
+			segmentIds[i] = i + 1;
+			nodeIds[i] = NODE_ID_OFFSET + i;
+			float length = (10 + random.nextInt(1000) / 10f) * costsFactor;
+			lengthCosts[CSRRoutingGraph.getState(i, true)] = length;
+			lengthCosts[CSRRoutingGraph.getState(i, false)] = length;
+			minDurationCosts[CSRRoutingGraph.getState(i, true)] = length / (5 + random.nextInt(30));
+			minDurationCosts[CSRRoutingGraph.getState(i, false)] = length / (5 + random.nextInt(30));
+			oneWay[i] = random.nextInt(10) == 0;
+		}
+
+		// connect each state with the states leaving its end junction
+		IntArrayList edgeSources = new IntArrayList();
+		IntArrayList edgeTargets = new IntArrayList();
+		for (int from = 0; from < segmentsCount * 2; from++) {
+			int fromIndex = CSRRoutingGraph.getSegmentIndex(from);
+			if (oneWay[fromIndex] && !CSRRoutingGraph.isStartToEnd(from)) {
+				continue;
+			}
+			long junction = CSRRoutingGraph.isStartToEnd(from) ? endJunctions.getLong(fromIndex) : startJunctions.getLong(fromIndex);
+			for (int to = 0; to < segmentsCount; to++) {
+				if (to == fromIndex) {
+					continue;
+				}
+				if (startJunctions.getLong(to) == junction) {
+					edgeSources.add(from);
+					edgeTargets.add(CSRRoutingGraph.getState(to, true));
+				} else if (endJunctions.getLong(to) == junction && !oneWay[to]) {
+					edgeSources.add(from);
+					edgeTargets.add(CSRRoutingGraph.getState(to, false));
+				}
+			}
+		}
+		long[] edgeAccess = new long[edgeSources.size()];
+		for (int e = 0; e < edgeAccess.length; e++) {
+			edgeAccess[e] = -1L;
+		}
+
+		return new CSRRoutingGraph(metadata, segmentIds, nodeIds, lengthCosts, minDurationCosts,
+				edgeSources.toIntArray(), edgeTargets.toIntArray(), edgeAccess, edgeAccess.length);
+	}
+
+	public static IWayGraphVersionMetadata createMetadata(Date validFrom) {
+		IWayGraphVersionMetadata metadata = new WayGraphVersionMetadata();
+		metadata.setGraphName("test");
+		metadata.setVersion("1");
+		metadata.setValidFrom(validFrom);
+		metadata.setStorageTimestamp(validFrom);
+		return metadata;
+	}
+
+	/**
+	 * @return Neo4j node providing only its ID, which is enough to resolve the segment in the routing graph
+	 */
+	public static Node createNode(CSRRoutingGraph graph, int segmentIndex) {
+		long nodeId = graph.getNodeId(segmentIndex);
+		return (Node) Proxy.newProxyInstance(Node.class.getClassLoader(), new Class<?>[] {Node.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getId":
+						return nodeId;
+					case "hashCode":
+						return Long.hashCode(nodeId);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "Node[" + nodeId + "]";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static void addSegment(LongArrayList startJunctions, LongArrayList endJunctions, long junction1,
+			long junction2, Random random) {
+		boolean reverse = random.nextBoolean();
+		startJunctions.add(reverse ? junction2 : junction1);
+		endJunctions.add(reverse ? junction1 : junction2);
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+public class TestContractionHierarchyBuilder {
+
+	@Test
+	public void testHierarchy() {
+		CSRRoutingGraph graph = RoutingGraphGenerator.createGrid(10, 1);
+		ContractionHierarchy hierarchy = new ContractionHierarchyBuilder(graph, RoutingCriteria.LENGTH, 0).build();
+		float[] costs = graph.getCosts(RoutingCriteria.LENGTH);
+
+		Assert.assertEquals(graph.getStatesCount(), hierarchy.getStatesCount());
+		Assert.assertTrue(hierarchy.getEdgesCount() >= graph.getEdgesCount());
+
+		// ranks are a permutation of the states
+		boolean[] ranked = new boolean[hierarchy.getStatesCount()];
+		for (int state = 0; state < hierarchy.getStatesCount(); state++) {
+			int rank = hierarchy.getRank(state);
+			Assert.assertFalse(ranked[rank]);
+			ranked[rank] = true;
+		}
+
+		for (int edge = 0; edge < hierarchy.getEdgesCount(); edge++) {
+			int source = hierarchy.getEdgeSource(edge);
+			int target = hierarchy.getEdgeTarget(edge);
+			Assert.assertNotEquals(hierarchy.getRank(source), hierarchy.getRank(target));
+
+			// weight of an edge is the sum of the costs of all states entered along the edge
+			IntArrayList states = new IntArrayList();
+			hierarchy.unpackEdge(edge, states);
+			Assert.assertEquals(target, states.getInt(states.size() - 1));
+			double weight = 0;
+			int pred = source;
+			for (int i = 0; i < states.size(); i++) {
+				int state = states.getInt(i);
+				Assert.assertTrue("unpacked edge is no connection of the routing graph", isConnected(graph, pred, state));
+				weight += costs[state];
+				pred = state;
+			}
+			Assert.assertEquals(weight, hierarchy.getEdgeWeight(edge), 0.001);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedCriteria() {
+		CSRRoutingGraph graph = RoutingGraphGenerator.createGrid(3, 1);
+		new ContractionHierarchyBuilder(graph, RoutingCriteria.CURRENT_DURATION, 0).build();
+	}
+
+	private boolean isConnected(CSRRoutingGraph graph, int source, int target) {
+		for (int edge = graph.getFirstOutgoingEdge(source); edge < graph.getFirstOutgoingEdge(source + 1); edge++) {
+			if (graph.getOutgoingEdgeTarget(edge) == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+
+public class TestContractionHierarchyStore {
+
+	private static final String GRAPH_VERSION = "test_1";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ContractionHierarchyStore store;
+	private CSRRoutingGraph graph;
+	private ContractionHierarchy hierarchy;
+
+	@Before
+	public void setup() throws IOException {
+		store = new ContractionHierarchyStore();
+		store.setDirectory(folder.newFolder("ch").getAbsolutePath());
+		graph = RoutingGraphGenerator.createGrid(8, 3);
+		hierarchy = new ContractionHierarchyBuilder(graph, RoutingCriteria.LENGTH, 5).build();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		store.save(GRAPH_VERSION, hierarchy);
+		ContractionHierarchy loaded = store.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 5);
+
+		Assert.assertNotNull(loaded);
+		Assert.assertSame(graph, loaded.getRoutingGraph());
+		Assert.assertEquals(RoutingCriteria.LENGTH, loaded.getCriteria());
+		Assert.assertEquals(5, loaded.getRequiredAccess());
+		Assert.assertEquals(hierarchy.getStatesCount(), loaded.getStatesCount());
+		Assert.assertEquals(hierarchy.getEdgesCount(), loaded.getEdgesCount());
+		for (int state = 0; state < hierarchy.getStatesCount(); state++) {
+			Assert.assertEquals(hierarchy.getRank(state), loaded.getRank(state));
+			Assert.assertEquals(hierarchy.getFirstForwardEdge(state), loaded.getFirstForwardEdge(state));
+			Assert.assertEquals(hierarchy.getFirstBackwardEdge(state), loaded.getFirstBackwardEdge(state));
+		}
+		for (int edge = 0; edge < hierarchy.getEdgesCount(); edge++) {
+			Assert.assertEquals(hierarchy.getEdgeSource(edge), loaded.getEdgeSource(edge));
+			Assert.assertEquals(hierarchy.getEdgeTarget(edge), loaded.getEdgeTarget(edge));
+			Assert.assertEquals(hierarchy.getEdgeWeight(edge), loaded.getEdgeWeight(edge), 0);
+			Assert.assertEquals(hierarchy.getEdgeSkipped1(edge), loaded.getEdgeSkipped1(edge));
+			Assert.assertEquals(hierarchy.getEdgeSkipped2(edge), loaded.getEdgeSkipped2(edge));
+		}
+
+		// hierarchies of other criteria or access filters are stored separately
+		Assert.assertNull(store.load(GRAPH_VERSION, graph, RoutingCriteria.MIN_DURATION, 5));
+		Assert.assertNull(store.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 0));
+	}
+
+	@Test
+	public void testOutdated() {
+		store.save(GRAPH_VERSION, hierarchy);
+
+		// same graph version imported again
+		CSRRoutingGraph reimported = RoutingGraphGenerator.createGrid(8, 3,
+				RoutingGraphGenerator.createMetadata(new Date(1000)));
+		Assert.assertNull(store.load(GRAPH_VERSION, reimported, RoutingCriteria.LENGTH, 5));
+
+		// same metadata, but different routing graph
+		CSRRoutingGraph otherGraph = RoutingGraphGenerator.createGrid(8, 4);
+		Assert.assertNull(store.load(GRAPH_VERSION, otherGraph, RoutingCriteria.LENGTH, 5));
+	}
+
+	@Test
+	public void testCorrupt() throws IOException {
+		store.save(GRAPH_VERSION, hierarchy);
+		Path file = getFile();
+
+		// truncated file
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(raf.length() / 2);
+		}
+		Assert.assertNull(store.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 5));
+
+		// unknown format
+		Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		Assert.assertNull(store.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 5));
+	}
+
+	@Test
+	public void testDelete() throws IOException {
+		store.save(GRAPH_VERSION, hierarchy);
+		Path file = getFile();
+
+		store.delete(GRAPH_VERSION);
+		Assert.assertFalse(Files.exists(file));
+		Assert.assertNull(store.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 5));
+	}
+
+	@Test
+	public void testDisabled() {
+		ContractionHierarchyStore disabledStore = new ContractionHierarchyStore();
+		Assert.assertFalse(disabledStore.isEnabled());
+		disabledStore.save(GRAPH_VERSION, hierarchy);
+		Assert.assertNull(disabledStore.load(GRAPH_VERSION, graph, RoutingCriteria.LENGTH, 5));
+	}
+
+	private Path getFile() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath().resolve("ch"))) {
+			return files.findFirst().get();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestIndexedStateHeap {
+
+	@Test
+	public void testPollInKeyOrder() {
+		IndexedStateHeap heap = new IndexedStateHeap(IndexedStateHeap.DEFAULT_ARITY, 2);
+		Random random = new Random(42);
+		double[] keys = new double[1000];
+		for (int state = 0; state < keys.length; state++) {
+			keys[state] = random.nextDouble() * 1000;
+			Assert.assertTrue(heap.push(state, keys[state]));
+		}
+		Assert.assertEquals(keys.length, heap.size());
+
+		double[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+		for (double key : sortedKeys) {
+			Assert.assertEquals(key, heap.peekKey(), 0);
+			int state = heap.poll();
+			Assert.assertEquals(key, keys[state], 0);
+			Assert.assertFalse(heap.contains(state));
+		}
+		Assert.assertTrue(heap.isEmpty());
+		Assert.assertEquals(Double.POSITIVE_INFINITY, heap.peekKey(), 0);
+	}
+
+	@Test
+	public void testDecreaseKey() {
+		IndexedStateHeap heap = new IndexedStateHeap();
+		heap.push(0, 5);
+		heap.push(1, 3);
+		heap.push(2, 4);
+
+		// greater keys are ignored
+		Assert.assertFalse(heap.push(1, 6));
+		Assert.assertEquals(3, heap.getKey(1), 0);
+
+		Assert.assertTrue(heap.push(0, 1));
+		Assert.assertEquals(3, heap.size());
+		Assert.assertEquals(0, heap.peek());
+		Assert.assertEquals(0, heap.poll());
+		Assert.assertEquals(1, heap.poll());
+		Assert.assertEquals(2, heap.poll());
+	}
+
+	@Test
+	public void testClear() {
+		IndexedStateHeap heap = new IndexedStateHeap();
+		for (int state = 0; state < 100; state++) {
+			heap.push(state, 100 - state);
+		}
+		heap.clear();
+		Assert.assertTrue(heap.isEmpty());
+		for (int state = 0; state < 100; state++) {
+			Assert.assertFalse(heap.contains(state));
+		}
+
+		// states can be queued again after clearing
+		Assert.assertTrue(heap.push(50, 1));
+		Assert.assertTrue(heap.contains(50));
+		Assert.assertEquals(50, heap.poll());
+	}
+
+	@Test
+	public void testGrowStates() {
+		IndexedStateHeap heap = new IndexedStateHeap(2, 2);
+		Assert.assertFalse(heap.contains(10000));
+		heap.push(10000, 2);
+		heap.push(3, 1);
+		Assert.assertTrue(heap.contains(10000));
+		Assert.assertEquals(3, heap.poll());
+		Assert.assertEquals(10000, heap.poll());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidArity() {
+		new IndexedStateHeap(1, 10);
+	}
+
+}
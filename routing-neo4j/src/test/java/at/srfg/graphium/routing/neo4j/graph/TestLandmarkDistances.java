@@ -0,0 +1,120 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.neo4j.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+
+/**
+ * Checks that lower bounds of {@link LandmarkDistances} never exceed the costs calculated by Dijkstra, although
+ * costs are stored as rounded down 16 bit values.
+ */
+public class TestLandmarkDistances {
+
+	private static final int SOURCES = 40;
+
+	@Test
+	public void testAdmissibleLength() {
+		assertAdmissible(RoutingGraphGenerator.createGrid(15, 5), RoutingCriteria.LENGTH);
+	}
+
+	@Test
+	public void testAdmissibleMinDuration() {
+		assertAdmissible(RoutingGraphGenerator.createGrid(15, 5), RoutingCriteria.MIN_DURATION);
+	}
+
+	/**
+	 * Costs exceed the 16 bit value range, so each stored value covers more than one cost unit.
+	 */
+	@Test
+	public void testAdmissibleCoarseScale() {
+		assertAdmissible(RoutingGraphGenerator.createGrid(15, 5, 1000), RoutingCriteria.LENGTH);
+	}
+
+	@Test
+	public void testMoreLandmarksThanStates() {
+		CSRRoutingGraph graph = RoutingGraphGenerator.createGrid(2, 5);
+		LandmarkDistances landmarks = new LandmarkDistancesBuilder(graph, RoutingCriteria.LENGTH, 100).build();
+		Assert.assertEquals(graph.getStatesCount(), landmarks.getLandmarksCount());
+		assertAdmissible(graph, landmarks);
+	}
+
+	private void assertAdmissible(CSRRoutingGraph graph, RoutingCriteria criteria) {
+		LandmarkDistances landmarks = new LandmarkDistancesBuilder(graph, criteria, 8).build();
+		Assert.assertEquals(8, landmarks.getLandmarksCount());
+		Assert.assertEquals(criteria, landmarks.getCriteria());
+		assertAdmissible(graph, landmarks);
+	}
+
+	private void assertAdmissible(CSRRoutingGraph graph, LandmarkDistances landmarks) {
+		float[] costs = graph.getCosts(landmarks.getCriteria());
+		Random random = new Random(13);
+		double boundsSum = 0;
+		double costsSum = 0;
+		for (int i = 0; i < SOURCES; i++) {
+			int fromState = random.nextInt(graph.getStatesCount());
+			double[] exactCosts = calculateCosts(graph, costs, fromState);
+			for (int toState = 0; toState < graph.getStatesCount(); toState++) {
+				double bound = landmarks.getLowerBound(fromState, toState);
+				Assert.assertTrue(bound >= 0);
+				if (exactCosts[toState] != Double.POSITIVE_INFINITY) {
+					Assert.assertTrue("lower bound from state " + fromState + " to " + toState + " is " + bound
+							+ ", but costs are " + exactCosts[toState], bound <= exactCosts[toState] * (1 + 1e-9));
+					boundsSum += bound;
+					costsSum += exactCosts[toState];
+				}
+			}
+		}
+		// bounds have to be useful for goal direction
+		Assert.assertTrue("lower bounds are too weak", boundsSum > costsSum * 0.3);
+	}
+
+	/**
+	 * Plain Dijkstra; costs of a path are the costs of all entered states.
+	 */
+	private double[] calculateCosts(CSRRoutingGraph graph, float[] costs, int fromState) {
+		double[] distances = new double[graph.getStatesCount()];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		distances[fromState] = 0;
+		StateHeap queue = new StateHeap();
+		queue.push(0, fromState);
+		while (!queue.isEmpty()) {
+			double currentCosts = queue.peekKey();
+			int current = queue.poll();
+			if (currentCosts > distances[current]) {
+				continue;
+			}
+			int lastEdge = graph.getFirstOutgoingEdge(current + 1);
+			for (int edge = graph.getFirstOutgoingEdge(current); edge < lastEdge; edge++) {
+				int neighbour = graph.getOutgoingEdgeTarget(edge);
+				double neighbourCosts = currentCosts + costs[neighbour];
+				if (neighbourCosts < distances[neighbour]) {
+					distances[neighbour] = neighbourCosts;
+					queue.push(neighbourCosts, neighbour);
+				}
+			}
+		}
+		return distances;
+	}
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Graphium Neo4j - Module of Graphium for routing services via Neo4j
+ * Copyright © 2020 Salzburg Research Forschungsgesellschaft (graphium@salzburgresearch.at)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package at.srfg.graphium.routing.service.neo4j.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import at.srfg.graphium.core.helper.GraphVersionHelper;
+import at.srfg.graphium.core.service.IGraphVersionMetadataService;
+import at.srfg.graphium.model.IWaySegment;
+import at.srfg.graphium.model.IWayGraphVersionMetadata;
+import at.srfg.graphium.model.State;
+import at.srfg.graphium.model.impl.WayGraphVersionMetadata;
+import at.srfg.graphium.neo4j.model.WayGraphConstants;
+import at.srfg.graphium.neo4j.model.WaySegmentRelationshipType;
+import at.srfg.graphium.neo4j.persistence.impl.Neo4jWaySegmentHelperImpl;
+import at.srfg.graphium.neo4j.traversal.DirectedOutgoingConnectionPathExpander;
+import at.srfg.graphium.routing.algo.IRoutedPath;
+import at.srfg.graphium.routing.algo.IRoutingAlgo;
+import at.srfg.graphium.routing.model.IRoutingOptions;
+import at.srfg.graphium.routing.model.impl.RoutingCriteria;
+import at.srfg.graphium.routing.model.impl.RoutingMode;
+import at.srfg.graphium.routing.model.impl.RoutingOptionsImpl;
+import at.srfg.graphium.routing.neo4j.algos.impl.AbstractCSRRoutingAlgo;
+import at.srfg.graphium.routing.neo4j.algos.impl.CHBidirectionalDijkstra;
+import at.srfg.graphium.routing.neo4j.algos.impl.CSRBidirectionalALT;
+import at.srfg.graphium.routing.neo4j.algos.impl.CSRBidirectionalDijkstra;
+import at.srfg.graphium.routing.neo4j.algos.impl.CSRDijkstra;
+import at.srfg.graphium.routing.neo4j.algos.impl.Dijkstra;
+import at.srfg.graphium.routing.neo4j.algos.impl.Path;
+import at.srfg.graphium.routing.neo4j.evaluators.impl.NodeBasedCostEvaluator;
+import at.srfg.graphium.routing.neo4j.graph.CSRRoutingGraph;
+import at.srfg.graphium.routing.neo4j.graph.ContractionHierarchyBuilder;
+import at.srfg.graphium.routing.neo4j.graph.LandmarkDistancesBuilder;
+
+/**
+ * Builds in-memory routing graphs from a randomly weighted grid of segments stored in Neo4j and compares routes of
+ * all in-memory routing algorithms with routes of {@link Dijkstra} on Neo4j.
+ */
+public class TestCSRRoutingGraphCacheManager {
+
+	private static final String GRAPH_NAME = "test";
+	private static final int GRID_SIZE = 10;
+	private static final int ROUTES = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphDatabaseService graphDb;
+	private List<IWayGraphVersionMetadata> versions = new ArrayList<>();
+	// segment nodes of the first version
+	private List<Node> segments;
+	private CSRRoutingGraphCacheManager cacheManager;
+
+	@Before
+	public void setup() throws Exception {
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("db"));
+		segments = createGrid(createVersion("1", new Date(0)), 3);
+
+		cacheManager = new CSRRoutingGraphCacheManager();
+		cacheManager.setMetadataService(createMetadataService());
+		cacheManager.setGraphDatabaseProvider(() -> graphDb);
+		cacheManager.setEnabled(true);
+		cacheManager.setup();
+	}
+
+	@After
+	public void shutdown() {
+		cacheManager.shutdown();
+		graphDb.shutdown();
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		CSRRoutingGraphCacheManager defaultCacheManager = new CSRRoutingGraphCacheManager();
+		defaultCacheManager.setMetadataService(createMetadataService());
+		defaultCacheManager.setup();
+		Assert.assertFalse(defaultCacheManager.isEnabled());
+		Assert.assertNull(defaultCacheManager.getRoutingGraph(GRAPH_NAME, null));
+	}
+
+	@Test
+	public void testEqualRoutesLength() {
+		CSRRoutingGraph routingGraph = cacheManager.getRoutingGraph(GRAPH_NAME, "1");
+		Assert.assertNotNull(routingGraph);
+		Assert.assertEquals(segments.size(), routingGraph.getSegmentsCount());
+
+		IRoutingOptions options = new RoutingOptionsImpl(GRAPH_NAME, "1");
+		options.setCriteria(RoutingCriteria.LENGTH);
+		options.setMode(RoutingMode.CAR);
+		Dijkstra<IWaySegment> neo4jDijkstra = new Dijkstra<>(new DirectedOutgoingConnectionPathExpander<>(null),
+				new NodeBasedCostEvaluator(GRAPH_NAME, "1", null, WayGraphConstants.SEGMENT_LENGTH), options);
+		List<IRoutingAlgo<IRoutingOptions, Node, Double>> algos = createCSRRoutingAlgos(routingGraph, options);
+
+		Random random = new Random(11);
+		try (Transaction tx = graphDb.beginTx()) {
+			for (int i = 0; i < ROUTES; i++) {
+				Node source = segments.get(random.nextInt(segments.size()));
+				Node target = segments.get(random.nextInt(segments.size()));
+				if (source.equals(target)) {
+					continue;
+				}
+				Path expected = neo4jDijkstra.calculateShortestPath(source, target);
+				for (IRoutingAlgo<IRoutingOptions, Node, Double> algo : algos) {
+					IRoutedPath<Double> path = algo.bestRoute(options, source, 0, target, 1);
+					String route = algo.getClass().getSimpleName() + " from segment "
+							+ source.getProperty(WayGraphConstants.SEGMENT_ID) + " to "
+							+ target.getProperty(WayGraphConstants.SEGMENT_ID);
+					if (expected == null) {
+						Assert.assertNull(route, path);
+					} else {
+						Assert.assertNotNull(route, path);
+						Assert.assertEquals(route, expected.getTotalCost(), path.getCost(), 0.01);
+					}
+				}
+			}
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testSourceEqualsTarget() {
+		CSRRoutingGraph routingGraph = cacheManager.getRoutingGraph(GRAPH_NAME, null);
+		IRoutingOptions options = new RoutingOptionsImpl(GRAPH_NAME, "1");
+		options.setCriteria(RoutingCriteria.LENGTH);
+		options.setMode(RoutingMode.CAR);
+		Node segment = segments.get(5);
+
+		for (IRoutingAlgo<IRoutingOptions, Node, Double> algo : createCSRRoutingAlgos(routingGraph, options)) {
+			IRoutedPath<Double> path = algo.bestRoute(options, segment, 0, segment, 1);
+			Assert.assertNotNull(algo.getClass().getSimpleName(), path);
+			Assert.assertEquals(0, path.getCost(), 0);
+		}
+	}
+
+	@Test
+	public void testRebuildOnActivation() throws Exception {
+		CSRRoutingGraph routingGraph = cacheManager.getRoutingGraph(GRAPH_NAME, null);
+		IWayGraphVersionMetadata metadata = createVersion("2", new Date(1000));
+		createGrid(metadata, 4);
+
+		cacheManager.update(null, metadata);
+
+		// routing graph will be rebuilt in background, meanwhile the previous routing graph remains available
+		long timeout = System.currentTimeMillis() + 10000;
+		while (cacheManager.getRoutingGraph(GRAPH_NAME, "2") == null && System.currentTimeMillis() < timeout) {
+			Assert.assertSame(routingGraph, cacheManager.getRoutingGraph(GRAPH_NAME, "1"));
+			Thread.sleep(10);
+		}
+		Assert.assertNotNull(cacheManager.getRoutingGraph(GRAPH_NAME, "2"));
+		Assert.assertNull(cacheManager.getRoutingGraph(GRAPH_NAME, "1"));
+	}
+
+	private List<IRoutingAlgo<IRoutingOptions, Node, Double>> createCSRRoutingAlgos(CSRRoutingGraph routingGraph,
+			IRoutingOptions options) {
+		List<IRoutingAlgo<IRoutingOptions, Node, Double>> algos = new ArrayList<>();
+		algos.add(new CSRDijkstra<IWaySegment>(routingGraph, options, false, null));
+		algos.add(new CSRBidirectionalDijkstra<IWaySegment>(routingGraph, options, false, null));
+		algos.add(new CHBidirectionalDijkstra<IWaySegment>(routingGraph, new ContractionHierarchyBuilder(routingGraph,
+				options.getCriteria(), AbstractCSRRoutingAlgo.getRequiredAccess(options.getMode())).build(),
+				options, false, null));
+		algos.add(new CSRBidirectionalALT<IWaySegment>(routingGraph,
+				new LandmarkDistancesBuilder(routingGraph, options.getCriteria(), 4).build(), options, false, null));
+		return algos;
+	}
+
+	private IWayGraphVersionMetadata createVersion(String version, Date validFrom) {
+		IWayGraphVersionMetadata metadata = new WayGraphVersionMetadata();
+		metadata.setGraphName(GRAPH_NAME);
+		metadata.setVersion(version);
+		metadata.setValidFrom(validFrom);
+		metadata.setState(State.ACTIVE);
+		versions.add(metadata);
+		return metadata;
+	}
+
+	private IGraphVersionMetadataService createMetadataService() {
+		return (IGraphVersionMetadataService) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {IGraphVersionMetadataService.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getGraphs":
+						return Collections.singletonList(GRAPH_NAME);
+					case "getCurrentWayGraphVersionMetadata":
+						return versions.get(versions.size() - 1);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/**
+	 * Creates segments between neighbouring junctions of a grid; directions are chosen randomly, about every tenth
+	 * segment is a one way.
+	 */
+	private List<Node> createGrid(IWayGraphVersionMetadata metadata, long seed) {
+		Label label = Label.label(Neo4jWaySegmentHelperImpl.createSegmentNodeLabel(
+				GraphVersionHelper.createGraphVersionName(metadata.getGraphName(), metadata.getVersion())));
+		Random random = new Random(seed);
+		List<Node> gridSegments = new ArrayList<>();
+		List<Boolean> oneWays = new ArrayList<>();
+		try (Transaction tx = graphDb.beginTx()) {
+			long segmentId = 1;
+			for (int x = 0; x < GRID_SIZE; x++) {
+				for (int y = 0; y < GRID_SIZE; y++) {
+					if (x + 1 < GRID_SIZE) {
+						gridSegments.add(createSegment(label, segmentId++, junction(x, y), junction(x + 1, y), random));
+						oneWays.add(random.nextInt(10) == 0);
+					}
+					if (y + 1 < GRID_SIZE) {
+						gridSegments.add(createSegment(label, segmentId++, junction(x, y), junction(x, y + 1), random));
+						oneWays.add(random.nextInt(10) == 0);
+					}
+				}
+			}
+			for (int i = 0; i < gridSegments.size(); i++) {
+				for (int j = 0; j < gridSegments.size(); j++) {
+					if (i != j) {
+						connect(gridSegments.get(i), oneWays.get(i), gridSegments.get(j), oneWays.get(j));
+					}
+				}
+			}
+			tx.success();
+		}
+		metadata.setSegmentsCount(gridSegments.size());
+		return gridSegments;
+	}
+
+	private Node createSegment(Label label, long segmentId, long junction1, long junction2, Random random) {
+		boolean reverse = random.nextBoolean();
+		Node node = graphDb.createNode(label);
+		node.setProperty(WayGraphConstants.SEGMENT_ID, segmentId);
+		node.setProperty(WayGraphConstants.SEGMENT_STARTNODE_ID, reverse ? junction2 : junction1);
+		node.setProperty(WayGraphConstants.SEGMENT_ENDNODE_ID, reverse ? junction1 : junction2);
+		node.setProperty(WayGraphConstants.SEGMENT_LENGTH, 10 + random.nextInt(1000) / 10f);
+		node.setProperty(WayGraphConstants.SEGMENT_MAXSPEED_TOW, (short) 50);
+		node.setProperty(WayGraphConstants.SEGMENT_MAXSPEED_BKW, (short) 50);
+		return node;
+	}
+
+	/**
+	 * Connects the segments if they share a junction and one way segments are left via their end node and entered via
+	 * their start node only.
+	 */
+	private void connect(Node from, boolean fromOneWay, Node to, boolean toOneWay) {
+		long fromStart = (long) from.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID);
+		long fromEnd = (long) from.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID);
+		long toStart = (long) to.getProperty(WayGraphConstants.SEGMENT_STARTNODE_ID);
+		long toEnd = (long) to.getProperty(WayGraphConstants.SEGMENT_ENDNODE_ID);
+		// grid has no parallel segments, so two segments share at most one junction
+		long junction;
+		if (toStart == fromStart || toStart == fromEnd) {
+			junction = toStart;
+		} else if (toEnd == fromStart || toEnd == fromEnd) {
+			junction = toEnd;
+		} else {
+			return;
+		}
+		if ((fromOneWay && junction != fromEnd) || (toOneWay && junction != toStart)) {
+			return;
+		}
+		Relationship rel = from.createRelationshipTo(to, junction == fromStart ?
+				WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_STARTNODE : WaySegmentRelationshipType.SEGMENT_CONNECTION_ON_ENDNODE);
+		rel.setProperty(WayGraphConstants.CONNECTION_NODE_ID, junction);
+		rel.setProperty(WayGraphConstants.CONNECTION_ACCESS_BITMASK, -1L);
+	}
+
+	private long junction(int x, int y) {
+		return x * GRID_SIZE + y;
+	}
+
+}